@@ -0,0 +1,21 @@
+% Regression check: the out-of-bag estimate is reused by every fold of the
+% cross-validation. Run from this directory with
+%   clus -forest -xval testOOBXVal.s
+% It must finish without "is not in the training set" messages and write
+% testOOBXVal.oob and testOOBXVal.xval.
+
+[General]
+ResourceInfoLoaded = No
+RandomSeed = 1234
+
+[Data]
+File = testOOBXVal.arff
+XVal = 3
+
+[Attributes]
+Target = 3
+
+[Ensemble]
+Iterations = 5
+EnsembleMethod = RForest
+OOBestimate = Yes
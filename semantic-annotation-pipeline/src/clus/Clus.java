@@ -31,15 +31,21 @@ import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import clus.algo.ClusInductionAlgorithm;
 import clus.algo.ClusInductionAlgorithmType;
 import clus.algo.kNN.KnnClassifier;
+import clus.algo.kNN.KnnModel;
 import clus.algo.kNN.test.TestKnnModel;
 import clus.algo.kNN.test.oTestKnnClassifier;
 import clus.algo.kNN.test.oTestKnnModel;
@@ -50,6 +56,7 @@ import clus.algo.tdidt.ClusDecisionTree;
 import clus.algo.tdidt.ClusNode;
 import clus.algo.tdidt.ClusSITDecisionTree;
 import clus.algo.tdidt.ConstraintDFInduce;
+import clus.algo.tdidt.LevelWiseInduce;
 import clus.algo.tdidt.processor.NodeExampleCollector;
 import clus.algo.tdidt.processor.NodeIDWriter;
 import clus.algo.tdidt.tune.CDTTuneFTest;
@@ -81,6 +88,7 @@ import clus.ext.beamsearch.ClusFastBeamSearch;
 import clus.ext.constraint.ClusConstraintFile;
 import clus.ext.ensembles.ClusEnsembleClassifier;
 import clus.ext.ensembles.ClusEnsembleInduce;
+import clus.ext.ensembles.ClusForest;
 import clus.ext.exhaustivesearch.ClusExhaustiveDFSearch;
 import clus.ext.featureRanking.relief.Relief;
 import clus.ext.hierarchical.ClassHierarchy;
@@ -110,6 +118,7 @@ import clus.model.modelio.ClusTreeReader;
 import clus.model.processor.ClusEnsemblePredictionWriter;
 import clus.model.processor.ModelProcessorCollection;
 import clus.model.processor.PredictionWriter;
+import clus.pruning.C45Pruner;
 import clus.pruning.PruneTree;
 import clus.selection.BaggingSelection;
 import clus.selection.ClusSelection;
@@ -140,9 +149,9 @@ public class Clus implements CMDLineArgsProvider {
 
     // exhaustive was added the 1/08/2006
     // relief was added 29/08/2016
-    public final static String[] OPTION_ARGS = { "relief", "exhaustive", "xval", "oxval", "target", "disable", "silent", "lwise", "c45", "info", "sample", "debug", "tuneftest", "load", "soxval", "bag", "obag", "show", "knn", "knnTEST", "knnTree", "beam", "gui", "fillin", "rules", "weka", "corrmatrix", "tunesize", "out2model", "test", "normalize", "tseries", "writetargets", "fold", "forest", "copying", "sit", "tc", "clowdflows", "option" };
+    public final static String[] OPTION_ARGS = { "relief", "exhaustive", "xval", "oxval", "target", "disable", "silent", "lwise", "c45", "info", "sample", "debug", "tuneftest", "load", "soxval", "bag", "obag", "show", "knn", "knnTEST", "knnTree", "beam", "gui", "fillin", "rules", "weka", "corrmatrix", "tunesize", "out2model", "test", "normalize", "tseries", "writetargets", "fold", "forest", "copying", "sit", "tc", "clowdflows", "option", "onebag" };
 
-    public final static int[] OPTION_ARITIES = { 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0 };
+    public final static int[] OPTION_ARITIES = { 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 1 };
 
     protected Settings m_Sett = new Settings();
     protected ClusSummary m_Summary = new ClusSummary();
@@ -172,6 +181,11 @@ public class Clus implements CMDLineArgsProvider {
     public final void initialize(CMDLineArgs cargs, ClusInductionAlgorithmType clss) throws IOException, ClusException {
         m_CmdLine = cargs;
         m_Classifier = clss;
+        // With -lwise, the data stays on disk and is streamed by the level-wise induction
+        boolean levelwise = cargs.hasOption("lwise");
+        if (levelwise) {
+            checkLevelWiseRun(cargs);
+        }
         // Load resource info (this measures among others CPU time on Linux)
         boolean test = m_Sett.getResourceInfoLoaded() == Settings.RESOURCE_INFO_LOAD_TEST;
         ResourceInfo.loadLibrary(test);
@@ -215,16 +229,21 @@ public class Clus implements CMDLineArgsProvider {
         if (ResourceInfo.isLibLoaded()) {
             ClusStat.m_InitialMemory = ResourceInfo.getMemory();
         }
-        ClusView view = m_Schema.createNormalView();
+        if (levelwise) {
+            m_Data = new RowData(m_Schema, 0);
+        }
+        else {
+            ClusView view = m_Schema.createNormalView();
 ////        if (m_Sett.isHMTREnabled()) {
 ////            m_Data = view.readDataHMTR(reader, m_Schema, m_HMTRHierarchy, m_Sett);
 ////        }
 ////        else {
-          m_Data = view.readData(reader, m_Schema);
+            m_Data = view.readData(reader, m_Schema);
 ////        }
+        }
 
         reader.close();
-        if (m_Sett.getVerbose() > 0)
+        if (m_Sett.getVerbose() > 0 && !levelwise)
             System.out.println("Found " + m_Data.getNbRows() + " rows");
 
         if (getSettings().getNormalizeData() != Settings.NORMALIZE_DATA_NONE) {
@@ -243,7 +262,11 @@ public class Clus implements CMDLineArgsProvider {
         }
 
         // Create induce
+        if (levelwise) {
+            m_Sett.setInductionOrder(Settings.LEVEL_WISE);
+        }
         m_Induce = clss.createInduce(m_Schema, m_Sett, cargs);
+        if (levelwise && !(m_Induce instanceof LevelWiseInduce)) { throw new ClusException("-lwise only supports single trees on dense data without constraints"); }
 
         // Preprocess and initialize induce
         m_Sett.update(m_Schema);
@@ -259,15 +282,25 @@ public class Clus implements CMDLineArgsProvider {
         if (isxval)
             Settings.IS_XVAL = true;
 
-        preprocess(); // necessary in order to link the labels to the class
-                      // hierarchy in HMC (needs to be before
-                      // m_Induce.initialize())
+        // necessary in order to link the labels to the class hierarchy in HMC
+        // (needs to be before m_Induce.initialize())
+        if (levelwise) {
+            preprocess(createDataIterator(null));
+        }
+        else {
+            preprocess();
+        }
 
         // TODO: does this really need to be here? martinb
         m_Schema.setHMTRHierarchy(m_HMTRHierarchy);
 
         m_Induce.initialize();
-        initializeAttributeWeights(m_Data);
+        if (levelwise) {
+            initializeAttributeWeights(createDataIterator(getPreprocs(true)));
+        }
+        else {
+            initializeAttributeWeights(m_Data);
+        }
         m_Induce.initializeHeuristic();
         loadConstraintFile();
         initializeSummary(clss);
@@ -619,6 +652,19 @@ public class Clus implements CMDLineArgsProvider {
          * stats); }
          */
         mgr.initNormalizationWeights(allStat, data);
+        initializeWeightsAndHeuristic(mgr);
+    }
+
+
+    /** Variant of initializeAttributeWeights(ClusData) for data that is streamed instead of kept in memory */
+    public final void initializeAttributeWeights(TupleIterator iter) throws IOException, ClusException {
+        ClusStatManager mgr = getInduce().getStatManager();
+        mgr.initNormalizationWeights(mgr.createStatistic(ClusAttrType.ATTR_USE_ALL), iter);
+        initializeWeightsAndHeuristic(mgr);
+    }
+
+
+    private void initializeWeightsAndHeuristic(ClusStatManager mgr) throws ClusException {
         mgr.initClusteringWeights();
         mgr.initDispersionWeights();
         mgr.initHeuristic();
@@ -640,6 +686,33 @@ public class Clus implements CMDLineArgsProvider {
     }
 
 
+    /**
+     * Variant of preprocess(ClusData) that streams the data once for each pass of the preprocessors. The first pass
+     * also counts the missing values of the attributes, which is otherwise done while reading the data in memory.
+     */
+    public final void preprocess(TupleIterator iter) throws ClusException, IOException {
+        DataPreprocs pps = getPreprocs(false);
+        int nb = Math.max(pps.getNbPasses(), 1);
+        for (int i = 0; i < nb; i++) {
+            iter.init();
+            DataTuple tuple = iter.readTuple();
+            while (tuple != null) {
+                pps.preproc(i, tuple);
+                tuple = iter.readTuple();
+            }
+            if (i == 0) {
+                // The iterator reads the data with its own schema, whose attributes have counted the missing values
+                ClusSchema read = iter.getSchema();
+                for (int j = 0; j < m_Schema.getNbAttributes(); j++) {
+                    m_Schema.getAttrType(j).setNbMissing(read.getAttrType(j).getNbMissing());
+                }
+            }
+            iter.close();
+            pps.done(i);
+        }
+    }
+
+
     public final void preprocSingle(RowData data) throws ClusException {
         DataPreprocs pps = getPreprocs(true);
         for (int i = 0; i < data.getNbRows(); i++) {
@@ -863,6 +936,10 @@ public class Clus implements CMDLineArgsProvider {
         if (iter.shouldAttach())
             attachModels(mschema, cr);
         cr.initModelProcessors(type, mschema);
+        // with one thread, the neighbours are searched tuple by tuple
+        boolean knnRows = getSettings().isKNN() && getSettings().getKnnNbThreads() > 1 && iter.getData() instanceof RowData;
+        if (knnRows)
+            computeKnnNeighbours(cr, (RowData) iter.getData());
         boolean wr_ens_tr_preds = (!getSettings().IS_XVAL) || (getSettings().IS_XVAL && cr.getTestSet() == null);
         wr_ens_tr_preds = wr_ens_tr_preds && (type == ClusModelInfo.TRAIN_ERR) && (getSettings().shouldWritePredictionsFromEnsemble());
         boolean wr_ens_te_preds = (!getSettings().IS_XVAL && cr.getTestSet() != null);
@@ -875,10 +952,16 @@ public class Clus implements CMDLineArgsProvider {
         // if (wr_ens_xval_preds && (cr.getIndex() == 1))
         // cr.initEnsemblePredictionsWriter(ClusModelInfo.XVAL_PREDS);//initialize only for the first fold
 
+        // the forests only give the votes of their trees when predicting tuple by tuple
+        ClusStatistic[][] forestPreds = null;
+        if (!wr_ens_tr_preds && !wr_ens_te_preds && ens_pred == null && iter.getData() instanceof RowData)
+            forestPreds = predictForestsBatch(cr, (RowData) iter.getData());
+
         ModelProcessorCollection allcoll = cr.getAllModelsMI().getAddModelProcessors(type);
         DataTuple tuple = iter.readTuple();
 
         int cnt = 0;
+        int row = 0;
 
         while (tuple != null) {
             cnt++;
@@ -888,7 +971,13 @@ public class Clus implements CMDLineArgsProvider {
                 ClusModelInfo mi = cr.getModelInfo(i);
                 if (mi != null && mi.getModel() != null) {
                     ClusModel model = mi.getModel();
-                    ClusStatistic pred = model.predictWeighted(tuple);
+                    ClusStatistic pred;
+                    if (forestPreds != null && forestPreds[i] != null)
+                        pred = forestPreds[i][row];
+                    else if (knnRows && model instanceof KnnModel)
+                        pred = ((KnnModel) model).predictWeighted(tuple, row);
+                    else
+                        pred = model.predictWeighted(tuple);
 
                     ClusErrorList err = mi.getError(type);
                     if (err != null)
@@ -909,6 +998,7 @@ public class Clus implements CMDLineArgsProvider {
             }
             allcoll.exampleDone();
             tuple = iter.readTuple();
+            row++;
 
             if (cnt % 1000 == 0) {
                 allcoll.flushWriter();
@@ -916,6 +1006,8 @@ public class Clus implements CMDLineArgsProvider {
             }
         }
         iter.close();
+        if (knnRows)
+            clearKnnNeighbours(cr);
         cr.termModelProcessors(type);
         if (wr_ens_tr_preds || wr_ens_te_preds) {
             cr.termEnsemblePredictionsWriter(type);
@@ -959,6 +1051,56 @@ public class Clus implements CMDLineArgsProvider {
     }
 
 
+    /**
+     * Lets the kNN models search for the neighbours of all the tuples in the data at once, before the tuples are
+     * predicted one by one.
+     */
+    private void computeKnnNeighbours(ClusRun cr, RowData data) throws ClusException {
+        for (int i = 0; i < cr.getNbModels(); i++) {
+            ClusModelInfo mi = cr.getModelInfo(i);
+            if (mi != null && mi.getModel() instanceof KnnModel) {
+                try {
+                    ((KnnModel) mi.getModel()).computeNeighbours(data, getSettings().getKnnNbThreads());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ClusException("Interrupted while searching for the nearest neighbours");
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Lets the forests that support it (see {@link ClusForest#canPredictBatch()}) predict all the tuples in the data
+     * at once, before the tuples are processed one by one.
+     * 
+     * @return The predictions per model and row, {@code null} for the models that predict tuple by tuple.
+     */
+    private ClusStatistic[][] predictForestsBatch(ClusRun cr, RowData data) throws ClusException {
+        ClusStatistic[][] preds = new ClusStatistic[cr.getNbModels()][];
+        int nbThreads = getSettings().getNumberOfThreads();
+        if (nbThreads == 0)
+            nbThreads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < cr.getNbModels(); i++) {
+            ClusModelInfo mi = cr.getModelInfo(i);
+            if (mi != null && mi.getModel() instanceof ClusForest && ((ClusForest) mi.getModel()).canPredictBatch()) {
+                preds[i] = ((ClusForest) mi.getModel()).predictWeightedBatch(data, nbThreads);
+            }
+        }
+        return preds;
+    }
+
+
+    private void clearKnnNeighbours(ClusRun cr) {
+        for (int i = 0; i < cr.getNbModels(); i++) {
+            ClusModelInfo mi = cr.getModelInfo(i);
+            if (mi != null && mi.getModel() instanceof KnnModel)
+                ((KnnModel) mi.getModel()).clearNeighbours();
+        }
+    }
+
+
     public final void calcError(ClusRun cr, ClusSummary summary) throws IOException, ClusException {
         calcError(cr, summary, null);
     }
@@ -1302,7 +1444,8 @@ public class Clus implements CMDLineArgsProvider {
 
 
     public final void testModel(String fname) throws IOException, ClusException, ClassNotFoundException, InterruptedException {
-        ClusModelCollectionIO io = ClusModelCollectionIO.load(fname);
+        // a .forest file holds only the trees of an ensemble, written with WriteBinaryForest = Yes
+        ClusModelCollectionIO io = fname.endsWith(".forest") ? ClusModelCollectionIO.loadForest(fname, getStatManager()) : ClusModelCollectionIO.load(fname);
         ClusModel res = io.getModel("Original");
         String test_name = m_Sett.getAppName() + ".test";
         ClusOutput out = new ClusOutput(test_name, m_Schema, m_Sett);
@@ -1435,6 +1578,48 @@ public class Clus implements CMDLineArgsProvider {
     }
 
 
+    /**
+     * Induces a single tree level by level, without loading the training data into memory: the data file is read
+     * once for each level of the tree and once more for the training error.
+     */
+    public final void levelWiseRun(ClusInductionAlgorithmType clss) throws IOException, ClusException, InterruptedException {
+        m_Summary.setTotalRuns(1);
+        ClusOutput output = new ClusOutput(m_Sett.getAppName() + ".out", m_Schema, m_Sett);
+        // m_Data only holds the header, the test set and the pruning set are read from their own files
+        ClusRun cr = partitionData();
+        if (getStatManager().getTreePruner(cr.getPruneSet()) instanceof C45Pruner) { throw new ClusException("-lwise does not support C4.5 pruning, which needs the training data in memory"); }
+        cr.setTrainIter(createDataIterator(getPreprocs(true)));
+        getStatManager().computeTrainSetStat(cr.getTrainIter());
+        induce(cr, clss);
+        calcError(cr, null, null);
+        output.writeHeader();
+        output.writeOutput(cr, true, m_Sett.isOutTrainError());
+        output.close();
+        clss.saveInformation(m_Sett.getAppName());
+        if (getSettings().isWriteModelFile()) {
+            ClusModelCollectionIO io = new ClusModelCollectionIO();
+            saveModels(cr, io);
+            io.save(getSettings().getFileAbsolute(m_Sett.getAppName() + ".model"));
+        }
+    }
+
+
+    /** Checks that the options and settings of a run allow the data to be streamed with -lwise */
+    private void checkLevelWiseRun(CMDLineArgs cargs) throws ClusException {
+        if (cargs.hasOption("c45") || cargs.hasOption("sample")) { throw new ClusException("-lwise can not be combined with -c45 or -sample"); }
+        if (m_Sett.getNormalizeData() != Settings.NORMALIZE_DATA_NONE || m_Sett.isRemoveMissingTarget()) { throw new ClusException("-lwise does not support NormalizeData and RemoveMissingTarget, which change the data in memory"); }
+        if (m_Sett.getTestProportion() != 0.0 || m_Sett.getPruneProportion() != 0.0) { throw new ClusException("-lwise needs the test and pruning sets in separate files (TestSet, PruneSet)"); }
+    }
+
+
+    /** Returns an iterator that streams the tuples of the data file */
+    private TupleIterator createDataIterator(DataPreprocs procs) {
+        TupleIterator iter = new DiskTupleIterator(m_Sett.getDataFile(), new MyClusInitializer(), procs, m_Sett);
+        iter.setShouldAttach(true);
+        return iter;
+    }
+
+
     public final XValMainSelection getXValSelection() throws IOException, ClusException {
         if (m_Sett.isLOOXVal()) {
             return new XValRandomSelection(m_Data.getNbRows(), m_Data.getNbRows());
@@ -1464,26 +1649,7 @@ public class Clus implements CMDLineArgsProvider {
             catch (ClassNotFoundException e) {}
             strm.close();
         }
-        PrintWriter wrt = new PrintWriter(new OutputStreamWriter(new FileOutputStream(m_Sett.getAppName() + ".test.pred")));
-        for (int fold = 0; fold < sel.getNbFolds(); fold++) {
-            String pw_fname = "folds/" + m_Sett.getAppName() + ".test.pred." + fold;
-            System.out.println("Combining: " + pw_fname);
-            LineNumberReader rdr = new LineNumberReader(new InputStreamReader(new FileInputStream(pw_fname)));
-            String line = rdr.readLine();
-            if (fold != 0) {
-                // Only copy header from fold 0
-                while (line != null && !line.equals("@DATA")) {
-                    line = rdr.readLine();
-                }
-                line = rdr.readLine();
-            }
-            while (line != null) {
-                wrt.println(line);
-                line = rdr.readLine();
-            }
-            rdr.close();
-        }
-        wrt.close();
+        combinePredictions("folds/" + m_Sett.getAppName() + ".test.pred.", sel.getNbFolds(), m_Sett.getAppName() + ".test.pred");
         output.writeSummary(m_Summary);
         output.close();
         /* Cross-validation now includes a single run */
@@ -1523,6 +1689,8 @@ public class Clus implements CMDLineArgsProvider {
 
 
     public final ClusRun doOneFold(int fold, ClusInductionAlgorithmType clss, XValMainSelection sel, ClusModelCollectionIO io, PredictionWriter wrt, ClusOutput output, ClusErrorOutput errOutput, ClusEnsemblePredictionWriter ens_pred) throws IOException, ClusException, InterruptedException {
+        // the same random numbers for the fold in the sequential and the parallel cross-validation
+        ClusRandom.initializeFold(m_Sett, fold);
         XValSelection msel = new XValSelection(sel, fold);
         ClusRun cr = partitionData(msel, fold + 1);
         // Create statistic for the training set
@@ -1580,6 +1748,15 @@ public class Clus implements CMDLineArgsProvider {
 
 
     public final void xvalRun(ClusInductionAlgorithmType clss) throws IOException, ClusException, InterruptedException {
+        if (getSettings().getXValParallelFolds() > 1) {
+            if (getSettings().isWriteErrorFile() || getSettings().shouldWritePredictionsFromEnsemble()) {
+                System.err.println("XValParallelFolds is ignored: the error file and the ensemble predictions are only written by the sequential cross-validation.");
+            }
+            else {
+                parallelXValRun(clss);
+                return;
+            }
+        }
         ClusErrorOutput errFileOutput = null;
         if (getSettings().isWriteErrorFile()) {
             errFileOutput = new ClusErrorOutput(m_Sett.getAppName() + ".err", m_Schema, m_Sett);
@@ -1622,7 +1799,142 @@ public class Clus implements CMDLineArgsProvider {
     }
 
 
+    /**
+     * Cross-validation where each fold is run in its own process (see {@link #oneFoldRun(ClusInductionAlgorithmType, int)}),
+     * at most {@link Settings#getXValParallelFolds()} of them at the same time. Since every process has its own
+     * statistics manager and random generators, the folds do not share any state; the random generators of a fold are
+     * initialized as in the sequential cross-validation (see {@link ClusRandom#initializeFold(Settings, int)}). The
+     * outputs of the folds are merged into the .xval and .test.pred.arff files in fold order.
+     */
+    public final void parallelXValRun(ClusInductionAlgorithmType clss) throws IOException, ClusException, InterruptedException {
+        XValMainSelection sel = getXValSelection();
+        int nbFolds = sel.getNbFolds();
+        FileUtil.mkdir("folds");
+        runPartProcesses("-xval", "-fold", "fold", "folds", nbFolds, getSettings().getXValParallelFolds());
+
+        ClusOutput output = new ClusOutput(m_Sett.getAppName() + ".xval", m_Schema, m_Sett);
+        output.writeHeader();
+        ClusModelCollectionIO io = new ClusModelCollectionIO();
+        m_Summary.setTotalRuns(nbFolds);
+        for (int fold = 0; fold < nbFolds; fold++) {
+            String dat_fname = "folds/" + m_Sett.getAppName() + ".fold." + fold;
+            ObjectLoadStream strm = new ObjectLoadStream(new FileInputStream(dat_fname));
+            try {
+                ClusRun cr = (ClusRun) strm.readObject();
+                m_Summary.addSummary(cr);
+                output.print((String) strm.readObject());
+                if (m_Sett.isOutputFoldModels() && !Settings.m_EnsembleMode) {
+                    ClusModelInfo mi = cr.getModelInfo(ClusModel.PRUNED);
+                    if (mi != null)
+                        io.addModel(mi);
+                }
+            }
+            catch (ClassNotFoundException e) {
+                throw new ClusException("Can not read the results of fold " + fold + " from " + dat_fname);
+            }
+            finally {
+                strm.close();
+            }
+        }
+        if (getSettings().isWriteTestSetPredictions()) {
+            combinePredictions("folds/" + m_Sett.getAppName() + ".test.pred.", nbFolds, m_Sett.getAppName() + ".test.pred.arff");
+        }
+        output.writeSummary(m_Summary);
+        output.close();
+        /* Cross-validation now includes a single run */
+        ClusRandom.initialize(m_Sett);
+        ClusRun run = singleRunMain(clss, m_Summary);
+        // this should not be on for KNN
+        if (!getSettings().isKNN() && getSettings().isWriteModelFile()) {
+            saveModels(run, io);
+            io.save(getSettings().getFileAbsolute(m_Sett.getAppName() + ".model"));
+        }
+    }
+
+
+    /**
+     * Runs each part (fold or bag) in a new JVM with the same JVM options and command line arguments, except that
+     * runOption is replaced by {@code partOption <i + 1>} for part i. At most nbParallel processes run at the same time.
+     * The console output of part i is written to dir/appname.part.log.i.
+     */
+    private void runPartProcesses(String runOption, String partOption, String part, String dir, int nbParts, int nbParallel) throws IOException, ClusException, InterruptedException {
+        ArrayList<String> jvm = new ArrayList<String>();
+        jvm.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        jvm.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        jvm.add("-cp");
+        jvm.add(System.getProperty("java.class.path"));
+        jvm.add(Clus.class.getName());
+        String[] args = m_CmdLine.getArgs();
+        String label = Character.toUpperCase(part.charAt(0)) + part.substring(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(nbParts, nbParallel));
+        ArrayList<Future<Integer>> exitCodes = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < nbParts; i++) {
+            ArrayList<String> command = new ArrayList<String>(jvm);
+            for (String arg : args) {
+                if (arg.equals(runOption)) {
+                    command.add(partOption);
+                    command.add(String.valueOf(i + 1));
+                }
+                else {
+                    command.add(arg);
+                }
+            }
+            final ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(dir + "/" + m_Sett.getAppName() + "." + part + ".log." + i));
+            exitCodes.add(executor.submit(() -> builder.start().waitFor()));
+        }
+        executor.shutdown();
+        for (int i = 0; i < nbParts; i++) {
+            int exitCode;
+            try {
+                exitCode = exitCodes.get(i).get();
+            }
+            catch (ExecutionException e) {
+                throw new IOException("Can not run " + part + " " + i + ": " + e.getCause().getMessage());
+            }
+            if (exitCode != 0) {
+                throw new ClusException(label + " " + i + " failed, see " + dir + "/" + m_Sett.getAppName() + "." + part + ".log." + i);
+            }
+            System.out.println(label + " " + i + " done");
+        }
+    }
+
+
+    /**
+     * Concatenates the test set predictions prefix0, prefix1, ... of the folds or bags. Only the header of the first
+     * one is copied.
+     */
+    private void combinePredictions(String prefix, int nbParts, String fname) throws IOException {
+        PrintWriter wrt = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fname)));
+        for (int part = 0; part < nbParts; part++) {
+            String pw_fname = prefix + part;
+            System.out.println("Combining: " + pw_fname);
+            LineNumberReader rdr = new LineNumberReader(new InputStreamReader(new FileInputStream(pw_fname)));
+            String line = rdr.readLine();
+            if (part != 0) {
+                // Only copy header from the first part
+                while (line != null && !line.equals("@DATA")) {
+                    line = rdr.readLine();
+                }
+                line = rdr.readLine();
+            }
+            while (line != null) {
+                wrt.println(line);
+                line = rdr.readLine();
+            }
+            rdr.close();
+        }
+        wrt.close();
+    }
+
+
     public final void baggingRun(ClusInductionAlgorithmType clss) throws IOException, ClusException, InterruptedException {
+        if (getSettings().getParallelBags() > 1) {
+            parallelBaggingRun(clss);
+            return;
+        }
         ClusOutput output = new ClusOutput(m_Sett.getAppName() + ".bag", m_Schema, m_Sett);
         output.writeHeader();
         ClusStatistic target = getStatManager().createStatistic(ClusAttrType.ATTR_USE_TARGET);
@@ -1633,7 +1945,7 @@ public class Clus implements CMDLineArgsProvider {
         for (int i = 0; i < nbsets; i++) {
             BaggingSelection msel = new BaggingSelection(nbrows, getSettings().getEnsembleBagSize(), null);
             ClusRun cr = partitionData(msel, i + 1);
-            ClusModelInfo mi = cr.getModelInfo(ClusModel.PRUNED);
+            ClusModelInfo mi = cr.addModelInfo(ClusModel.PRUNED);
             mi.addModelProcessor(ClusModelInfo.TEST_ERR, wrt);
             induce(cr, clss); // Induce tree
             calcError(cr, m_Summary, null); // Calc error
@@ -1646,6 +1958,74 @@ public class Clus implements CMDLineArgsProvider {
     }
 
 
+    /**
+     * Bagging where each bag is run in its own process (see {@link #oneBagRun(ClusInductionAlgorithmType, int)}), at
+     * most {@link Settings#getParallelBags()} of them at the same time. The summaries, the models written to the .bag
+     * file and the test set predictions of the bags are merged in bag order.
+     */
+    public final void parallelBaggingRun(ClusInductionAlgorithmType clss) throws IOException, ClusException, InterruptedException {
+        int nbsets = m_Sett.getBaggingSets();
+        FileUtil.mkdir("bags");
+        runPartProcesses("-bag", "-onebag", "bag", "bags", nbsets, getSettings().getParallelBags());
+
+        ClusOutput output = new ClusOutput(m_Sett.getAppName() + ".bag", m_Schema, m_Sett);
+        output.writeHeader();
+        for (int bag = 0; bag < nbsets; bag++) {
+            String dat_fname = "bags/" + m_Sett.getAppName() + ".bag." + bag;
+            ObjectLoadStream strm = new ObjectLoadStream(new FileInputStream(dat_fname));
+            try {
+                m_Summary.addSummary((ClusRun) strm.readObject());
+                output.print((String) strm.readObject());
+            }
+            catch (ClassNotFoundException e) {
+                throw new ClusException("Can not read the results of bag " + bag + " from " + dat_fname);
+            }
+            finally {
+                strm.close();
+            }
+        }
+        combinePredictions("bags/" + m_Sett.getAppName() + ".test.pred.arff.", nbsets, m_Sett.getAppName() + ".test.pred.arff");
+        output.writeSummary(m_Summary);
+        output.close();
+    }
+
+
+    /**
+     * Runs bag number {@code bag} (starting with 1) of {@link #baggingRun(ClusInductionAlgorithmType)} and saves its
+     * results in the directory bags. The selections of the previous bags are drawn first, so that the bag is the same
+     * as in the sequential run.
+     */
+    public final void oneBagRun(ClusInductionAlgorithmType clss, int bag) throws IOException, ClusException, InterruptedException {
+        bag = bag - 1;
+        FileUtil.mkdir("bags");
+        ClusOutput output = new ClusOutput(m_Schema, m_Sett);
+        ClusStatistic target = getStatManager().createStatistic(ClusAttrType.ATTR_USE_TARGET);
+        PredictionWriter wrt = new PredictionWriter("bags/" + m_Sett.getAppName() + ".test.pred.arff." + bag, m_Sett, target);
+        wrt.globalInitialize(m_Schema);
+        int nbrows = m_Data.getNbRows();
+        for (int i = 0; i < bag; i++) {
+            new BaggingSelection(nbrows, getSettings().getEnsembleBagSize(), null);
+        }
+        BaggingSelection msel = new BaggingSelection(nbrows, getSettings().getEnsembleBagSize(), null);
+        ClusRun cr = partitionData(msel, bag + 1);
+        ClusModelInfo mi = cr.addModelInfo(ClusModel.PRUNED);
+        mi.addModelProcessor(ClusModelInfo.TEST_ERR, wrt);
+        induce(cr, clss); // Induce tree
+        calcError(cr, null, null); // Calc error
+        if (m_Sett.isOutputFoldModels())
+            output.writeOutput(cr, false); // Write output to file
+        wrt.close();
+        output.close();
+        // Write summary of this run to a file
+        cr.deleteData();
+        String dat_fname = "bags/" + m_Sett.getAppName() + ".bag." + bag;
+        ObjectSaveStream strm = new ObjectSaveStream(new FileOutputStream(dat_fname));
+        strm.writeObject(cr);
+        strm.writeObject(output.getString());
+        strm.close();
+    }
+
+
     /*
      * clss is the object on which the induce methode is called :in our case it
      * is a ClusDecisionTree
@@ -1904,8 +2284,9 @@ public class Clus implements CMDLineArgsProvider {
                  * miscellaneous action. The options are corrmatrix, info,
                  * writetargets, out2model, test, normalize, debug, xval (test
                  * error estimation via K-fold cross validation), fold, bag
-                 * (originally bagging, may not be used) show, gui, tseries TODO
-                 * What do these mean?
+                 * (originally bagging, may not be used) show, gui, tseries, lwise
+                 * (tree induction on data streamed from disk) TODO What do
+                 * these mean?
                  */
                 if (cargs.hasOption("corrmatrix")) {
                     clus.initialize(cargs, clss);
@@ -1947,6 +2328,11 @@ public class Clus implements CMDLineArgsProvider {
                     clus.initialize(cargs, clss);
                     clus.oneFoldRun(clss, cargs.getOptionInteger("fold"));
                 }
+                else if (cargs.hasOption("onebag")) {
+                    clus.isxval = true;
+                    clus.initialize(cargs, clss);
+                    clus.oneBagRun(clss, cargs.getOptionInteger("onebag"));
+                }
                 else if (cargs.hasOption("bag")) {
                     clus.isxval = true;
                     clus.initialize(cargs, clss);
@@ -1964,6 +2350,10 @@ public class Clus implements CMDLineArgsProvider {
                     clus.initialize(cargs, clss);
                     clus.singleRun(clss);
                 }
+                else if (cargs.hasOption("lwise")) {
+                    clus.initialize(cargs, clss);
+                    clus.levelWiseRun(clss);
+                }
                 else {
                     clus.initialize(cargs, clss);
                     clus.singleRun(clss);
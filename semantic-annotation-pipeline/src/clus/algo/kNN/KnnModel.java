@@ -84,7 +84,9 @@ public class KnnModel implements ClusModel, Serializable {
     private int m_MaxK = 1; // maximal number of neighbours among the master itself and his 'workeks': for efficient use
                             // of predictWeighted in Clus.calcError()
     private DataTuple m_CurrentTuple; // used for efficient use of predictWeighted in Clus.calcError()
-    private LinkedList<DataTuple> m_CurrentNeighbours; // m_MaxK nearest neighbours of m_CurrentTuple
+    private DataTuple[] m_CurrentNeighbours; // m_MaxK nearest neighbours of m_CurrentTuple
+    private transient DataTuple[] m_ComputedTuples; // the rows of the data given to computeNeighbours()
+    private transient DataTuple[][] m_ComputedNeighbours; // m_MaxK nearest neighbours of each row, see computeNeighbours()
     private KnnModel m_Master = null;
 
 
@@ -270,22 +272,64 @@ public class KnnModel implements ClusModel, Serializable {
     }
 
 
+    /**
+     * Searches for the nearest neighbours of all the tuples in the data at once, using at most nbThreads threads.
+     * The subsequent calls of {@link #predictWeighted(DataTuple, int)} for the rows of the data (by this model or its
+     * slaves) use the stored neighbours instead of searching for them one tuple at a time. For slaves, this does
+     * nothing: the search is done by the master.
+     * 
+     * @param data
+     * @param nbThreads
+     * @throws ClusException
+     * @throws InterruptedException
+     */
+    public void computeNeighbours(RowData data, int nbThreads) throws ClusException, InterruptedException {
+        if (this.m_Master != null)
+            return;
+        this.m_ComputedTuples = data.getData();
+        this.m_ComputedNeighbours = this.search.returnNNs(this.m_ComputedTuples, this.m_MaxK, nbThreads);
+    }
+
+
+    /**
+     * Forgets the neighbours stored by {@link #computeNeighbours(RowData, int)}.
+     */
+    public void clearNeighbours() {
+        this.m_ComputedTuples = null;
+        this.m_ComputedNeighbours = null;
+    }
+
+
     public ClusStatistic predictWeighted(DataTuple tuple) {
+        return predictWeighted(tuple, -1);
+    }
+
+
+    /**
+     * Same as {@link #predictWeighted(DataTuple)}, but uses the neighbours stored by
+     * {@link #computeNeighbours(RowData, int)} if the tuple is the given row of that data.
+     * 
+     * @param tuple
+     * @param row
+     *        The index of the tuple in the data given to {@link #computeNeighbours(RowData, int)}, or -1
+     */
+    public ClusStatistic predictWeighted(DataTuple tuple, int row) {
         LinkedList<DataTuple> nearest = new LinkedList<DataTuple>(); // the first m_K neigbhours of the m_MaxK
                                                                      // neighbours: OK, because the neighbours are
                                                                      // sorted from the nearest to the farthest
 
         if (this.m_Master == null) { // this is the master
-            this.m_CurrentNeighbours = this.search.returnNNs(tuple, this.m_MaxK);
+            boolean computed = this.m_ComputedNeighbours != null && row >= 0 && row < this.m_ComputedTuples.length && this.m_ComputedTuples[row] == tuple;
+            this.m_CurrentNeighbours = computed ? this.m_ComputedNeighbours[row] : this.search.returnNNsArray(tuple, this.m_MaxK);
             this.m_CurrentTuple = tuple;
             for (int neighbour = 0; neighbour < this.m_K; neighbour++) {
-                nearest.add(this.m_CurrentNeighbours.get(neighbour));
+                nearest.add(this.m_CurrentNeighbours[neighbour]);
             }
         }
         else { // this is a slave
             if (this.m_Master.m_CurrentTuple != tuple) { throw new RuntimeException("The neighbours were computed for tuple\n" + this.m_Master.m_CurrentTuple.toString() + "\nbut now, we are dealing with tuple\n" + tuple.toString()); }
             for (int neighbour = 0; neighbour < this.m_K; neighbour++) {
-                nearest.add(this.m_Master.m_CurrentNeighbours.get(neighbour));
+                nearest.add(this.m_Master.m_CurrentNeighbours[neighbour]);
             }
         }
 
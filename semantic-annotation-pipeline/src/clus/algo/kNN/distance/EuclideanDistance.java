@@ -64,7 +64,8 @@ public class EuclideanDistance extends ClusDistance {
     public double calcDistance(DataTuple t1, DataTuple t2) {
         double dist = 0;
         for (ClusAttrType attr : t1.getSchema().getAllAttrUse(ClusAttrType.ATTR_USE_DESCRIPTIVE)) {
-            dist += Math.pow(m_Search.calcDistanceOnAttr(t1, t2, attr), 2) * m_AttrWeighting.getWeight(attr);
+            double d = m_Search.calcDistanceOnAttr(t1, t2, attr);
+            dist += d * d * m_AttrWeighting.getWeight(attr);
         }
         return Math.sqrt(dist);
     }
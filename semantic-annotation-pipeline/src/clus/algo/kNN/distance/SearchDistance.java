@@ -23,6 +23,7 @@
 package clus.algo.kNN.distance;
 
 import clus.data.rows.DataTuple;
+import clus.data.rows.DenseFeatureBlock;
 import clus.data.type.ClusAttrType;
 import clus.data.type.NominalAttrType;
 import clus.data.type.NumericAttrType;
@@ -39,6 +40,8 @@ public class SearchDistance extends ClusDistance {
     private ClusDistance m_Distance;
     public double[] m_MinValues; // minimal values of numeric attributes
     public double[] m_NormalizationWeights; // for attribute i: weight = 1 / (max value - min value)
+    private transient DenseFeatureBlock m_Block; // the tuples searched by the search algorithm, see buildBlock()
+    private int m_Norm;
 
 
     public SearchDistance() {
@@ -159,6 +162,63 @@ public class SearchDistance extends ClusDistance {
     }
 
 
+    /**
+     * Copies the descriptive attributes of the tuples into a {@link DenseFeatureBlock}, so that the distances between
+     * a query and these tuples can be computed column by column. This is only possible for the Euclidean, Manhattan
+     * and Chebyshev distance on numeric and nominal attributes: in the other cases, no block is built and the
+     * distances are computed by {@link #calcDistance(DataTuple, DataTuple)}.
+     * 
+     * @param tuples
+     * @return True if the block was built.
+     */
+    public boolean buildBlock(DataTuple[] tuples) {
+        m_Block = null;
+        if (tuples.length == 0)
+            return false;
+        if (m_Distance instanceof EuclideanDistance)
+            m_Norm = DenseFeatureBlock.NORM_EUCLIDEAN;
+        else if (m_Distance instanceof ManhattanDistance)
+            m_Norm = DenseFeatureBlock.NORM_MANHATTAN;
+        else if (m_Distance instanceof ChebyshevDistance)
+            m_Norm = DenseFeatureBlock.NORM_CHEBYSHEV;
+        else
+            return false;
+        ClusAttrType[] attrs = tuples[0].getSchema().getAllAttrUse(ClusAttrType.ATTR_USE_DESCRIPTIVE);
+        double[] mins = new double[attrs.length];
+        double[] normWeights = new double[attrs.length];
+        double[] attrWeights = new double[attrs.length];
+        for (int i = 0; i < attrs.length; i++) {
+            if (attrs[i] instanceof NumericAttrType) {
+                mins[i] = m_MinValues[attrs[i].getIndex()];
+                normWeights[i] = m_NormalizationWeights[attrs[i].getIndex()];
+            }
+            else if (!(attrs[i] instanceof NominalAttrType)) {
+                return false;
+            }
+            attrWeights[i] = m_Distance.getWeighting().getWeight(attrs[i]);
+        }
+        m_Block = new DenseFeatureBlock(attrs, tuples, mins, normWeights);
+        m_Block.setAttributeWeights(attrWeights);
+        return true;
+    }
+
+
+    /**
+     * @return The block built by {@link #buildBlock(DataTuple[])} or null if there is none.
+     */
+    public DenseFeatureBlock getBlock() {
+        return m_Block;
+    }
+
+
+    /**
+     * @return The norm of the block, see {@link DenseFeatureBlock#calcDistances(DenseFeatureBlock.Query, int, double[])}.
+     */
+    public int getNorm() {
+        return m_Norm;
+    }
+
+
     public ClusDistance getBasicDistance() {
         return m_Distance;
     }
@@ -32,12 +32,20 @@ import clus.data.rows.DataTuple;
  */
 
 /**
- * Implements simple insertion algorithm for maintaining k nearest neighbors.
+ * Maintains the k nearest neighbors found so far as a bounded max-heap: the root is the farthest of the current
+ * candidates, so that a new candidate is accepted or rejected in O(log k) time. Of two candidates at the same
+ * distance, the one that was added first is considered nearer. A stack can be reused for several queries, see
+ * {@link #reset(int)}.
  */
 public class NNStack {
 
-    private int m_NbNeighbors;// Number of nearest neighbors we are searching = size of stack (+ extra guard element)
-    private NN[] m_NearestNeighbors;// stack
+    private int m_NbNeighbors;// Number of nearest neighbors we are searching = capacity of the heap
+    private int m_Size;// Number of candidates on the heap
+    private int m_NbAdded;// Number of calls to addToStack since the last reset: breaks ties between equal distances
+    private double[] m_Distances;// heap of distances
+    private int[] m_Order;// m_Order[i] = insertion number of the candidate at position i of the heap
+    private DataTuple[] m_Tuples;// m_Tuples[i] = candidate at position i of the heap
+    private int m_NbOperations;// Number of operations performed by the search algorithm for the current query
 
 
     /**
@@ -46,8 +54,31 @@ public class NNStack {
      * @param k
      */
     public NNStack(int k) {
+        reset(k);
+    }
+
+
+    /**
+     * Empties the stack, so that it can be used for a new query with k nearest neighbors. The arrays are only
+     * reallocated if k is larger than for any previous query.
+     * 
+     * @param k
+     */
+    public void reset(int k) {
+        if (m_Distances == null || m_Distances.length < k) {
+            m_Distances = new double[k];
+            m_Order = new int[k];
+            m_Tuples = new DataTuple[k];
+        }
+        else {
+            for (int i = 0; i < m_Size; i++) {
+                m_Tuples[i] = null;
+            }
+        }
         m_NbNeighbors = k;
-        m_NearestNeighbors = new NN[k + 1]; // +1 is guard element which simplifies addToStack method.
+        m_Size = 0;
+        m_NbAdded = 0;
+        m_NbOperations = 0;
     }
 
 
@@ -61,17 +92,23 @@ public class NNStack {
      *        distance of tuple to tuple to be classified
      */
     public void addToStack(DataTuple tuple, double dist) {
-        for (int j = m_NbNeighbors - 1; j >= 0; j--) {
-            if (m_NearestNeighbors[j] == null) // degenerated case
-                continue;
-            if (m_NearestNeighbors[j].getDistance() > dist)
-                m_NearestNeighbors[j + 1] = m_NearestNeighbors[j];
-            else {
-                m_NearestNeighbors[j + 1] = new NN(tuple, dist);
-                return;
+        int order = m_NbAdded++;
+        if (m_Size < m_NbNeighbors) {
+            int pos = m_Size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >> 1;
+                if (!isFarther(dist, order, m_Distances[parent], m_Order[parent])) {
+                    break;
+                }
+                set(pos, m_Distances[parent], m_Order[parent], m_Tuples[parent]);
+                pos = parent;
             }
+            set(pos, dist, order, tuple);
+        }
+        else if (m_NbNeighbors > 0 && dist < m_Distances[0]) {
+            // the new candidate replaces the farthest one (ties are rejected: the older candidate is nearer)
+            siftDown(0, m_Size, dist, order, tuple);
         }
-        m_NearestNeighbors[0] = new NN(tuple, dist);
     }
 
 
@@ -81,7 +118,7 @@ public class NNStack {
      * @return
      */
     public double getWorstNearestDistance() {
-        return (m_NearestNeighbors[m_NbNeighbors - 1] == null) ? Double.MAX_VALUE : m_NearestNeighbors[m_NbNeighbors - 1].getDistance();
+        return enoughNeighbours() ? m_Distances[0] : Double.MAX_VALUE;
     }
 
 
@@ -90,43 +127,99 @@ public class NNStack {
      *         desperate for more nearest neighbors
      */
     public boolean enoughNeighbours() {
-        return m_NearestNeighbors[m_NbNeighbors - 1] != null;
+        return m_Size == m_NbNeighbors && m_NbNeighbors > 0;
     }
 
 
     /**
-     * Returns k nearest neighbors among those added to stack.
+     * Returns the number of nearest neighbors on the stack: k, unless fewer candidates were added.
      * 
      * @return
      */
-    public LinkedList<DataTuple> returnStack() {
-        LinkedList<DataTuple> nns = new LinkedList<DataTuple>();
-        for (int i = 0; i < m_NbNeighbors; i++)
-            nns.add(m_NearestNeighbors[i].getTuple());
-        return nns;
+    public int getNbNeighbours() {
+        return m_Size;
     }
-}
 
 
+    /**
+     * Counts one operation of the search algorithm, see {@link SearchAlgorithm#operationsCount}.
+     */
+    public void countOperation() {
+        m_NbOperations++;
+    }
 
-class NN {
 
-    protected DataTuple m_Tuple;
-    protected double m_Distance;
+    public int getNbOperations() {
+        return m_NbOperations;
+    }
 
 
-    public NN(DataTuple tuple, double dist) {
-        m_Tuple = tuple;
-        m_Distance = dist;
+    /**
+     * Returns k nearest neighbors among those added to stack, sorted from the nearest to the farthest. The stack is
+     * empty afterwards.
+     * 
+     * @return
+     */
+    public DataTuple[] returnNeighbours() {
+        DataTuple[] nns = new DataTuple[m_Size];
+        // heap sort: repeatedly move the farthest candidate to the end
+        while (m_Size > 0) {
+            int last = --m_Size;
+            nns[last] = m_Tuples[0];
+            siftDown(0, last, m_Distances[last], m_Order[last], m_Tuples[last]);
+            m_Tuples[last] = null;
+        }
+        return nns;
+    }
+
+
+    /**
+     * Returns k nearest neighbors among those added to stack, sorted from the nearest to the farthest. The stack is
+     * empty afterwards.
+     * 
+     * @return
+     */
+    public LinkedList<DataTuple> returnStack() {
+        LinkedList<DataTuple> nns = new LinkedList<DataTuple>();
+        for (DataTuple tuple : returnNeighbours())
+            nns.add(tuple);
+        return nns;
+    }
+
+
+    /**
+     * Places the candidate (dist, order, tuple) at position pos of the heap with the given size and moves it down
+     * until the heap property is restored.
+     */
+    private void siftDown(int pos, int size, double dist, int order, DataTuple tuple) {
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isFarther(m_Distances[child + 1], m_Order[child + 1], m_Distances[child], m_Order[child])) {
+                child++;
+            }
+            if (!isFarther(m_Distances[child], m_Order[child], dist, order)) {
+                break;
+            }
+            set(pos, m_Distances[child], m_Order[child], m_Tuples[child]);
+            pos = child;
+        }
+        if (pos < size) {
+            set(pos, dist, order, tuple);
+        }
     }
 
 
-    public DataTuple getTuple() {
-        return m_Tuple;
+    private void set(int pos, double dist, int order, DataTuple tuple) {
+        m_Distances[pos] = dist;
+        m_Order[pos] = order;
+        m_Tuples[pos] = tuple;
     }
 
 
-    public double getDistance() {
-        return m_Distance;
+    private static boolean isFarther(double dist1, int order1, double dist2, int order2) {
+        return dist1 > dist2 || (dist1 == dist2 && order1 > order2);
     }
 }
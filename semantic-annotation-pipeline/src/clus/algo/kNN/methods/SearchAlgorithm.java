@@ -23,7 +23,13 @@
 package clus.algo.kNN.methods;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import clus.algo.kNN.distance.SearchDistance;
 import clus.data.rows.DataTuple;
@@ -43,7 +49,18 @@ public abstract class SearchAlgorithm {
     protected ClusRun m_Run;
     protected boolean m_Debug = false;
     protected SearchDistance m_SearchDistance;
-    public static int[] operationsCount = new int[3];
+    /** Number of operations performed by the search algorithms, updated once per query. */
+    public static final AtomicIntegerArray operationsCount = new AtomicIntegerArray(3);
+    /** Minimal number of queries in one block of {@link #returnNNs(DataTuple[], int, int)}. */
+    public static final int MIN_BLOCK_SIZE = 64;
+
+    /** Per-thread stack, reused for all queries of the thread. */
+    private final ThreadLocal<NNStack> m_Stacks = new ThreadLocal<NNStack>() {
+
+        protected NNStack initialValue() {
+            return new NNStack(1);
+        }
+    };
 
 
     public SearchAlgorithm(ClusRun run, SearchDistance dist) {
@@ -58,6 +75,19 @@ public abstract class SearchAlgorithm {
     public abstract void build() throws ClusException, IOException;
 
 
+    /**
+     * Adds the candidates for the nearest neighbors of the tuple to the stack. The stack is empty and has the correct
+     * size when this method is called. Implementations must not store the state of the query in fields, so that
+     * several queries can be performed at the same time.
+     * 
+     * @param tuple
+     *        sample to be classified
+     * @param stack
+     *        the k nearest neighbors found so far
+     */
+    protected abstract void search(DataTuple tuple, NNStack stack);
+
+
     /**
      * Returns k nearest neighbors.
      * 
@@ -67,7 +97,87 @@ public abstract class SearchAlgorithm {
      *        sample to be classified
      * @return
      */
-    public abstract LinkedList<DataTuple> returnNNs(DataTuple tuple, int k);
+    public LinkedList<DataTuple> returnNNs(DataTuple tuple, int k) {
+        return prepareStack(tuple, k).returnStack();
+    }
+
+
+    /**
+     * Returns k nearest neighbors, sorted from the nearest to the farthest.
+     * 
+     * @param tuple
+     *        sample to be classified
+     * @param k
+     *        number of neighbors to return.
+     * @return
+     */
+    public DataTuple[] returnNNsArray(DataTuple tuple, int k) {
+        return prepareStack(tuple, k).returnNeighbours();
+    }
+
+
+    /**
+     * Returns k nearest neighbors for each of the given tuples: the result at index i are the neighbors of tuples[i],
+     * sorted from the nearest to the farthest. The queries are split into contiguous blocks that are processed by at
+     * most nbThreads threads.
+     * 
+     * @param tuples
+     *        samples to be classified
+     * @param k
+     *        number of neighbors to return.
+     * @param nbThreads
+     * @return
+     * @throws ClusException
+     * @throws InterruptedException
+     */
+    public DataTuple[][] returnNNs(final DataTuple[] tuples, final int k, int nbThreads) throws ClusException, InterruptedException {
+        final DataTuple[][] nns = new DataTuple[tuples.length][];
+        int nbBlocks = Math.min(nbThreads, (tuples.length + MIN_BLOCK_SIZE - 1) / MIN_BLOCK_SIZE);
+        if (nbBlocks <= 1) {
+            returnNNs(tuples, k, 0, tuples.length, nns);
+            return nns;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbBlocks);
+        try {
+            ArrayList<Future<?>> blocks = new ArrayList<Future<?>>();
+            for (int block = 0; block < nbBlocks; block++) {
+                final int blockStart = (int) ((long) tuples.length * block / nbBlocks);
+                final int blockEnd = (int) ((long) tuples.length * (block + 1) / nbBlocks);
+                blocks.add(executor.submit(() -> returnNNs(tuples, k, blockStart, blockEnd, nns)));
+            }
+            for (Future<?> block : blocks) {
+                try {
+                    block.get();
+                }
+                catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) { throw (RuntimeException) e.getCause(); }
+                    throw new ClusException(e.getCause().toString());
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        return nns;
+    }
+
+
+    private void returnNNs(DataTuple[] tuples, int k, int start, int end, DataTuple[][] nns) {
+        for (int i = start; i < end; i++) {
+            nns[i] = prepareStack(tuples[i], k).returnNeighbours();
+        }
+    }
+
+
+    /**
+     * Performs the search for the tuple in the stack of the current thread.
+     */
+    private NNStack prepareStack(DataTuple tuple, int k) {
+        NNStack stack = m_Stacks.get();
+        stack.reset(k);
+        search(tuple, stack);
+        return stack;
+    }
 
 
     /**
@@ -23,12 +23,12 @@
 package clus.algo.kNN.methods.bfMethod;
 
 import java.io.IOException;
-import java.util.LinkedList;
 
 import clus.algo.kNN.distance.SearchDistance;
 import clus.algo.kNN.methods.NNStack;
 import clus.algo.kNN.methods.SearchAlgorithm;
 import clus.data.rows.DataTuple;
+import clus.data.rows.DenseFeatureBlock;
 import clus.main.ClusRun;
 import clus.util.ClusException;
 
@@ -40,7 +40,8 @@ public class BrutForce extends SearchAlgorithm {
 
     // private static final long serialVersionUID = Settings.SERIAL_VERSION_ID;
     private DataTuple[] m_List;
-    private NNStack m_Stack;
+    /** Per-thread array for the distances between the query and the tuples in m_List. */
+    private final ThreadLocal<double[]> m_Distances = new ThreadLocal<double[]>();
 
 
     public BrutForce(ClusRun run, SearchDistance dist) {
@@ -51,13 +52,25 @@ public class BrutForce extends SearchAlgorithm {
     public void build() throws ClusException, IOException {
         // does nothing at all
         m_List = getRun().getDataSet(ClusRun.TRAINSET).getData(); // m_Data;
+        getDistance().buildBlock(m_List);
     }
 
 
-    public LinkedList<DataTuple> returnNNs(DataTuple tuple, int k) {
-        m_Stack = new NNStack(k);
-        for (DataTuple d : m_List)
-            m_Stack.addToStack(d, getDistance().calcDistance(tuple, d));
-        return m_Stack.returnStack();
+    protected void search(DataTuple tuple, NNStack stack) {
+        DenseFeatureBlock block = getDistance().getBlock();
+        if (block != null) {
+            double[] distances = m_Distances.get();
+            if (distances == null) {
+                distances = new double[m_List.length];
+                m_Distances.set(distances);
+            }
+            block.calcDistances(block.compileQuery(tuple), getDistance().getNorm(), distances);
+            for (int i = 0; i < m_List.length; i++)
+                stack.addToStack(m_List[i], distances[i]);
+        }
+        else {
+            for (DataTuple d : m_List)
+                stack.addToStack(d, getDistance().calcDistance(tuple, d));
+        }
     }
 }
@@ -26,6 +26,7 @@ import java.util.Comparator;
 import java.util.LinkedList;
 
 import clus.algo.kNN.distance.SearchDistance;
+import clus.algo.kNN.methods.NNStack;
 import clus.data.rows.DataTuple;
 import clus.data.type.ClusAttrType;
 import clus.main.ClusRun;
@@ -42,7 +43,6 @@ public class KDNode {
     protected int m_Level = 0;// Level in tree on which node is present. Root has level = 0.
     // private DataTuple m_SplittingNode = null;//Splitting value at this node.
     private ClusAttrType m_Attr;// Attribute on which splitting is performed.
-    private static DataTuple m_Tuple = null;// Tuple for which nearest neighbors are searched.
     // private static int m_Count = 0;
     private double m_Median;
     protected LinkedList<DataTuple> m_Tuples;// All tuples belonging to this node.If node is internal, then tuples is
@@ -131,52 +131,41 @@ public class KDNode {
 
 
     /**
-     * Find k (tree.getK) nearest neighbors for specified tuple. Be aware that
-     * this method should not be executed twice at the same time because it
-     * stores searched tuple statically in KDNode.
+     * Find k nearest neighbors for specified tuple and add them to the stack.
      * 
      * @param tuple
-     * @return
-     */
-    public void find(DataTuple tuple) {
-        KDNode.m_Tuple = tuple;
-        find();
-    }
-
-
-    /**
-     * Private recursive function for finding kNN.
+     * @param stack
      */
-    private void find() {
-        KDTree.operationsCount[KDTree.ALG_KD]++;
+    public void find(DataTuple tuple, NNStack stack) {
+        stack.countOperation();
         // If node is leaf?
         if (this.isLeaf()) {
             for (DataTuple t : m_Tuples)
-                m_Tree.getStack().addToStack(t, m_Tree.getDistance().calcDistance(t, m_Tuple));
+                stack.addToStack(t, m_Tree.getDistance().calcDistance(t, tuple));
         }
         else {
             // does tuple belong to rightSubspace?
-            boolean rightSubspace = m_Tree.getDistance().getValue(m_Tuple, m_Attr) > m_Median;
+            boolean rightSubspace = m_Tree.getDistance().getValue(tuple, m_Attr) > m_Median;
             if (rightSubspace)
-                m_RightSubTree.find();
+                m_RightSubTree.find(tuple, stack);
             else
-                m_LeftSubTree.find();
+                m_LeftSubTree.find(tuple, stack);
 
             // search neighbor subspace for better candidates
             KDNode neighbour = rightSubspace ? m_LeftSubTree : m_RightSubTree;
             if (neighbour.m_Tuples.size() > 0) {
-                if (!m_Tree.getStack().enoughNeighbours())
+                if (!stack.enoughNeighbours())
                     // not enough candidates so far, they should be added
-                    neighbour.find();
+                    neighbour.find(tuple, stack);
                 else {
-                    double compDistance = m_Tree.getStack().getWorstNearestDistance();
+                    double compDistance = stack.getWorstNearestDistance();
                     if (rightSubspace) {
-                        if (m_Tree.getDistance().getValue(m_Tuple, m_Attr) - compDistance < m_Median)
-                            neighbour.find();
+                        if (m_Tree.getDistance().getValue(tuple, m_Attr) - compDistance < m_Median)
+                            neighbour.find(tuple, stack);
                     }
                     else {
-                        if (m_Tree.getDistance().getValue(m_Tuple, m_Attr) + compDistance > m_Median)
-                            neighbour.find();
+                        if (m_Tree.getDistance().getValue(tuple, m_Attr) + compDistance > m_Median)
+                            neighbour.find(tuple, stack);
                     }
                 }
             }
@@ -46,10 +46,8 @@ public class KDTree extends SearchAlgorithm {
     private KDNode m_Root;// Root of tree.
     protected int m_MaxTuples = 1;// Maximum number of tuples in leaf. If node contains more tuples than specified, it
                                   // is splitted.
-    private int m_kNeighbors = 1;// Number of nearest neighbors to find.
     // Data information
     protected ClusRun m_Run;
-    protected NNStack m_Stack;
 
 
     public KDTree(ClusRun run, SearchDistance distance) {
@@ -79,31 +77,14 @@ public class KDTree extends SearchAlgorithm {
 
 
     /**
-     * Return nearest k (getK()) tuples to specified tuple.
+     * Adds the nearest neighbors of the specified tuple to the stack.
      * 
      * @param tuple
-     * @return
+     * @param stack
      */
-    public LinkedList<DataTuple> returnNNs(DataTuple tuple, int k) {
-        m_kNeighbors = k;
-        m_Stack = new NNStack(m_kNeighbors);
-        m_Root.find(tuple);
-        return m_Stack.returnStack();
-    }
-
-
-    /**
-     * Returns number of neighbors we search.
-     * 
-     * @return
-     */
-    public int getK() {
-        return m_kNeighbors;
-    }
-
-
-    public NNStack getStack() {
-        return m_Stack;
+    protected void search(DataTuple tuple, NNStack stack) {
+        m_Root.find(tuple, stack);
+        operationsCount.addAndGet(ALG_KD, stack.getNbOperations());
     }
 
 
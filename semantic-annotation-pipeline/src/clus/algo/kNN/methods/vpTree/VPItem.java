@@ -33,10 +33,12 @@ public class VPItem {
 
     protected DataTuple m_Tuple;// Tuple belonging to the vp item.
     protected double m_History;// List of items history.
+    protected int m_Row;// Index of the tuple in the training set.
 
 
-    public VPItem(DataTuple tuple) {
+    public VPItem(DataTuple tuple, int row) {
         m_Tuple = tuple;
+        m_Row = row;
     }
 
 
@@ -45,6 +47,11 @@ public class VPItem {
     }
 
 
+    public int getRow() {
+        return m_Row;
+    }
+
+
     public double getItemsHistory() {
         return m_History;
     }
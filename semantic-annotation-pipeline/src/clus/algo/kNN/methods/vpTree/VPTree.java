@@ -32,6 +32,7 @@ import clus.algo.kNN.distance.SearchDistance;
 import clus.algo.kNN.methods.NNStack;
 import clus.algo.kNN.methods.SearchAlgorithm;
 import clus.data.rows.DataTuple;
+import clus.data.rows.DenseFeatureBlock;
 import clus.data.rows.RowData;
 import clus.main.ClusRun;
 import clus.util.ClusException;
@@ -43,11 +44,8 @@ import clus.util.ClusException;
 public class VPTree extends SearchAlgorithm {
 
     private VPNode m_Root;
-    private double m_Tau = 100; // todo: should be maximum distance
-    private NNStack m_Stack;
 
     private RandomData m_Random = new RandomDataImpl();
-    private int m_NbNeighbors;
 
 
     public VPTree(ClusRun run, SearchDistance dist) {
@@ -59,8 +57,10 @@ public class VPTree extends SearchAlgorithm {
     public void build() throws ClusException, IOException {
         RowData data = getRun().getDataSet(ClusRun.TRAINSET);
         LinkedList<VPItem> list = new LinkedList<VPItem>();
-        for (DataTuple tuple : data.getData()) // data.m_Data
-            list.add(new VPItem(tuple));
+        DataTuple[] tuples = data.getData(); // data.m_Data
+        for (int row = 0; row < tuples.length; row++)
+            list.add(new VPItem(tuples[row], row));
+        getDistance().buildBlock(tuples);
         m_Root = recursiveBuild(list);
         ;
     }
@@ -92,8 +92,16 @@ public class VPTree extends SearchAlgorithm {
          * Calculate distances from vantage point to elements in space.
          */
         // TestKnnModel.watches.get("vpB").pause();
-        for (VPItem item : list)
-            item.setItemsHistory(getDistance().calcDistance(node.getVPItem().getTuple(), item.getTuple()));
+        DenseFeatureBlock block = getDistance().getBlock();
+        if (block != null) {
+            DenseFeatureBlock.Query vp = block.compileQuery(node.getVPItem().getRow());
+            for (VPItem item : list)
+                item.setItemsHistory(block.calcDistance(vp, item.getRow(), getDistance().getNorm()));
+        }
+        else {
+            for (VPItem item : list)
+                item.setItemsHistory(getDistance().calcDistance(node.getVPItem().getTuple(), item.getTuple()));
+        }
         // TestKnnModel.watches.get("vpB").start();
         // Calculate median
         node.setMedian(this.getMedian(list));
@@ -192,34 +200,35 @@ public class VPTree extends SearchAlgorithm {
     }
 
 
-    public LinkedList<DataTuple> returnNNs(DataTuple tuple, int k) {
-        m_NbNeighbors = k;
-        m_Tau = Double.MAX_VALUE;
-        m_Stack = new NNStack(m_NbNeighbors);
-        search(m_Root, tuple);
-        return m_Stack.returnStack();
+    protected void search(DataTuple tuple, NNStack stack) {
+        DenseFeatureBlock block = getDistance().getBlock();
+        search(m_Root, tuple, block != null ? block.compileQuery(tuple) : null, stack);
+        operationsCount.addAndGet(ALG_VP, stack.getNbOperations());
     }
 
 
-    private void search(VPNode n, DataTuple q) {
+    private void search(VPNode n, DataTuple q, DenseFeatureBlock.Query query, NNStack stack) {
         if (n == null)
             return;
-        VPTree.operationsCount[VPTree.ALG_VP]++;
-        double x = getDistance().calcDistance(n.getVPItem().getTuple(), q);
-        m_Stack.addToStack(n.getVPItem().getTuple(), x);
-        m_Tau = m_Stack.getWorstNearestDistance();
+        stack.countOperation();
+        VPItem vp = n.getVPItem();
+        double x = query != null ? getDistance().getBlock().calcDistance(query, vp.getRow(), getDistance().getNorm()) : getDistance().calcDistance(vp.getTuple(), q);
+        stack.addToStack(vp.getTuple(), x);
+        double tau = stack.getWorstNearestDistance();
         double middle = (n.getBounds()[VPNode.LEFT_HIGH] + n.getBounds()[VPNode.RIGHT_LOW]) / 2;
         if (x < middle) {
-            if (x <= n.getBounds()[VPNode.LEFT_HIGH] + m_Tau && n.getLeftSubtree() != null)
-                this.search(n.getLeftSubtree(), q);
-            if (x >= n.getBounds()[VPNode.RIGHT_LOW] - m_Tau && n.getRightSubtree() != null)
-                this.search(n.getRightSubtree(), q);
+            if (x <= n.getBounds()[VPNode.LEFT_HIGH] + tau && n.getLeftSubtree() != null)
+                this.search(n.getLeftSubtree(), q, query, stack);
+            tau = stack.getWorstNearestDistance();
+            if (x >= n.getBounds()[VPNode.RIGHT_LOW] - tau && n.getRightSubtree() != null)
+                this.search(n.getRightSubtree(), q, query, stack);
         }
         else {
-            if (x >= n.getBounds()[VPNode.RIGHT_LOW] - m_Tau && n.getRightSubtree() != null)
-                this.search(n.getRightSubtree(), q);
-            if (x <= n.getBounds()[VPNode.LEFT_HIGH] + m_Tau && n.getLeftSubtree() != null)
-                this.search(n.getLeftSubtree(), q);
+            if (x >= n.getBounds()[VPNode.RIGHT_LOW] - tau && n.getRightSubtree() != null)
+                this.search(n.getRightSubtree(), q, query, stack);
+            tau = stack.getWorstNearestDistance();
+            if (x <= n.getBounds()[VPNode.LEFT_HIGH] + tau && n.getLeftSubtree() != null)
+                this.search(n.getLeftSubtree(), q, query, stack);
         }
     }
 }
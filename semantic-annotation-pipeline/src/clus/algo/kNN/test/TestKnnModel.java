@@ -380,8 +380,8 @@ public class TestKnnModel implements ClusModel, Serializable {
             f.write(TestKnnModel.watches.get("bfB").readValue() + "\t");
             f.write(TestKnnModel.watches.get("kdB").readValue() + "\t");
             f.write(TestKnnModel.watches.get("vpB").readValue() + "\t");
-            f.write(SearchAlgorithm.operationsCount[KDTree.ALG_KD] + "\t");
-            f.write(SearchAlgorithm.operationsCount[KDTree.ALG_VP] + "");
+            f.write(SearchAlgorithm.operationsCount.get(KDTree.ALG_KD) + "\t");
+            f.write(SearchAlgorithm.operationsCount.get(KDTree.ALG_VP) + "");
             f.write("\n");
             f.close();
         }
@@ -0,0 +1,364 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.algo.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import clus.algo.tdidt.ClusNode;
+import clus.data.rows.DataTuple;
+import clus.data.rows.RowData;
+import clus.data.type.NominalAttrType;
+import clus.data.type.NumericAttrType;
+import clus.model.test.InverseNumericTest;
+import clus.model.test.NodeTest;
+import clus.model.test.NominalTest;
+import clus.model.test.NumericTest;
+import clus.model.test.SubsetTest;
+
+
+/**
+ * Read-only index of the tests of a {@link ClusRuleSet}, used for computing which rules cover the examples of a
+ * block of rows at once. The tests are grouped by attribute: the numeric tests of an attribute are sorted by their
+ * bound, and the nominal tests store the accepted values. The coverage of each rule is a bitmap over the rows of the
+ * block that starts with all bits set and is intersected with the bitmap of each of its tests.
+ * 
+ * For a numeric attribute, each row is placed in the bucket of the number of bounds below its value. The bitmap of
+ * the rows above a bound then grows bucket by bucket while the bounds are visited from the largest to the smallest,
+ * so that each test costs one pass over the words of the block. For a nominal attribute, a bitmap is built for each
+ * value.
+ * 
+ * Rules that are not plain {@link ClusRule}s (e.g., linear terms) or that have tests other than numeric and nominal
+ * tests on regular attributes are evaluated with {@link ClusRule#covers(DataTuple)}.
+ */
+public class ClusCompiledRuleSet {
+
+    /** Number of rows for which the coverage is computed in one go by {@link ClusRuleSet#predictWeightedBatch(RowData)}. */
+    public final static int BLOCK_SIZE = 4096;
+
+    private ClusRule[] m_Rules;
+    /** Indices of the rules that are evaluated with ClusRule.covers() */
+    private int[] m_Uncompiled;
+    /** For each rule, whether its coverage is computed from the index */
+    private boolean[] m_IsCompiled;
+
+    /** Array index of each numeric attribute that is tested */
+    private int[] m_NumAttrIndex;
+    /** Bounds of the numeric tests of an attribute in increasing order [attribute][test] */
+    private double[][] m_NumBounds;
+    /** Is the numeric test an inverse test (value <= bound) */
+    private boolean[][] m_NumInverse;
+    /** Rule of the numeric test */
+    private int[][] m_NumRule;
+
+    /** Array index of each nominal attribute that is tested */
+    private int[] m_NomAttrIndex;
+    /** Number of values of the nominal attribute, including the index of the missing value */
+    private int[] m_NomNbValues;
+    /** Values for which the nominal test succeeds [attribute][test][] */
+    private int[][][] m_NomValues;
+    /** Rule of the nominal test */
+    private int[][] m_NomRule;
+
+
+    /**
+     * @param rules
+     *        The rules to be indexed. The rules must not change afterwards.
+     */
+    public ClusCompiledRuleSet(ClusRuleSet rules) {
+        int nbRules = rules.getModelSize();
+        m_Rules = new ClusRule[nbRules];
+        m_IsCompiled = new boolean[nbRules];
+        ArrayList<Integer> uncompiled = new ArrayList<Integer>();
+        // The tests of each attribute, in the order of first appearance of the attribute
+        HashMap<Integer, ArrayList<NodeTest>> numTests = new HashMap<Integer, ArrayList<NodeTest>>();
+        HashMap<Integer, ArrayList<Integer>> numRules = new HashMap<Integer, ArrayList<Integer>>();
+        ArrayList<Integer> numAttrs = new ArrayList<Integer>();
+        HashMap<Integer, ArrayList<NodeTest>> nomTests = new HashMap<Integer, ArrayList<NodeTest>>();
+        HashMap<Integer, ArrayList<Integer>> nomRules = new HashMap<Integer, ArrayList<Integer>>();
+        ArrayList<NominalAttrType> nomAttrs = new ArrayList<NominalAttrType>();
+
+        for (int iRule = 0; iRule < nbRules; iRule++) {
+            ClusRule rule = rules.getRule(iRule);
+            m_Rules[iRule] = rule;
+            m_IsCompiled[iRule] = isSupported(rule);
+            if (!m_IsCompiled[iRule]) {
+                uncompiled.add(iRule);
+                continue;
+            }
+            for (int i = 0; i < rule.getModelSize(); i++) {
+                NodeTest test = rule.getTest(i);
+                int attr = test.getType().getArrayIndex();
+                if (test instanceof NumericTest) {
+                    if (!numTests.containsKey(attr)) {
+                        numAttrs.add(attr);
+                        numTests.put(attr, new ArrayList<NodeTest>());
+                        numRules.put(attr, new ArrayList<Integer>());
+                    }
+                    numTests.get(attr).add(test);
+                    numRules.get(attr).add(iRule);
+                }
+                else {
+                    if (!nomTests.containsKey(attr)) {
+                        nomAttrs.add((NominalAttrType) test.getType());
+                        nomTests.put(attr, new ArrayList<NodeTest>());
+                        nomRules.put(attr, new ArrayList<Integer>());
+                    }
+                    nomTests.get(attr).add(test);
+                    nomRules.get(attr).add(iRule);
+                }
+            }
+        }
+        m_Uncompiled = new int[uncompiled.size()];
+        for (int i = 0; i < m_Uncompiled.length; i++) {
+            m_Uncompiled[i] = uncompiled.get(i);
+        }
+
+        int nbNum = numAttrs.size();
+        m_NumAttrIndex = new int[nbNum];
+        m_NumBounds = new double[nbNum][];
+        m_NumInverse = new boolean[nbNum][];
+        m_NumRule = new int[nbNum][];
+        for (int a = 0; a < nbNum; a++) {
+            int attr = numAttrs.get(a);
+            final ArrayList<NodeTest> tests = numTests.get(attr);
+            ArrayList<Integer> testRules = numRules.get(attr);
+            Integer[] order = new Integer[tests.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (i1, i2) -> Double.compare(((NumericTest) tests.get(i1)).getBound(), ((NumericTest) tests.get(i2)).getBound()));
+            m_NumAttrIndex[a] = attr;
+            m_NumBounds[a] = new double[order.length];
+            m_NumInverse[a] = new boolean[order.length];
+            m_NumRule[a] = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                NumericTest test = (NumericTest) tests.get(order[i]);
+                m_NumBounds[a][i] = test.getBound();
+                m_NumInverse[a][i] = test.isInverseNumeric();
+                m_NumRule[a][i] = testRules.get(order[i]);
+            }
+        }
+
+        int nbNom = nomAttrs.size();
+        m_NomAttrIndex = new int[nbNom];
+        m_NomNbValues = new int[nbNom];
+        m_NomValues = new int[nbNom][][];
+        m_NomRule = new int[nbNom][];
+        for (int a = 0; a < nbNom; a++) {
+            NominalAttrType type = nomAttrs.get(a);
+            int attr = type.getArrayIndex();
+            ArrayList<NodeTest> tests = nomTests.get(attr);
+            ArrayList<Integer> testRules = nomRules.get(attr);
+            m_NomAttrIndex[a] = attr;
+            m_NomNbValues[a] = type.getNbValues() + 1; // The last one is the missing value
+            m_NomValues[a] = new int[tests.size()][];
+            m_NomRule[a] = new int[tests.size()];
+            for (int i = 0; i < tests.size(); i++) {
+                NodeTest test = tests.get(i);
+                int nbYes = 0;
+                int[] values = new int[m_NomNbValues[a]];
+                for (int v = 0; v < m_NomNbValues[a]; v++) {
+                    if (test.nominalPredictWeighted(v) == ClusNode.YES) {
+                        values[nbYes++] = v;
+                    }
+                }
+                m_NomValues[a][i] = Arrays.copyOf(values, nbYes);
+                m_NomRule[a][i] = testRules.get(i);
+            }
+        }
+    }
+
+
+    /**
+     * @return True if the coverage of the rule can be computed from the index, i.e., the rule is a plain
+     *         {@link ClusRule} and all its tests are numeric or nominal tests on {@link NumericAttrType} and
+     *         {@link NominalAttrType} attributes.
+     */
+    public static boolean isSupported(ClusRule rule) {
+        if (rule.getClass() != ClusRule.class) { return false; }
+        for (int i = 0; i < rule.getModelSize(); i++) {
+            NodeTest test = rule.getTest(i);
+            Class<?> cls = test.getClass();
+            Class<?> type = test.getType().getClass();
+            if ((cls == NumericTest.class || cls == InverseNumericTest.class) && type == NumericAttrType.class) {
+                if (Double.isNaN(((NumericTest) test).getBound())) { return false; }
+            }
+            else if (!((cls == NominalTest.class || cls == SubsetTest.class) && type == NominalAttrType.class)) { return false; }
+        }
+        return true;
+    }
+
+
+    public int getNbRules() {
+        return m_Rules.length;
+    }
+
+
+    public int getNbUncompiledRules() {
+        return m_Uncompiled.length;
+    }
+
+
+    /**
+     * Computes which rules cover the rows {@code start, ..., end - 1}. The result is the same as calling
+     * {@link ClusRule#covers(DataTuple)} for each rule and row.
+     * 
+     * @return For each rule, the bitmap of the covered rows. The bit {@code row - start} (see
+     *         {@link #isCovered(long[], int)}) is set if the rule covers the row.
+     */
+    public long[][] computeCoverage(RowData data, int start, int end) {
+        int nbRows = end - start;
+        int nbWords = (nbRows + 63) >>> 6;
+        long lastMask = (nbRows & 63) == 0 ? -1L : (1L << nbRows) - 1;
+        long[][] cover = new long[m_Rules.length][];
+        for (int iRule = 0; iRule < m_Rules.length; iRule++) {
+            cover[iRule] = new long[nbWords];
+            if (m_IsCompiled[iRule] && nbWords > 0) {
+                Arrays.fill(cover[iRule], -1L);
+                cover[iRule][nbWords - 1] = lastMask;
+            }
+        }
+        DataTuple[] tuples = new DataTuple[nbRows];
+        for (int r = 0; r < nbRows; r++) {
+            tuples[r] = data.getTuple(start + r);
+        }
+        for (int i = 0; i < m_Uncompiled.length; i++) {
+            ClusRule rule = m_Rules[m_Uncompiled[i]];
+            long[] words = cover[m_Uncompiled[i]];
+            for (int r = 0; r < nbRows; r++) {
+                if (rule.covers(tuples[r])) {
+                    words[r >>> 6] |= 1L << r;
+                }
+            }
+        }
+        for (int a = 0; a < m_NumAttrIndex.length; a++) {
+            intersectNumeric(a, tuples, cover);
+        }
+        for (int a = 0; a < m_NomAttrIndex.length; a++) {
+            intersectNominal(a, tuples, cover);
+        }
+        return cover;
+    }
+
+
+    public static boolean isCovered(long[] cover, int row) {
+        return (cover[row >>> 6] & (1L << row)) != 0;
+    }
+
+
+    /**
+     * Intersects the coverage of the rules with the numeric tests on the given attribute.
+     */
+    private void intersectNumeric(int a, DataTuple[] tuples, long[][] cover) {
+        double[] bounds = m_NumBounds[a];
+        int nbTests = bounds.length;
+        int nbRows = tuples.length;
+        int nbWords = (nbRows + 63) >>> 6;
+        // The rows with a known value, placed in the bucket of the number of bounds below the value
+        long[] valid = new long[nbWords];
+        int[] bucket = new int[nbRows];
+        int[] bucketStart = new int[nbTests + 2];
+        for (int r = 0; r < nbRows; r++) {
+            double value = tuples[r].getDoubleVal(m_NumAttrIndex[a]);
+            if (value == NumericAttrType.MISSING || Double.isNaN(value)) {
+                bucket[r] = -1; // Neither value > bound nor value <= bound holds
+                continue;
+            }
+            valid[r >>> 6] |= 1L << r;
+            int lo = 0, hi = nbTests;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (bounds[mid] < value) {
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid;
+                }
+            }
+            bucket[r] = lo;
+            bucketStart[lo + 1]++;
+        }
+        for (int i = 1; i < bucketStart.length; i++) {
+            bucketStart[i] += bucketStart[i - 1];
+        }
+        int[] sorted = new int[bucketStart[nbTests + 1]];
+        int[] fill = Arrays.copyOf(bucketStart, nbTests + 1);
+        for (int r = 0; r < nbRows; r++) {
+            if (bucket[r] >= 0) {
+                sorted[fill[bucket[r]]++] = r;
+            }
+        }
+        // Rows with value > bounds[test], visiting the tests from the largest bound to the smallest
+        long[] above = new long[nbWords];
+        for (int test = nbTests - 1; test >= 0; test--) {
+            for (int i = bucketStart[test + 1]; i < bucketStart[test + 2]; i++) {
+                above[sorted[i] >>> 6] |= 1L << sorted[i];
+            }
+            long[] words = cover[m_NumRule[a][test]];
+            if (m_NumInverse[a][test]) {
+                for (int w = 0; w < nbWords; w++) {
+                    words[w] &= valid[w] & ~above[w];
+                }
+            }
+            else {
+                for (int w = 0; w < nbWords; w++) {
+                    words[w] &= above[w];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Intersects the coverage of the rules with the nominal tests on the given attribute.
+     */
+    private void intersectNominal(int a, DataTuple[] tuples, long[][] cover) {
+        int nbRows = tuples.length;
+        int nbWords = (nbRows + 63) >>> 6;
+        int nbValues = m_NomNbValues[a];
+        long[][] rowsWithValue = new long[nbValues][nbWords];
+        for (int r = 0; r < nbRows; r++) {
+            int value = tuples[r].getIntVal(m_NomAttrIndex[a]);
+            if (value >= 0 && value < nbValues) {
+                rowsWithValue[value][r >>> 6] |= 1L << r;
+            }
+        }
+        long[] accepted = new long[nbWords];
+        for (int test = 0; test < m_NomRule[a].length; test++) {
+            int[] values = m_NomValues[a][test];
+            Arrays.fill(accepted, 0L);
+            for (int i = 0; i < values.length; i++) {
+                long[] rows = rowsWithValue[values[i]];
+                for (int w = 0; w < nbWords; w++) {
+                    accepted[w] |= rows[w];
+                }
+            }
+            long[] words = cover[m_NomRule[a][test]];
+            for (int w = 0; w < nbWords; w++) {
+                words[w] &= accepted[w];
+            }
+        }
+    }
+}
@@ -232,12 +232,45 @@ public class ClusRuleSet implements ClusModel, Serializable {
      * Returns the statistic (prediction) for a given tuple.
      */
     public ClusStatistic predictWeighted(DataTuple tuple) {
+        return predictWeighted(tuple, null, 0);
+    }
+
+
+    /**
+     * Predicts all rows of the data. The result is the same as calling {@link #predictWeighted(DataTuple)} for each
+     * row, but the rules that cover the rows are computed block by block with a {@link ClusCompiledRuleSet}.
+     */
+    public ClusStatistic[] predictWeightedBatch(RowData data) {
+        ClusCompiledRuleSet compiled = new ClusCompiledRuleSet(this);
+        int nbRows = data.getNbRows();
+        ClusStatistic[] predictions = new ClusStatistic[nbRows];
+        for (int start = 0; start < nbRows; start += ClusCompiledRuleSet.BLOCK_SIZE) {
+            int end = Math.min(start + ClusCompiledRuleSet.BLOCK_SIZE, nbRows);
+            long[][] cover = compiled.computeCoverage(data, start, end);
+            for (int row = start; row < end; row++) {
+                predictions[row] = predictWeighted(data.getTuple(row), cover, row - start);
+            }
+        }
+        return predictions;
+    }
+
+
+    /**
+     * Does the rule cover the tuple. If cover is given, the coverage is looked up from the bitmaps computed by
+     * {@link ClusCompiledRuleSet#computeCoverage(RowData, int, int)}, where the tuple is the row with the given bit.
+     */
+    private boolean covers(int iRule, DataTuple tuple, long[][] cover, int bit) {
+        if (cover == null) { return getRule(iRule).covers(tuple); }
+        return ClusCompiledRuleSet.isCovered(cover[iRule], bit);
+    }
+
+
+    private ClusStatistic predictWeighted(DataTuple tuple, long[][] cover, int bit) {
         boolean covered = false;
         int pred_method = getSettings().getRulePredictionMethod();
         if (pred_method == Settings.RULE_PREDICTION_METHOD_DECISION_LIST) {
             for (int i = 0; i < getModelSize(); i++) {
-                ClusRule rule = getRule(i);
-                if (rule.covers(tuple)) { return rule.getTargetStat(); }
+                if (covers(i, tuple, cover, bit)) { return getRule(i).getTargetStat(); }
             }
             return m_TargetStat;
         }
@@ -248,9 +281,8 @@ public class ClusRuleSet implements ClusModel, Serializable {
             ClusStatistic stat = m_TargetStat.cloneSimple();
             stat.unionInit();
             for (int i = 0; i < getModelSize(); i++) {
-                ClusRule rule = getRule(i);
-                if (rule.covers(tuple)) {
-                    stat.union(rule.getTargetStat());
+                if (covers(i, tuple, cover, bit)) {
+                    stat.union(getRule(i).getTargetStat());
                     covered = true;
                 }
             }
@@ -276,7 +308,7 @@ public class ClusRuleSet implements ClusModel, Serializable {
                 // boolean blah = false;
                 // }
                 // If the rule covers tuple (indicator function is nonzero)
-                if (rule.covers(tuple)) {
+                if (covers(iBaseRule, tuple, cover, bit)) {
                     ClusStatistic rulestat = rule.predictWeighted(tuple);
 
                     // For regression normalization does not do anything.
@@ -296,16 +328,15 @@ public class ClusRuleSet implements ClusModel, Serializable {
 
             // Get the overall sum of weights for all the rules that cover the example
             for (int i = 0; i < getModelSize(); i++) {
-                ClusRule rule = getRule(i);
-                if (rule.covers(tuple)) {
-                    weight_sum += getAppropriateWeight(rule);
+                if (covers(i, tuple, cover, bit)) {
+                    weight_sum += getAppropriateWeight(getRule(i));
                 }
             }
 
             // Take the prediction. Normalise
             for (int i = 0; i < getModelSize(); i++) {
-                ClusRule rule = getRule(i);
-                if (rule.covers(tuple)) {
+                if (covers(i, tuple, cover, bit)) {
+                    ClusRule rule = getRule(i);
                     ClusStatistic rulestat = rule.predictWeighted(tuple);
                     double weight = getAppropriateWeight(rule) / weight_sum;
                     ClusStatistic norm_rulestat = rulestat.normalizedCopy();
@@ -695,13 +726,14 @@ public class ClusRuleSet implements ClusModel, Serializable {
         ClusStatistic tar_stat = m_StatManager.getStatistic(ClusAttrType.ATTR_USE_TARGET);
         // Average error rate over all target attributes
         if (tar_stat instanceof ClassificationStat) {
+            ClusStatistic[] all_predictions = predictWeightedBatch(data);
             double result = 0;
             int nb_rows = data.getNbRows();
             int nb_tar = tar_stat.getNbNominalAttributes();
             int[] nb_right = new int[nb_tar];
             for (int i = 0; i < nb_rows; i++) {
                 DataTuple tuple = data.getTuple(i);
-                int[] predictions = predictWeighted(tuple).getNominalPred();
+                int[] predictions = all_predictions[i].getNominalPred();
                 int true_value;
                 NominalAttrType[] targetAttrs = data.getSchema().getNominalAttrUse(ClusAttrType.ATTR_USE_TARGET);
                 for (int j = 0; j < nb_tar; j++) {
@@ -724,9 +756,10 @@ public class ClusRuleSet implements ClusModel, Serializable {
             int nb_tar = tar_stat.getNbNumericAttributes();
             double[] sum_sqr_err = new double[nb_tar];
             NumericAttrType[] targetAttrs = data.getSchema().getNumericAttrUse(ClusAttrType.ATTR_USE_TARGET);
+            ClusStatistic[] all_predictions = predictWeightedBatch(data);
             for (int i = 0; i < nb_rows; i++) {
                 DataTuple tuple = data.getTuple(i);
-                double[] predictions = ((RegressionStat) predictWeighted(tuple)).getNumericPred();
+                double[] predictions = ((RegressionStat) all_predictions[i]).getNumericPred();
                 for (int j = 0; j < nb_tar; j++) {
                     double diff = predictions[j] - targetAttrs[j].getNumeric(tuple);
                     sum_sqr_err[j] += diff * diff;
@@ -1053,6 +1086,19 @@ public class ClusRuleSet implements ClusModel, Serializable {
             }
             outLogFile.println();
         }
+        // The coverage of the regular rules is computed block by block from the index of the rule tests.
+        ClusCompiledRuleSet compiled = new ClusCompiledRuleSet(this);
+        for (int start = 0; start < nb_rows; start += ClusCompiledRuleSet.BLOCK_SIZE) {
+            int end = Math.min(start + ClusCompiledRuleSet.BLOCK_SIZE, nb_rows);
+            long[][] cover = compiled.computeCoverage(data, start, end);
+            for (int jRules = 0; jRules < nbOfRegularRules; jRules++) {
+                for (int iRows = start; iRows < end; iRows++) {
+                    if (ClusCompiledRuleSet.isCovered(cover[jRules], iRows - start))
+                        rule_pred[jRules].m_cover.set(iRows);
+                }
+            }
+        }
+
         // Index over the instances of data. This loop is first because getting tuples may be slower.
         for (int iRows = 0; iRows < nb_rows; iRows++) {
 
@@ -1064,9 +1110,6 @@ public class ClusRuleSet implements ClusModel, Serializable {
                 if (rule.isRegularRule()) {
                     // rule_pred[jRules].m_cover[iRows] = rule.covers(tuple);
                     // rule_pred[jRules].m_cover.set(iRows,rule.covers(tuple));
-                    if (rule.covers(tuple))
-                        rule_pred[jRules].m_cover.set(iRows);
-
                     printRuleToFile(outLogFile, mf, rule_pred[jRules].m_prediction, rule_pred[jRules].m_cover.get(iRows));
 
                 }
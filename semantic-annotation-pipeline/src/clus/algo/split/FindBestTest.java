@@ -239,6 +239,69 @@ public class FindBestTest {
     }
 
 
+    /**
+     * Finds the best split on a nominal attribute from statistics that were computed beforehand, e.g. while
+     * streaming the data of the node.
+     * 
+     * @param at
+     *        the attribute
+     * @param valueStats
+     *        the statistic of each value of the attribute, followed by the statistic of the missing values; null
+     *        for values that do not occur
+     */
+    public void findNominal(NominalAttrType at, ClusStatistic[] valueStats) {
+        int nbvalues = at.getNbValues();
+        m_BestTest.reset(nbvalues + 1);
+        for (int i = 0; i <= nbvalues; i++) {
+            if (valueStats[i] != null) {
+                m_BestTest.m_TestStat[i].copy(valueStats[i]);
+            }
+        }
+        m_Split.findSplit(m_BestTest, at);
+    }
+
+
+    /**
+     * Finds the best split on a numeric attribute from statistics of the intervals between candidate thresholds,
+     * which were computed beforehand, e.g. while streaming the data of the node. As in
+     * {@link #findNumeric(NumericAttrType, RowData, ClusRandomNonstatic)}, the thresholds are tried from large to
+     * small, so that the test "at > threshold" is found that the exhaustive search would find if the thresholds
+     * include all values of the attribute but the largest one.
+     * 
+     * @param at
+     *        the attribute
+     * @param thresholds
+     *        the candidate thresholds, in increasing order
+     * @param binStats
+     *        the statistic of the values up to the first threshold, of the values in each interval (t_{i-1}, t_i],
+     *        of the values above the last threshold and finally of the missing values; null for empty intervals
+     */
+    public void findNumeric(NumericAttrType at, double[] thresholds, ClusStatistic[] binStats) {
+        int nbthresholds = thresholds.length;
+        m_BestTest.reset(2);
+        m_BestTest.copyTotal();
+        ClusStatistic missing = binStats[nbthresholds + 1];
+        if (missing != null) {
+            m_BestTest.m_MissingStat.copy(missing);
+            m_BestTest.subtractMissing();
+        }
+        boolean changed = false;
+        for (int i = nbthresholds - 1; i >= 0; i--) {
+            ClusStatistic above = binStats[i + 1];
+            if (above != null) {
+                m_BestTest.m_PosStat.add(above);
+                changed = true;
+            }
+            // As for the data in memory, the test is put on the largest value below the split, which is in the
+            // highest non-empty interval below it
+            if (changed && binStats[i] != null) {
+                m_BestTest.updateNumeric(thresholds[i], at);
+                changed = false;
+            }
+        }
+    }
+
+
     public void findNumericExtraTree(NumericAttrType at, RowData orig_data, ClusRandomNonstatic rnd) {
         // TODO: if this method gets completed, sampling of the RowDatas must be included as well
 
@@ -430,6 +493,16 @@ public class FindBestTest {
     }
 
 
+    /**
+     * Variant of {@link #initSelectorAndStopCrit(ClusStatistic, RowData)} for nodes whose data is not kept in memory.
+     */
+    public boolean initSelectorAndStopCrit(ClusStatistic total, int nbRows) {
+        m_BestTest.initTestSelector(total);
+        m_Split.setSDataSize(nbRows);
+        return m_BestTest.stopCrit();
+    }
+
+
     public void setInitialData(ClusStatistic total, RowData data) throws ClusException {
         m_BestTest.setInitialData(total, data);
     }
@@ -75,6 +75,9 @@ public class ClusDecisionTree extends ClusInductionAlgorithmType {
             if (sett.checkInductionOrder("DepthFirst")) {
                 return new DepthFirstInduce(schema, sett);
             }
+            else if (sett.checkInductionOrder("LevelWise")) {
+                return new LevelWiseInduce(schema, sett);
+            }
             else {
                 return new BestFirstInduce(schema, sett);
             }
@@ -0,0 +1,430 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.algo.tdidt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import clus.algo.ClusInductionAlgorithm;
+import clus.algo.split.CurrentBestTestAndHeuristic;
+import clus.data.rows.DataTuple;
+import clus.data.rows.RowData;
+import clus.data.rows.TupleIterator;
+import clus.data.type.ClusAttrType;
+import clus.data.type.ClusSchema;
+import clus.data.type.NominalAttrType;
+import clus.data.type.NumericAttrType;
+import clus.main.ClusRun;
+import clus.main.Settings;
+import clus.model.ClusModel;
+import clus.model.test.NodeTest;
+import clus.statistic.BitVectorStat;
+import clus.statistic.ClusStatistic;
+import clus.util.ClusException;
+import clus.util.ClusRandom;
+import clus.util.ClusRandomNonstatic;
+
+
+/**
+ * Grows a tree level by level from a stream of tuples, so that the training data does not have to fit in memory.
+ * The first pass over the data computes the statistics of the root and samples the values of the numeric
+ * attributes, whose quantiles become the candidate thresholds of the numeric tests. Each following pass routes every
+ * tuple through the tree grown so far to the node of the current level it belongs to, and updates the statistics of
+ * that node: one statistic per value of each nominal attribute and one statistic per interval between the
+ * thresholds of each numeric attribute. The tests of all nodes of the level are then chosen from these statistics as
+ * in {@link DepthFirstInduce}. Only the tree and the statistics of one level are kept in memory.
+ *
+ * If a numeric attribute has at most {@code LevelWiseBins} different values, all of them are thresholds and the
+ * tree is the one that {@link DepthFirstInduce} would find.
+ */
+public class LevelWiseInduce extends DepthFirstInduce {
+
+    /** Number of values of a numeric attribute that are sampled per interval between thresholds */
+    public final static int SAMPLE_SIZE_PER_BIN = 32;
+
+    protected ClusAttrType[] m_Attrs;
+    /** Candidate thresholds of each descriptive attribute in increasing order, null for nominal attributes */
+    protected double[][] m_Thresholds;
+
+
+    public LevelWiseInduce(ClusSchema schema, Settings sett) throws ClusException, IOException {
+        super(schema, sett);
+    }
+
+
+    public LevelWiseInduce(ClusInductionAlgorithm other) {
+        super(other);
+    }
+
+
+    public ClusNode induceSingleUnpruned(TupleIterator iter) throws ClusException, IOException {
+        checkStatistics();
+        m_Attrs = getSchema().getDescriptiveAttributes();
+        m_Root = new ClusNode();
+        m_Root.setClusteringStat(createClusteringStat());
+        m_Root.setTargetStat(m_StatManager.createTargetStat());
+        initRoot(iter);
+        m_Root.getClusteringStat().showRootInfo();
+        initSelectorAndSplit(m_Root.getClusteringStat());
+        ArrayList<LevelNode> level = new ArrayList<LevelNode>();
+        LevelNode root = new LevelNode(m_Root, true);
+        // The statistics of the root have been computed by the first pass
+        root.m_UpdateNodeStats = false;
+        level.add(root);
+        int nbPerPass = getSettings().getLevelWiseNodesPerPass();
+        while (!level.isEmpty()) {
+            ArrayList<LevelNode> next = new ArrayList<LevelNode>();
+            int step = nbPerPass == 0 ? level.size() : nbPerPass;
+            for (int first = 0; first < level.size(); first += step) {
+                int last = Math.min(first + step, level.size());
+                if (Settings.VERBOSE > 0) {
+                    System.out.println("Level " + level.get(0).m_Node.getLevel() + ": nodes " + (first + 1) + "-" + last + " of " + level.size());
+                }
+                for (int i = first; i < last; i++) {
+                    level.get(i).m_Node.setVisitor(level.get(i));
+                }
+                updateLevel(iter);
+                for (int i = first; i < last; i++) {
+                    LevelNode node = level.get(i);
+                    node.m_Node.setVisitor(null);
+                    induce(node, next);
+                }
+            }
+            level = next;
+        }
+        m_Root.postProc(null, m_StatManager);
+        cleanSplit();
+        m_Attrs = null;
+        m_Thresholds = null;
+        return m_Root;
+    }
+
+
+    @Override
+    public ClusNode induceSingleUnpruned(RowData data, ClusRandomNonstatic rnd) throws ClusException, IOException {
+        return induceSingleUnpruned(data.getIterator());
+    }
+
+
+    @Override
+    public ClusModel induceSingleUnpruned(ClusRun cr, ClusRandomNonstatic rnd) throws ClusException, IOException {
+        return induceSingleUnpruned(cr.getTrainIter());
+    }
+
+
+    @Override
+    public ClusModel induceSingleUnpruned(ClusRun cr) throws ClusException, IOException {
+        return induceSingleUnpruned(cr.getTrainIter());
+    }
+
+
+    /**
+     * The statistics of a node are computed from the statistics of its tuples, statistics that refer to the tuples
+     * themselves need the data of the node in memory.
+     */
+    protected void checkStatistics() throws ClusException {
+        if (m_StatManager.createClusteringStat() instanceof BitVectorStat || m_StatManager.createTargetStat() instanceof BitVectorStat) { throw new ClusException("Level-wise induction does not support the statistic " + m_StatManager.createClusteringStat().getClass().getName()); }
+        if (getSettings().showAlternativeSplits()) { throw new ClusException("Level-wise induction does not support AlternativeSplits = Yes"); }
+    }
+
+
+    protected ClusStatistic createClusteringStat() {
+        ClusStatistic stat = m_StatManager.createClusteringStat();
+        if (m_Root.getClusteringStat() != null) {
+            stat.setTrainingStat(m_Root.getClusteringStat());
+        }
+        return stat;
+    }
+
+
+    protected ClusStatistic createTargetStat() {
+        ClusStatistic stat = m_StatManager.createTargetStat();
+        stat.setTrainingStat(m_Root.getTargetStat());
+        return stat;
+    }
+
+
+    /**
+     * First pass over the data: computes the statistics of the root, counts the missing values and chooses the
+     * thresholds of the numeric attributes from a sample of their values.
+     */
+    protected void initRoot(TupleIterator iter) throws ClusException, IOException {
+        int nbattrs = m_Attrs.length;
+        int size = getSettings().getLevelWiseBins() * SAMPLE_SIZE_PER_BIN;
+        Random rnd = ClusRandom.getRandom(ClusRandom.RANDOM_LEVELWISE_SAMPLE);
+        double[][] samples = new double[nbattrs][];
+        long[] nbvalues = new long[nbattrs];
+        int[] nbmissing = new int[nbattrs];
+        for (int j = 0; j < nbattrs; j++) {
+            if (!m_Attrs[j].isNominal()) {
+                samples[j] = new double[Math.min(size, 64)];
+            }
+        }
+        ClusStatistic clustering = m_Root.getClusteringStat();
+        ClusStatistic target = m_Root.getTargetStat();
+        iter.init();
+        int idx = 0;
+        DataTuple tuple = iter.readTuple();
+        while (tuple != null) {
+            clustering.updateWeighted(tuple, idx);
+            target.updateWeighted(tuple, idx);
+            idx++;
+            for (int j = 0; j < nbattrs; j++) {
+                ClusAttrType at = m_Attrs[j];
+                if (at.isMissing(tuple)) {
+                    nbmissing[j]++;
+                }
+                else if (samples[j] != null) {
+                    // Reservoir sampling
+                    long seen = nbvalues[j]++;
+                    if (seen < size) {
+                        if (seen == samples[j].length) {
+                            samples[j] = Arrays.copyOf(samples[j], Math.min(size, 2 * samples[j].length));
+                        }
+                        samples[j][(int) seen] = at.getNumeric(tuple);
+                    }
+                    else {
+                        long pos = (long) (rnd.nextDouble() * (seen + 1));
+                        if (pos < size) {
+                            samples[j][(int) pos] = at.getNumeric(tuple);
+                        }
+                    }
+                }
+            }
+            tuple = iter.readTuple();
+        }
+        iter.close();
+        m_Thresholds = new double[nbattrs][];
+        for (int j = 0; j < nbattrs; j++) {
+            // The missing values of the data in memory have already been counted
+            if (!m_Attrs[j].hasMissing() && nbmissing[j] > 0) {
+                m_Attrs[j].setNbMissing(nbmissing[j]);
+            }
+            if (samples[j] != null) {
+                int nbsample = (int) Math.min(nbvalues[j], size);
+                m_Thresholds[j] = createThresholds(samples[j], nbsample, nbvalues[j] <= size);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the candidate thresholds for a numeric attribute: all different values of the sample if there are not
+     * more than LevelWiseBins of them, and otherwise the quantiles of the sample, each different quantile once.
+     *
+     * @param sample
+     *        the sampled values
+     * @param nbsample
+     *        the number of values in the sample
+     * @param complete
+     *        whether the sample holds all values of the attribute, so that no test can be above its largest value
+     */
+    protected double[] createThresholds(double[] sample, int nbsample, boolean complete) {
+        Arrays.sort(sample, 0, nbsample);
+        int nbdiff = 0;
+        for (int i = 0; i < nbsample; i++) {
+            if (i == 0 || sample[i] != sample[i - 1]) {
+                nbdiff++;
+            }
+        }
+        int nbbins = getSettings().getLevelWiseBins();
+        if (nbdiff <= nbbins) {
+            double[] values = new double[nbdiff];
+            int nb = 0;
+            for (int i = 0; i < nbsample; i++) {
+                if (i == 0 || sample[i] != sample[i - 1]) {
+                    values[nb++] = sample[i];
+                }
+            }
+            return complete ? Arrays.copyOf(values, Math.max(nbdiff - 1, 0)) : values;
+        }
+        // the quantiles are taken over all sampled values, so frequent values weigh more
+        double largest = sample[nbsample - 1];
+        double[] thresholds = new double[nbbins - 1];
+        int nb = 0;
+        for (int i = 1; i < nbbins; i++) {
+            double value = sample[(int) ((long) i * nbsample / nbbins) - 1];
+            if (complete && value == largest) {
+                break;
+            }
+            if (nb == 0 || value != thresholds[nb - 1]) {
+                thresholds[nb++] = value;
+            }
+        }
+        return Arrays.copyOf(thresholds, nb);
+    }
+
+
+    /**
+     * One pass over the data that updates the statistics of the nodes that currently have a LevelNode as visitor.
+     */
+    protected void updateLevel(TupleIterator iter) throws ClusException, IOException {
+        iter.init();
+        DataTuple tuple = iter.readTuple();
+        while (tuple != null) {
+            route(m_Root, tuple);
+            tuple = iter.readTuple();
+        }
+        iter.close();
+    }
+
+
+    /**
+     * Sends a tuple down the tree to the nodes of the current level. Like {@link RowData#applyWeighted(NodeTest, int)},
+     * a tuple for which the test is unknown goes to all children with a proportional weight.
+     */
+    protected void route(ClusNode node, DataTuple tuple) {
+        while (true) {
+            LevelNode visitor = (LevelNode) node.getVisitor();
+            if (visitor != null) {
+                visitor.update(tuple);
+                return;
+            }
+            if (node.atBottomLevel()) { return; }
+            NodeTest test = node.getTest();
+            int pred = test.predictWeighted(tuple);
+            if (pred == NodeTest.UNKNOWN) {
+                for (int j = 0; j < node.getNbChildren(); j++) {
+                    route((ClusNode) node.getChild(j), tuple.multiplyWeight(test.getProportion(j)));
+                }
+                return;
+            }
+            node = (ClusNode) node.getChild(pred);
+        }
+    }
+
+
+    /**
+     * Chooses the test of a node from its statistics and adds its children to the next level.
+     */
+    protected void induce(LevelNode lnode, ArrayList<LevelNode> next) {
+        ClusNode node = lnode.m_Node;
+        if (lnode.m_SplitStats == null || m_FindBestTest.initSelectorAndStopCrit(node.getClusteringStat(), lnode.m_NbRows)) {
+            makeLeaf(node);
+            return;
+        }
+        for (int j = 0; j < m_Attrs.length; j++) {
+            ClusAttrType at = m_Attrs[j];
+            if (at.isNominal()) {
+                m_FindBestTest.findNominal((NominalAttrType) at, lnode.m_SplitStats[j]);
+            }
+            else {
+                m_FindBestTest.findNumeric((NumericAttrType) at, m_Thresholds[j], lnode.m_SplitStats[j]);
+            }
+        }
+        // The statistics of the attributes are no longer needed
+        lnode.m_SplitStats = null;
+        CurrentBestTestAndHeuristic best = m_FindBestTest.getBestTest();
+        if (!best.hasBestTest()) {
+            makeLeaf(node);
+            return;
+        }
+        node.testToNode(best);
+        if (Settings.VERBOSE > 1)
+            System.out.println("Test: " + node.getTestString() + " -> " + best.getHeuristicValue());
+        int arity = node.updateArity();
+        if (node != m_Root && getSettings().hasTreeOptimize(Settings.TREE_OPTIMIZE_NO_INODE_STATS)) {
+            // Don't remove statistics of root node; code below depends on them
+            node.setClusteringStat(null);
+            node.setTargetStat(null);
+        }
+        int max = getSettings().getTreeMaxDepth();
+        for (int j = 0; j < arity; j++) {
+            ClusNode child = new ClusNode();
+            node.setChild(child, j);
+            child.setClusteringStat(createClusteringStat());
+            child.setTargetStat(createTargetStat());
+            // Nodes at the maximal depth become leaves, they only need their own statistics
+            next.add(new LevelNode(child, max == -1 || child.getLevel() < max));
+        }
+    }
+
+    /**
+     * A node of the current level together with the statistics that are computed for it during a pass.
+     */
+    protected class LevelNode {
+
+        protected ClusNode m_Node;
+        protected int m_NbRows;
+        /** Whether the statistics of the node itself are computed during the pass */
+        protected boolean m_UpdateNodeStats;
+        /**
+         * Per descriptive attribute, the statistics of the values of a nominal attribute or of the intervals between
+         * the thresholds of a numeric attribute, followed by the statistic of the missing values
+         */
+        protected ClusStatistic[][] m_SplitStats;
+
+
+        public LevelNode(ClusNode node, boolean canSplit) {
+            m_Node = node;
+            m_UpdateNodeStats = true;
+            if (canSplit) {
+                createSplitStats();
+            }
+        }
+
+
+        protected void createSplitStats() {
+            m_SplitStats = new ClusStatistic[m_Attrs.length][];
+            for (int j = 0; j < m_Attrs.length; j++) {
+                ClusAttrType at = m_Attrs[j];
+                int nb = at.isNominal() ? ((NominalAttrType) at).getNbValues() + 1 : m_Thresholds[j].length + 2;
+                m_SplitStats[j] = new ClusStatistic[nb];
+            }
+        }
+
+
+        public void update(DataTuple tuple) {
+            int idx = m_NbRows++;
+            if (m_UpdateNodeStats) {
+                m_Node.getClusteringStat().updateWeighted(tuple, idx);
+                m_Node.getTargetStat().updateWeighted(tuple, idx);
+            }
+            if (m_SplitStats == null) { return; }
+            for (int j = 0; j < m_Attrs.length; j++) {
+                ClusAttrType at = m_Attrs[j];
+                int bin;
+                if (at.isNominal()) {
+                    bin = at.getNominal(tuple);
+                }
+                else if (at.isMissing(tuple)) {
+                    bin = m_Thresholds[j].length + 1;
+                }
+                else {
+                    // The number of thresholds below the value
+                    bin = Arrays.binarySearch(m_Thresholds[j], at.getNumeric(tuple));
+                    if (bin < 0) {
+                        bin = -bin - 1;
+                    }
+                }
+                ClusStatistic stat = m_SplitStats[j][bin];
+                if (stat == null) {
+                    stat = m_SplitStats[j][bin] = m_StatManager.createClusteringStat();
+                }
+                stat.updateWeighted(tuple, idx);
+            }
+        }
+    }
+}
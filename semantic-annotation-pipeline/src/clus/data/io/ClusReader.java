@@ -22,6 +22,7 @@
 
 package clus.data.io;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -61,6 +62,16 @@ public class ClusReader {
     }
 
 
+    /**
+     * @return The file that is read, or {@code null} if the data is read from a ZIP archive. Only such a file can be
+     *         read by a {@link MappedARFFReader}.
+     */
+    public File getPlainFile() {
+        if (FileUtil.fileExists(m_Name) && !m_Name.toUpperCase().endsWith(".ZIP")) { return new File(m_Name); }
+        return null;
+    }
+
+
     public int countRows() throws IOException {
         int nbr = countRows2();
         reOpen();
@@ -142,6 +153,33 @@ public class ClusReader {
     }
 
 
+    /**
+     * Skips the white space, empty lines and comment lines ('%') in front of the next data row, as
+     * {@link MappedARFFReader} does.
+     *
+     * @return True if a data row follows, false at the end of the file.
+     */
+    public boolean skipToRow() throws IOException {
+        Reader reader = m_Token.getReader();
+        int ch = getNextChar(reader);
+        while (ch != -1) {
+            if (ch == '%') {
+                while (ch != -1 && ch != 10 && ch != 13) {
+                    ch = reader.read();
+                }
+            }
+            else if (ch == ' ' || ch == '\t' || ch == 10 || ch == 13) {
+                ch = reader.read();
+            }
+            else {
+                setLastChar(ch);
+                return true;
+            }
+        }
+        return false;
+    }
+
+
     public boolean isEol() throws IOException {
         Reader reader = m_Token.getReader();
         int ch = getNextChar(reader);
@@ -62,11 +62,14 @@ public class ClusView {
 
     public RowData readData(ClusReader reader, ClusSchema schema) throws IOException, ClusException {
         schema.setReader(true);
-        ArrayList<DataTuple> items = new ArrayList<DataTuple>();
-        DataTuple tuple = readDataTupleFirst(reader, schema);
-        while (tuple != null) {
-            items.add(tuple);
-            tuple = readDataTupleNext(reader, schema);
+        ArrayList<DataTuple> items = readMappedData(reader, schema);
+        if (items == null) {
+            items = new ArrayList<DataTuple>();
+            DataTuple tuple = readDataTupleFirst(reader, schema);
+            while (tuple != null) {
+                items.add(tuple);
+                tuple = readDataTupleNext(reader, schema);
+            }
         }
         for (int j = 0; j < m_Attr.size(); j++) {
             ClusSerializable attr = (ClusSerializable) m_Attr.get(j);
@@ -77,8 +80,28 @@ public class ClusView {
     }
 
 
+    /**
+     * Reads the tuples with a {@link MappedARFFReader}, if the data is not compressed and all the attributes of this
+     * view are supported by that reader.
+     *
+     * @return The tuples, or {@code null} if they must be read with the tokenizer of the given reader.
+     */
+    protected ArrayList<DataTuple> readMappedData(ClusReader reader, ClusSchema schema) throws IOException, ClusException {
+        MappedARFFReader mapped = MappedARFFReader.open(reader);
+        if (mapped == null) { return null; }
+        if (mapped.isSparse()) {
+            m_Attr.clear();
+            schema.ensureSparse();
+            schema.createNormalView(this);
+        }
+        if (!mapped.canRead(this, schema)) { return null; }
+        Settings sett = schema.getSettings();
+        return mapped.read(this, sett != null ? sett.getReadNbThreads() : 1);
+    }
+
+
     public DataTuple readDataTupleFirst(ClusReader reader, ClusSchema schema) throws IOException, ClusException {
-        if (!reader.hasMoreTokens())
+        if (!reader.skipToRow())
             return null;
         boolean sparse = reader.isNextChar('{');
         if (sparse) {
@@ -91,7 +114,7 @@ public class ClusView {
 
 
     public DataTuple readDataTupleNext(ClusReader reader, ClusSchema schema) throws IOException {
-        if (!reader.hasMoreTokens())
+        if (!reader.skipToRow())
             return null;
         boolean sparse = reader.isNextChar('{');
         if (sparse && !schema.isSparse()) { throw new IOException("Sparse tuple found in a non-sparse data set (at row " + (reader.getRow() + 1) + ")"); }
@@ -100,7 +123,7 @@ public class ClusView {
 
 
     public DataTuple readDataTuple(ClusReader reader, ClusSchema schema) throws IOException {
-        if (!reader.hasMoreTokens())
+        if (!reader.skipToRow())
             return null;
         boolean sparse = reader.isNextChar('{');
         return readDataTuple(reader, schema, sparse);
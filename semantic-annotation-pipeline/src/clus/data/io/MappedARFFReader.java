@@ -0,0 +1,826 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.data.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import clus.data.rows.DataTuple;
+import clus.data.type.ClusAttrType;
+import clus.data.type.ClusSchema;
+import clus.data.type.NominalAttrType;
+import clus.data.type.NumericAttrType;
+import clus.data.type.SparseNumericAttrType;
+import clus.io.ClusSerializable;
+import clus.io.DummySerializable;
+import clus.util.ClusParallel;
+
+
+/**
+ * Reads the @data section of an uncompressed ARFF file without the character-wise tokenizer of {@link ClusReader}. The
+ * data section is split into line-aligned chunks, each chunk is memory-mapped and parsed into tuples by its own task,
+ * and the tuples of the chunks are concatenated in file order, so the result does not depend on the number of threads.
+ *
+ * Dense rows, sparse rows ({idx val, ...}) and the optional row weight ({w}) are supported, but only for numeric,
+ * nominal and disabled attributes: see {@link #canRead(ClusView, ClusSchema)}. Numbers are parsed directly from the
+ * bytes of the file; a number is only converted to a String when it cannot be parsed exactly in double arithmetic,
+ * e.g., because it has more than 18 significant digits.
+ */
+public class MappedARFFReader {
+
+    /** The data section is not split into chunks smaller than this (in bytes). */
+    protected final static long MIN_CHUNK_SIZE = 1L << 20;
+    /** The data section is split into chunks of at most this size (in bytes), unless a single row is larger. */
+    protected final static long MAX_CHUNK_SIZE = 1L << 28;
+    /** Number of chunks per thread, so that threads that finish early can take over some of the work. */
+    protected final static int CHUNKS_PER_THREAD = 4;
+
+    protected final static int COLUMN_SKIP = 0;
+    protected final static int COLUMN_NUMERIC = 1;
+    protected final static int COLUMN_SPARSE_NUMERIC = 2;
+    protected final static int COLUMN_NOMINAL = 3;
+
+    /** The powers of ten that are exactly representable as a double. */
+    protected final static double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    protected File m_File;
+    protected long m_Size;
+    /** Position of the first byte after the @data tag, -1 if there is none */
+    protected long m_DataStart;
+
+    protected ClusSchema m_Schema;
+    /** m_Kinds[j]: how the values of the j-th attribute are read, one of the COLUMN_ constants */
+    protected int[] m_Kinds;
+    protected ClusAttrType[] m_Types;
+    /** m_Values[j]: the values of the nominal attribute j, null for the other attributes */
+    protected NominalValueTable[] m_Values;
+
+
+    protected MappedARFFReader(File file) throws IOException {
+        m_File = file;
+        m_Size = file.length();
+        m_DataStart = findDataStart();
+    }
+
+
+    /**
+     * @return A reader for the data section of the file read by the given reader, or {@code null} if the file cannot
+     *         be memory-mapped (it is read from a ZIP archive) or has no @data tag.
+     */
+    public static MappedARFFReader open(ClusReader reader) throws IOException {
+        File file = reader.getPlainFile();
+        if (file == null) { return null; }
+        MappedARFFReader mapped = new MappedARFFReader(file);
+        return mapped.m_DataStart != -1 ? mapped : null;
+    }
+
+
+    /**
+     * @return True if the first row of the data section is a sparse row.
+     */
+    public boolean isSparse() throws IOException {
+        InputStream in = openAt(m_DataStart);
+        try {
+            int ch = in.read();
+            while (ch != -1) {
+                if (ch == '%') {
+                    while (ch != -1 && ch != 10 && ch != 13) {
+                        ch = in.read();
+                    }
+                }
+                else if (ch != ' ' && ch != '\t' && ch != 10 && ch != 13) {
+                    return ch == '{';
+                }
+                else {
+                    ch = in.read();
+                }
+            }
+            return false;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Prepares the reading of the tuples of the given view. This is only possible if each attribute of the view is
+     * either disabled, numeric or nominal, and if the view reads the attributes of the schema in the order of the
+     * schema (see {@link ClusSchema#createNormalView(ClusView)}).
+     *
+     * @return True if the tuples can be read by {@link #read(ClusView, int)}, false if the view must be read with
+     *         {@link ClusView#readDataTuple(ClusReader, ClusSchema)}.
+     */
+    public boolean canRead(ClusView view, ClusSchema schema) {
+        int nb = view.getNbAttributes();
+        if (nb != schema.getNbAttributes()) { return false; }
+        m_Schema = schema;
+        m_Kinds = new int[nb];
+        m_Types = new ClusAttrType[nb];
+        m_Values = new NominalValueTable[nb];
+        for (int j = 0; j < nb; j++) {
+            ClusSerializable attr = view.getAttribute(j);
+            ClusAttrType type = schema.getAttrType(j);
+            m_Types[j] = type;
+            if (attr.getClass() == DummySerializable.class) {
+                m_Kinds[j] = COLUMN_SKIP;
+            }
+            else if (attr.getClass() == NumericAttrType.MySerializable.class) {
+                m_Kinds[j] = COLUMN_NUMERIC;
+            }
+            else if (attr.getClass() == SparseNumericAttrType.MySerializable.class) {
+                m_Kinds[j] = COLUMN_SPARSE_NUMERIC;
+            }
+            else if (attr.getClass() == NominalAttrType.MySerializable.class) {
+                m_Kinds[j] = COLUMN_NOMINAL;
+                m_Values[j] = new NominalValueTable((NominalAttrType) type);
+            }
+            else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Reads all the tuples of the data section. As the attribute readers of the view, this counts the missing values
+     * of the attributes and updates the statistics of the numeric readers that decide whether an attribute is sparse.
+     *
+     * @param view
+     *        The view passed to {@link #canRead(ClusView, ClusSchema)}.
+     * @param nbThreads
+     *        The number of threads that parse the chunks of the file, 0 for all available processors.
+     * @return The tuples, in the order of the file.
+     */
+    public ArrayList<DataTuple> read(ClusView view, int nbThreads) throws IOException {
+        if (nbThreads == 0) {
+            nbThreads = Runtime.getRuntime().availableProcessors();
+        }
+        ArrayList<ChunkParser> chunks = new ArrayList<ChunkParser>();
+        FileChannel channel = new FileInputStream(m_File).getChannel();
+        try {
+            long[] bounds = splitData(nbThreads);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long length = bounds[i + 1] - bounds[i];
+                if (length > Integer.MAX_VALUE) { throw new IOException("Row of more than " + Integer.MAX_VALUE + " bytes in '" + m_File + "'"); }
+                chunks.add(new ChunkParser(channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], length), bounds[i]));
+            }
+        }
+        finally {
+            // the mapped buffers remain valid after the channel is closed
+            channel.close();
+        }
+        runChunks(chunks, nbThreads);
+        int nbRows = 0;
+        for (ChunkParser chunk : chunks) {
+            nbRows += chunk.m_Tuples.size();
+        }
+        ArrayList<DataTuple> tuples = new ArrayList<DataTuple>(nbRows);
+        for (ChunkParser chunk : chunks) {
+            tuples.addAll(chunk.m_Tuples);
+        }
+        for (int j = 0; j < m_Kinds.length; j++) {
+            int nbMissing = 0, nbZero = 0, nbNeg = 0, nbTotal = 0;
+            for (ChunkParser chunk : chunks) {
+                nbMissing += chunk.m_NbMissing[j];
+                nbZero += chunk.m_NbZero[j];
+                nbNeg += chunk.m_NbNeg[j];
+                nbTotal += chunk.m_NbTotal[j];
+            }
+            if (nbMissing > 0) {
+                m_Types[j].setNbMissing(m_Types[j].getNbMissing() + nbMissing);
+            }
+            if (m_Kinds[j] == COLUMN_NUMERIC) {
+                NumericAttrType.MySerializable attr = (NumericAttrType.MySerializable) view.getAttribute(j);
+                attr.m_NbZero += nbZero;
+                attr.m_NbNeg += nbNeg;
+                attr.m_NbTotal += nbTotal;
+            }
+        }
+        return tuples;
+    }
+
+
+    protected void runChunks(ArrayList<ChunkParser> chunks, int nbThreads) throws IOException {
+        if (nbThreads <= 1 || chunks.size() <= 1) {
+            for (ChunkParser chunk : chunks) {
+                chunk.call();
+            }
+            return;
+        }
+        ThreadPoolExecutor executor = ClusParallel.createDaemonPool(Math.min(nbThreads, chunks.size()), "MappedARFFReader");
+        try {
+            ArrayList<Future<ChunkParser>> results = new ArrayList<Future<ChunkParser>>();
+            for (ChunkParser chunk : chunks) {
+                results.add(executor.submit(chunk));
+            }
+            for (Future<ChunkParser> result : results) {
+                result.get();
+            }
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) { throw (IOException) cause; }
+            if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+            throw new IOException(cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading '" + m_File + "'");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * @return The positions at which the chunks of the data section start, followed by the size of the file. Each
+     *         chunk starts at the beginning of a line.
+     */
+    protected long[] splitData(int nbThreads) throws IOException {
+        long length = m_Size - m_DataStart;
+        long nbChunks = Math.min(length / MIN_CHUNK_SIZE, (long) nbThreads * CHUNKS_PER_THREAD);
+        nbChunks = Math.max(nbChunks, (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        nbChunks = Math.max(nbChunks, 1);
+        ArrayList<Long> bounds = new ArrayList<Long>();
+        bounds.add(m_DataStart);
+        for (long i = 1; i < nbChunks; i++) {
+            long start = nextLineStart(m_DataStart + length * i / nbChunks);
+            if (start > bounds.get(bounds.size() - 1) && start < m_Size) {
+                bounds.add(start);
+            }
+        }
+        bounds.add(m_Size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+
+    /**
+     * @return The position of the first byte following the first line feed at or after the given position, or the size
+     *         of the file if there is none.
+     */
+    protected long nextLineStart(long pos) throws IOException {
+        InputStream in = openAt(pos);
+        try {
+            int ch = in.read();
+            while (ch != -1) {
+                pos++;
+                if (ch == 10) { return pos; }
+                ch = in.read();
+            }
+            return m_Size;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * @return The position of the first byte after the @data tag, which is the first word of a line, or -1 if the file
+     *         has no such tag.
+     */
+    protected long findDataStart() throws IOException {
+        final byte[] tag = { '@', 'D', 'A', 'T', 'A' };
+        InputStream in = openAt(0);
+        try {
+            long pos = 0;
+            boolean lineStart = true;
+            int matched = -1;
+            int ch = in.read();
+            while (ch != -1) {
+                if (matched == tag.length) {
+                    if (ch == ' ' || ch == '\t' || ch == 10 || ch == 13) { return pos; }
+                    matched = -1;
+                }
+                if (ch == 10 || ch == 13) {
+                    lineStart = true;
+                    matched = -1;
+                }
+                else if (lineStart && (ch == ' ' || ch == '\t')) {
+                    // leading white space
+                }
+                else if (lineStart || matched >= 0) {
+                    matched = Math.max(matched, 0);
+                    matched = Character.toUpperCase(ch) == tag[matched] ? matched + 1 : -1;
+                    lineStart = false;
+                }
+                pos++;
+                ch = in.read();
+            }
+            return matched == tag.length ? pos : -1;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * @return The number of the line (starting at 1) that contains the given position, used in error messages.
+     */
+    protected long lineOf(long pos) throws IOException {
+        InputStream in = openAt(0);
+        try {
+            long line = 1;
+            for (long i = 0; i < pos; i++) {
+                int ch = in.read();
+                if (ch == -1) {
+                    break;
+                }
+                if (ch == 10) {
+                    line++;
+                }
+            }
+            return line;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    protected InputStream openAt(long pos) throws IOException {
+        FileInputStream in = new FileInputStream(m_File);
+        in.getChannel().position(pos);
+        return new BufferedInputStream(in, 1 << 16);
+    }
+
+
+    /**
+     * Parses the rows of one chunk of the data section. The missing values and the statistics of the numeric
+     * attributes are counted per chunk and added up by {@link MappedARFFReader#read(ClusView, int)}.
+     */
+    protected class ChunkParser implements Callable<ChunkParser> {
+
+        protected ByteBuffer m_Buffer;
+        /** Position of the chunk in the file */
+        protected long m_Offset;
+        protected int m_Pos;
+        protected int m_Limit;
+
+        protected ArrayList<DataTuple> m_Tuples = new ArrayList<DataTuple>();
+        protected int[] m_NbMissing, m_NbZero, m_NbNeg, m_NbTotal;
+
+
+        protected ChunkParser(MappedByteBuffer buffer, long offset) {
+            m_Buffer = buffer;
+            m_Offset = offset;
+            m_Limit = buffer.limit();
+            int nb = m_Kinds.length;
+            m_NbMissing = new int[nb];
+            m_NbZero = new int[nb];
+            m_NbNeg = new int[nb];
+            m_NbTotal = new int[nb];
+        }
+
+
+        public ChunkParser call() throws IOException {
+            while (true) {
+                int ch = skipSpace(true);
+                if (ch == -1) {
+                    break;
+                }
+                if (ch == '%') {
+                    skipLine();
+                }
+                else {
+                    m_Tuples.add(readRow());
+                }
+            }
+            return this;
+        }
+
+
+        protected DataTuple readRow() throws IOException {
+            DataTuple tuple = m_Schema.createTuple();
+            if (peek() == '{') {
+                if (!m_Schema.isSparse()) { throw error("Sparse tuple found in a non-sparse data set", m_Pos); }
+                m_Pos++;
+                readSparseValues(tuple);
+            }
+            else {
+                readDenseValues(tuple);
+            }
+            if (skipSpace(false) == '{') {
+                m_Pos++;
+                skipSpace(false);
+                int start = m_Pos;
+                int end = scanToken();
+                if (start == end) { throw error("Error reading tuple weight", start); }
+                tuple.setWeight(parseNumber(start, end, -1));
+                if (skipSpace(false) != '}') { throw error("Expected closing '}' after tuple weight", m_Pos); }
+                m_Pos++;
+            }
+            int ch = skipSpace(false);
+            if (ch == '%') {
+                skipLine();
+            }
+            else if (ch != -1 && ch != 10 && ch != 13) { throw error("Too many data", m_Pos); }
+            return tuple;
+        }
+
+
+        protected void readDenseValues(DataTuple tuple) throws IOException {
+            int nb = m_Kinds.length;
+            for (int j = 0; j < nb; j++) {
+                int ch = skipSpace(false);
+                if (j > 0) {
+                    if (ch != ',') { throw error("Error reading attribute with index " + j + " (" + m_Types[j].getName() + "): ',' expected", m_Pos); }
+                    m_Pos++;
+                    ch = skipSpace(false);
+                }
+                if (ch == -1 || ch == 10 || ch == 13 || ch == ',') { throw error("Error reading attribute with index " + j + " (" + m_Types[j].getName() + ")", m_Pos); }
+                readValue(j, tuple);
+            }
+            if (skipSpace(false) == ',') {
+                m_Pos++;
+            }
+        }
+
+
+        protected void readSparseValues(DataTuple tuple) throws IOException {
+            int nb = m_Kinds.length;
+            while (true) {
+                int ch = skipSpace(false);
+                if (ch == '}') {
+                    m_Pos++;
+                    return;
+                }
+                if (ch == -1 || ch == 10 || ch == 13) { throw error("Expected closing '}' of sparse tuple", m_Pos); }
+                int start = m_Pos;
+                int idx = 0;
+                while (m_Pos < m_Limit && isDigit(m_Buffer.get(m_Pos))) {
+                    idx = idx * 10 + (m_Buffer.get(m_Pos++) - '0');
+                    if (idx > nb) {
+                        break;
+                    }
+                }
+                if (m_Pos == start) { throw error("Error parsing integer index", start); }
+                if (idx < 1 || idx > nb) { throw error("Error attribute index '" + idx + "' out of range [1," + nb + "]", start); }
+                skipSpace(false);
+                readValue(idx - 1, tuple);
+                if (skipSpace(false) == ',') {
+                    m_Pos++;
+                }
+            }
+        }
+
+
+        protected void readValue(int j, DataTuple tuple) throws IOException {
+            int kind = m_Kinds[j];
+            if (kind == COLUMN_SKIP) {
+                skipValue();
+                return;
+            }
+            if (kind == COLUMN_NOMINAL) {
+                readNominal(j, tuple);
+                return;
+            }
+            int start = m_Pos;
+            int end = scanToken();
+            if (start == end) { throw error("Error reading numeric attribute " + m_Types[j].getName(), start); }
+            double value = parseNumber(start, end, j);
+            if (kind == COLUMN_SPARSE_NUMERIC) {
+                ((SparseNumericAttrType) m_Types[j]).setNumeric(tuple, value);
+                return;
+            }
+            tuple.setDoubleVal(value, m_Types[j].getArrayIndex());
+            if (value == NumericAttrType.MISSING) {
+                m_NbMissing[j]++;
+                m_NbZero[j]++;
+            }
+            if (value == 0.0) {
+                m_NbZero[j]++;
+            }
+            else if (value < 0.0) {
+                m_NbNeg[j]++;
+            }
+            m_NbTotal[j]++;
+        }
+
+
+        /**
+         * Reads a nominal value as {@link ClusReader#readString()}: the value ends at a comma, a closing brace, a tab or
+         * the end of the line, unless it is double-quoted.
+         */
+        protected void readNominal(int j, DataTuple tuple) throws IOException {
+            int start = m_Pos;
+            int ch = peek();
+            if (ch == '"') {
+                m_Pos++;
+                while (m_Pos < m_Limit && (ch = m_Buffer.get(m_Pos)) != '"' && ch != 10 && ch != 13) {
+                    m_Pos++;
+                }
+                if (ch == '"') {
+                    m_Pos++;
+                }
+            }
+            while (m_Pos < m_Limit && (ch = m_Buffer.get(m_Pos)) != ',' && ch != '}' && ch != '%' && ch != '\t' && ch != 10 && ch != 13) {
+                m_Pos++;
+            }
+            int end = m_Pos;
+            while (end > start && m_Buffer.get(end - 1) == ' ') {
+                end--;
+            }
+            NominalAttrType type = (NominalAttrType) m_Types[j];
+            if (end - start == 1 && m_Buffer.get(start) == '?') {
+                m_NbMissing[j]++;
+                type.setNominal(tuple, type.getNbValues());
+                return;
+            }
+            int value = m_Values[j].indexOf(m_Buffer, start, end);
+            if (value < 0) { throw error("Illegal value '" + text(start, end) + "' for attribute " + type.getName(), start); }
+            type.setNominal(tuple, value);
+        }
+
+
+        /**
+         * Skips the value of a disabled attribute, as {@link ClusReader#skipTillComma()}. Time series values ([...]) are
+         * skipped as a whole.
+         */
+        protected void skipValue() {
+            int ch = peek();
+            if (ch == '[') {
+                while (m_Pos < m_Limit && (ch = m_Buffer.get(m_Pos)) != ']' && ch != 10 && ch != 13) {
+                    m_Pos++;
+                }
+                if (ch == ']') {
+                    m_Pos++;
+                }
+            }
+            else if (ch == '"') {
+                m_Pos++;
+                while (m_Pos < m_Limit && (ch = m_Buffer.get(m_Pos)) != '"' && ch != 10 && ch != 13) {
+                    m_Pos++;
+                }
+                if (ch == '"') {
+                    m_Pos++;
+                }
+            }
+            scanToken();
+        }
+
+
+        /**
+         * Advances to the first comma, closing brace, white space or end of line.
+         *
+         * @return The position of the end of the token.
+         */
+        protected int scanToken() {
+            while (m_Pos < m_Limit) {
+                byte ch = m_Buffer.get(m_Pos);
+                if (ch == ',' || ch == '}' || ch == ' ' || ch == '\t' || ch == 10 || ch == 13) {
+                    break;
+                }
+                m_Pos++;
+            }
+            return m_Pos;
+        }
+
+
+        /**
+         * Parses the number in the given bytes, as {@link ClusReader#getFloat()} ('?' is {@link NumericAttrType#MISSING}).
+         * The mantissa is accumulated in a long and scaled by an exact power of ten, which gives the correctly rounded
+         * result if the mantissa has at most 53 bits and the power is at most 22. Other numbers are parsed by
+         * {@link Double#parseDouble(String)}.
+         *
+         * @param attr
+         *        The index of the attribute, used in error messages, -1 for the tuple weight.
+         */
+        protected double parseNumber(int start, int end, int attr) throws IOException {
+            // quotes are ignored, as in ClusReader.readNoSpace()
+            while (start < end && isQuote(m_Buffer.get(start))) {
+                start++;
+            }
+            while (end > start && isQuote(m_Buffer.get(end - 1))) {
+                end--;
+            }
+            if (end - start == 1 && m_Buffer.get(start) == '?') { return NumericAttrType.MISSING; }
+            int i = start;
+            boolean negative = false;
+            if (i < end && (m_Buffer.get(i) == '-' || m_Buffer.get(i) == '+')) {
+                negative = m_Buffer.get(i) == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int nbDigits = 0, exponent = 0;
+            boolean found = false;
+            byte ch;
+            while (i < end && isDigit(ch = m_Buffer.get(i))) {
+                mantissa = mantissa * 10 + (ch - '0');
+                if (mantissa != 0 && ++nbDigits > 18) { return parseSlow(start, end, attr); }
+                found = true;
+                i++;
+            }
+            if (i < end && m_Buffer.get(i) == '.') {
+                i++;
+                while (i < end && isDigit(ch = m_Buffer.get(i))) {
+                    mantissa = mantissa * 10 + (ch - '0');
+                    if (mantissa != 0 && ++nbDigits > 18) { return parseSlow(start, end, attr); }
+                    exponent--;
+                    found = true;
+                    i++;
+                }
+            }
+            if (!found) { return parseSlow(start, end, attr); }
+            if (i < end && (m_Buffer.get(i) == 'e' || m_Buffer.get(i) == 'E')) {
+                i++;
+                boolean negativeExp = false;
+                if (i < end && (m_Buffer.get(i) == '-' || m_Buffer.get(i) == '+')) {
+                    negativeExp = m_Buffer.get(i) == '-';
+                    i++;
+                }
+                int exp = 0;
+                int expStart = i;
+                while (i < end && isDigit(ch = m_Buffer.get(i))) {
+                    if (exp < 10000) {
+                        exp = exp * 10 + (ch - '0');
+                    }
+                    i++;
+                }
+                if (i == expStart) { return parseSlow(start, end, attr); }
+                exponent += negativeExp ? -exp : exp;
+            }
+            if (i != end) { return parseSlow(start, end, attr); }
+            if (mantissa == 0) { return negative ? -0.0 : 0.0; }
+            if (mantissa >= (1L << 53) || exponent < -22 || exponent > 22) { return parseSlow(start, end, attr); }
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+
+        protected double parseSlow(int start, int end, int attr) throws IOException {
+            String value = text(start, end);
+            try {
+                return Double.parseDouble(value);
+            }
+            catch (NumberFormatException e) {
+                String where = attr >= 0 ? " for attribute " + m_Types[attr].getName() : " for tuple weight";
+                throw error("Error parsing numeric value '" + value + "'" + where, start);
+            }
+        }
+
+
+        /**
+         * Skips spaces and tabs, and also line ends if {@code lines} is true.
+         *
+         * @return The next byte, or -1 at the end of the chunk.
+         */
+        protected int skipSpace(boolean lines) {
+            while (m_Pos < m_Limit) {
+                byte ch = m_Buffer.get(m_Pos);
+                if (ch != ' ' && ch != '\t' && (!lines || (ch != 10 && ch != 13))) { return ch; }
+                m_Pos++;
+            }
+            return -1;
+        }
+
+
+        protected void skipLine() {
+            while (m_Pos < m_Limit) {
+                byte ch = m_Buffer.get(m_Pos);
+                if (ch == 10 || ch == 13) {
+                    break;
+                }
+                m_Pos++;
+            }
+        }
+
+
+        protected int peek() {
+            return m_Pos < m_Limit ? m_Buffer.get(m_Pos) : -1;
+        }
+
+
+        protected String text(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = m_Buffer.get(i);
+            }
+            return new String(bytes, Charset.defaultCharset());
+        }
+
+
+        protected IOException error(String msg, int pos) throws IOException {
+            return new IOException(msg + " at line " + lineOf(m_Offset + pos) + " of '" + m_File + "'");
+        }
+    }
+
+
+    protected static boolean isDigit(int ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+
+    protected static boolean isQuote(int ch) {
+        return ch == '\'' || ch == '"';
+    }
+
+
+    /**
+     * Hash table from the encoded values of a nominal attribute to their indices, which looks up a value directly in
+     * the bytes of the file. The values are encoded with the default charset, as they are decoded by
+     * {@link ClusReader}.
+     */
+    protected static class NominalValueTable {
+
+        protected byte[][] m_Values;
+        /** Open addressing table: index + 1 of the value in each slot, 0 for an empty slot */
+        protected int[] m_Slots;
+
+
+        protected NominalValueTable(NominalAttrType type) {
+            int nb = type.getNbValues();
+            m_Values = new byte[nb][];
+            int size = 1;
+            while (size < 2 * nb) {
+                size <<= 1;
+            }
+            m_Slots = new int[size];
+            for (int i = 0; i < nb; i++) {
+                byte[] value = type.getValue(i).getBytes(Charset.defaultCharset());
+                m_Values[i] = value;
+                int slot = hash(value, 0, value.length) & (size - 1);
+                while (m_Slots[slot] != 0) {
+                    slot = (slot + 1) & (size - 1);
+                }
+                m_Slots[slot] = i + 1;
+            }
+        }
+
+
+        /**
+         * @return The index of the value in the given bytes of the buffer, or -1 if it is not a value of the attribute.
+         */
+        protected int indexOf(ByteBuffer buffer, int start, int end) {
+            int mask = m_Slots.length - 1;
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int slot = hash & mask;
+            while (m_Slots[slot] != 0) {
+                byte[] value = m_Values[m_Slots[slot] - 1];
+                if (value.length == end - start && equals(value, buffer, start)) { return m_Slots[slot] - 1; }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+
+        protected static boolean equals(byte[] value, ByteBuffer buffer, int start) {
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] != buffer.get(start + i)) { return false; }
+            }
+            return true;
+        }
+
+
+        protected static int hash(byte[] bytes, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.data.rows;
+
+import java.util.Arrays;
+
+import clus.data.type.ClusAttrType;
+import clus.data.type.NominalAttrType;
+import clus.data.type.NumericAttrType;
+
+
+/**
+ * Column-wise copy of the numeric and nominal attributes of a set of tuples, used to compute the distances between a
+ * query and all the tuples in tight loops over primitive arrays, instead of calling the attribute types for each pair
+ * of tuples.
+ * 
+ * The distance in a numeric attribute is |v1 - v2| * w, where w is the normalisation weight of the attribute (usually
+ * 1 / (max - min)). If one value is missing, it is max(t, 1 - t), where t = (v - min) * w is the normalised present
+ * value, and if both are missing, it is {@link #setBothMissingDistance(double) a constant}. The distance in a nominal
+ * attribute is 0 for equal values and 1 for different values. If at least one value is missing, it is
+ * {@link #setNominalMissingDistances(double[]) a constant} of the attribute. The distances in the other attributes are
+ * not supported and count as 0: see {@link #isSupported(int)}.
+ */
+public class DenseFeatureBlock {
+
+    /** The distance is the sum of the distances in the attributes. */
+    public static final int NORM_MANHATTAN = 0;
+    /** The distance is the square root of the weighted sum of the squared distances in the attributes. */
+    public static final int NORM_EUCLIDEAN = 1;
+    /** The distance is the maximum of the distances in the attributes. */
+    public static final int NORM_CHEBYSHEV = 2;
+
+    private int m_NbRows;
+    private ClusAttrType[] m_Attrs;
+    /** m_Numeric[attribute][row]: the values of the numeric attributes, null for the other attributes */
+    private double[][] m_Numeric;
+    /** m_Missing[attribute][row]: true if the value of the numeric attribute is missing */
+    private boolean[][] m_Missing;
+    /** m_Nominal[attribute][row]: the values of the nominal attributes (missing values are >= number of values) */
+    private int[][] m_Nominal;
+    private int[] m_NbValues;
+    private double[] m_Mins;
+    private double[] m_NormalizationWeights;
+    private double[] m_AttrWeights;
+    private double m_BothMissingDistance = 1.0;
+    private double[] m_NominalMissingDistances;
+
+
+    /**
+     * @param attrs
+     *        The attributes in which the distances are computed.
+     * @param rows
+     *        The tuples of the block.
+     * @param mins
+     *        mins[i]: minimal value of the numeric attribute attrs[i]
+     * @param normalizationWeights
+     *        normalizationWeights[i]: normalisation weight of the numeric attribute attrs[i]
+     */
+    public DenseFeatureBlock(ClusAttrType[] attrs, DataTuple[] rows, double[] mins, double[] normalizationWeights) {
+        int nbAttrs = attrs.length;
+        m_NbRows = rows.length;
+        m_Attrs = attrs;
+        m_Mins = mins;
+        m_NormalizationWeights = normalizationWeights;
+        m_Numeric = new double[nbAttrs][];
+        m_Missing = new boolean[nbAttrs][];
+        m_Nominal = new int[nbAttrs][];
+        m_NbValues = new int[nbAttrs];
+        m_AttrWeights = new double[nbAttrs];
+        Arrays.fill(m_AttrWeights, 1.0);
+        m_NominalMissingDistances = new double[nbAttrs];
+        Arrays.fill(m_NominalMissingDistances, 1.0);
+        for (int attr = 0; attr < nbAttrs; attr++) {
+            ClusAttrType type = attrs[attr];
+            if (type instanceof NumericAttrType) {
+                double[] column = new double[m_NbRows];
+                boolean[] missing = new boolean[m_NbRows];
+                for (int row = 0; row < m_NbRows; row++) {
+                    column[row] = type.getNumeric(rows[row]);
+                    missing[row] = type.isMissing(rows[row]);
+                }
+                m_Numeric[attr] = column;
+                m_Missing[attr] = missing;
+            }
+            else if (type instanceof NominalAttrType) {
+                int[] column = new int[m_NbRows];
+                for (int row = 0; row < m_NbRows; row++) {
+                    column[row] = type.getNominal(rows[row]);
+                }
+                m_Nominal[attr] = column;
+                m_NbValues[attr] = ((NominalAttrType) type).m_NbValues;
+            }
+        }
+    }
+
+
+    /**
+     * Sets the weights of the attributes, used by {@link #NORM_EUCLIDEAN}. By default, all the weights are 1.
+     */
+    public void setAttributeWeights(double[] weights) {
+        m_AttrWeights = weights;
+    }
+
+
+    /**
+     * Sets the distance between two missing values of a numeric attribute (1 by default).
+     */
+    public void setBothMissingDistance(double dist) {
+        m_BothMissingDistance = dist;
+    }
+
+
+    /**
+     * Sets the distances between a missing and any other value of the nominal attributes (1 by default).
+     */
+    public void setNominalMissingDistances(double[] dists) {
+        m_NominalMissingDistances = dists;
+    }
+
+
+    public int getNbRows() {
+        return m_NbRows;
+    }
+
+
+    public int getNbAttributes() {
+        return m_Attrs.length;
+    }
+
+
+    /**
+     * @return True if the block contains the values of the attribute with the given index, i.e., if it is numeric or
+     *         nominal.
+     */
+    public boolean isSupported(int attr) {
+        return m_Numeric[attr] != null || m_Nominal[attr] != null;
+    }
+
+
+    /**
+     * Extracts the values of the tuple, so that the distances between the tuple and the rows of the block can be
+     * computed.
+     */
+    public Query compileQuery(DataTuple tuple) {
+        Query query = new Query(m_Attrs.length);
+        for (int attr = 0; attr < m_Attrs.length; attr++) {
+            if (m_Numeric[attr] != null) {
+                query.setNumeric(attr, m_Attrs[attr].getNumeric(tuple), m_Attrs[attr].isMissing(tuple));
+            }
+            else if (m_Nominal[attr] != null) {
+                query.m_NominalValues[attr] = m_Attrs[attr].getNominal(tuple);
+            }
+        }
+        return query;
+    }
+
+
+    /**
+     * The same as {@link #compileQuery(DataTuple)} for the tuple in the given row of the block.
+     */
+    public Query compileQuery(int row) {
+        Query query = new Query(m_Attrs.length);
+        for (int attr = 0; attr < m_Attrs.length; attr++) {
+            if (m_Numeric[attr] != null) {
+                query.setNumeric(attr, m_Numeric[attr][row], m_Missing[attr][row]);
+            }
+            else if (m_Nominal[attr] != null) {
+                query.m_NominalValues[attr] = m_Nominal[attr][row];
+            }
+        }
+        return query;
+    }
+
+
+    /**
+     * Computes the distances between the query and all the rows of the block: distances[row] = distance(query, row).
+     * The attributes are processed one at a time, each in a single pass over its column.
+     * 
+     * @param norm
+     *        One of {@link #NORM_MANHATTAN}, {@link #NORM_EUCLIDEAN} and {@link #NORM_CHEBYSHEV}.
+     */
+    public void calcDistances(Query query, int norm, double[] distances) {
+        Arrays.fill(distances, 0, m_NbRows, 0.0);
+        for (int attr = 0; attr < m_Attrs.length; attr++) {
+            double weight = norm == NORM_EUCLIDEAN ? m_AttrWeights[attr] : 1.0;
+            if (m_Numeric[attr] != null) {
+                addNumericDistances(query, attr, norm, weight, distances);
+            }
+            else if (m_Nominal[attr] != null) {
+                addNominalDistances(query, attr, norm, weight, distances);
+            }
+        }
+        if (norm == NORM_EUCLIDEAN) {
+            for (int row = 0; row < m_NbRows; row++) {
+                distances[row] = Math.sqrt(distances[row]);
+            }
+        }
+    }
+
+
+    /**
+     * @return The distance between the query and the given row of the block, see
+     *         {@link #calcDistances(Query, int, double[])}.
+     */
+    public double calcDistance(Query query, int row, int norm) {
+        double dist = 0.0;
+        for (int attr = 0; attr < m_Attrs.length; attr++) {
+            if (isSupported(attr)) {
+                double d = calcDistance1D(query, attr, row);
+                if (norm == NORM_EUCLIDEAN) {
+                    dist += d * d * m_AttrWeights[attr];
+                }
+                else if (norm == NORM_CHEBYSHEV) {
+                    dist = Math.max(dist, d);
+                }
+                else {
+                    dist += d;
+                }
+            }
+        }
+        return norm == NORM_EUCLIDEAN ? Math.sqrt(dist) : dist;
+    }
+
+
+    /**
+     * @return The distance between the rows row1 and row2 of the block in the attribute with the given index.
+     */
+    public double calcDistance1D(int attr, int row1, int row2) {
+        if (m_Numeric[attr] != null) {
+            boolean missing1 = m_Missing[attr][row1];
+            boolean missing2 = m_Missing[attr][row2];
+            if (missing1 || missing2) {
+                if (missing1 && missing2) { return m_BothMissingDistance; }
+                return distanceToMissing(missing1 ? m_Numeric[attr][row2] : m_Numeric[attr][row1], attr);
+            }
+            return Math.abs(m_Numeric[attr][row1] - m_Numeric[attr][row2]) * m_NormalizationWeights[attr];
+        }
+        else if (m_Nominal[attr] != null) {
+            return nominalDistance(m_Nominal[attr][row1], m_Nominal[attr][row2], attr);
+        }
+        return 0.0;
+    }
+
+
+    private double calcDistance1D(Query query, int attr, int row) {
+        if (m_Numeric[attr] != null) {
+            if (m_Missing[attr][row]) { return query.m_IsMissing[attr] ? m_BothMissingDistance : query.m_ToMissing[attr]; }
+            if (query.m_IsMissing[attr]) { return distanceToMissing(m_Numeric[attr][row], attr); }
+            return Math.abs(query.m_NumericValues[attr] - m_Numeric[attr][row]) * m_NormalizationWeights[attr];
+        }
+        return nominalDistance(query.m_NominalValues[attr], m_Nominal[attr][row], attr);
+    }
+
+
+    private void addNumericDistances(Query query, int attr, int norm, double weight, double[] distances) {
+        double[] column = m_Numeric[attr];
+        boolean[] missing = m_Missing[attr];
+        double normWeight = m_NormalizationWeights[attr];
+        if (query.m_IsMissing[attr]) {
+            double min = m_Mins[attr];
+            for (int row = 0; row < m_NbRows; row++) {
+                double d;
+                if (missing[row]) {
+                    d = m_BothMissingDistance;
+                }
+                else {
+                    double t = (column[row] - min) * normWeight;
+                    d = Math.max(t, 1.0 - t);
+                }
+                distances[row] = accumulate(distances[row], d, norm, weight);
+            }
+        }
+        else {
+            double value = query.m_NumericValues[attr];
+            double toMissing = query.m_ToMissing[attr];
+            for (int row = 0; row < m_NbRows; row++) {
+                double d = missing[row] ? toMissing : Math.abs(value - column[row]) * normWeight;
+                distances[row] = accumulate(distances[row], d, norm, weight);
+            }
+        }
+    }
+
+
+    private void addNominalDistances(Query query, int attr, int norm, double weight, double[] distances) {
+        int[] column = m_Nominal[attr];
+        int nbValues = m_NbValues[attr];
+        double missingDist = m_NominalMissingDistances[attr];
+        int value = query.m_NominalValues[attr];
+        if (value >= nbValues) {
+            for (int row = 0; row < m_NbRows; row++) {
+                distances[row] = accumulate(distances[row], missingDist, norm, weight);
+            }
+        }
+        else {
+            for (int row = 0; row < m_NbRows; row++) {
+                int other = column[row];
+                double d = other >= nbValues ? missingDist : (other == value ? 0.0 : 1.0);
+                distances[row] = accumulate(distances[row], d, norm, weight);
+            }
+        }
+    }
+
+
+    private static double accumulate(double dist, double d, int norm, double weight) {
+        switch (norm) {
+            case NORM_EUCLIDEAN:
+                return dist + d * d * weight;
+            case NORM_CHEBYSHEV:
+                return Math.max(dist, d);
+            default:
+                return dist + d;
+        }
+    }
+
+
+    private double distanceToMissing(double value, int attr) {
+        double t = (value - m_Mins[attr]) * m_NormalizationWeights[attr];
+        return Math.max(t, 1.0 - t);
+    }
+
+
+    private double nominalDistance(int v1, int v2, int attr) {
+        int nbValues = m_NbValues[attr];
+        if (v1 >= nbValues || v2 >= nbValues) { return m_NominalMissingDistances[attr]; }
+        return v1 == v2 ? 0.0 : 1.0;
+    }
+
+    /**
+     * The values of a tuple whose distances to the rows of a {@link DenseFeatureBlock} are computed.
+     */
+    public class Query {
+
+        private double[] m_NumericValues;
+        private boolean[] m_IsMissing;
+        /** m_ToMissing[attribute]: distance between the numeric value of the query and a missing value */
+        private double[] m_ToMissing;
+        private int[] m_NominalValues;
+
+
+        private Query(int nbAttrs) {
+            m_NumericValues = new double[nbAttrs];
+            m_IsMissing = new boolean[nbAttrs];
+            m_ToMissing = new double[nbAttrs];
+            m_NominalValues = new int[nbAttrs];
+        }
+
+
+        private void setNumeric(int attr, double value, boolean missing) {
+            m_NumericValues[attr] = value;
+            m_IsMissing[attr] = missing;
+            m_ToMissing[attr] = missing ? m_BothMissingDistance : distanceToMissing(value, attr);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.ext.ensembles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import clus.algo.tdidt.ClusNode;
+import clus.data.rows.DataTuple;
+import clus.data.rows.RowData;
+import clus.data.type.NominalAttrType;
+import clus.data.type.NumericAttrType;
+import clus.ext.hierarchical.WHTDStatistic;
+import clus.main.Settings;
+import clus.model.ClusModel;
+import clus.model.test.InverseNumericTest;
+import clus.model.test.NodeTest;
+import clus.model.test.NominalTest;
+import clus.model.test.NumericTest;
+import clus.model.test.SubsetTest;
+import clus.statistic.ClassificationStat;
+import clus.statistic.ClusStatistic;
+import clus.statistic.RegressionStat;
+import clus.statistic.RegressionStatBase;
+import clus.util.ClusException;
+import clus.util.ClusParallel;
+
+
+/**
+ * Read-only, array based copy of the trees of a {@link ClusForest}, used for predicting a whole {@link RowData} at
+ * once. The nodes of all trees are stored in parallel arrays (the kind of the test, the attribute, the bound, the
+ * children), and the vote of each leaf is precomputed into one shared array. Prediction walks the forest tree by
+ * tree and adds the votes of the reached leaves to one {@code double[]} per example, exactly as
+ * {@link ClusStatistic#vote(ArrayList)} would combine them.
+ * 
+ * Nodes with tests that are not compiled (e.g., tests on sparse attributes) and examples with a missing value for
+ * the tested attribute are handed over to {@link ClusNode#predictWeighted(DataTuple)} of the original node.
+ */
+public class ClusCompiledForest {
+
+    public final static int NODE_LEAF = 0;
+    public final static int NODE_NUMERIC = 1;
+    public final static int NODE_INVERSE_NUMERIC = 2;
+    public final static int NODE_NOMINAL = 3;
+    public final static int NODE_OTHER = 4;
+
+    /** Number of rows that a thread predicts in one go. */
+    public final static int BLOCK_SIZE = 1024;
+
+    /** The statistic of the forest, used as the template for the predictions. */
+    private ClusStatistic m_Stat;
+    /** Length of the vote vector of one example. */
+    private int m_VoteLength;
+    /** Number of trees, i.e., the number of votes per example. */
+    private int m_NbTrees;
+
+    /** Index of the root node of each tree. */
+    private int[] m_Roots;
+    private int[] m_Kind;
+    /** Array index (in {@code DataTuple.m_Doubles} or {@code DataTuple.m_Ints}) of the tested attribute. */
+    private int[] m_AttrIndex;
+    private double[] m_Bound;
+    /** Index of the first child in {@code m_Children}, or the first element of the vote in {@code m_Leaves}. */
+    private int[] m_Offset;
+    /** Index of the branch table of a nominal node in {@code m_Branches}. */
+    private int[] m_BranchOffset;
+    /** Number of entries in the branch table of a nominal node, i.e., the number of values of the attribute. */
+    private int[] m_NbBranches;
+    private int[] m_Children;
+    /** For each value of the attribute, the index of the child, or {@code -1} if the value is missing. */
+    private int[] m_Branches;
+    private double[] m_Leaves;
+    /** The original nodes, used for the cases that are not compiled. */
+    private ClusNode[] m_Nodes;
+
+    private int m_NbNodes, m_NbChildren, m_NbBranchValues, m_NbLeafValues;
+
+    /** Threads of {@link #predictVotes(RowData, int)}, kept for the next call; null if only one thread is used. */
+    private ThreadPoolExecutor m_Executor;
+
+
+    /**
+     * @param forest
+     *        The forest to be compiled. The trees must not change afterwards.
+     * @throws ClusException
+     *         If the statistic of the forest or one of its models is not supported (see {@link #isSupported(ClusForest)}).
+     */
+    public ClusCompiledForest(ClusForest forest) throws ClusException {
+        if (!isSupported(forest)) {
+            throw new ClusException("Cannot compile a forest with statistic " + (forest.getStat() == null ? "null" : forest.getStat().getClass().getName()));
+        }
+        m_Stat = forest.getStat();
+        m_VoteLength = getVoteLength(m_Stat);
+        ArrayList<ClusModel> models = forest.getModels();
+        m_NbTrees = models.size();
+
+        int nbNodes = 0;
+        for (int i = 0; i < m_NbTrees; i++) {
+            nbNodes += ((ClusNode) models.get(i)).getNbNodes();
+        }
+        m_Roots = new int[m_NbTrees];
+        m_Kind = new int[nbNodes];
+        m_AttrIndex = new int[nbNodes];
+        m_Bound = new double[nbNodes];
+        m_Offset = new int[nbNodes];
+        m_BranchOffset = new int[nbNodes];
+        m_NbBranches = new int[nbNodes];
+        m_Nodes = new ClusNode[nbNodes];
+        m_Children = new int[Math.max(nbNodes - m_NbTrees, 0)];
+        m_Branches = new int[16];
+        m_Leaves = new double[16 * m_VoteLength];
+
+        for (int i = 0; i < m_NbTrees; i++) {
+            m_Roots[i] = addNode((ClusNode) models.get(i));
+        }
+        m_Branches = Arrays.copyOf(m_Branches, m_NbBranchValues);
+        m_Leaves = Arrays.copyOf(m_Leaves, m_NbLeafValues);
+    }
+
+
+    /**
+     * @return True if the forest consists of {@link ClusNode} trees only and its statistic is a
+     *         {@link ClassificationStat}, {@link RegressionStat} or {@link WHTDStatistic}.
+     */
+    public static boolean isSupported(ClusForest forest) {
+        ClusStatistic stat = forest.getStat();
+        if (stat == null) { return false; }
+        Class<?> cls = stat.getClass();
+        if (cls != ClassificationStat.class && cls != RegressionStat.class && cls != WHTDStatistic.class) { return false; }
+        ArrayList<ClusModel> models = forest.getModels();
+        for (int i = 0; i < models.size(); i++) {
+            if (!(models.get(i) instanceof ClusNode)) { return false; }
+        }
+        return true;
+    }
+
+
+    public int getNbTrees() {
+        return m_NbTrees;
+    }
+
+
+    public int getNbNodes() {
+        return m_NbNodes;
+    }
+
+
+    public int getVoteLength() {
+        return m_VoteLength;
+    }
+
+
+    /**
+     * Adds the node and (recursively) its subtree to the arrays.
+     * 
+     * @return The index of the node.
+     */
+    private int addNode(ClusNode node) {
+        int idx = m_NbNodes++;
+        m_Nodes[idx] = node;
+        if (node.atBottomLevel()) {
+            m_Kind[idx] = NODE_LEAF;
+            m_Offset[idx] = m_NbLeafValues;
+            ensureLeafCapacity(m_NbLeafValues + m_VoteLength);
+            addVote(node.getTargetStat(), m_Leaves, m_NbLeafValues);
+            m_NbLeafValues += m_VoteLength;
+            return idx;
+        }
+        NodeTest test = node.getTest();
+        int arity = node.getNbChildren();
+        Class<?> cls = test.getClass();
+        Class<?> type = test.getType().getClass();
+        if ((cls == NumericTest.class || cls == InverseNumericTest.class) && type == NumericAttrType.class) {
+            m_Kind[idx] = cls == NumericTest.class ? NODE_NUMERIC : NODE_INVERSE_NUMERIC;
+            m_AttrIndex[idx] = ((NumericTest) test).getNumType().getArrayIndex();
+            m_Bound[idx] = ((NumericTest) test).getBound();
+        }
+        else if ((cls == NominalTest.class || cls == SubsetTest.class) && type == NominalAttrType.class) {
+            NominalAttrType attr = (NominalAttrType) test.getType();
+            int nbValues = attr.getNbValues();
+            m_Kind[idx] = NODE_NOMINAL;
+            m_AttrIndex[idx] = attr.getArrayIndex();
+            m_BranchOffset[idx] = m_NbBranchValues;
+            m_NbBranches[idx] = nbValues;
+            ensureBranchCapacity(m_NbBranchValues + nbValues);
+            for (int v = 0; v < nbValues; v++) {
+                int branch = test.nominalPredictWeighted(v);
+                m_Branches[m_NbBranchValues + v] = branch >= 0 && branch < arity ? branch : -1;
+            }
+            m_NbBranchValues += nbValues;
+        }
+        else {
+            m_Kind[idx] = NODE_OTHER;
+        }
+        // children are stored next to each other, the subtrees follow afterwards
+        int first = m_NbChildren;
+        m_Offset[idx] = first;
+        m_NbChildren += arity;
+        for (int i = 0; i < arity; i++) {
+            m_Children[first + i] = addNode((ClusNode) node.getChild(i));
+        }
+        return idx;
+    }
+
+
+    private void ensureBranchCapacity(int size) {
+        if (size > m_Branches.length) {
+            m_Branches = Arrays.copyOf(m_Branches, Math.max(size, 2 * m_Branches.length));
+        }
+    }
+
+
+    private void ensureLeafCapacity(int size) {
+        if (size > m_Leaves.length) {
+            m_Leaves = Arrays.copyOf(m_Leaves, Math.max(size, 2 * m_Leaves.length));
+        }
+    }
+
+
+    /**
+     * Classification: the class proportions (or the predicted class when majority voting is used) of all the
+     * targets, followed by the weights of the targets and the total weight. Regression and HMC: the means.
+     */
+    private int getVoteLength(ClusStatistic stat) {
+        if (stat instanceof ClassificationStat) {
+            ClassificationStat cstat = (ClassificationStat) stat;
+            int len = 0;
+            for (int i = 0; i < cstat.m_NbTarget; i++) {
+                len += cstat.m_ClassCounts[i].length;
+            }
+            return len + cstat.m_NbTarget + 1;
+        }
+        else {
+            return stat.getNbAttributes();
+        }
+    }
+
+
+    /**
+     * Adds the vote of one tree to {@code votes}, starting at position {@code offset}.
+     */
+    private void addVote(ClusStatistic vote, double[] votes, int offset) {
+        if (vote instanceof ClassificationStat) {
+            ClassificationStat cvote = (ClassificationStat) vote;
+            int nbTarget = cvote.m_NbTarget;
+            int pos = offset;
+            if (Settings.m_ClassificationVoteType.getValue() == Settings.VOTING_TYPE_MAJORITY) {
+                int[] pred = cvote.getNominalPred();
+                for (int i = 0; i < nbTarget; i++) {
+                    votes[pos + pred[i]] += 1.0;
+                    pos += cvote.m_ClassCounts[i].length;
+                }
+                for (int i = 0; i < nbTarget; i++) {
+                    votes[pos + i] += 1.0;
+                }
+                votes[pos + nbTarget] += 1.0;
+            }
+            else {
+                for (int i = 0; i < nbTarget; i++) {
+                    int nbClasses = cvote.m_ClassCounts[i].length;
+                    for (int j = 0; j < nbClasses; j++) {
+                        votes[pos + j] += cvote.getProportion(i, j);
+                    }
+                    pos += nbClasses;
+                }
+                for (int i = 0; i < nbTarget; i++) {
+                    votes[pos + i] += cvote.m_SumWeights[i];
+                }
+                votes[pos + nbTarget] += cvote.m_SumWeight;
+            }
+        }
+        else {
+            double[] means = ((RegressionStatBase) vote).m_Means;
+            for (int i = 0; i < m_VoteLength; i++) {
+                votes[offset + i] += means[i] / m_NbTrees;
+            }
+        }
+    }
+
+
+    /**
+     * Adds the vote of one tree for the given tuple.
+     */
+    private void addTreeVote(int node, DataTuple tuple, double[] votes) {
+        while (true) {
+            int child;
+            switch (m_Kind[node]) {
+                case NODE_LEAF:
+                    double[] leaves = m_Leaves;
+                    int offset = m_Offset[node];
+                    for (int i = 0; i < m_VoteLength; i++) {
+                        votes[i] += leaves[offset + i];
+                    }
+                    return;
+                case NODE_NUMERIC:
+                case NODE_INVERSE_NUMERIC:
+                    double dval = tuple.getDoubleVal(m_AttrIndex[node]);
+                    if (dval == NumericAttrType.MISSING) {
+                        child = -1;
+                    }
+                    else if (m_Kind[node] == NODE_NUMERIC) {
+                        child = dval > m_Bound[node] ? ClusNode.YES : ClusNode.NO;
+                    }
+                    else {
+                        child = dval <= m_Bound[node] ? ClusNode.YES : ClusNode.NO;
+                    }
+                    break;
+                case NODE_NOMINAL:
+                    int ival = tuple.getIntVal(m_AttrIndex[node]);
+                    child = (ival >= 0 && ival < m_NbBranches[node]) ? m_Branches[m_BranchOffset[node] + ival] : -1;
+                    break;
+                default:
+                    child = -1;
+            }
+            if (child == -1) {
+                addVote(m_Nodes[node].predictWeighted(tuple), votes, 0);
+                return;
+            }
+            node = m_Children[m_Offset[node] + child];
+        }
+    }
+
+
+    /**
+     * Computes the combined votes of all trees for the rows {@code start, ..., end - 1}.
+     */
+    public void predictVotes(RowData data, int start, int end, double[][] votes) {
+        for (int r = start; r < end; r++) {
+            if (votes[r] == null) {
+                votes[r] = new double[m_VoteLength];
+            }
+            else {
+                Arrays.fill(votes[r], 0.0);
+            }
+        }
+        // tree by tree, so that the nodes of one tree stay in the cache for the whole block
+        for (int t = 0; t < m_NbTrees; t++) {
+            int root = m_Roots[t];
+            for (int r = start; r < end; r++) {
+                addTreeVote(root, data.getTuple(r), votes[r]);
+            }
+        }
+    }
+
+
+    /**
+     * Computes the combined votes of all trees for all rows of the data. The rows are split into blocks of
+     * {@link #BLOCK_SIZE}, and each thread processes a contiguous range of blocks.
+     * 
+     * @return The votes, one array of length {@link #getVoteLength()} per row.
+     */
+    public double[][] predictVotes(final RowData data, int nbThreads) {
+        final int nbRows = data.getNbRows();
+        final double[][] votes = new double[nbRows][];
+        int nbBlocks = (nbRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ClusParallel.parallelFor(getExecutor(nbThreads), 0, nbBlocks, 1, block -> {
+            predictVotes(data, block * BLOCK_SIZE, Math.min((block + 1) * BLOCK_SIZE, nbRows), votes);
+        });
+        return votes;
+    }
+
+
+    private synchronized ThreadPoolExecutor getExecutor(int nbThreads) {
+        if (nbThreads <= 1) {
+            return null;
+        }
+        if (m_Executor == null || m_Executor.getMaximumPoolSize() != nbThreads) {
+            m_Executor = ClusParallel.createDaemonPool(nbThreads, "ClusCompiledForest");
+        }
+        return m_Executor;
+    }
+
+
+    /**
+     * Converts the combined votes of one example into a prediction, equal to the one obtained by
+     * {@link ClusStatistic#vote(ArrayList)}.
+     */
+    public ClusStatistic createPrediction(double[] votes) {
+        ClusStatistic stat = m_Stat.cloneSimple();
+        if (stat instanceof ClassificationStat) {
+            // a regression statistic that only holds means has no sums to reset
+            stat.reset();
+            ClassificationStat cstat = (ClassificationStat) stat;
+            int nbTarget = cstat.m_NbTarget;
+            int pos = 0;
+            for (int i = 0; i < nbTarget; i++) {
+                double[] counts = cstat.m_ClassCounts[i];
+                System.arraycopy(votes, pos, counts, 0, counts.length);
+                pos += counts.length;
+            }
+            for (int i = 0; i < nbTarget; i++) {
+                cstat.m_SumWeights[i] = votes[pos + i];
+            }
+            cstat.m_SumWeight = votes[pos + nbTarget];
+            cstat.calcMean();
+        }
+        else {
+            ((RegressionStatBase) stat).m_Means = Arrays.copyOf(votes, m_VoteLength);
+            if (stat instanceof WHTDStatistic) {
+                stat.computePrediction();
+            }
+        }
+        return stat;
+    }
+
+}
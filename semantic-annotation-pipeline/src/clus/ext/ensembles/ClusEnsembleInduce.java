@@ -32,7 +32,6 @@ import java.util.HashMap;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -62,12 +61,14 @@ import clus.main.ClusSummary;
 import clus.main.Settings;
 import clus.model.ClusModel;
 import clus.model.ClusModelInfo;
+import clus.model.modelio.ClusBinaryForestWriter;
 import clus.model.modelio.ClusModelCollectionIO;
 import clus.selection.BaggingSelection;
 import clus.selection.OOBSelection;
 import clus.statistic.ClusStatistic;
 import clus.statistic.ComponentStatistic;
 import clus.util.ClusException;
+import clus.util.ClusParallel;
 import clus.util.ClusRandom;
 import clus.util.ClusRandomNonstatic;
 import clus.util.cloner.Cloner;
@@ -205,6 +206,46 @@ public class ClusEnsembleInduce extends ClusInductionAlgorithm {
         }
     }
 
+
+    /**
+     * Creates the pool that grows the trees of the ensemble. Each tree is one task; the stat manager that a task needs
+     * is only copied when the task starts (see {@link ClusStatManagerFactory}).
+     */
+    private ExecutorService createExecutor() {
+        return ClusParallel.createDaemonPool(m_NbThreads, "ClusEnsembleInduce");
+    }
+
+
+    /**
+     * @return The writer of the binary forest file (appName.forest), or {@code null} if the trees should not be
+     *         written, see {@link Settings#isWriteBinaryForest()}. The trees are not kept when memory optimisation is
+     *         used, so nothing is written in that case.
+     */
+    private ClusBinaryForestWriter createForestWriter() throws IOException {
+        if (!Settings.isWriteBinaryForest() || m_OptMode) { return null; }
+        return new ClusBinaryForestWriter(getSettings().getFileAbsolute(getSettings().getAppName() + ".forest"), getSchema());
+    }
+
+
+    /**
+     * Appends the tree of each bag to the binary forest file as soon as it is induced, in bag order, so that the file
+     * is written while the later bags are still being built.
+     */
+    private void writeBinaryForest(ArrayList<Future<OneBagResults>> bagResults) throws IOException, InterruptedException {
+        ClusBinaryForestWriter forestWriter = createForestWriter();
+        if (forestWriter == null) { return; }
+        for (Future<OneBagResults> future : bagResults) {
+            try {
+                forestWriter.writeTree((ClusNode) future.get().getModel());
+            }
+            catch (ExecutionException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+        forestWriter.close();
+    }
+
     
     public void setNbFeatureRankings(ClusSchema schema, ClusStatManager mgr){
         for(int forest = 0; forest < m_FeatureRankings.length; forest++){
@@ -589,12 +630,9 @@ public class ClusEnsembleInduce extends ClusInductionAlgorithm {
         }
 
         Cloner cloner = new Cloner();
-        ClusStatManager[] statManagerClones = new ClusStatManager[m_NbMaxBags];
-        for (int i = 0; i < statManagerClones.length; i++) {
-            statManagerClones[i] = cloner.deepClone(cr.getStatManager()); // must be cloned here
-        }
+        ClusStatManagerFactory statManagerFactory = new ClusStatManagerFactory(cr.getStatManager()); // must be created here
 
-        ExecutorService executor = Executors.newFixedThreadPool(m_NbThreads);
+        ExecutorService executor = createExecutor();
         ArrayList<Future<OneBagResults>> bagResults = new ArrayList<Future<OneBagResults>>();
 
         if (bagSelections[0] == -1) {
@@ -615,7 +653,7 @@ public class ClusEnsembleInduce extends ClusInductionAlgorithm {
                 }
                 OOBSelection current_oob_total = cloner.deepClone(oob_total);
                 // induceOneBag(cr, i, origMaxDepth, oob_sel, oob_total, train_iterator, test_iterator, msel, rnd);
-                InduceOneBagCallable worker = new InduceOneBagCallable(this, cr, i, origMaxDepth, oob_sel, current_oob_total, train_iterator, test_iterator, msel, rnd, statManagerClones[i - 1]); 
+                InduceOneBagCallable worker = new InduceOneBagCallable(this, cr, i, origMaxDepth, oob_sel, current_oob_total, train_iterator, test_iterator, msel, rnd, statManagerFactory);
                 Future<OneBagResults> submit = executor.submit(worker);
                 bagResults.add(submit);
             }
@@ -639,13 +677,14 @@ public class ClusEnsembleInduce extends ClusInductionAlgorithm {
                     oob_sel = new OOBSelection(msel);
                 }
                 // induceOneBag(cr, i, origMaxDepth, oob_sel, oob_total, train_iterator, test_iterator, msel, rnd);
-                InduceOneBagCallable worker = new InduceOneBagCallable(this, cr, i, origMaxDepth, oob_sel, oob_total, train_iterator, test_iterator, msel, rnd, cloner.deepClone(cr.getStatManager()));
+                InduceOneBagCallable worker = new InduceOneBagCallable(this, cr, i, origMaxDepth, oob_sel, oob_total, train_iterator, test_iterator, msel, rnd, statManagerFactory);
                 Future<OneBagResults> submit = executor.submit(worker);
                 bagResults.add(submit);
             }
         }
 
         executor.shutdown();
+        writeBinaryForest(bagResults);
         executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
 
         for (int i = 1; i <= bagResults.size(); i++) { // must start with 1 and end with the size
@@ -1134,23 +1173,20 @@ public class ClusEnsembleInduce extends ClusInductionAlgorithm {
             seeds[i] = bagSeedGenerator.nextInt();
         }
 
-        Cloner cloner = new Cloner();
-        ClusStatManager[] statManagerClones = new ClusStatManager[m_NbMaxBags];
-        for (int i = 0; i < statManagerClones.length; i++) {
-            statManagerClones[i] = cloner.deepClone(cr.getStatManager()); // must be cloned here
-        }
+        ClusStatManagerFactory statManagerFactory = new ClusStatManagerFactory(cr.getStatManager()); // must be created here
 
-        ExecutorService executor = Executors.newFixedThreadPool(m_NbThreads);
+        ExecutorService executor = createExecutor();
         ArrayList<Future<OneBagResults>> bagResults = new ArrayList<Future<OneBagResults>>();
 
         for (int i = 1; i <= m_NbMaxBags; i++) {
             ClusRandomNonstatic rnd = new ClusRandomNonstatic(seeds[i - 1]);
-            InduceExtraTreeCallable worker = new InduceExtraTreeCallable(this, cr, i, train_iterator, test_iterator, rnd, statManagerClones[i - 1]); // <-- induceExtraTree(cr, i, train_iterator, test_iterator, rnd, summ_time, one_bag_time, statManagerClones[i - 1]);
+            InduceExtraTreeCallable worker = new InduceExtraTreeCallable(this, cr, i, train_iterator, test_iterator, rnd, statManagerFactory); // <-- induceExtraTree(cr, i, train_iterator, test_iterator, rnd, summ_time, one_bag_time, mgr);
             Future<OneBagResults> submit = executor.submit(worker);
             bagResults.add(submit);
         }
 
         executor.shutdown();
+        writeBinaryForest(bagResults);
         executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
 
         for (int i = 1; i <= bagResults.size(); i++) { // must start with 1 and end with the size
@@ -86,6 +86,9 @@ public class ClusForest implements ClusModel, Serializable {
     
     ClusEnsembleInduceOptimization m_Optimization;
 
+    /** Array based copy of the trees, used by {@link #predictWeightedBatch(RowData, int)}. Built on demand. */
+    private transient ClusCompiledForest m_Compiled;
+
 
     public ClusForest() {
         m_Forest = new ArrayList<ClusModel>();
@@ -144,6 +147,7 @@ public class ClusForest implements ClusModel, Serializable {
 
     public synchronized void addModelToForest(ClusModel model) {
         m_Forest.add(model);
+        m_Compiled = null;
     }
 
 
@@ -303,6 +307,46 @@ public class ClusForest implements ClusModel, Serializable {
     }
 
 
+    /**
+     * @return True if {@link #predictWeightedBatch(RowData, int)} can be used, i.e., the forest predicts with
+     *         {@link #predictWeightedStandard(DataTuple)} and its trees can be compiled.
+     */
+    public boolean canPredictBatch() {
+        return ClusEnsembleInduce.m_EnsembleROSScope == Settings.ENSEMBLE_ROS_VOTING_FUNCTION_SCOPE_NONE && !ClusOOBErrorEstimate.isOOBCalculation() && !ClusEnsembleInduce.isOptimized() && ClusCompiledForest.isSupported(this);
+    }
+
+
+    public synchronized ClusCompiledForest getCompiledForest() throws ClusException {
+        if (m_Compiled == null) {
+            m_Compiled = new ClusCompiledForest(this);
+        }
+        return m_Compiled;
+    }
+
+
+    /**
+     * Predicts all rows of the data at once. The result is the same as calling {@link #predictWeighted(DataTuple)}
+     * for each row, but each prediction is a new statistic, and the votes of the individual trees are not passed to
+     * {@link ClusEnsemblePredictionWriter}.
+     * 
+     * @param nbThreads
+     *        Number of threads used for the prediction
+     * @throws ClusException
+     *         If {@link #canPredictBatch()} is false.
+     */
+    public ClusStatistic[] predictWeightedBatch(RowData data, int nbThreads) throws ClusException {
+        if (!canPredictBatch()) { throw new ClusException("Batch prediction is not supported for this forest"); }
+        ClusCompiledForest compiled = getCompiledForest();
+        double[][] votes = compiled.predictVotes(data, nbThreads);
+        ClusStatistic[] predictions = new ClusStatistic[votes.length];
+        for (int i = 0; i < votes.length; i++) {
+            predictions[i] = compiled.createPrediction(votes[i]);
+            votes[i] = null;
+        }
+        return predictions;
+    }
+
+
     public ClusStatistic predictWeightedStandard(DataTuple tuple) {
         ArrayList<ClusStatistic> votes = new ArrayList<ClusStatistic>();
         for (int i = 0; i < m_Forest.size(); i++) {
@@ -328,8 +372,9 @@ public class ClusForest implements ClusModel, Serializable {
 
     public ClusStatistic predictWeightedOOBRegressionHMC(DataTuple tuple) {
         double[] predictions = null;
-        if (ClusOOBErrorEstimate.containsPredictionForTuple(tuple))
-            predictions = ClusOOBErrorEstimate.getPredictionForRegressionHMCTuple(tuple);
+        ClusOOBErrorEstimate oob = ClusOOBErrorEstimate.getActiveEstimate();
+        if (oob != null && oob.containsPredictionForTuple(tuple))
+            predictions = oob.getPredictionForRegressionHMCTuple(tuple);
         else {
             System.err.println(this.getClass().getName() + ".predictWeightedOOBRegressionHMC(DataTuple) - Missing Prediction For Tuple");
             System.err.println("Tuple Hash = " + tuple.hashCode());
@@ -349,8 +394,9 @@ public class ClusForest implements ClusModel, Serializable {
 
     public ClusStatistic predictWeightedOOBClassification(DataTuple tuple) {
         double[][] predictions = null;
-        if (ClusOOBErrorEstimate.containsPredictionForTuple(tuple))
-            predictions = ClusOOBErrorEstimate.getPredictionForClassificationTuple(tuple);
+        ClusOOBErrorEstimate oob = ClusOOBErrorEstimate.getActiveEstimate();
+        if (oob != null && oob.containsPredictionForTuple(tuple))
+            predictions = oob.getPredictionForClassificationTuple(tuple);
         else {
             System.err.println(this.getClass().getName() + ".predictWeightedOOBClassification(DataTuple) - Missing Prediction For Tuple");
             System.err.println("Tuple Hash = " + tuple.hashCode());
@@ -570,6 +616,7 @@ public class ClusForest implements ClusModel, Serializable {
 
     public void setStat(ClusStatistic stat) {
         m_Stat = stat;
+        m_Compiled = null;
     }
 
 
@@ -577,6 +624,7 @@ public class ClusForest implements ClusModel, Serializable {
         try {
             HierClassTresholdPruner pruner = new HierClassTresholdPruner(null);
             pruner.pruneRecursive((ClusNode) getModel(model_nb), threshold);
+            m_Compiled = null;
         }
         catch (ClusException e) {
             System.err.println(getClass().getName() + " thresholdToModel(): Error while applying threshold " + threshold + " to model " + model_nb);
@@ -588,13 +636,14 @@ public class ClusForest implements ClusModel, Serializable {
     /**
      * Return the list of decision trees = the ensemble.
      */
-    public ArrayList getModels() {
+    public ArrayList<ClusModel> getModels() {
         return m_Forest;
     }
 
 
-    public void setModels(ArrayList models) {
+    public void setModels(ArrayList<ClusModel> models) {
         m_Forest = models;
+        m_Compiled = null;
     }
 
 
@@ -627,6 +676,7 @@ public class ClusForest implements ClusModel, Serializable {
 
     public void removeModels() {
         m_Forest.clear();
+        m_Compiled = null;
     }
 
 
@@ -3,7 +3,7 @@ package clus.ext.ensembles;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 import clus.Clus;
 import clus.data.rows.DataTuple;
@@ -25,51 +25,90 @@ import clus.statistic.RegressionStat;
 import clus.util.ClusException;
 
 
+/**
+ * Accumulates the out-of-bag predictions of the ensemble members.
+ * 
+ * The predictions are stored in primitive arrays indexed by the row of the tuple in the training set
+ * (see {@link RowData#addIndices()}). Each row is guarded by one of {@link #NB_STRIPES} locks, so that the bags that
+ * are induced in parallel can update disjoint rows concurrently. The store belongs to the estimate, hence several
+ * ensembles (e.g., in different folds) can be built at the same time.
+ */
 public class ClusOOBErrorEstimate {
 
-    static HashMap m_OOBPredictions;
-    static HashMap<Integer, Integer> m_OOBUsage;
-    static boolean m_OOBCalculation;
+    /** Number of locks that guard the rows; must be a power of two */
+    private static final int NB_STRIPES = 64;
+
+    /** The estimate whose predictions are currently used by {@link ClusForest}, per thread */
+    private static final ThreadLocal<ClusOOBErrorEstimate> m_ActiveEstimate = new ThreadLocal<ClusOOBErrorEstimate>();
+
     int m_Mode;
-    
-    static ClusReadWriteLock m_LockPredictions = new ClusReadWriteLock();
-    static ClusReadWriteLock m_LockUsage = new ClusReadWriteLock();
-    static ClusReadWriteLock m_LockCalculation = new ClusReadWriteLock();
+
+    /**
+     * The training set whose predictions are stored. The estimate is reused for the folds of a cross-validation and
+     * the final run, so the store is rebuilt when a new training set comes in.
+     */
+    private RowData m_TrainSet;
+    /** Tuples of the training set, m_Tuples[row] */
+    private DataTuple[] m_Tuples;
+    /** Lookup for tuples whose index does not correspond to their row, null if there are none */
+    private IdentityHashMap<DataTuple, Integer> m_RowLookup;
+    /** Number of models that predicted the tuple as out-of-bag, m_Usage[row] */
+    private int[] m_Usage;
+    /** Predictions, row after row: averages for regression and HMC, sums of votes for classification */
+    private double[] m_Predictions;
+    /** Length of the prediction for one tuple */
+    private int m_PredLength;
+    /** Number of classes per target attribute (classification only) */
+    private int[] m_NbClasses;
+
+    private final Object[] m_Stripes = new Object[NB_STRIPES];
 
 
     public ClusOOBErrorEstimate(int mode) {
-        m_OOBPredictions = new HashMap();
-        m_OOBUsage = new HashMap<Integer, Integer>();
-        m_OOBCalculation = false;
         m_Mode = mode;
+        for (int i = 0; i < NB_STRIPES; i++) {
+            m_Stripes[i] = new Object();
+        }
+    }
+
+
+    /**
+     * @return The estimate that is currently computing the OOB error in this thread, or null
+     */
+    public static ClusOOBErrorEstimate getActiveEstimate() {
+        return m_ActiveEstimate.get();
     }
 
 
-    public static boolean containsPredictionForTuple(DataTuple tuple) {
-        m_LockPredictions.readingLock();
-        boolean contains = m_OOBPredictions.containsKey(tuple.hashCode());
-        m_LockPredictions.readingUnlock();
-        return contains;
+    public boolean containsPredictionForTuple(DataTuple tuple) {
+        int row = getRow(tuple);
+        if (row == -1) { return false; }
+        synchronized (getStripe(row)) {
+            return m_Usage[row] > 0;
+        }
     }
 
 
-    public static double[] getPredictionForRegressionHMCTuple(DataTuple tuple) {
-        m_LockPredictions.readingLock();
-        double[] pred = (double[]) m_OOBPredictions.get(tuple.hashCode());
-        double[] predictions = Arrays.copyOf(pred, pred.length);
-        m_LockPredictions.readingUnlock();
+    public double[] getPredictionForRegressionHMCTuple(DataTuple tuple) {
+        int row = getRow(tuple);
+        double[] predictions = new double[m_PredLength];
+        synchronized (getStripe(row)) {
+            System.arraycopy(m_Predictions, row * m_PredLength, predictions, 0, m_PredLength);
+        }
         return predictions;
     }
 
 
-    public static double[][] getPredictionForClassificationTuple(DataTuple tuple) {
-        m_LockPredictions.readingLock();   
-        double[][] pred = (double[][]) m_OOBPredictions.get(tuple.hashCode());
-        double[][] predictions = new double[pred.length][];
-        for (int i = 0; i < pred.length; i++) {
-            predictions[i] = Arrays.copyOf(pred[i], pred[i].length);
+    public double[][] getPredictionForClassificationTuple(DataTuple tuple) {
+        int row = getRow(tuple);
+        double[][] predictions = new double[m_NbClasses.length][];
+        synchronized (getStripe(row)) {
+            int pos = row * m_PredLength;
+            for (int i = 0; i < m_NbClasses.length; i++) {
+                predictions[i] = Arrays.copyOfRange(m_Predictions, pos, pos + m_NbClasses[i]);
+                pos += m_NbClasses[i];
+            }
         }
-        m_LockPredictions.readingUnlock();
         return predictions;
     }
 
@@ -101,107 +140,100 @@ public class ClusOOBErrorEstimate {
     }
 
 
-    public synchronized void updateOOBTuples(OOBSelection oob_sel, RowData train_data, ClusModel model) throws IOException, ClusException {
+    public void updateOOBTuples(OOBSelection oob_sel, RowData train_data, ClusModel model) throws IOException, ClusException {
+        ensureCapacity(train_data, model);
         for (int i = 0; i < train_data.getNbRows(); i++) {
             if (oob_sel.isSelected(i)) {
                 DataTuple tuple = train_data.getTuple(i);
-                if (existsOOBtuple(tuple))
-                    updateOOBTuple(tuple, model);
-                else
-                    addOOBTuple(tuple, model);
+                int row = getRow(tuple);
+                if (row == -1) {
+                    System.err.println(this.getClass().getName() + ":updateOOBTuples() Tuple " + i + " is not in the training set");
+                    continue;
+                }
+                updateOOBTuple(row, model.predictWeighted(tuple));
             }
         }
     }
 
 
-    public boolean existsOOBtuple(DataTuple tuple) {
-        boolean exists = false;
-        boolean existsInUsage = existsInOOBUsage(tuple); // m_OOBUsage.containsKey(tuple.hashCode())
-        boolean existsInPred = existsInOOBPredictions(tuple); // m_OOBPredictions.containsKey(tuple.hashCode())
-        if (existsInUsage && existsInPred)
-            exists = true;
-        if (!existsInUsage && existsInPred)
-            System.err.println(this.getClass().getName() + ":existsOOBtuple(DataTuple) OOB tuples mismatch-> Usage = False, Predictions = True");
-        if (existsInUsage && !existsInPred)
-            System.err.println(this.getClass().getName() + ":existsOOBtuple(DataTuple) OOB tuples mismatch-> Usage = True, Predictions = False");
-        return exists;
-    }
-
-
-    public void addOOBTuple(DataTuple tuple, ClusModel model) {
-        putToOOBUsage(tuple, 1); // m_OOBUsage.put(tuple.hashCode(), 1);
-
-        if (m_Mode == ClusStatManager.MODE_HIERARCHICAL) {
-            // for HMC we store the averages
-            WHTDStatistic stat = (WHTDStatistic) model.predictWeighted(tuple);
-            put1DArrayToOOBPredictions(tuple, stat.getNumericPred());// m_OOBPredictions.put(tuple.hashCode(),stat.getNumericPred());
+    /**
+     * Allocates the arrays when the first model of a training set is added. The prediction length is taken from the
+     * model's prediction for the first tuple.
+     */
+    private synchronized void ensureCapacity(RowData train_data, ClusModel model) {
+        if (m_TrainSet == train_data) { return; }
+        int nbRows = train_data.getNbRows();
+        DataTuple[] tuples = new DataTuple[nbRows];
+        IdentityHashMap<DataTuple, Integer> lookup = null;
+        for (int i = 0; i < nbRows; i++) {
+            DataTuple tuple = train_data.getTuple(i);
+            tuples[i] = tuple;
+            if (tuple.getIndex() != i) {
+                if (lookup == null) {
+                    lookup = new IdentityHashMap<DataTuple, Integer>();
+                }
+                lookup.put(tuple, i);
+            }
         }
-
-        if (m_Mode == ClusStatManager.MODE_REGRESSION) {
-            // for Regression we store the averages
-            RegressionStat stat = (RegressionStat) model.predictWeighted(tuple);
-            put1DArrayToOOBPredictions(tuple, stat.getNumericPred());// m_OOBPredictions.put(tuple.hashCode(),
-                                                                     // stat.getNumericPred());
+        int length = 0;
+        if (nbRows > 0) {
+            ClusStatistic stat = model.predictWeighted(tuples[0]);
+            if (m_Mode == ClusStatManager.MODE_CLASSIFY) {
+                double[][] counts = ((ClassificationStat) stat).m_ClassCounts;
+                m_NbClasses = new int[counts.length];
+                for (int i = 0; i < counts.length; i++) {
+                    m_NbClasses[i] = counts[i].length;
+                    length += counts[i].length;
+                }
+            }
+            else {
+                length = stat.getNumericPred().length;
+            }
         }
+        m_Usage = new int[nbRows];
+        m_Predictions = new double[nbRows * length];
+        m_PredLength = length;
+        m_RowLookup = lookup;
+        m_Tuples = tuples;
+        m_TrainSet = train_data;
+    }
 
-        if (m_Mode == ClusStatManager.MODE_CLASSIFY) {
-            // this should have a [][].for each attribute we store: Majority: the winning class, for Probability
-            // distribution, the class distribution
-            ClassificationStat stat = (ClassificationStat) model.predictWeighted(tuple);
-            switch (Settings.m_ClassificationVoteType.getValue()) {// default is Majority Vote
-                case 0:
-                    // m_OOBPredictions.put(tuple.hashCode(),
-                    // ClusEnsembleInduceOptimization.transformToMajority(stat.m_ClassCounts));
-                    put2DArrayToOOBPredictions(tuple, ClusEnsembleInduceOptimization.transformToMajority(stat.m_ClassCounts));//
-                    break;
-                case 1:
-                    // m_OOBPredictions.put(tuple.hashCode(),
-                    // ClusEnsembleInduceOptimization.transformToProbabilityDistribution(stat.m_ClassCounts));
-                    put2DArrayToOOBPredictions(tuple, ClusEnsembleInduceOptimization.transformToProbabilityDistribution(stat.m_ClassCounts));
-                    break;
-                default:
-                    // m_OOBPredictions.put(tuple.hashCode(),
-                    // ClusEnsembleInduceOptimization.transformToMajority(stat.m_ClassCounts));
-                    put2DArrayToOOBPredictions(tuple, ClusEnsembleInduceOptimization.transformToMajority(stat.m_ClassCounts));
-                    break;
-            }
+
+    private int getRow(DataTuple tuple) {
+        if (m_Tuples == null) { return -1; }
+        int index = tuple.getIndex();
+        if (index >= 0 && index < m_Tuples.length && m_Tuples[index] == tuple) { return index; }
+        if (m_RowLookup != null) {
+            Integer row = m_RowLookup.get(tuple);
+            if (row != null) { return row; }
         }
+        return -1;
     }
 
 
-    public void updateOOBTuple(DataTuple tuple, ClusModel model) {
-        Integer used = getFromOOBUsage(tuple); // m_OOBUsage.get(tuple.hashCode());
-        used = used.intValue() + 1;
-        putToOOBUsage(tuple, used); // m_OOBUsage.put(tuple.hashCode(), used);
+    private Object getStripe(int row) {
+        return m_Stripes[row & (NB_STRIPES - 1)];
+    }
 
-        if (m_Mode == ClusStatManager.MODE_HIERARCHICAL) {
-            // the HMC and Regression have the same voting scheme: average
-            WHTDStatistic stat = (WHTDStatistic) model.predictWeighted(tuple);
-            double[] predictions = stat.getNumericPred();
-            double[] avg_predictions = get1DArrayFromOOBPredictions(tuple); // (double[])m_OOBPredictions.get(tuple.hashCode());
-            avg_predictions = ClusEnsembleInduceOptimization.incrementPredictions(avg_predictions, predictions, used.doubleValue());
-            put1DArrayToOOBPredictions(tuple, avg_predictions); // m_OOBPredictions.put(tuple.hashCode(),
-                                                                // avg_predictions);
-        }
 
-        if (m_Mode == ClusStatManager.MODE_REGRESSION) {
+    private void updateOOBTuple(int row, ClusStatistic stat) {
+        int pos = row * m_PredLength;
+        if (m_Mode == ClusStatManager.MODE_HIERARCHICAL || m_Mode == ClusStatManager.MODE_REGRESSION) {
             // the HMC and Regression have the same voting scheme: average
-            RegressionStat stat = (RegressionStat) model.predictWeighted(tuple);
             double[] predictions = stat.getNumericPred();
-            double[] avg_predictions = get1DArrayFromOOBPredictions(tuple); // (double[])m_OOBPredictions.get(tuple.hashCode());
-            avg_predictions = ClusEnsembleInduceOptimization.incrementPredictions(avg_predictions, predictions, used.doubleValue());
-            put1DArrayToOOBPredictions(tuple, avg_predictions); // m_OOBPredictions.put(tuple.hashCode(),
-                                                                // avg_predictions);
+            synchronized (getStripe(row)) {
+                double used = ++m_Usage[row];
+                for (int j = 0; j < m_PredLength; j++) {
+                    m_Predictions[pos + j] += (predictions[j] - m_Predictions[pos + j]) / used;
+                }
+            }
         }
 
         if (m_Mode == ClusStatManager.MODE_CLASSIFY) {
-            // implement just addition!!!! and then
-            ClassificationStat stat = (ClassificationStat) model.predictWeighted(tuple);
-            double[][] predictions = stat.m_ClassCounts.clone();
+            // for each attribute we sum: Majority: the winning class, for Probability distribution, the class
+            // distribution
+            double[][] predictions = ((ClassificationStat) stat).m_ClassCounts;
             switch (Settings.m_ClassificationVoteType.getValue()) {// default is Majority Vote
-                case 0:
-                    predictions = ClusEnsembleInduceOptimization.transformToMajority(predictions);
-                    break;
                 case 1:
                     predictions = ClusEnsembleInduceOptimization.transformToProbabilityDistribution(predictions);
                     break;
@@ -209,10 +241,14 @@ public class ClusOOBErrorEstimate {
                     predictions = ClusEnsembleInduceOptimization.transformToMajority(predictions);
                     break;
             }
-            double[][] sum_predictions = get2DArrayFromOOBPredictions(tuple); // (double[][])m_OOBPredictions.get(tuple.hashCode());
-            sum_predictions = ClusEnsembleInduceOptimization.incrementPredictions(sum_predictions, predictions);
-            put2DArrayToOOBPredictions(tuple, sum_predictions);// m_OOBPredictions.put(tuple.hashCode(),
-                                                               // sum_predictions);
+            synchronized (getStripe(row)) {
+                m_Usage[row]++;
+                for (int i = 0; i < predictions.length; i++) {
+                    for (int j = 0; j < m_NbClasses[i]; j++) {
+                        m_Predictions[pos++] += predictions[i][j];
+                    }
+                }
+            }
         }
     }
 
@@ -252,93 +288,20 @@ public class ClusOOBErrorEstimate {
         cr.termModelProcessors(type);
     }
 
-    // NONSTATIC GETTERS, SETTERS and 'CHECKERS' for
-
-
     // OOBCalculation
 
     public static boolean isOOBCalculation() {
-        m_LockCalculation.readingLock();
-        boolean isCalc = m_OOBCalculation;
-        m_LockCalculation.readingUnlock();
-        return isCalc;
+        return m_ActiveEstimate.get() != null;
     }
 
 
     public void setOOBCalculation(boolean value) {
-        m_LockCalculation.writingLock();
-        m_OOBCalculation = value;
-        m_LockCalculation.writingUnlock();
-    }
-
-
-    // OOBPredictions
-
-    private boolean existsInOOBPredictions(DataTuple tuple) {
-        m_LockPredictions.readingLock();
-        boolean exists = m_OOBPredictions.containsKey(tuple.hashCode());
-        m_LockPredictions.readingUnlock();
-        return exists;
-    }
-
-
-    public void put1DArrayToOOBPredictions(DataTuple tuple, double[] value) {
-        m_LockPredictions.writingLock();
-        m_OOBPredictions.put(tuple.hashCode(), value);
-        m_LockPredictions.writingUnlock();
-    }
-
-
-    public void put2DArrayToOOBPredictions(DataTuple tuple, double[][] value) {
-        m_LockPredictions.writingLock();
-        m_OOBPredictions.put(tuple.hashCode(), value);
-        m_LockPredictions.writingUnlock();
-    }
-
-
-    private double[] get1DArrayFromOOBPredictions(DataTuple tuple) {
-        m_LockPredictions.readingLock();
-        double[] pred = (double[]) m_OOBPredictions.get(tuple.hashCode());
-        double[] predictions = Arrays.copyOf(pred, pred.length);
-        m_LockPredictions.readingUnlock();
-        return predictions;
-    }
-
-
-    private double[][] get2DArrayFromOOBPredictions(DataTuple tuple) {
-        m_LockPredictions.readingLock();
-        double[][] pred = (double[][]) m_OOBPredictions.get(tuple.hashCode());
-        double[][] predictions = new double[pred.length][];
-        for (int i = 0; i < pred.length; i++) {
-            predictions[i] = Arrays.copyOf(pred[i], pred[i].length);
+        if (value) {
+            m_ActiveEstimate.set(this);
+        }
+        else {
+            m_ActiveEstimate.remove();
         }
-        m_LockPredictions.readingUnlock();
-        return predictions;
-    }
-
-
-    // OOBUsage
-
-    private boolean existsInOOBUsage(DataTuple tuple) {
-        m_LockUsage.readingLock();
-        boolean exists = m_OOBUsage.containsKey(tuple.hashCode());
-        m_LockUsage.readingUnlock();
-        return exists;
-    }
-
-
-    private void putToOOBUsage(DataTuple tuple, int i) {
-        m_LockUsage.writingLock();
-        m_OOBUsage.put(tuple.hashCode(), i);
-        m_LockUsage.writingUnlock();
-    }
-
-
-    public Integer getFromOOBUsage(DataTuple tuple) {
-        m_LockUsage.readingLock();
-        Integer i = m_OOBUsage.get(tuple.hashCode());
-        m_LockUsage.readingUnlock();
-        return i;
     }
 
 }
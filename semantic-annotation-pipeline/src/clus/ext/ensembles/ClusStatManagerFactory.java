@@ -0,0 +1,55 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.ext.ensembles;
+
+import clus.main.ClusStatManager;
+import clus.util.cloner.Cloner;
+
+
+/**
+ * Supplies the tree induction tasks of an ensemble with their own copy of the stat manager.
+ * A snapshot of the original stat manager is taken when the factory is created, and the copies
+ * are made from it only when a task actually starts. Hence, at most one copy per worker thread
+ * is alive at a time, instead of one copy per tree.
+ */
+public class ClusStatManagerFactory {
+
+    private Cloner m_Cloner;
+    private ClusStatManager m_Prototype;
+
+
+    public ClusStatManagerFactory(ClusStatManager mgr) {
+        m_Cloner = new Cloner();
+        m_Prototype = m_Cloner.deepClone(mgr);
+    }
+
+
+    /**
+     * @return A fresh deep copy of the stat manager. The prototype is never modified, so this may be called from
+     *         several worker threads at the same time.
+     */
+    public ClusStatManager createStatManager() {
+        return m_Cloner.deepClone(m_Prototype);
+    }
+
+}
@@ -5,9 +5,9 @@ import java.util.concurrent.Callable;
 
 import clus.data.rows.TupleIterator;
 import clus.ext.ensembles.ClusEnsembleInduce;
+import clus.ext.ensembles.ClusStatManagerFactory;
 import clus.ext.ensembles.containters.OneBagResults;
 import clus.main.ClusRun;
-import clus.main.ClusStatManager;
 import clus.util.ClusRandomNonstatic;
 
 
@@ -18,24 +18,23 @@ public class InduceExtraTreeCallable implements Callable<OneBagResults> {
     private int m_I;
     private TupleIterator m_Train_iterator, m_Test_iterator;
     private ClusRandomNonstatic m_Rnd;
-    private ClusStatManager m_Mgr;
+    private ClusStatManagerFactory m_MgrFactory;
 
 
-    public InduceExtraTreeCallable(ClusEnsembleInduce cei, ClusRun cr, int i, TupleIterator train_iterator, TupleIterator test_iterator, ClusRandomNonstatic rnd, ClusStatManager mgr) {
+    public InduceExtraTreeCallable(ClusEnsembleInduce cei, ClusRun cr, int i, TupleIterator train_iterator, TupleIterator test_iterator, ClusRandomNonstatic rnd, ClusStatManagerFactory mgrFactory) {
         m_Cei = cei;
         m_Cr = cr;
         m_I = i;
         m_Train_iterator = train_iterator;
         m_Test_iterator = test_iterator;
         m_Rnd = rnd;
-        m_Mgr = mgr;
+        m_MgrFactory = mgrFactory;
     }
 
 
     @Override
     public OneBagResults call() throws Exception {
-        // TODO Auto-generated method stub
-        return m_Cei.induceOneExtraTree(m_Cr, m_I, m_Train_iterator, m_Test_iterator, m_Rnd, m_Mgr);
+        return m_Cei.induceOneExtraTree(m_Cr, m_I, m_Train_iterator, m_Test_iterator, m_Rnd, m_MgrFactory.createStatManager());
     }
 
 }
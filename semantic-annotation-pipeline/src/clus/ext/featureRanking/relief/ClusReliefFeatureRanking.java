@@ -5,8 +5,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import clus.data.rows.DataTuple;
+import clus.data.rows.DenseFeatureBlock;
 import clus.data.rows.RowData;
 import clus.data.type.ClusAttrType;
 import clus.data.type.NominalAttrType;
@@ -22,6 +26,7 @@ import clus.ext.timeseries.TSCTimeSeriesDist;
 import clus.ext.timeseries.TimeSeries;
 import clus.main.Settings;
 import clus.util.ClusException;
+import clus.util.ClusParallel;
 
 
 /**
@@ -38,6 +43,9 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
 	private static final int DISTANCE_TARGET = 1;
 	private static final int DISTANCE_ATTR_TARGET = 2;
 	private static final int[] DISTACNE_TYPES = new int[]{DISTANCE_ATTR, DISTANCE_TARGET, DISTANCE_ATTR_TARGET};
+	
+	/** Maximal number of blocks into which the iterations between two numbers of iterations are split */
+	private static final int NB_BLOCKS = 64;
 
     /** Numbers of neighbours in the importances calculation */
     private int[] m_NbNeighbours;
@@ -111,28 +119,21 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
     /** tells, whether to perform per-target rankings also */
     private boolean m_performPerTargetRanking;
     
-    /** m_SumDistAttr[number of neighbours][attribute]: current sum of distances between attribute values, for the given number of neighbours and attribute */
-    private double[][] m_SumDistAttr;
-    
-    /** m_SumDistAttr[number of neighbours]: current sum of distances between target values, for the given number of neighbours */
-    private double[] m_SumDistTarget;
+    /** current distance statistics, see {@link ReliefStatistics} */
+    private ReliefStatistics m_Statistics;
     
-    /** m_SumDistAttr[number of neighbours][attribute]: current sum of products of distances between attribute values and distances between target values,
-     * for the given number of neighbours and attribute */
-    private double[][] m_SumDistAttrTarget;        
+    private HierarchicalMultiLabelDistance m_HierarDist = new HierarchicalMultiLabelDistance();
     
-    /** per-target analogue of {@link #m_SumDistAttr} */     
-    private double[][][] m_SumDistAttrPerTarget;
+    private int m_Percents = 0;
     
-    /** per-target analogue of {@link #m_SumDistTarget} */
-    private double[][] m_SumDistTargetPerTarget;
+    /** number of iterations that are already done, used for the progress report */
+    private int m_DoneIterations = 0;
     
-    /** per-target analogue of {@link #m_SumDistAttrTarget} */
-    private double[][][] m_SumDistAttrTargetPerTarget;
+    /** number of threads that perform the iterations */
+    private int m_NbThreads;
     
-    private HierarchicalMultiLabelDistance m_HierarDist = new HierarchicalMultiLabelDistance();
-    
-    private int m_Percents = 0;
+    /** the numeric and nominal descriptive attributes of the examples, used for the distances in the descriptive space */
+    private DenseFeatureBlock m_DescriptiveBlock;
     
 
 
@@ -152,8 +153,10 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
      *        importance calculation are weighted with factor {@code exp((- sigma * i) ** 2)}.
      * @param sigma
      *        The rate of quadratic exponential decay. Note that Weka's sigma is the inverse of our {@code sigma}.
+     * @param nbThreads
+     *        The number of threads that perform the iterations.
      */
-    public ClusReliefFeatureRanking(RowData data, int[] neighbours, int[] iterations, boolean weightNeighbours, double sigma, int seed) {
+    public ClusReliefFeatureRanking(RowData data, int[] neighbours, int[] iterations, boolean weightNeighbours, double sigma, int seed, int nbThreads) {
         super();
         m_NbNeighbours = neighbours;
         m_MaxNbNeighbours = m_NbNeighbours[m_NbNeighbours.length - 1];
@@ -162,6 +165,7 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
         m_WeightNeighbours = weightNeighbours;
         m_Sigma = m_WeightNeighbours ? sigma : 0.0;
         m_NeighbourWeights = new double[m_MaxNbNeighbours];
+        m_NbThreads = Math.max(1, nbThreads);
 
         m_rnd = new Random(seed);
         initialize(data);
@@ -205,7 +209,11 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
     }
 
     /**
-     * Calculates the feature importances for a given dataset.
+     * Calculates the feature importances for a given dataset. The iterations between two consecutive elements of
+     * {@link #m_NbIterations} are split into at most {@link #NB_BLOCKS} blocks, each of them accumulating its own
+     * {@link ReliefStatistics}, which {@link #m_NbThreads} threads process in parallel. The blocks do not depend on the
+     * number of threads, and their statistics are added to the overall ones in the order of the blocks, so the result
+     * depends neither on the number of threads nor on their scheduling.
      * 
      * @param data
      *        The dataset, whose features are importances calculated for.
@@ -216,71 +224,154 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
         if(Settings.VERBOSE > 0){
         	System.out.println("Calculating importances ...");
         }
-        DataTuple tuple;
-        int tupleInd;
         int nbTargets = m_performPerTargetRanking ? 1 + m_NbTargetAttrs : 1;
         double[] successfulIterations = new double[nbTargets];
         
         int[] theOrder = randomPermutation(m_NbExamples);
 
-        int insufficientNbNeighbours = 0;
-        int numIterInd = 0;
-        boolean[] shouldUpdate = new boolean[nbTargets]; // [overall] or [overall, target1, target2, ...]
-        for (int iteration = 0; iteration < m_MaxNbIterations; iteration++) {
-        	double proportion = 100 * (double)(iteration + 1) / ((double) m_MaxNbIterations); 
-        	if(Settings.VERBOSE > 0 && Settings.VERBOSE < 3){
-        		while(m_Percents < proportion && m_Percents < 100){
-        			System.out.print(".");
-        			m_Percents++;
-        			if(m_Percents / 10 * 10 == m_Percents){
-        				System.out.println(String.format(" %3d percents", m_Percents));
-        			}
-        		}
-        	} else if (Settings.VERBOSE > 4){
-        		System.out.println("iteration " + iteration);
-        	}
+        ExecutorService executor = m_NbThreads > 1 ? ClusParallel.createDaemonPool(m_NbThreads, "Relief") : null;
+        try {
+            int start = 0;
+            for (int numIterInd = 0; numIterInd < m_NbIterations.length; numIterInd++) {
+                int end = m_NbIterations[numIterInd];
+                if (end <= start) {
+                    continue;
+                }
+                boolean[] shouldUpdate = new boolean[nbTargets]; // [overall] or [overall, target1, target2, ...]
+                for (int iteration = start; iteration < end; iteration++) {
+                    DataTuple tuple = data.getTuple(theOrder[iteration]);
+                    if (!(m_isStandardClassification && m_DescriptiveTargetAttr[TARGET_SPACE][0].isMissing(tuple))) {
+                        successfulIterations[0]++;
+                        shouldUpdate[0] = true;
+                    }
+                    if(m_performPerTargetRanking){
+                        for(int targetInd = 0; targetInd < m_NbTargetAttrs; targetInd++){
+                            if(!(m_isStandardClassificationPerTarget[targetInd] && m_DescriptiveTargetAttr[TARGET_SPACE][targetInd].isMissing(tuple))){
+                                successfulIterations[targetInd + 1]++;
+                                shouldUpdate[targetInd + 1] = true;
+                            }
+                        }
+                    }
+                }
+                performIterationsInBlocks(data, theOrder, start, end, executor);
+                // IMPORTANCE UPDATE
+                updateImportances(data, numIterInd, successfulIterations, shouldUpdate);
+                start = end;
+            }
+        }
+        finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        if(m_Statistics.m_InsufficientNbNeighbours > 0){
+        	System.err.println("Maximal number of neighbours: " + m_MaxNbNeighbours);
+        	System.err.println("Number of cases when we could not find that many neighbours: " + m_Statistics.m_InsufficientNbNeighbours);
+        }
+    }
+    
+    /**
+     * Splits the iterations {@code start <= iteration < end} into at most {@link #NB_BLOCKS} blocks, performs them
+     * (in parallel if an executor is given) and adds their statistics to {@link #m_Statistics} in block order. The
+     * blocks do not depend on the number of threads, so neither does the ranking.
+     */
+    private void performIterationsInBlocks(final RowData data, final int[] theOrder, int start, int end, ExecutorService executor) throws ClusException, InterruptedException {
+        int nbBlocks = Math.min(NB_BLOCKS, end - start);
+        ArrayList<Future<ReliefStatistics>> blocks = new ArrayList<Future<ReliefStatistics>>();
+        for (int block = 0; block < nbBlocks; block++) {
+            final int blockStart = start + (int) ((long) (end - start) * block / nbBlocks);
+            final int blockEnd = start + (int) ((long) (end - start) * (block + 1) / nbBlocks);
+            if (executor == null) {
+                ReliefStatistics stats = new ReliefStatistics(m_NbNeighbours.length, m_NbDescriptiveAttrs, m_NbTargetAttrs);
+                performIterations(data, theOrder, blockStart, blockEnd, stats);
+                m_Statistics.add(stats);
+                continue;
+            }
+            blocks.add(executor.submit(() -> {
+                ReliefStatistics stats = new ReliefStatistics(m_NbNeighbours.length, m_NbDescriptiveAttrs, m_NbTargetAttrs);
+                performIterations(data, theOrder, blockStart, blockEnd, stats);
+                return stats;
+            }));
+        }
+        for (Future<ReliefStatistics> block : blocks) {
+            try {
+                m_Statistics.add(block.get());
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof ClusException) { throw (ClusException) e.getCause(); }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+    
+    /**
+     * Performs the iterations {@code start <= iteration < end}: finds the nearest neighbours of the chosen tuples and
+     * updates the given distance statistics.
+     * 
+     * @param data The dataset under consideration.
+     * @param theOrder The order in which the tuples are chosen.
+     * @param stats The statistics that are updated.
+     * @throws ClusException
+     */
+    private void performIterations(RowData data, int[] theOrder, int start, int end, ReliefStatistics stats) throws ClusException {
+        double[] distances = new double[m_NbExamples];
+        for (int iteration = start; iteration < end; iteration++) {
+            reportProgress(iteration);
         	
             // CHOOSE TUPLE AND COMPUTE NEAREST NEIGHBOURS
-            tupleInd = theOrder[iteration];
-            tuple = data.getTuple(tupleInd);
-            // boolean neighboursFound = false;
+            int tupleInd = theOrder[iteration];
+            DataTuple tuple = data.getTuple(tupleInd);
+            boolean distancesComputed = false;
             
             NearestNeighbour[][] nearestNeighbours = new NearestNeighbour[0][0]; // only to prevent 'is never initialised' error
             // OVERALL RANKING
             if (!(m_isStandardClassification && m_DescriptiveTargetAttr[TARGET_SPACE][0].isMissing(tuple))) {
-            	successfulIterations[0]++;
-                nearestNeighbours = findNearestNeighbours(tupleInd, data, 0, false);             
-                insufficientNbNeighbours += updateDistanceStatistics(data, tuple, nearestNeighbours, 0, false);
-                shouldUpdate[0] = true;
-                // neighboursFound = true;
-
+                calcDescriptiveDistances(tupleInd, data, distances);
+                distancesComputed = true;
+                nearestNeighbours = findNearestNeighbours(tupleInd, data, 0, false, distances);             
+                stats.m_InsufficientNbNeighbours += updateDistanceStatistics(stats, data, tupleInd, nearestNeighbours, 0, false);
             }            
             // PER-TARGET RANKING
             if(m_performPerTargetRanking){
             	for(int targetInd = 0; targetInd < m_NbTargetAttrs; targetInd++){
             		if(!(m_isStandardClassificationPerTarget[targetInd] && m_DescriptiveTargetAttr[TARGET_SPACE][targetInd].isMissing(tuple))){
-            			successfulIterations[targetInd + 1]++;
+            			NearestNeighbour[][] nearestNeighboursPerTarget = nearestNeighbours;
             			 // Condition here equivalent to ... || !neighboursFound, because: this target is regression ==> overall is regression
-            			NearestNeighbour[][] nearestNeighboursPerTarget = m_isStandardClassificationPerTarget[targetInd] ? findNearestNeighbours(tupleInd, data, targetInd, true) : nearestNeighbours;
-            			insufficientNbNeighbours += updateDistanceStatistics(data, tuple, nearestNeighboursPerTarget, targetInd, true);
-            			shouldUpdate[targetInd + 1] = true;
+            			if (m_isStandardClassificationPerTarget[targetInd]) {
+            				if (!distancesComputed) {
+            					calcDescriptiveDistances(tupleInd, data, distances);
+            					distancesComputed = true;
+            				}
+            				nearestNeighboursPerTarget = findNearestNeighbours(tupleInd, data, targetInd, true, distances);
+            			}
+            			stats.m_InsufficientNbNeighbours += updateDistanceStatistics(stats, data, tupleInd, nearestNeighboursPerTarget, targetInd, true);
             		}
             	}
             }
-            // IMPORTANCE UPDATE
-            if(iteration + 1 == m_NbIterations[numIterInd]){
-            	updateImportances(data, numIterInd, successfulIterations, shouldUpdate);
-            	numIterInd++;
-            	shouldUpdate = new boolean[nbTargets];
-            }
-        }
-
-        if(insufficientNbNeighbours > 0){
-        	System.err.println("Maximal number of neighbours: " + m_MaxNbNeighbours);
-        	System.err.println("Number of cases when we could not find that many neighbours: " + insufficientNbNeighbours);
         }
     }
     
+    /**
+     * Prints the progress of the importances calculation.
+     * @param iteration The iteration that has just started. Only used when {@code Settings.VERBOSE > 4}.
+     */
+    private synchronized void reportProgress(int iteration) {
+        m_DoneIterations++;
+    	double proportion = 100 * (double) m_DoneIterations / ((double) m_MaxNbIterations); 
+    	if(Settings.VERBOSE > 0 && Settings.VERBOSE < 3){
+    		while(m_Percents < proportion && m_Percents < 100){
+    			System.out.print(".");
+    			m_Percents++;
+    			if(m_Percents / 10 * 10 == m_Percents){
+    				System.out.println(String.format(" %3d percents", m_Percents));
+    			}
+    		}
+    	} else if (Settings.VERBOSE > 4){
+    		System.out.println("iteration " + iteration);
+    	}
+    }
+    
     /**
      * Updates the importances of the attributes. It is called when the current number of iterations is the element of
      * {@link #m_NbIterations}. 
@@ -335,13 +426,13 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
     	double ans = 0.0;
     	switch(type){
     	case DISTANCE_ATTR:
-    		ans = isPerTarget ? m_SumDistAttrPerTarget[targetIndex][nbNeighboursIndex][attrIndex] : m_SumDistAttr[nbNeighboursIndex][attrIndex];
+    		ans = isPerTarget ? m_Statistics.m_SumDistAttrPerTarget[targetIndex][nbNeighboursIndex][attrIndex] : m_Statistics.m_SumDistAttr[nbNeighboursIndex][attrIndex];
     		break;
     	case DISTANCE_TARGET:
-    		ans = isPerTarget ? m_SumDistTargetPerTarget[targetIndex][nbNeighboursIndex] : m_SumDistTarget[nbNeighboursIndex];
+    		ans = isPerTarget ? m_Statistics.m_SumDistTargetPerTarget[targetIndex][nbNeighboursIndex] : m_Statistics.m_SumDistTarget[nbNeighboursIndex];
     		break;
     	case DISTANCE_ATTR_TARGET:
-    		ans = isPerTarget ? m_SumDistAttrTargetPerTarget[targetIndex][nbNeighboursIndex][attrIndex] : m_SumDistAttrTarget[nbNeighboursIndex][attrIndex];
+    		ans = isPerTarget ? m_Statistics.m_SumDistAttrTargetPerTarget[targetIndex][nbNeighboursIndex][attrIndex] : m_Statistics.m_SumDistAttrTarget[nbNeighboursIndex][attrIndex];
     		break;
     	default:
     		throw new RuntimeException(String.format("The specified statistics type %s is not the element of allowed types %s.", type, Arrays.toString(DISTACNE_TYPES)));    			
@@ -352,15 +443,17 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
 
     /**
      * In each iteration, this method updates distance statistics after the neighbours of a chosen tuple are found.
+     * @param stats
      * @param data
-     * @param tuple
+     * @param tupleInd
      * @param nearestNeighbours
      * @param targetIndex
      * @param isPerTarget
      * @return
      * @throws ClusException
      */
-    private int updateDistanceStatistics(RowData data, DataTuple tuple, NearestNeighbour[][] nearestNeighbours, int targetIndex, boolean isPerTarget) throws ClusException{
+    private int updateDistanceStatistics(ReliefStatistics stats, RowData data, int tupleInd, NearestNeighbour[][] nearestNeighbours, int targetIndex, boolean isPerTarget) throws ClusException{
+    	DataTuple tuple = data.getTuple(tupleInd);
     	int tempInsufficientNbNeighbours = 0;
     	int nbTargetValues = isPerTarget ? m_NbTargetValuesPerTarget[targetIndex] : m_NbTargetValues;
         for (int targetValue = 0; targetValue < nbTargetValues; targetValue++) {
@@ -391,7 +484,7 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
                 }
                 for (int attrInd = 0; attrInd < m_NbDescriptiveAttrs; attrInd++) {
                 	ClusAttrType attr = m_DescriptiveTargetAttr[DESCRIPTIVE_SPACE][attrInd];
-                    double distAttr = calcDistance1D(tuple, data.getTuple(neigh.getIndexInDataset()), attr) * neighWeightNonnormalized;        
+                    double distAttr = calcDescriptiveDistance1D(tupleInd, neigh.getIndexInDataset(), data, attrInd) * neighWeightNonnormalized;        
                     if (isStdClassification) {
                     	int tupleTarget = ((NominalAttrType) m_DescriptiveTargetAttr[TARGET_SPACE][targetIndex]).getNominal(tuple); 
                     	if (targetValue == tupleTarget){
@@ -412,21 +505,21 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
                 if(neighbour + 1 == m_NbNeighbours[numNeighInd]){
                 	double normalizedTempDistTarget = tempSumDistTarget / sumNeighbourWeights;
                 	if (isPerTarget){
-                		m_SumDistTargetPerTarget[targetIndex][numNeighInd] += normalizedTempDistTarget;
+                		stats.m_SumDistTargetPerTarget[targetIndex][numNeighInd] += normalizedTempDistTarget;
                 	}
                 	else{
-                		m_SumDistTarget[numNeighInd] += normalizedTempDistTarget;
+                		stats.m_SumDistTarget[numNeighInd] += normalizedTempDistTarget;
                 	}
                     for (int attrInd = 0; attrInd < m_NbDescriptiveAttrs; attrInd++) {
                     	double normalizedTempDistAttr = tempSumDistAttr[attrInd] / sumNeighbourWeights;
                     	double normalizedTempTistAttrTarget = tempSumDistAttrTarget[attrInd] / sumNeighbourWeights;
                     	if (isPerTarget){
-                    		m_SumDistAttrPerTarget[targetIndex][numNeighInd][attrInd] += normalizedTempDistAttr;
-                    		m_SumDistAttrTargetPerTarget[targetIndex][numNeighInd][attrInd] += normalizedTempTistAttrTarget;
+                    		stats.m_SumDistAttrPerTarget[targetIndex][numNeighInd][attrInd] += normalizedTempDistAttr;
+                    		stats.m_SumDistAttrTargetPerTarget[targetIndex][numNeighInd][attrInd] += normalizedTempTistAttrTarget;
                     	}
                     	else{
-                    		m_SumDistAttr[numNeighInd][attrInd] += normalizedTempDistAttr;
-                    		m_SumDistAttrTarget[numNeighInd][attrInd] += normalizedTempTistAttrTarget;
+                    		stats.m_SumDistAttr[numNeighInd][attrInd] += normalizedTempDistAttr;
+                    		stats.m_SumDistAttrTarget[numNeighInd][attrInd] += normalizedTempTistAttrTarget;
                     	}
                         
                     }
@@ -523,15 +616,27 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
             }
         }
         
-        // attribute relevance estimation: current statistics
-        m_SumDistAttr = new double[m_NbNeighbours.length][m_NbDescriptiveAttrs];
-        m_SumDistTarget = new double[m_NbNeighbours.length];
-        m_SumDistAttrTarget = new double[m_NbNeighbours.length][m_NbDescriptiveAttrs];        
+        // columns of the numeric and nominal descriptive attributes, used for the distances in the descriptive space
+        double[] mins = new double[m_NbDescriptiveAttrs];
+        double[] normWeights = new double[m_NbDescriptiveAttrs];
+        double[] nominalMissingDists = new double[m_NbDescriptiveAttrs];
+        for (int attrInd = 0; attrInd < m_NbDescriptiveAttrs; attrInd++) {
+            ClusAttrType attr = m_DescriptiveTargetAttr[DESCRIPTIVE_SPACE][attrInd];
+            if (attr.isNominal()) {
+                nominalMissingDists[attrInd] = 1.0 - 1.0 / ((NominalAttrType) attr).m_NbValues;
+            }
+            else if (attr.isNumeric()) {
+                mins[attrInd] = m_numMins.get(attr.getName());
+                double normFactor = m_numMaxs.get(attr.getName()) - mins[attrInd];
+                normWeights[attrInd] = 1.0 / (normFactor == 0.0 ? 1.0 : normFactor);
+            }
+        }
+        m_DescriptiveBlock = new DenseFeatureBlock(m_DescriptiveTargetAttr[DESCRIPTIVE_SPACE], data.getData(), mins, normWeights);
+        m_DescriptiveBlock.setBothMissingDistance(BOTH_MISSING_DIST);
+        m_DescriptiveBlock.setNominalMissingDistances(nominalMissingDists);
         
-        // per target relevance estimation        
-        m_SumDistAttrPerTarget = new double[m_NbTargetAttrs][m_NbNeighbours.length][m_NbDescriptiveAttrs];
-        m_SumDistTargetPerTarget = new double[m_NbTargetAttrs][m_NbNeighbours.length];
-        m_SumDistAttrTargetPerTarget = new double[m_NbTargetAttrs][m_NbNeighbours.length][m_NbDescriptiveAttrs];
+        // attribute relevance estimation: current statistics
+        m_Statistics = new ReliefStatistics(m_NbNeighbours.length, m_NbDescriptiveAttrs, m_NbTargetAttrs);
 
     }
     
@@ -577,98 +682,157 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
      *        The dataset
      * @return An array of {@code m_NbTargetValues} arrays of {@link NearestNeighbour}s. Each of the arrays belongs to
      *         one target value and
-     *         is sorted decreasingly with respect to the distance(neighbour, considered tuple).
+     *         is sorted increasingly with respect to the distance(neighbour, considered tuple).
      * @throws ClusException
      */
     public NearestNeighbour[][] findNearestNeighbours(int tupleInd, RowData data, int targetIndex, boolean isPerTarget) throws ClusException {
+        double[] distances = new double[m_NbExamples];
+        calcDescriptiveDistances(tupleInd, data, distances);
+        return findNearestNeighbours(tupleInd, data, targetIndex, isPerTarget, distances);
+    }
+
+
+    /**
+     * Computes the nearest neighbours when the distances in the descriptive space are already known. For each
+     * target value, the current candidates are kept in a bounded max-heap whose root is the farthest candidate.
+     * 
+     * @param distances
+     *        distances[i] = distance(tuple, data.getTuple(i)), see {@link #calcDescriptiveDistances(int, RowData, double[])}
+     * @see #findNearestNeighbours(int, RowData, int, boolean)
+     */
+    private NearestNeighbour[][] findNearestNeighbours(int tupleInd, RowData data, int targetIndex, boolean isPerTarget, double[] distances) throws ClusException {
         DataTuple tuple = data.getTuple(tupleInd);
         boolean isStdClassification = isPerTarget ? m_isStandardClassificationPerTarget[targetIndex] : m_isStandardClassification;
         int nbTargetValues = isPerTarget ? m_NbTargetValuesPerTarget[targetIndex] : m_NbTargetValues;
         
-        int[][] neighbours = new int[nbTargetValues][m_MaxNbNeighbours]; // current candidates
-        double[] distances = new double[m_NbExamples]; // distances[i] = distance(tuple, data.getTuple(i))
-        int[] whereToPlaceNeigh = new int[nbTargetValues];
+        int[][] heaps = new int[nbTargetValues][m_MaxNbNeighbours]; // current candidates
+        int[] heapSizes = new int[nbTargetValues];
         int targetValue;        
 
         for (int i = 0; i < m_NbExamples; i++) {
-            distances[i] = calcDistance(tuple, data.getTuple(i), DESCRIPTIVE_SPACE); // in descriptive space
-        }
-        boolean sortingNeeded;
-        boolean isSorted[] = new boolean[nbTargetValues]; // isSorted[target value]: tells whether the neighbours for target value are sorted
-        for (int i = 0; i < m_NbExamples; i++) {
-            sortingNeeded = false;
             if (i != tupleInd) {
                 targetValue = isStdClassification ? m_DescriptiveTargetAttr[TARGET_SPACE][targetIndex].getNominal(data.getTuple(i)) : 0;
                 if (targetValue < nbTargetValues) { // non-missing
-                    if (whereToPlaceNeigh[targetValue] < m_MaxNbNeighbours) {
-                        neighbours[targetValue][whereToPlaceNeigh[targetValue]] = i;
-                        whereToPlaceNeigh[targetValue]++;
-                        if (whereToPlaceNeigh[targetValue] == m_MaxNbNeighbours) { // the list of neighbours has just
-                                                                                // become full ---> sort it
-                            for (int ind1 = 0; ind1 < m_MaxNbNeighbours; ind1++) { // O(NbNeighbours^2) ...
-                                for (int ind2 = ind1 + 1; ind2 < m_MaxNbNeighbours; ind2++) {
-                                    if (distances[neighbours[targetValue][ind1]] < distances[neighbours[targetValue][ind2]]) {
-                                        int temp = neighbours[targetValue][ind1];
-                                        neighbours[targetValue][ind1] = neighbours[targetValue][ind2];
-                                        neighbours[targetValue][ind2] = temp;
-                                    }
-                                }
-                            }
-                            isSorted[targetValue] = true;
-                        }
-                    }
-                    else {
-                        sortingNeeded = true;
-                    }
-                }
-                else {
-                    // nothing to do here
-                }
-                if (sortingNeeded) {
-                    if (distances[i] >= distances[neighbours[targetValue][0]]) {
-                        continue;
+                    int[] heap = heaps[targetValue];
+                    if (heapSizes[targetValue] < m_MaxNbNeighbours) {
+                        siftUp(heap, heapSizes[targetValue]++, i, distances);
                     }
-                    int j; // here the branch prediction should kick-in
-                    for (j = 1; j < m_MaxNbNeighbours && distances[i] < distances[neighbours[targetValue][j]]; j++) {
-                        neighbours[targetValue][j - 1] = neighbours[targetValue][j];
+                    else if (isFarther(heap[0], i, distances)) {
+                        siftDown(heap, heapSizes[targetValue], i, distances);
                     }
-                    neighbours[targetValue][j - 1] = i;
-                    isSorted[targetValue] = true;
                 }
-
             }
         }
         NearestNeighbour[][] nearestNeighbours = new NearestNeighbour[nbTargetValues][];
         for (int value = 0; value < nbTargetValues; value++) {
-            nearestNeighbours[value] = new NearestNeighbour[whereToPlaceNeigh[value]];
-            if (!isSorted[value]) {
-                for (int ind1 = 0; ind1 < whereToPlaceNeigh[value]; ind1++) {
-                    for (int ind2 = ind1 + 1; ind2 < whereToPlaceNeigh[value]; ind2++) {
-                        if (distances[neighbours[value][ind1]] < distances[neighbours[value][ind2]]) {
-                            int temp = neighbours[value][ind1];
-                            neighbours[value][ind1] = neighbours[value][ind2];
-                            neighbours[value][ind2] = temp;
-                        }
-                    }
-                }
-            }
-
-            for (int i = 0; i < whereToPlaceNeigh[value]; i++) {
-            	int datasetIndex = neighbours[value][i];
-            	double descriptiveSpaceDist = distances[neighbours[value][i]];
+            int[] heap = heaps[value];
+            nearestNeighbours[value] = new NearestNeighbour[heapSizes[value]];
+            // remove the farthest candidate until the heap is empty
+            for (int last = heapSizes[value] - 1; last >= 0; last--) {
+            	int datasetIndex = heap[0];
+            	siftDown(heap, last, heap[last], distances);
+            	double descriptiveSpaceDist = distances[datasetIndex];
             	double targetSpaceDist = 0.0;
             	if(isPerTarget){
             		targetSpaceDist = calcDistance1D(tuple, data.getTuple(datasetIndex), m_DescriptiveTargetAttr[TARGET_SPACE][targetIndex]);
             	} else{
             		targetSpaceDist = calcDistance(tuple, data.getTuple(datasetIndex), TARGET_SPACE);
             	}
-                nearestNeighbours[value][whereToPlaceNeigh[value] - i - 1] = new NearestNeighbour(datasetIndex, descriptiveSpaceDist, targetSpaceDist);
+                nearestNeighbours[value][last] = new NearestNeighbour(datasetIndex, descriptiveSpaceDist, targetSpaceDist);
             }
         }
         return nearestNeighbours;
     }
 
 
+    /**
+     * Tells whether the candidate {@code i} is farther than the candidate {@code j}. Ties are broken by the row index,
+     * so that the neighbours do not depend on the order in which the candidates are considered.
+     */
+    private static boolean isFarther(int i, int j, double[] distances) {
+        return distances[i] > distances[j] || (distances[i] == distances[j] && i > j);
+    }
+
+
+    /**
+     * Places the candidate at the position {@code pos} of the max-heap and moves it towards the root.
+     */
+    private static void siftUp(int[] heap, int pos, int candidate, double[] distances) {
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (!isFarther(candidate, heap[parent], distances)) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = candidate;
+    }
+
+
+    /**
+     * Replaces the root of the max-heap of the given size with the candidate and moves it towards the leaves.
+     */
+    private static void siftDown(int[] heap, int size, int candidate, double[] distances) {
+        if (size == 0) {
+            return;
+        }
+        int pos = 0;
+        while (2 * pos + 1 < size) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && isFarther(heap[child + 1], heap[child], distances)) {
+                child++;
+            }
+            if (!isFarther(heap[child], candidate, distances)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = candidate;
+    }
+
+
+    /**
+     * Computes the distances in the descriptive space between the example with the index {@code tupleInd} and all
+     * the examples in the dataset. The numeric and nominal attributes are processed column by column, for the other
+     * attributes, {@link #calcDistance1D(DataTuple, DataTuple, ClusAttrType)} is used.
+     * 
+     * @param distances
+     *        The array where distances[i] = distance(tuple, data.getTuple(i)) is stored.
+     * @throws ClusException
+     */
+    private void calcDescriptiveDistances(int tupleInd, RowData data, double[] distances) throws ClusException {
+        m_DescriptiveBlock.calcDistances(m_DescriptiveBlock.compileQuery(tupleInd), DenseFeatureBlock.NORM_MANHATTAN, distances);
+        DataTuple tuple = data.getTuple(tupleInd);
+        for (int attrInd = 0; attrInd < m_NbDescriptiveAttrs; attrInd++) {
+            if (!m_DescriptiveBlock.isSupported(attrInd)) {
+                ClusAttrType attr = m_DescriptiveTargetAttr[DESCRIPTIVE_SPACE][attrInd];
+                for (int i = 0; i < m_NbExamples; i++) {
+                    distances[i] += calcDistance1D(tuple, data.getTuple(i), attr);
+                }
+            }
+        }
+        for (int i = 0; i < m_NbExamples; i++) {
+            distances[i] /= m_NbDescriptiveAttrs;
+        }
+    }
+
+
+    /**
+     * Distance between the examples with the indices {@code i} and {@code j} in the descriptive attribute with the
+     * index {@code attrInd}.
+     * 
+     * @throws ClusException
+     */
+    private double calcDescriptiveDistance1D(int i, int j, RowData data, int attrInd) throws ClusException {
+        if (m_DescriptiveBlock.isSupported(attrInd)) {
+            return m_DescriptiveBlock.calcDistance1D(attrInd, i, j);
+        }
+        return calcDistance1D(data.getTuple(i), data.getTuple(j), m_DescriptiveTargetAttr[DESCRIPTIVE_SPACE][attrInd]);
+    }
+
+
     /**
      * Distance between tuples in the subspace {@code space}.
      * 
@@ -904,4 +1068,65 @@ public class ClusReliefFeatureRanking extends ClusFeatureRanking {
     	String third = String.format("numbers of iterations: %s", Arrays.toString(iterations));
         setRankingDescription(String.join("\n", new String[]{first, second, third}));
     }
+    
+    /**
+     * The sums of distances, accumulated over the iterations of the importances calculation.
+     */
+    private static class ReliefStatistics {
+        /** m_SumDistAttr[number of neighbours][attribute]: current sum of distances between attribute values, for the given number of neighbours and attribute */
+        double[][] m_SumDistAttr;
+        
+        /** m_SumDistAttr[number of neighbours]: current sum of distances between target values, for the given number of neighbours */
+        double[] m_SumDistTarget;
+        
+        /** m_SumDistAttr[number of neighbours][attribute]: current sum of products of distances between attribute values and distances between target values,
+         * for the given number of neighbours and attribute */
+        double[][] m_SumDistAttrTarget;        
+        
+        /** per-target analogue of {@link #m_SumDistAttr} */     
+        double[][][] m_SumDistAttrPerTarget;
+        
+        /** per-target analogue of {@link #m_SumDistTarget} */
+        double[][] m_SumDistTargetPerTarget;
+        
+        /** per-target analogue of {@link #m_SumDistAttrTarget} */
+        double[][][] m_SumDistAttrTargetPerTarget;
+        
+        /** number of cases when we could not find that many neighbours */
+        int m_InsufficientNbNeighbours;
+        
+        
+        ReliefStatistics(int nbNeighbours, int nbDescriptiveAttrs, int nbTargetAttrs) {
+            m_SumDistAttr = new double[nbNeighbours][nbDescriptiveAttrs];
+            m_SumDistTarget = new double[nbNeighbours];
+            m_SumDistAttrTarget = new double[nbNeighbours][nbDescriptiveAttrs];
+            
+            // per target relevance estimation
+            m_SumDistAttrPerTarget = new double[nbTargetAttrs][nbNeighbours][nbDescriptiveAttrs];
+            m_SumDistTargetPerTarget = new double[nbTargetAttrs][nbNeighbours];
+            m_SumDistAttrTargetPerTarget = new double[nbTargetAttrs][nbNeighbours][nbDescriptiveAttrs];
+        }
+        
+        
+        void add(ReliefStatistics other) {
+            for (int neigh = 0; neigh < m_SumDistTarget.length; neigh++) {
+                m_SumDistTarget[neigh] += other.m_SumDistTarget[neigh];
+                add(m_SumDistAttr[neigh], other.m_SumDistAttr[neigh]);
+                add(m_SumDistAttrTarget[neigh], other.m_SumDistAttrTarget[neigh]);
+                for (int target = 0; target < m_SumDistTargetPerTarget.length; target++) {
+                    m_SumDistTargetPerTarget[target][neigh] += other.m_SumDistTargetPerTarget[target][neigh];
+                    add(m_SumDistAttrPerTarget[target][neigh], other.m_SumDistAttrPerTarget[target][neigh]);
+                    add(m_SumDistAttrTargetPerTarget[target][neigh], other.m_SumDistAttrTargetPerTarget[target][neigh]);
+                }
+            }
+            m_InsufficientNbNeighbours += other.m_InsufficientNbNeighbours;
+        }
+        
+        
+        private static void add(double[] sums, double[] values) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += values[i];
+            }
+        }
+    }
 }
@@ -37,10 +37,11 @@ public class ReliefInduce extends ClusInductionAlgorithm {
     	boolean shouldWeight = cr.getStatManager().getSettings().getReliefWeightNeighbours();
     	double sigma = cr.getStatManager().getSettings().getReliefWeightingSigma();
     	int randomSeed = cr.getStatManager().getSettings().getRandomSeed();
+    	int nbThreads = cr.getStatManager().getSettings().getReliefNbThreads();
     	
         ReliefModel reliefModel = new ReliefModel(nbNeighbours, nbIterations, shouldWeight, sigma, (RowData) cr.getTrainingSet());
 
-        m_FeatureRanking = new ClusReliefFeatureRanking(reliefModel.getData(), reliefModel.getNbNeighbours(), reliefModel.getNbIterations(), reliefModel.getWeightNeighbours(), reliefModel.getSigma(), randomSeed);
+        m_FeatureRanking = new ClusReliefFeatureRanking(reliefModel.getData(), reliefModel.getNbNeighbours(), reliefModel.getNbIterations(), reliefModel.getWeightNeighbours(), reliefModel.getSigma(), randomSeed, nbThreads);
         m_FeatureRanking.initializeAttributes(cr.getStatManager().getSchema().getDescriptiveAttributes(), m_FeatureRanking.getNbFeatureRankings());
         m_FeatureRanking.calculateReliefImportance(reliefModel.getData());
 
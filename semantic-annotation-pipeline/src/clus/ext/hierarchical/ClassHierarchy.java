@@ -30,6 +30,7 @@ import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -140,14 +141,13 @@ public class ClassHierarchy implements Serializable {
 
 
     public final void initClassListRecursiveDAG(ClassTerm term, HashSet<String> set) {
-        if (!set.contains(term.getID())) {
+        if (set.add(term.getID())) {
             // This is the first time we see this term
             m_ClassList.add(term);
             term.sortChildrenByID();
             for (int i = 0; i < term.getNbChildren(); i++) {
                 initClassListRecursiveDAG((ClassTerm) term.getChild(i), set);
             }
-            set.add(term.getID());
         }
     }
 
@@ -172,6 +172,7 @@ public class ClassHierarchy implements Serializable {
             ClassTerm term = getTermAt(i);
             term.setIndex(i);
         }
+        initAncestorIndex();
         System.out.println("Hierarchy initialized: " + getTotal() + " nodes");
         // after this, the hierarchy must not change anymore
         setLocked(true);
@@ -191,6 +192,47 @@ public class ClassHierarchy implements Serializable {
     }
 
 
+    /**
+     * Computes for each term the indices of all its ancestors and stores them in the term, so that the closures do not
+     * need to traverse the hierarchy. Called by {@link #numberHierarchy()}.
+     */
+    public final void initAncestorIndex() {
+        int total = getTotal();
+        int[][] ancestors = new int[total][];
+        for (int i = 0; i < total; i++) {
+            calcAncestorsRecursive(getTermAt(i), ancestors);
+        }
+        for (int i = 0; i < total; i++) {
+            getTermAt(i).setAncestorIndices(ancestors[i]);
+        }
+    }
+
+
+    private int[] calcAncestorsRecursive(ClassTerm term, int[][] ancestors) {
+        int idx = term.getIndex();
+        if (ancestors[idx] == null) {
+            BitSet set = new BitSet();
+            for (int i = 0; i < term.getNbParents(); i++) {
+                ClassTerm parent = term.getParent(i);
+                if (parent.getIndex() != -1) {
+                    set.set(parent.getIndex());
+                    int[] parentAncestors = calcAncestorsRecursive(parent, ancestors);
+                    for (int j = 0; j < parentAncestors.length; j++) {
+                        set.set(parentAncestors[j]);
+                    }
+                }
+            }
+            int[] result = new int[set.cardinality()];
+            int pos = 0;
+            for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+                result[pos++] = i;
+            }
+            ancestors[idx] = result;
+        }
+        return ancestors[idx];
+    }
+
+
     public ArrayList<String> getAllParentChildTuples() {
         ArrayList<String> parentchilds = new ArrayList<String>();
         boolean[] visited = new boolean[getTotal()];
@@ -232,10 +274,11 @@ public class ClassHierarchy implements Serializable {
 
 
     public void fillBooleanMatrixMaj(double[] mean, boolean[] matrix, double treshold) {
+        // the terms are numbered 0 .. getTotal() - 1
+        double limit = treshold / 100.0;
         for (int i = 0; i < getTotal(); i++) {
-            ClassTerm term = getTermAt(i);
-            if (mean[term.getIndex()] >= treshold / 100.0)
-                matrix[term.getIndex()] = true;
+            if (mean[i] >= limit)
+                matrix[i] = true;
         }
     }
 
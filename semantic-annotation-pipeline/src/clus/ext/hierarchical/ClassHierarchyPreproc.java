@@ -23,7 +23,6 @@
 package clus.ext.hierarchical;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 
 import clus.data.rows.DataTuple;
 import clus.data.rows.TuplePreproc;
@@ -110,8 +109,9 @@ public class ClassHierarchyPreproc implements TuplePreproc {
 
 
     private void addIntermediateElems(ClassesTuple ct) throws ClusException {
-        Arrays.fill(m_Intermediates, false);
         ct.addIntermediateElems(getHier(), m_Intermediates, m_Scratch);
+        // only the classes of the tuple are set, clearing these is cheaper than clearing the whole array
+        ct.clearBoolArrayNodeAndAncestors(m_Intermediates);
         m_Scratch.clear();
     }
 }
@@ -24,6 +24,7 @@ package clus.ext.hierarchical;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -54,6 +55,11 @@ public class ClassTerm extends IndexedItem implements Node, Comparable {
      * of parents).
      */
     protected double m_Depth;
+    /**
+     * Indices of all ancestors of the term (the root excluded) in increasing order, see
+     * {@link ClassHierarchy#initAncestorIndex()}. Null if the index is not built, then the parents are traversed.
+     */
+    protected transient int[] m_Ancestors;
 
 
     public ClassTerm() {
@@ -275,7 +281,13 @@ public class ClassTerm extends IndexedItem implements Node, Comparable {
 
     public void fillVectorNodeAndAncestors(double[] array) {
         int idx = getIndex();
-        if (idx != -1 && array[idx] == 0.0) {
+        if (idx != -1 && m_Ancestors != null) {
+            array[idx] = 1.0;
+            for (int i = 0; i < m_Ancestors.length; i++) {
+                array[m_Ancestors[i]] = 1.0;
+            }
+        }
+        else if (idx != -1 && array[idx] == 0.0) {
             array[idx] = 1.0;
             for (int i = 0; i < getNbParents(); i++) {
                 getParent(i).fillVectorNodeAndAncestors(array);
@@ -284,9 +296,32 @@ public class ClassTerm extends IndexedItem implements Node, Comparable {
     }
 
 
+    public void fillBitSetNodeAndAncestors(BitSet set) {
+        int idx = getIndex();
+        if (idx != -1 && m_Ancestors != null) {
+            set.set(idx);
+            for (int i = 0; i < m_Ancestors.length; i++) {
+                set.set(m_Ancestors[i]);
+            }
+        }
+        else if (idx != -1 && !set.get(idx)) {
+            set.set(idx);
+            for (int i = 0; i < getNbParents(); i++) {
+                getParent(i).fillBitSetNodeAndAncestors(set);
+            }
+        }
+    }
+
+
     public void fillBoolArrayNodeAndAncestors(boolean[] array) {
         int idx = getIndex();
-        if (idx != -1 && !array[idx]) {
+        if (idx != -1 && m_Ancestors != null) {
+            array[idx] = true;
+            for (int i = 0; i < m_Ancestors.length; i++) {
+                array[m_Ancestors[i]] = true;
+            }
+        }
+        else if (idx != -1 && !array[idx]) {
             array[idx] = true;
             for (int i = 0; i < getNbParents(); i++) {
                 getParent(i).fillBoolArrayNodeAndAncestors(array);
@@ -295,6 +330,11 @@ public class ClassTerm extends IndexedItem implements Node, Comparable {
     }
 
 
+    public void setAncestorIndices(int[] ancestors) {
+        m_Ancestors = ancestors;
+    }
+
+
     public int getNbLeaves() {
         int nbc = m_SubTerms.size();
         if (nbc == 0) {
@@ -27,6 +27,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.StringTokenizer;
 
 import clus.jeans.util.array.StringTable;
@@ -40,6 +41,9 @@ public class ClassesTuple implements Serializable {
 
     protected ClassesValue[] m_Tuple;
     protected int m_Count;
+    // Cached set of the classes and their ancestors. It is computed when the hierarchy indices are attached and is
+    // published as one immutable object, because ensemble threads read it concurrently from shared tuples.
+    protected transient volatile Closure m_Closure;
 
 
     public ClassesTuple() {
@@ -98,6 +102,7 @@ public class ClassesTuple implements Serializable {
 
 
     public void setLength(int size) {
+        invalidateClosure();
         ClassesValue[] old = m_Tuple;
         m_Tuple = new ClassesValue[size];
         System.arraycopy(old, 0, m_Tuple, 0, size);
@@ -116,16 +121,19 @@ public class ClassesTuple implements Serializable {
 
 
     public final void setSize(int size) {
+        invalidateClosure();
         m_Tuple = new ClassesValue[size];
     }
 
 
     public final void setItemAt(ClassesValue item, int pos) {
+        invalidateClosure();
         m_Tuple[pos] = item;
     }
 
 
     public final void addItem(ClassesValue item) {
+        invalidateClosure();
         m_Tuple[m_Count++] = item;
     }
 
@@ -179,38 +187,88 @@ public class ClassesTuple implements Serializable {
 
     public final double[] getVectorNodeAndAncestors(ClassHierarchy hier) {
         double[] vec = new double[hier.getTotal()];
-        for (int i = 0; i < getNbClasses(); i++) {
-            ClassesValue val = getClass(i);
-            val.getTerm().fillVectorNodeAndAncestors(vec);
+        int[] closure = getClassesAndAncestorsIndices();
+        for (int i = 0; i < closure.length; i++) {
+            vec[closure[i]] = 1.0;
         }
         return vec;
     }
 
 
     public final void fillBoolArrayNodeAndAncestors(boolean[] interms) {
-        for (int i = 0; i < getNbClasses(); i++) {
-            ClassesValue val = getClass(i);
-            val.getTerm().fillBoolArrayNodeAndAncestors(interms);
+        int[] closure = getClassesAndAncestorsIndices();
+        for (int i = 0; i < closure.length; i++) {
+            interms[closure[i]] = true;
+        }
+    }
+
+
+    /**
+     * Returns the classes of this tuple together with all their ancestors (the root excluded). The set is computed
+     * once, when the hierarchy indices are attached or else on first use, and reused until the tuple changes. It must
+     * not be modified.
+     */
+    public final BitSet getClassesAndAncestors() {
+        return getClosure().m_Set;
+    }
+
+
+    /**
+     * Returns the indices of the elements of {@link #getClassesAndAncestors()} in increasing order. The array must not
+     * be modified.
+     */
+    public final int[] getClassesAndAncestorsIndices() {
+        return getClosure().m_Indices;
+    }
+
+
+    private Closure getClosure() {
+        Closure closure = m_Closure;
+        if (closure == null) {
+            // threads that get here at the same time compute equal sets, so it does not matter which one is kept
+            closure = new Closure(this);
+            m_Closure = closure;
         }
+        return closure;
     }
 
 
+    private void invalidateClosure() {
+        m_Closure = null;
+    }
+
+
+    /**
+     * Replaces the classes of this tuple by the classes and their ancestors. Only the classes in the result are set in
+     * alllabels, so the caller can clear it with {@link #clearBoolArrayNodeAndAncestors(boolean[])}.
+     */
     public final void addIntermediateElems(ClassHierarchy hier, boolean[] alllabels, ArrayList added) {
-        fillBoolArrayNodeAndAncestors(alllabels);
-        for (int i = 0; i < hier.getTotal(); i++) {
-            if (alllabels[i]) {
-                ClassTerm term = hier.getTermAt(i);
-                ClassesValue val = new ClassesValue(term);
-                val.setIntermediate(term.hasChildrenIn(alllabels));
-                added.add(val);
-            }
+        int[] closure = getClassesAndAncestorsIndices();
+        for (int i = 0; i < closure.length; i++) {
+            alllabels[closure[i]] = true;
+        }
+        for (int i = 0; i < closure.length; i++) {
+            ClassTerm term = hier.getTermAt(closure[i]);
+            ClassesValue val = new ClassesValue(term);
+            val.setIntermediate(term.hasChildrenIn(alllabels));
+            added.add(val);
         }
         m_Tuple = new ClassesValue[added.size()];
         System.arraycopy(added.toArray(), 0, m_Tuple, 0, added.size());
+        // the classes and their ancestors did not change, so the cached closure remains valid
+    }
+
+
+    public final void clearBoolArrayNodeAndAncestors(boolean[] interms) {
+        int[] closure = getClassesAndAncestorsIndices();
+        for (int i = 0; i < closure.length; i++) {
+            interms[closure[i]] = false;
+        }
     }
 
 
     public final void cloneFrom(ClassesTuple tuple) {
+        invalidateClosure();
         int size = tuple.m_Tuple.length;
         m_Tuple = new ClassesValue[size];
         System.arraycopy(tuple.m_Tuple, 0, m_Tuple, 0, size);
@@ -272,15 +330,19 @@ public class ClassesTuple implements Serializable {
 
 
     public final void addHierarchyIndices(ClassHierarchy hier) throws ClusException {
+        invalidateClosure();
         for (int i = 0; i < getNbClasses(); i++) {
             ClassesValue val = getClass(i);
             ClassTerm term = hier.getClassTerm(val);
             val.setClassTerm(term);
         }
+        // the hierarchy is numbered before the indices are attached, so the closure does not change anymore
+        m_Closure = new Closure(this);
     }
 
 
     public void removeLabels(boolean[] removed) {
+        invalidateClosure();
         ArrayList left = new ArrayList();
         for (int i = 0; i < getNbClasses(); i++) {
             ClassesValue val = getClass(i);
@@ -315,4 +377,28 @@ public class ClassesTuple implements Serializable {
         return tuple;
     }
 
+
+    /**
+     * The classes of a tuple and all their ancestors, as a bit set and as the sorted indices of its elements.
+     */
+    private static final class Closure {
+
+        final BitSet m_Set;
+        final int[] m_Indices;
+
+
+        Closure(ClassesTuple tuple) {
+            BitSet set = new BitSet();
+            for (int i = 0; i < tuple.getNbClasses(); i++) {
+                tuple.getClass(i).getTerm().fillBitSetNodeAndAncestors(set);
+            }
+            int[] indices = new int[set.cardinality()];
+            int pos = 0;
+            for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+                indices[pos++] = i;
+            }
+            m_Set = set;
+            m_Indices = indices;
+        }
+    }
 }
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 import clus.data.rows.DataTuple;
 import clus.error.BinaryPredictionList;
@@ -62,18 +63,18 @@ public class HierErrorMeasures extends ClusError {
     public void addExample(DataTuple tuple, ClusStatistic pred) {
         ClassesTuple tp = (ClassesTuple) tuple.getObjVal(m_Hier.getType().getArrayIndex());
         double[] predarr = ((WHTDStatistic) pred).getNumericPred();
-        boolean[] actual = tp.getVectorBooleanNodeAndAncestors(m_Hier);
+        BitSet actual = tp.getClassesAndAncestors();
         for (int i = 0; i < m_Dim; i++) {
-            m_ClassWisePredictions[i].addExample(actual[i], predarr[i]);
+            m_ClassWisePredictions[i].addExample(actual.get(i), predarr[i]);
         }
     }
 
 
     public void addInvalid(DataTuple tuple) {
         ClassesTuple tp = (ClassesTuple) tuple.getObjVal(m_Hier.getType().getArrayIndex());
-        boolean[] actual = tp.getVectorBooleanNodeAndAncestors(m_Hier);
+        BitSet actual = tp.getClassesAndAncestors();
         for (int i = 0; i < m_Dim; i++) {
-            m_ClassWisePredictions[i].addInvalid(actual[i]);
+            m_ClassWisePredictions[i].addInvalid(actual.get(i));
         }
     }
 
@@ -33,6 +33,7 @@ import java.io.PrintWriter;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 
 import org.apache.commons.math.MathException;
@@ -198,13 +199,12 @@ public class WHTDStatistic extends RegressionStatBinaryNomiss {
         int sidx = m_Hier.getType().getArrayIndex();
         ClassesTuple tp = (ClassesTuple) tuple.getObjVal(sidx);
         m_SumWeight += weight;
-        // Add one to the elements in the tuple, zero to the others
+        // Add one to the elements in the tuple, zero to the others: only the classes of the tuple are visited
+        boolean pool = m_Distance == Settings.HIERDIST_NO_DIST;
         for (int j = 0; j < tp.getNbClasses(); j++) {
-            ClassesValue val = tp.getClass(j);
-            int idx = val.getIndex();
-            // if (Settings.VERBOSE > 10) System.out.println("idx = "+idx+" weight = "+weight);
+            int idx = tp.getPosition(j);
             m_SumValues[idx] += weight;
-            if (m_Distance == Settings.HIERDIST_NO_DIST) {// poolAUPRC case
+            if (pool) {// poolAUPRC case
                 m_P[idx] += weight;
             }
         }
@@ -360,12 +360,11 @@ public class WHTDStatistic extends RegressionStatBinaryNomiss {
      **/
     public double getSquaredDistance(DataTuple tuple, ClusAttributeWeights weights) {
         double sum = 0.0;
-        boolean[] actual = new boolean[m_Hier.getTotal()];
         ClassesTuple tp = (ClassesTuple) tuple.getObjVal(m_Hier.getType().getArrayIndex());
-        tp.fillBoolArrayNodeAndAncestors(actual);
+        BitSet actual = tp.getClassesAndAncestors();
         for (int i = 0; i < m_Hier.getTotal(); i++) {
             NumericAttrType type = getAttribute(i);
-            double actual_zo = actual[i] ? 1.0 : 0.0;
+            double actual_zo = actual.get(i) ? 1.0 : 0.0;
             double dist = actual_zo - m_Means[i];
             sum += dist * dist * weights.getWeight(type);
         }
@@ -375,12 +374,11 @@ public class WHTDStatistic extends RegressionStatBinaryNomiss {
 
     public double getAbsoluteDistance(DataTuple tuple, ClusAttributeWeights weights, ClusStatManager statmanager) {
         double sum = 0.0;
-        boolean[] actual = new boolean[m_Hier.getTotal()];
         ClassesTuple tp = (ClassesTuple) tuple.getObjVal(m_Hier.getType().getArrayIndex());
-        tp.fillBoolArrayNodeAndAncestors(actual);
+        BitSet actual = tp.getClassesAndAncestors();
         for (int i = 0; i < m_Hier.getTotal(); i++) {
             NumericAttrType type = getAttribute(i);
-            double actual_zo = actual[i] ? 1.0 : 0.0;
+            double actual_zo = actual.get(i) ? 1.0 : 0.0;
             double dist = actual_zo - m_Means[i];
             WHTDStatistic tstat = (WHTDStatistic) statmanager.getTrainSetStat(ClusAttrType.ATTR_USE_CLUSTERING);
             if (tstat.getVariance(i) != 0)
@@ -30,6 +30,15 @@ public class DTWTimeSeriesDist extends TimeSeriesDist {
 
     public final static long serialVersionUID = Settings.SERIAL_VERSION_ID;
 
+    /**
+     * Factor applied to the lower bounds before they are compared to the distances, so that rounding errors cannot
+     * make a lower bound larger than the distance it bounds.
+     */
+    public final static double LOWER_BOUND_SLACK = 1.0 - 1e-10;
+
+    /** Two rows of the warping path matrix per thread, see {@link #getRows(int)}. */
+    private final static ThreadLocal<double[][]> m_Rows = new ThreadLocal<double[][]>();
+
 
     public DTWTimeSeriesDist(TimeSeriesAttrType attr) {
         super(attr);
@@ -43,52 +52,134 @@ public class DTWTimeSeriesDist extends TimeSeriesDist {
      * http://www.hpl.hp.com/conferences/icml2003/papers/145.pdf
      */
     public double calcDistance(TimeSeries t1, TimeSeries t2, int adjustmentWindow) {
+        return calcDistance(t1, t2, adjustmentWindow, Double.POSITIVE_INFINITY);
+    }
 
+
+    /**
+     * Computes the distance row by row. Only the cells (i, j) of the warping path matrix with |i - j| <= window are
+     * computed, and only the last two rows are kept. If all the cells of a row (divided by m + n) are larger than the
+     * threshold, the distance is larger than the threshold as well, and the computation is abandoned.
+     * 
+     * @return The distance, or a lower bound for the distance that is larger than the threshold, if the computation
+     *         was abandoned.
+     */
+    public double calcDistance(TimeSeries t1, TimeSeries t2, int adjustmentWindow, double threshold) {
         int m = t1.length();
         int n = t2.length();
-        double[][] wrappingPathMatrix = new double[m][n];
         double[] vt1 = t1.getValues();
         double[] vt2 = t2.getValues();
-        wrappingPathMatrix[0][0] = Math.abs((vt1[0] - vt2[0])) * 2;
-        int aw = Math.min(m, adjustmentWindow);
-
-        for (int i = 1; i < aw; i++) {
-            wrappingPathMatrix[i][0] = wrappingPathMatrix[i - 1][0] + Math.abs((vt1[i] - vt2[0]));
+        double[][] rows = getRows(n);
+        double[] prev = rows[0];
+        double[] cur = rows[1];
+
+        // the first row: only the first min(n, adjustmentWindow) cells are reachable
+        prev[0] = Math.abs((vt1[0] - vt2[0])) * 2;
+        int aw = Math.min(n, adjustmentWindow);
+        for (int j = 1; j < aw; j++) {
+            prev[j] = prev[j - 1] + Math.abs((vt1[0] - vt2[j]));
         }
-
-        for (int i = aw; i < m; i++) {
-            wrappingPathMatrix[i][0] = Double.POSITIVE_INFINITY;
+        for (int j = aw; j < n; j++) {
+            prev[j] = Double.POSITIVE_INFINITY;
         }
 
-        aw = Math.min(n, adjustmentWindow);
-        for (int i = 1; i < aw; i++) {
-            wrappingPathMatrix[0][i] = wrappingPathMatrix[0][i - 1] + Math.abs((vt1[0] - vt2[i]));
+        for (int i = 1; i < m; i++) {
+            // the first column: only the first min(m, adjustmentWindow) cells are reachable
+            cur[0] = i < adjustmentWindow ? prev[0] + Math.abs((vt1[i] - vt2[0])) : Double.POSITIVE_INFINITY;
+            double rowMin = cur[0];
+            int lo = Math.max(i - adjustmentWindow, 1);
+            int hi = Math.min(i + adjustmentWindow, n - 1);
+            if (lo > 1 && lo <= hi) {
+                cur[lo - 1] = Double.POSITIVE_INFINITY;
+            }
+            for (int j = lo; j <= hi; j++) {
+                double dfk = Math.abs(vt1[i] - vt2[j]);
+                cur[j] = Math.min(cur[j - 1] + dfk, Math.min(prev[j] + dfk, prev[j - 1] + dfk * 2));
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (hi + 1 < n) {
+                cur[hi + 1] = Double.POSITIVE_INFINITY;
+            }
+            if (rowMin / (m + n) > threshold) { return rowMin / (m + n); }
+            double[] tmp = prev;
+            prev = cur;
+            cur = tmp;
         }
+        // the last cell lies outside the band if |m - n| > adjustmentWindow
+        if (m > 1 && n > 1 && Math.abs(m - n) > adjustmentWindow) { return Double.POSITIVE_INFINITY; }
+        return prev[n - 1] / (m + n);
+    }
+
+
+    public double calcDistance(TimeSeries t1, TimeSeries t2) {
+        return calcDistance(t1, t2, getAdjustmentWindow(t1, t2));
+    }
 
-        for (int i = aw; i < n; i++) {
-            wrappingPathMatrix[0][i] = Double.POSITIVE_INFINITY;
+
+    /**
+     * The same as {@link #calcDistance(TimeSeries, TimeSeries)}, but the computation is abandoned as soon as the
+     * distance is known to be larger than the threshold, see
+     * {@link #calcDistance(TimeSeries, TimeSeries, int, double)}.
+     */
+    public double calcDistance(TimeSeries t1, TimeSeries t2, double threshold) {
+        return calcDistance(t1, t2, getAdjustmentWindow(t1, t2), threshold);
+    }
+
+
+    public int getAdjustmentWindow(TimeSeries t1, TimeSeries t2) {
+        return Math.max(Math.max(Math.abs(t1.length() - t2.length()) + 1, t1.length() / 2), t2.length() / 2);
+    }
+
+
+    /**
+     * Computes the envelope of the time series for LB_Keogh: lower[j] and upper[j] are the minimum and the maximum of
+     * the values with the indices i, |i - j| <= window.
+     */
+    public static void calcEnvelope(TimeSeries ts, int window, double[] lower, double[] upper) {
+        double[] values = ts.getValues();
+        int n = values.length;
+        for (int j = 0; j < n; j++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int end = Math.min(n - 1, j + window);
+            for (int i = Math.max(0, j - window); i <= end; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+            lower[j] = min;
+            upper[j] = max;
         }
+    }
+
 
-        for (int k = 2; k < m + n - 1; k++) {
-            for (int i = Math.max(k - n + 1, 1); i < Math.min(k, m); i++) {
-                if (Math.abs(2 * i - k) <= adjustmentWindow) {
-                    double dfk = Math.abs(vt1[i] - vt2[k - i]);
-                    wrappingPathMatrix[i][k - i] = Math.min(wrappingPathMatrix[i][k - i - 1] + dfk, Math.min(wrappingPathMatrix[i - 1][k - i] + dfk, wrappingPathMatrix[i - 1][k - i - 1] + dfk * 2));
-                }
-                else {
-                    wrappingPathMatrix[i][k - i] = Double.POSITIVE_INFINITY;
-                }
+    /**
+     * LB_Keogh lower bound for calcDistance(t1, ts, window), where lower and upper are the envelope of t1 (see
+     * {@link #calcEnvelope(TimeSeries, int, double[], double[])}) and ts has the same length as t1. Every value of ts
+     * is matched to at least one value of t1 within the window, which is at least as far as the envelope.
+     */
+    public static double calcLowerBound(double[] lower, double[] upper, TimeSeries ts) {
+        double[] values = ts.getValues();
+        double lb = 0.0;
+        for (int j = 0; j < values.length; j++) {
+            double v = values[j];
+            if (v > upper[j]) {
+                lb += v - upper[j];
+            }
+            else if (v < lower[j]) {
+                lb += lower[j] - v;
             }
         }
-        // if ( wrappingPathMatrix[m-1][n-1] == Double.POSITIVE_INFINITY){
-        // System.out.println("SD");
-        // }
-        return wrappingPathMatrix[m - 1][n - 1] / (m + n);
+        return lb / (2 * values.length) * LOWER_BOUND_SLACK;
     }
 
 
-    public double calcDistance(TimeSeries t1, TimeSeries t2) {
-        return calcDistance(t1, t2, Math.max(Math.max(Math.abs(t1.length() - t2.length()) + 1, t1.length() / 2), t2.length() / 2));
+    private static double[][] getRows(int n) {
+        double[][] rows = m_Rows.get();
+        if (rows == null || rows[0].length < n) {
+            rows = new double[2][n];
+            m_Rows.set(rows);
+        }
+        return rows;
     }
 
 
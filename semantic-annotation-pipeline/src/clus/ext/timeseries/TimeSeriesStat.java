@@ -24,6 +24,7 @@ package clus.ext.timeseries;
 
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Random;
 
 import clus.data.attweights.ClusAttributeWeights;
 import clus.data.rows.DataTuple;
@@ -37,41 +38,59 @@ import clus.statistic.ClusStatistic;
 import clus.statistic.StatisticPrintInfo;
 import clus.statistic.SumPairwiseDistancesStat;
 import clus.util.ClusFormat;
+import clus.util.ClusRandom;
 
 
 public class TimeSeriesStat extends SumPairwiseDistancesStat {
 
     public final static long serialVersionUID = Settings.SERIAL_VERSION_ID;
 
+    /** Number of samples from which a candidate medoid is taken when the medoid is approximated */
+    public final static int NB_MEDOID_SAMPLES = 5;
+
     // m_RepresentativeMean is the time series representing the cluster
 
     // TODO: Investigate the usage of Medoid vs. mean?
 
     protected TimeSeriesAttrType m_Attr;
-    private ArrayList m_TimeSeriesStack = new ArrayList();
+    private ArrayList<TimeSeries> m_TimeSeriesStack = new ArrayList<TimeSeries>();
     public TimeSeries m_RepresentativeMean = new TimeSeries("[]");
     public TimeSeries m_RepresentativeMedoid = new TimeSeries("[]");
 
     // public TimeSeries m_RepresentativeQuantitve=new TimeSeries("[]");
 
     protected double m_AvgDistances;
+    // 0 if the medoid is searched among all time series
+    protected int m_MedoidSampleSize;
 
 
     public TimeSeriesStat(TimeSeriesAttrType attr, ClusDistance dist, int efflvl) {
+        this(attr, dist, efflvl, 0);
+    }
+
+
+    /**
+     * @param sampleSize
+     *        if positive and smaller than the number of time series, the medoid is approximated as in CLARA: the
+     *        medoids of {@link #NB_MEDOID_SAMPLES} random samples of this size are the candidates, and the candidate
+     *        with the smallest sum of distances to all time series is the medoid
+     */
+    public TimeSeriesStat(TimeSeriesAttrType attr, ClusDistance dist, int efflvl, int sampleSize) {
         super(dist, efflvl);
         m_Attr = attr;
+        m_MedoidSampleSize = sampleSize;
     }
 
 
     public ClusStatistic cloneStat() {
-        TimeSeriesStat stat = new TimeSeriesStat(m_Attr, m_Distance, m_Efficiency);
+        TimeSeriesStat stat = new TimeSeriesStat(m_Attr, m_Distance, m_Efficiency, m_MedoidSampleSize);
         stat.cloneFrom(this);
         return stat;
     }
 
 
     public ClusStatistic cloneSimple() {
-        TimeSeriesStat stat = new TimeSeriesStat(m_Attr, m_Distance, m_Efficiency);
+        TimeSeriesStat stat = new TimeSeriesStat(m_Attr, m_Distance, m_Efficiency, m_MedoidSampleSize);
         stat.m_RepresentativeMean = new TimeSeries(m_RepresentativeMean.length());
         stat.m_RepresentativeMedoid = new TimeSeries(m_RepresentativeMedoid.length());
         return stat;
@@ -174,20 +193,11 @@ public class TimeSeriesStat extends SumPairwiseDistancesStat {
      */
     public void calcMean() {
         // Medoid
-        m_RepresentativeMedoid = null;
-        double minDistance = Double.POSITIVE_INFINITY;
-        for (int i = 0; i < m_TimeSeriesStack.size(); i++) {
-            double crDistance = 0.0;
-            TimeSeries t1 = (TimeSeries) m_TimeSeriesStack.get(i);
-            for (int j = 0; j < m_TimeSeriesStack.size(); j++) {
-                TimeSeries t2 = (TimeSeries) m_TimeSeriesStack.get(j);
-                double dist = calcDistance(t1, t2);
-                crDistance += dist * t2.geTSWeight();
-            }
-            if (crDistance < minDistance) {
-                m_RepresentativeMedoid = (TimeSeries) m_TimeSeriesStack.get(i);
-                minDistance = crDistance;
-            }
+        if (m_MedoidSampleSize > 0 && m_TimeSeriesStack.size() > m_MedoidSampleSize) {
+            m_RepresentativeMedoid = calcMedoidSampled();
+        }
+        else {
+            m_RepresentativeMedoid = calcMedoid(m_TimeSeriesStack, m_TimeSeriesStack);
         }
         calcSumAndSumSqDistances(m_RepresentativeMedoid);
         // Mean
@@ -245,6 +255,123 @@ public class TimeSeriesStat extends SumPairwiseDistancesStat {
     }
 
 
+    /**
+     * @return the candidate with the smallest weighted sum of distances to the given time series (the first one in
+     *         case of ties)
+     */
+    private TimeSeries calcMedoid(ArrayList<TimeSeries> candidates, ArrayList<TimeSeries> series) {
+        if (getDistance() instanceof DTWTimeSeriesDist) {
+            return calcMedoidDTW((DTWTimeSeriesDist) getDistance(), candidates, series);
+        }
+        TimeSeries medoid = null;
+        double minDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < candidates.size(); i++) {
+            double crDistance = 0.0;
+            TimeSeries t1 = candidates.get(i);
+            for (int j = 0; j < series.size(); j++) {
+                TimeSeries t2 = series.get(j);
+                double dist = calcDistance(t1, t2);
+                crDistance += dist * t2.geTSWeight();
+            }
+            if (crDistance < minDistance) {
+                medoid = t1;
+                minDistance = crDistance;
+            }
+        }
+        return medoid;
+    }
+
+
+    /**
+     * CLARA: each sample takes O(s^2) distance computations for its medoid and the candidates take O(n) each, instead
+     * of O(n^2) for the exhaustive search.
+     */
+    private TimeSeries calcMedoidSampled() {
+        int size = m_TimeSeriesStack.size();
+        Random random = ClusRandom.getRandom(ClusRandom.RANDOM_MEDOID_SAMPLE);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        ArrayList<TimeSeries> candidates = new ArrayList<TimeSeries>();
+        ArrayList<TimeSeries> sample = new ArrayList<TimeSeries>(m_MedoidSampleSize);
+        for (int s = 0; s < NB_MEDOID_SAMPLES; s++) {
+            // partial Fisher-Yates shuffle: the first m_MedoidSampleSize elements of order are the sample
+            sample.clear();
+            for (int i = 0; i < m_MedoidSampleSize; i++) {
+                int j = i + random.nextInt(size - i);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+                sample.add(m_TimeSeriesStack.get(order[i]));
+            }
+            TimeSeries candidate = calcMedoid(sample, sample);
+            if (candidate != null && !candidates.contains(candidate)) {
+                candidates.add(candidate);
+            }
+        }
+        return calcMedoid(candidates, m_TimeSeriesStack);
+    }
+
+
+    /**
+     * Finds the same medoid as the exhaustive search in {@link #calcMedoid(ArrayList, ArrayList)}, but a candidate is
+     * abandoned as soon as its (weighted) sum of distances is known to be at least the smallest sum so far. For series
+     * of equal length, the distances that are not computed yet are bounded from below with LB_Keogh, and each DTW
+     * computation is abandoned when it exceeds the remaining budget.
+     */
+    private TimeSeries calcMedoidDTW(DTWTimeSeriesDist dtw, ArrayList<TimeSeries> candidates,
+            ArrayList<TimeSeries> series) {
+        int size = series.size();
+        TimeSeries medoid = null;
+        double minDistance = Double.POSITIVE_INFINITY;
+        boolean useLowerBounds = m_Attr.isEqualLength() && size > 0;
+        // remaining[j] = lower bound for the weighted sum of the distances to the series j, j + 1, ...
+        double[] remaining = new double[size + 1];
+        double[] lower = null;
+        double[] upper = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            TimeSeries t1 = candidates.get(i);
+            if (useLowerBounds && minDistance < Double.POSITIVE_INFINITY) {
+                if (lower == null) {
+                    lower = new double[t1.length()];
+                    upper = new double[t1.length()];
+                }
+                DTWTimeSeriesDist.calcEnvelope(t1, dtw.getAdjustmentWindow(t1, t1), lower, upper);
+                for (int j = size - 1; j >= 0; j--) {
+                    TimeSeries t2 = series.get(j);
+                    remaining[j] = remaining[j + 1] + DTWTimeSeriesDist.calcLowerBound(lower, upper, t2) * t2.geTSWeight();
+                }
+                if (remaining[0] >= minDistance) {
+                    continue;
+                }
+            }
+            double crDistance = 0.0;
+            boolean abandoned = false;
+            for (int j = 0; j < size; j++) {
+                if (crDistance + remaining[j] >= minDistance) {
+                    abandoned = true;
+                    break;
+                }
+                TimeSeries t2 = series.get(j);
+                double weight = t2.geTSWeight();
+                double threshold = weight > 0 ? (minDistance - crDistance - remaining[j + 1]) / weight : Double.POSITIVE_INFINITY;
+                double dist = dtw.calcDistance(t1, t2, threshold);
+                if (dist > threshold && crDistance + dist * weight + remaining[j + 1] < minDistance) {
+                    // abandoned because of rounding errors in the threshold: the exact distance is needed
+                    dist = dtw.calcDistance(t1, t2);
+                }
+                crDistance += dist * weight;
+            }
+            if (!abandoned && crDistance < minDistance) {
+                medoid = t1;
+                minDistance = crDistance;
+            }
+        }
+        return medoid;
+    }
+
+
     public void reset() {
         super.reset();
         m_TimeSeriesStack.clear();
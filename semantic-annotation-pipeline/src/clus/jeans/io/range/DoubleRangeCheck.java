@@ -22,8 +22,12 @@
 
 package clus.jeans.io.range;
 
-public class DoubleRangeCheck implements ValueCheck {
+import java.io.Serializable;
 
+
+public class DoubleRangeCheck implements ValueCheck, Serializable {
+
+    private static final long serialVersionUID = 1L;
     protected double m_MinDouble, m_MaxDouble;
 
 
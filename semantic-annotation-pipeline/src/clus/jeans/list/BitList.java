@@ -82,8 +82,8 @@ public class BitList implements Serializable {
         int olen = other.m_Bits.length;
         if (m_Bits == null || olen != m_Bits.length) {
             m_Bits = new long[olen];
-            m_Size = other.size();
         }
+        m_Size = other.size();
         System.arraycopy(other.m_Bits, 0, m_Bits, 0, olen);
     }
 
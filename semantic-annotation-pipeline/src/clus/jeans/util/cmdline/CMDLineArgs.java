@@ -30,6 +30,7 @@ public class CMDLineArgs {
     protected CMDLineArgsProvider $prov;
     protected Hashtable $optargs = new Hashtable();
     protected String[] $mainargs;
+    protected String[] $args;
     protected boolean $ok;
     protected int m_NbMainArgs;
 
@@ -41,6 +42,7 @@ public class CMDLineArgs {
 
 
     public void process(String[] args) {
+        $args = args;
         int idx = 0;
         boolean done = false;
         String[] options = $prov.getOptionArgs();
@@ -97,6 +99,14 @@ public class CMDLineArgs {
     }
 
 
+    /**
+     * @return The arguments as given to {@link #process(String[])}.
+     */
+    public String[] getArgs() {
+        return $args;
+    }
+
+
     public boolean allOK() {
         return $ok;
     }
@@ -229,7 +229,7 @@ public class ClusOutput {
         }
 
         // Compute basename - not needed
-        String bName = FileUtil.getName(m_Fname);
+        String bName = getBaseName();
         m_Writer.println();
         ClusErrorList te_err = cr.getTestError();
         if (m_Sett.isOutFoldError() || detail) {
@@ -373,7 +373,7 @@ public class ClusOutput {
                 m_Writer.println("     " + mi.getName() + ": " + getQuotient(mi.getModelSize(), runs));
         }
         m_Writer.println();
-        String bName = FileUtil.getName(m_Fname);
+        String bName = getBaseName();
         ClusErrorList tr_err = summary.getTrainError();
         if (m_Sett.isOutTrainError() && tr_err != null) {
             m_Writer.println("Training error");
@@ -410,6 +410,15 @@ public class ClusOutput {
     }
 
 
+    /**
+     * @return The name of the output file without extension, or the application name if the output is written to a
+     *         string (as for the folds of a cross-validation that are run separately).
+     */
+    public String getBaseName() {
+        return m_Fname != null ? FileUtil.getName(m_Fname) : m_Sett.getAppName();
+    }
+
+
     public void close() {
         if (m_Fname != null)
             System.out.println("Output written to: " + m_Fname);
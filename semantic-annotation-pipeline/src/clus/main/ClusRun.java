@@ -44,6 +44,8 @@ public class ClusRun extends ClusModelInfoList {
     protected ClusData m_Train, m_Prune, m_Orig;
     protected ClusSelection m_TestSel, m_PruneSel;
     protected TupleIterator m_Test;
+    /** Streams the training set when it is not kept in memory, null otherwise */
+    protected TupleIterator m_TrainIter;
     protected ClusSummary m_Summary;
 
     ClusReadWriteLock m_Lock = new ClusReadWriteLock();
@@ -64,6 +66,7 @@ public class ClusRun extends ClusModelInfoList {
         m_TestSel = other.m_TestSel;
         m_PruneSel = other.m_PruneSel;
         m_Test = other.m_Test;
+        m_TrainIter = other.m_TrainIter;
         m_Summary = other.m_Summary.getSummaryClone();
         setModels(other.cloneModels());
     }
@@ -165,10 +168,18 @@ public class ClusRun extends ClusModelInfoList {
 
 
     public final TupleIterator getTrainIter() {
+        if (m_TrainIter != null) {
+            return m_TrainIter;
+        }
         return ((RowData) m_Train).getIterator();
     }
 
 
+    public final void setTrainIter(TupleIterator iter) {
+        m_TrainIter = iter;
+    }
+
+
     // To keep training examples in same order :-)
     public final void copyTrainingData() {
         RowData clone = (RowData) m_Train.cloneData();
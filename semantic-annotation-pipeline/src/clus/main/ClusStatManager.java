@@ -42,7 +42,9 @@ import clus.data.ClusData;
 import clus.data.attweights.ClusAttributeWeights;
 import clus.data.attweights.ClusNormalizedAttributeWeights;
 import clus.data.rows.DataPreprocs;
+import clus.data.rows.DataTuple;
 import clus.data.rows.RowData;
+import clus.data.rows.TupleIterator;
 import clus.data.type.ClusAttrType;
 import clus.data.type.ClusSchema;
 import clus.data.type.NominalAttrType;
@@ -376,6 +378,42 @@ public class ClusStatManager implements Serializable {
 
     /** Initializes normalization weights to m_NormalizationWeights variable */
     public void initNormalizationWeights(ClusStatistic stat, ClusData data) throws ClusException {
+        boolean[] shouldNormalize = initFixedNormalizationWeights();
+        if (hasBitEqualToOne(shouldNormalize)) {
+            data.calcTotalStat(stat);
+            initNormalizationWeights(stat, shouldNormalize);
+            if (m_Mode == MODE_TIME_SERIES) {
+                TimeSeriesStat tstat = (TimeSeriesStat) createStatistic(ClusAttrType.ATTR_USE_TARGET);
+                ((RowData) data).calcTotalStatBitVector(tstat);
+                tstat.initNormalizationWeights(m_NormalizationWeights, shouldNormalize);
+            }
+        }
+    }
+
+
+    /** Initializes normalization weights from data that is streamed instead of kept in memory */
+    public void initNormalizationWeights(ClusStatistic stat, TupleIterator iter) throws ClusException, IOException {
+        boolean[] shouldNormalize = initFixedNormalizationWeights();
+        if (hasBitEqualToOne(shouldNormalize)) {
+            if (m_Mode == MODE_TIME_SERIES) { throw new ClusException("Normalization weights for time series can only be computed from data in memory"); }
+            iter.init();
+            int idx = 0;
+            DataTuple tuple = iter.readTuple();
+            while (tuple != null) {
+                stat.updateWeighted(tuple, idx++);
+                tuple = iter.readTuple();
+            }
+            iter.close();
+            initNormalizationWeights(stat, shouldNormalize);
+        }
+    }
+
+
+    /**
+     * Sets the normalization weights that are given in the settings and returns which attributes should be
+     * normalized based on the data instead
+     */
+    private boolean[] initFixedNormalizationWeights() throws ClusException {
         int nbattr = m_Schema.getNbAttributes();
         m_NormalizationWeights.setAllWeights(1.0);
         boolean[] shouldNormalize = new boolean[nbattr];
@@ -397,22 +435,19 @@ public class ClusStatManager implements Serializable {
                 m_NormalizationWeights.setAllWeights(winfo.getDouble());
             }
         }
-        if (hasBitEqualToOne(shouldNormalize)) {
-            data.calcTotalStat(stat);
-            CombStat cmb = (CombStat) stat;
-            // data.calcTotalStat(stat); // why is this here? this duplicates weights etc for no apparent reason
-            RegressionStat rstat = cmb.getRegressionStat();
-            rstat.initNormalizationWeights(m_NormalizationWeights, shouldNormalize);
-            // Normalization is currently required for trees but not for rules
-            if (!isRuleInduceOnly()) {
-                ClassificationStat cstat = cmb.getClassificationStat();
-                cstat.initNormalizationWeights(m_NormalizationWeights, shouldNormalize);
-            }
-            if (m_Mode == MODE_TIME_SERIES) {
-                TimeSeriesStat tstat = (TimeSeriesStat) createStatistic(ClusAttrType.ATTR_USE_TARGET);
-                ((RowData) data).calcTotalStatBitVector(tstat);
-                tstat.initNormalizationWeights(m_NormalizationWeights, shouldNormalize);
-            }
+        return shouldNormalize;
+    }
+
+
+    /** Sets the normalization weights of the given attributes from the statistic of all attributes on the data */
+    private void initNormalizationWeights(ClusStatistic stat, boolean[] shouldNormalize) {
+        CombStat cmb = (CombStat) stat;
+        RegressionStat rstat = cmb.getRegressionStat();
+        rstat.initNormalizationWeights(m_NormalizationWeights, shouldNormalize);
+        // Normalization is currently required for trees but not for rules
+        if (!isRuleInduceOnly()) {
+            ClassificationStat cstat = cmb.getClassificationStat();
+            cstat.initNormalizationWeights(m_NormalizationWeights, shouldNormalize);
         }
     }
 
@@ -619,17 +654,18 @@ public class ClusStatManager implements Serializable {
                 ClusAttrType[] targets = m_Schema.getAllAttrUse(ClusAttrType.ATTR_USE_TARGET);
                 TimeSeriesAttrType type = (TimeSeriesAttrType) targets[0];
                 int efficiency = getSettings().m_TimeSeriesHeuristicSampling.getValue();
+                int sampleSize = getSettings().getTimeSeriesMedoidSampleSize();
                 switch (getSettings().getTimeSeriesDistance()) {
                     case Settings.TIME_SERIES_DISTANCE_MEASURE_DTW:
                         TimeSeriesDist dist = new DTWTimeSeriesDist(type);
-                        setClusteringStatistic(new TimeSeriesStat(type, dist, efficiency));
-                        setTargetStatistic(new TimeSeriesStat(type, dist, efficiency));
+                        setClusteringStatistic(new TimeSeriesStat(type, dist, efficiency, sampleSize));
+                        setTargetStatistic(new TimeSeriesStat(type, dist, efficiency, sampleSize));
                         break;
                     case Settings.TIME_SERIES_DISTANCE_MEASURE_QDM:
                         if (type.isEqualLength()) {
                             TimeSeriesDist qdm = new QDMTimeSeriesDist(type);
-                            setClusteringStatistic(new TimeSeriesStat(type, qdm, efficiency));
-                            setTargetStatistic(new TimeSeriesStat(type, qdm, efficiency));
+                            setClusteringStatistic(new TimeSeriesStat(type, qdm, efficiency, sampleSize));
+                            setTargetStatistic(new TimeSeriesStat(type, qdm, efficiency, sampleSize));
                         }
                         else {
                             throw new ClusException("QDM Distance is not implemented for time series with different length");
@@ -637,8 +673,8 @@ public class ClusStatManager implements Serializable {
                         break;
                     case Settings.TIME_SERIES_DISTANCE_MEASURE_TSC:
                         TimeSeriesDist tsc = new TSCTimeSeriesDist(type);
-                        setClusteringStatistic(new TimeSeriesStat(type, tsc, efficiency));
-                        setTargetStatistic(new TimeSeriesStat(type, tsc, efficiency));
+                        setClusteringStatistic(new TimeSeriesStat(type, tsc, efficiency, sampleSize));
+                        setTargetStatistic(new TimeSeriesStat(type, tsc, efficiency, sampleSize));
                         break;
                 }
                 break;
@@ -1212,6 +1248,32 @@ public class ClusStatManager implements Serializable {
     }
 
 
+    /** Computes the same statistics as computeTrainSetStat(RowData) in one pass over a training set that is streamed */
+    public void computeTrainSetStat(TupleIterator trainset) throws IOException, ClusException {
+        m_TrainSetStatAttrUse = new ClusStatistic[ClusAttrType.NB_ATTR_USE];
+        if (getMode() != MODE_HIERARCHICAL)
+            m_TrainSetStatAttrUse[ClusAttrType.ATTR_USE_ALL] = createStatistic(ClusAttrType.ATTR_USE_ALL);
+        m_TrainSetStatAttrUse[ClusAttrType.ATTR_USE_CLUSTERING] = createStatistic(ClusAttrType.ATTR_USE_CLUSTERING);
+        m_TrainSetStatAttrUse[ClusAttrType.ATTR_USE_TARGET] = createStatistic(ClusAttrType.ATTR_USE_TARGET);
+        trainset.init();
+        int idx = 0;
+        DataTuple tuple = trainset.readTuple();
+        while (tuple != null) {
+            for (ClusStatistic stat : m_TrainSetStatAttrUse) {
+                if (stat != null)
+                    stat.updateWeighted(tuple, idx);
+            }
+            idx++;
+            tuple = trainset.readTuple();
+        }
+        trainset.close();
+        for (ClusStatistic stat : m_TrainSetStatAttrUse) {
+            if (stat != null)
+                stat.calcMean();
+        }
+    }
+
+
     public ClusHeuristic getHeuristic() {
         return m_Heuristic;
     }
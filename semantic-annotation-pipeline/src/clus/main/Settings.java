@@ -61,6 +61,7 @@ import clus.jeans.util.StringUtils;
 import clus.jeans.util.cmdline.CMDLineArgs;
 import clus.model.ClusModel;
 import clus.statistic.StatisticPrintInfo;
+import clus.statistic.SumPairwiseDistancesStat;
 
 
 /**
@@ -209,6 +210,10 @@ public class Settings implements Serializable {
     protected INIFileStringOrInt m_PruneSetMax;
     /** How many folds are we having in xval OR gives a file that defines the used folds (in the data set) */
     protected INIFileStringOrInt m_XValFolds;
+    /** How many folds of xval are run at the same time, each in its own process */
+    protected INIFileInt m_XValParallelFolds;
+    /** How many threads parse the data section of uncompressed ARFF files, 0 for all available processors */
+    protected INIFileInt m_ReadNbThreads;
     protected INIFileBool m_RemoveMissingTarget;
 
     // Gradient descent optimization algorithm
@@ -307,6 +312,16 @@ public class Settings implements Serializable {
     }
 
 
+    public int getXValParallelFolds() {
+        return m_XValParallelFolds.getValue();
+    }
+
+
+    public int getReadNbThreads() {
+        return m_ReadNbThreads.getValue();
+    }
+
+
     public boolean isRemoveMissingTarget() {
         return m_RemoveMissingTarget.getValue();
     }
@@ -628,6 +643,8 @@ public class Settings implements Serializable {
      ***********************************************************************/
 
     protected INIFileInt m_SetsData;
+    /** How many bags of -bag are run at the same time, each in its own process */
+    protected INIFileInt m_ParallelBags;
     protected INIFileBool m_OutFoldErr;
     /** Print out data to .arff files for each fold, m_WritePredictions has to be given value to this to work */
     protected INIFileBool m_OutFoldData;
@@ -808,6 +825,11 @@ public class Settings implements Serializable {
         return m_SetsData.getValue();
     }
 
+
+    public int getParallelBags() {
+        return m_ParallelBags.getValue();
+    }
+
     /***********************************************************************
      * Section: Output - Show info in .out file *
      ***********************************************************************/
@@ -855,9 +877,10 @@ public class Settings implements Serializable {
 
     // Added by Eduardo Costa - 06/06/2011
 
-    public final static String[] INDUCTION_ORDER = { "DepthFirst", "BestFirst" };
+    public final static String[] INDUCTION_ORDER = { "DepthFirst", "BestFirst", "LevelWise" };
     public final static int DEPTH_FIRST = 0;
     public final static int BEST_FIRST = 1;
+    public final static int LEVEL_WISE = 2;
 
     protected INIFileNominal m_InductionOrder;
 
@@ -893,6 +916,10 @@ public class Settings implements Serializable {
      * Datapoints will be selected randomly
      **/
     protected INIFileInt m_TreeSplitSampling;
+    /** Maximal number of intervals between the candidate thresholds of a numeric attribute in level-wise induction */
+    protected INIFileInt m_LevelWiseBins;
+    /** Maximal number of nodes of a level whose statistics are computed in one pass over the data, 0 for all */
+    protected INIFileInt m_LevelWiseNodesPerPass;
 
 
     public void setSectionTreeEnabled(boolean enable) {
@@ -983,6 +1010,16 @@ public class Settings implements Serializable {
     }
 
 
+    public int getLevelWiseBins() {
+        return m_LevelWiseBins.getValue();
+    }
+
+
+    public int getLevelWiseNodesPerPass() {
+        return m_LevelWiseNodesPerPass.getValue();
+    }
+
+
     /**
      * For tree to rules procedure, we want to induce a tree without maximum
      * depth
@@ -1433,6 +1470,8 @@ public class Settings implements Serializable {
      * a lot faster, but may decrease the accuracy. Default Yes.
      */
     protected INIFileBool m_OptGDEarlyTTryStop;
+    /** GD Number of threads that compute the covariances and gradients. */
+    protected INIFileInt m_OptGDNbOfThreads;
 
 
     public INIFileNominalOrDoubleOrVector getDispersionWeights() {
@@ -1902,6 +1941,14 @@ public class Settings implements Serializable {
         return m_OptGDEarlyTTryStop.getValue();
     }
 
+
+    /**
+     * GD Number of threads that compute the covariances between the base functions and the gradients.
+     */
+    public int getOptGDNbOfThreads() {
+        return m_OptGDNbOfThreads.getValue();
+    }
+
     /***********************************************************************
      * Section: Multi-label classification *
      ***********************************************************************/
@@ -2385,11 +2432,12 @@ public class Settings implements Serializable {
     public final static int TIME_SERIES_DISTANCE_MEASURE_QDM = 1;
     public final static int TIME_SERIES_DISTANCE_MEASURE_TSC = 2;
 
-    public final static String[] TIME_SERIES_PROTOTYPE_COMPLEXITY = { "N2", "LOG", "LINEAR", "NPAIRS", "TEST" };
+    public final static String[] TIME_SERIES_PROTOTYPE_COMPLEXITY = { "N2", "LOG", "LINEAR", "NPAIRS", "TEST", "INCREMENTAL" };
 
     INIFileSection m_SectionTimeSeries;
     public INIFileNominal m_TimeSeriesDistance;
     public INIFileNominal m_TimeSeriesHeuristicSampling;
+    protected INIFileInt m_TimeSeriesMedoidSampleSize;
 
 
     public boolean isSectionTimeSeriesEnabled() {
@@ -2403,7 +2451,7 @@ public class Settings implements Serializable {
 
 
     public boolean isTimeSeriesProtoComlexityExact() {
-        if (m_TimeSeriesHeuristicSampling.getValue() == 0) {
+        if (m_TimeSeriesHeuristicSampling.getValue() == 0 || m_TimeSeriesHeuristicSampling.getValue() == SumPairwiseDistancesStat.EFFICIENCY_INCREMENTAL) {
             return true;
         }
         else {
@@ -2421,6 +2469,15 @@ public class Settings implements Serializable {
         return m_TimeSeriesHeuristicSampling.getValue();
     }
 
+
+    /**
+     * @return the number of time series in each sample that is used to find the medoid, 0 if the medoid is found
+     *         among all time series
+     */
+    public int getTimeSeriesMedoidSampleSize() {
+        return m_TimeSeriesMedoidSampleSize.getValue();
+    }
+
     /***********************************************************************
      * Section: Phylogeny *
      ***********************************************************************/
@@ -2502,6 +2559,7 @@ public class Settings implements Serializable {
     private INIFileNominalOrDoubleOrVector m_ReliefNbIterations;
     private INIFileBool m_ReliefShouldHaveNeighbourWeighting;
     private INIFileDouble m_ReliefWeightingSigma;
+    private INIFileInt m_ReliefNbThreads;
 
 
     public void setSectionReliefEnabled(boolean value) {
@@ -2588,6 +2646,11 @@ public class Settings implements Serializable {
         return m_ReliefWeightingSigma.getValue();
     }
 
+
+    public int getReliefNbThreads() {
+        return m_ReliefNbThreads.getValue();
+    }
+
     /***********************************************************************
      * Section: Distances *
      ***********************************************************************/
@@ -2658,6 +2721,7 @@ public class Settings implements Serializable {
     public static INIFileBool m_PrintAllModels;
     public static INIFileBool m_PrintAllModelFiles;
     public static INIFileBool m_PrintAllModelInfo;
+    public static INIFileBool m_WriteBinaryForest;
     public static INIFileBool m_PrintPaths;
     public static boolean m_EnsembleMode = false;
     /** Time & memory optimization */
@@ -2924,6 +2988,15 @@ public class Settings implements Serializable {
     }
 
 
+    /**
+     * @return True if the trees of the ensemble should also be written to a binary forest file (.forest), see
+     *         {@link clus.model.modelio.ClusBinaryForestFile}.
+     */
+    public static boolean isWriteBinaryForest() {
+        return m_WriteBinaryForest.getValue();
+    }
+
+
     public static boolean shouldOptimizeEnsemble() {
         return m_EnsembleShouldOpt.getValue();
     }
@@ -2998,6 +3071,7 @@ public class Settings implements Serializable {
     public static INIFileString kNN_method;
     public static INIFileString kNN_distanceWeight;
     public static INIFileString kNN_attrWeight;
+    public static INIFileInt kNN_nbThreads;
 
 
     public void setSectionKNNEnabled(boolean enable) {
@@ -3014,6 +3088,14 @@ public class Settings implements Serializable {
         return this.kNN_method.getStringValue();
     }
 
+
+    /**
+     * @return The number of threads that search for the nearest neighbours of the tuples in the error computation.
+     */
+    public int getKnnNbThreads() {
+        return kNN_nbThreads.getValue();
+    }
+
     // INIFileSection m_SectionKNN;
     // public final static String[] kNN_METHODS = {"VP-tree", "KD-tree", "BrutForce"};
     // public final static int kNN_VP = 0;
@@ -3177,6 +3259,10 @@ public class Settings implements Serializable {
         data.addNode(m_PruneSetMax = new INIFileStringOrInt("PruneSetMax", INFINITY_STRING));
         data.addNode(m_XValFolds = new INIFileStringOrInt("XVal"));
         m_XValFolds.setIntValue(10);
+        data.addNode(m_XValParallelFolds = new INIFileInt("XValParallelFolds", 1));
+        m_XValParallelFolds.setValueCheck(new IntRangeCheck(1, 200));
+        data.addNode(m_ReadNbThreads = new INIFileInt("ReadNbThreads", 0));
+        m_ReadNbThreads.setValueCheck(new IntRangeCheck(0, 200));
         data.addNode(m_RemoveMissingTarget = new INIFileBool("RemoveMissingTarget", false));
         data.addNode(m_NormalizeData = new INIFileNominal("NormalizeData", NORMALIZE_DATA_VALUES, 0));
 
@@ -3261,6 +3347,10 @@ public class Settings implements Serializable {
 
         // added by Eduardo Costa 06/06/2011
         m_SectionTree.addNode(m_InductionOrder = new INIFileNominal("InductionOrder", INDUCTION_ORDER, 0));
+        m_SectionTree.addNode(m_LevelWiseBins = new INIFileInt("LevelWiseBins", 256));
+        m_LevelWiseBins.setValueCheck(new IntRangeCheck(2, 65536));
+        m_SectionTree.addNode(m_LevelWiseNodesPerPass = new INIFileInt("LevelWiseNodesPerPass", 0));
+        m_LevelWiseNodesPerPass.setValueCheck(new IntRangeCheck(0, Integer.MAX_VALUE));
 
         // added by Eduardo Costa 29/09/2011
         m_SectionTree.addNode(m_EntropyType = new INIFileNominal("EntropyType", ENTROPY_TYPE, 0));
@@ -3323,6 +3413,8 @@ public class Settings implements Serializable {
         m_SectionRules.addNode(m_OptGDMTGradientCombine = new INIFileNominal("OptGDMTGradientCombine", OPT_GD_MT_COMBINE_GRADIENTS, 0));
         m_SectionRules.addNode(m_OptGDNbOfTParameterTry = new INIFileInt("OptGDNbOfTParameterTry", 1));
         m_SectionRules.addNode(m_OptGDEarlyTTryStop = new INIFileBool("OptGDEarlyTTryStop", true));
+        m_SectionRules.addNode(m_OptGDNbOfThreads = new INIFileInt("OptGDNbOfThreads", 1));
+        m_OptGDNbOfThreads.setValueCheck(new IntRangeCheck(1, 200));
         m_SectionRules.setEnabled(false);
 
         m_SectionMultiLabel = new INIFileSection("MultiLabel");
@@ -3395,6 +3487,8 @@ public class Settings implements Serializable {
         m_SectionTimeSeries = new INIFileSection("TimeSeries");
         m_SectionTimeSeries.addNode(m_TimeSeriesDistance = new INIFileNominal("DistanceMeasure", TIME_SERIES_DISTANCE_MEASURE, 0));
         m_SectionTimeSeries.addNode(m_TimeSeriesHeuristicSampling = new INIFileNominal("PrototypeComlexity", TIME_SERIES_PROTOTYPE_COMPLEXITY, 0));
+        m_SectionTimeSeries.addNode(m_TimeSeriesMedoidSampleSize = new INIFileInt("MedoidSampleSize", 0));
+        m_TimeSeriesMedoidSampleSize.setValueCheck(new IntRangeCheck(0, Integer.MAX_VALUE));
         m_SectionTimeSeries.setEnabled(false);
 
         m_SectionPhylogeny = new INIFileSection("Phylogeny");
@@ -3418,6 +3512,8 @@ public class Settings implements Serializable {
                                                                                                     // the authors do
                                                                                                     // not give any
                                                                                                     // suggestions
+        m_SectionRelief.addNode(m_ReliefNbThreads = new INIFileInt("numberOfThreads", 1));
+        m_ReliefNbThreads.setValueCheck(new IntRangeCheck(1, 200));
         m_SectionRelief.setEnabled(false);
 
         m_SectionDistances = new INIFileSection("Distances");
@@ -3433,6 +3529,7 @@ public class Settings implements Serializable {
         m_SectionEnsembles.addNode(m_PrintAllModels = new INIFileBool("PrintAllModels", false));
         m_SectionEnsembles.addNode(m_PrintAllModelFiles = new INIFileBool("PrintAllModelFiles", false));
         m_SectionEnsembles.addNode(m_PrintAllModelInfo = new INIFileBool("PrintAllModelInfo", false));
+        m_SectionEnsembles.addNode(m_WriteBinaryForest = new INIFileBool("WriteBinaryForest", false));
         m_SectionEnsembles.addNode(m_PrintPaths = new INIFileBool("PrintPaths", false));
         m_SectionEnsembles.addNode(m_EnsembleShouldOpt = new INIFileBool("Optimize", false));
         m_SectionEnsembles.addNode(m_EnsembleOOBestimate = new INIFileBool("OOBestimate", false));
@@ -3466,6 +3563,8 @@ public class Settings implements Serializable {
         m_SectionKNN.addNode(kNN_distance = new INIFileString("distance", "euclidean"));
         m_SectionKNN.addNode(kNN_distanceWeight = new INIFileString("distanceWeighting", "none"));
         m_SectionKNN.addNode(kNN_attrWeight = new INIFileString("attributeWeighting", "none"));
+        m_SectionKNN.addNode(kNN_nbThreads = new INIFileInt("numberOfThreads", 1));
+        kNN_nbThreads.setValueCheck(new IntRangeCheck(1, 200));
         m_SectionKNN.setEnabled(false);
 
         // m_SectionKNN = new INIFileSection("kNN");
@@ -3501,6 +3600,8 @@ public class Settings implements Serializable {
 
         INIFileSection exper = new INIFileSection("Experimental");
         exper.addNode(m_SetsData = new INIFileInt("NumberBags", 25));
+        exper.addNode(m_ParallelBags = new INIFileInt("ParallelBags", 1));
+        m_ParallelBags.setValueCheck(new IntRangeCheck(1, 200));
         exper.addNode(m_ShowForest = new INIFileBool("XValForest", false));
         exper.setEnabled(false);
 
@@ -3536,6 +3637,7 @@ public class Settings implements Serializable {
         m_TreeMaxDepth.setNamedValue(-1, "Infinity");
         m_TreeMaxSize.setNamedValue(-1, "Infinity");
         m_TreeSplitSampling.setNamedValue(0, "None");
+        m_LevelWiseNodesPerPass.setNamedValue(0, "Infinity");
     }
 
 
@@ -0,0 +1,150 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.model.modelio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+import clus.data.type.ClusAttrType;
+import clus.data.type.ClusSchema;
+import clus.ext.hierarchical.ClassHierarchy;
+
+
+/**
+ * Constants and helper streams of the binary forest format, written by {@link ClusBinaryForestWriter} and read by
+ * {@link ClusBinaryForestReader}.
+ * 
+ * Layout of a file (all numbers big-endian):
+ * 
+ * <pre>
+ * header:  int MAGIC, int VERSION, int number of attributes in the schema
+ * trees:   for each tree: int length, length bytes (deflated serialized ClusNode)
+ * index:   for each tree: long position of its record
+ * trailer: long position of the index, int number of trees, int MAGIC
+ * </pre>
+ * 
+ * The format only changes the container: each tree is still a Java serialization of its ClusNode object graph, not
+ * a dedicated node encoding, so records depend on the serialized form of the node, test and statistic classes.
+ * Each tree is serialized on its own, so that it can be read without reading the others. The objects that all trees
+ * share (the schema, its attributes and the class hierarchy) are not written; they are replaced by a reference that
+ * is resolved against the schema and the hierarchy given to the reader.
+ */
+public class ClusBinaryForestFile {
+
+    /** "CLBF" */
+    public final static int MAGIC = 0x434C4246;
+    public final static int VERSION = 1;
+
+    public final static int HEADER_SIZE = 12;
+    public final static int TRAILER_SIZE = 16;
+
+
+    /**
+     * Placeholder for an object that is shared by all trees.
+     */
+    static class SharedReference implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public final static int SCHEMA = 0;
+        public final static int ATTRIBUTE = 1;
+        public final static int HIERARCHY = 2;
+
+        int m_Kind;
+        int m_Index;
+
+
+        SharedReference(int kind, int index) {
+            m_Kind = kind;
+            m_Index = index;
+        }
+    }
+
+
+    static class TreeOutputStream extends ObjectOutputStream {
+
+        private ClusSchema m_Schema;
+
+
+        TreeOutputStream(OutputStream out, ClusSchema schema) throws IOException {
+            super(out);
+            m_Schema = schema;
+            enableReplaceObject(true);
+        }
+
+
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof ClusSchema) {
+                return new SharedReference(SharedReference.SCHEMA, 0);
+            }
+            else if (obj instanceof ClusAttrType) {
+                ClusAttrType attr = (ClusAttrType) obj;
+                int idx = attr.getIndex();
+                // attributes that are not part of the schema (e.g., created while pruning) are written as they are
+                if (idx >= 0 && idx < m_Schema.getNbAttributes() && m_Schema.getAttrType(idx) == attr) { return new SharedReference(SharedReference.ATTRIBUTE, idx); }
+            }
+            else if (obj instanceof ClassHierarchy) {
+                return new SharedReference(SharedReference.HIERARCHY, 0);
+            }
+            return obj;
+        }
+    }
+
+
+    static class TreeInputStream extends ObjectInputStream {
+
+        private ClusSchema m_Schema;
+        private ClassHierarchy m_Hier;
+
+
+        TreeInputStream(InputStream in, ClusSchema schema, ClassHierarchy hier) throws IOException {
+            super(in);
+            m_Schema = schema;
+            m_Hier = hier;
+            enableResolveObject(true);
+        }
+
+
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof SharedReference) {
+                SharedReference ref = (SharedReference) obj;
+                switch (ref.m_Kind) {
+                    case SharedReference.SCHEMA:
+                        return m_Schema;
+                    case SharedReference.ATTRIBUTE:
+                        return m_Schema.getAttrType(ref.m_Index);
+                    case SharedReference.HIERARCHY:
+                        if (m_Hier == null) { throw new IOException("The forest refers to a class hierarchy, but none was given"); }
+                        return m_Hier;
+                    default:
+                        throw new IOException("Unknown shared reference: " + ref.m_Kind);
+                }
+            }
+            return obj;
+        }
+    }
+}
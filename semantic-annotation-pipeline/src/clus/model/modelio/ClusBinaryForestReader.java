@@ -0,0 +1,133 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.model.modelio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.InflaterInputStream;
+
+import clus.algo.tdidt.ClusNode;
+import clus.data.type.ClusSchema;
+import clus.ext.ensembles.ClusForest;
+import clus.ext.hierarchical.ClassHierarchy;
+
+
+/**
+ * Reads a file in the format of {@link ClusBinaryForestFile}. The file is memory-mapped and only the index is read
+ * when the reader is created; a tree is deserialized the first time it is asked for by {@link #getTree(int)}.
+ * {@link #addTreesToForest(ClusForest)} asks for all of them.
+ */
+public class ClusBinaryForestReader {
+
+    private ClusSchema m_Schema;
+    private ClassHierarchy m_Hier;
+    private ByteBuffer m_Buffer;
+    private long[] m_Offsets;
+    private ClusNode[] m_Trees;
+
+
+    /**
+     * @param schema
+     *        The schema of the data the forest was built on
+     * @param hier
+     *        The class hierarchy (for hierarchical multi-label classification), or {@code null}
+     */
+    public ClusBinaryForestReader(String fname, ClusSchema schema, ClassHierarchy hier) throws IOException {
+        m_Schema = schema;
+        m_Hier = hier;
+        RandomAccessFile file = new RandomAccessFile(fname, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) { throw new IOException("Forest file too large to be mapped: " + fname); }
+            if (size < ClusBinaryForestFile.HEADER_SIZE + ClusBinaryForestFile.TRAILER_SIZE) { throw new IOException("Not a forest file: " + fname); }
+            m_Buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        finally {
+            file.close(); // the mapping stays valid
+        }
+        if (m_Buffer.getInt(0) != ClusBinaryForestFile.MAGIC) { throw new IOException("Not a forest file: " + fname); }
+        int version = m_Buffer.getInt(4);
+        if (version != ClusBinaryForestFile.VERSION) { throw new IOException("Unsupported forest file version " + version + " in " + fname); }
+        int nbAttrs = m_Buffer.getInt(8);
+        if (nbAttrs != schema.getNbAttributes()) { throw new IOException("Forest file " + fname + " was written for a schema with " + nbAttrs + " attributes, but the schema has " + schema.getNbAttributes()); }
+        int trailer = m_Buffer.limit() - ClusBinaryForestFile.TRAILER_SIZE;
+        if (m_Buffer.getInt(trailer + 12) != ClusBinaryForestFile.MAGIC) { throw new IOException("Forest file " + fname + " is incomplete (was the writer closed?)"); }
+        int index = (int) m_Buffer.getLong(trailer);
+        int nbTrees = m_Buffer.getInt(trailer + 8);
+        m_Offsets = new long[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            m_Offsets[i] = m_Buffer.getLong(index + 8 * i);
+        }
+        m_Trees = new ClusNode[nbTrees];
+    }
+
+
+    public int getNbTrees() {
+        return m_Trees.length;
+    }
+
+
+    /**
+     * @return The tree with the given index (starting at 0). It is read from the file on the first call.
+     */
+    public synchronized ClusNode getTree(int idx) throws IOException {
+        if (m_Trees[idx] == null) {
+            m_Trees[idx] = readTree(idx);
+        }
+        return m_Trees[idx];
+    }
+
+
+    private ClusNode readTree(int idx) throws IOException {
+        ByteBuffer buf = m_Buffer.duplicate();
+        buf.position((int) m_Offsets[idx]);
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        ClusBinaryForestFile.TreeInputStream strm = new ClusBinaryForestFile.TreeInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)), m_Schema, m_Hier);
+        try {
+            return (ClusNode) strm.readObject();
+        }
+        catch (ClassNotFoundException e) {
+            throw new IOException("Cannot read tree " + idx + ": " + e.getMessage());
+        }
+        finally {
+            strm.close();
+        }
+    }
+
+
+    /**
+     * Adds all trees to the forest (in the order in which they were written).
+     */
+    public void addTreesToForest(ClusForest forest) throws IOException {
+        for (int i = 0; i < getNbTrees(); i++) {
+            ClusNode tree = getTree(i);
+            forest.addModelToForest(tree);
+            forest.updateCounts(tree);
+        }
+    }
+}
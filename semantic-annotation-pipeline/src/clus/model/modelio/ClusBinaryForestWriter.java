@@ -0,0 +1,95 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.model.modelio;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import clus.algo.tdidt.ClusNode;
+import clus.data.type.ClusSchema;
+
+
+/**
+ * Writes the trees of a forest to a file in the format of {@link ClusBinaryForestFile}. Trees can be appended one at
+ * a time, e.g., while the ensemble is still being built; the index is written by {@link #close()}.
+ */
+public class ClusBinaryForestWriter {
+
+    private DataOutputStream m_Out;
+    private ClusSchema m_Schema;
+    private long m_Position;
+    private long[] m_Offsets = new long[16];
+    private int m_NbTrees;
+
+
+    public ClusBinaryForestWriter(String fname, ClusSchema schema) throws IOException {
+        m_Out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+        m_Schema = schema;
+        m_Out.writeInt(ClusBinaryForestFile.MAGIC);
+        m_Out.writeInt(ClusBinaryForestFile.VERSION);
+        m_Out.writeInt(schema.getNbAttributes());
+        m_Position = ClusBinaryForestFile.HEADER_SIZE;
+    }
+
+
+    public synchronized void writeTree(ClusNode tree) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream zip = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED));
+        ClusBinaryForestFile.TreeOutputStream strm = new ClusBinaryForestFile.TreeOutputStream(zip, m_Schema);
+        strm.writeObject(tree);
+        strm.close();
+        if (m_NbTrees == m_Offsets.length) {
+            long[] offsets = new long[2 * m_Offsets.length];
+            System.arraycopy(m_Offsets, 0, offsets, 0, m_NbTrees);
+            m_Offsets = offsets;
+        }
+        m_Offsets[m_NbTrees++] = m_Position;
+        m_Out.writeInt(bytes.size());
+        bytes.writeTo(m_Out);
+        m_Position += 4 + bytes.size();
+    }
+
+
+    public int getNbTrees() {
+        return m_NbTrees;
+    }
+
+
+    /**
+     * Writes the index and closes the file.
+     */
+    public synchronized void close() throws IOException {
+        for (int i = 0; i < m_NbTrees; i++) {
+            m_Out.writeLong(m_Offsets[i]);
+        }
+        m_Out.writeLong(m_Position);
+        m_Out.writeInt(m_NbTrees);
+        m_Out.writeInt(ClusBinaryForestFile.MAGIC);
+        m_Out.close();
+    }
+}
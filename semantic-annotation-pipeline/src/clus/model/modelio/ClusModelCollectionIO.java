@@ -32,8 +32,10 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 
+import clus.ext.ensembles.ClusForest;
 import clus.jeans.io.ObjectLoadStream;
 import clus.jeans.io.ObjectSaveStream;
+import clus.main.ClusStatManager;
 import clus.model.ClusModel;
 import clus.model.ClusModelInfo;
 
@@ -111,4 +113,20 @@ public class ClusModelCollectionIO implements Serializable {
         strm.close();
         return result;
     }
+
+
+    /**
+     * Loads a forest written in the binary forest format (see {@link ClusBinaryForestFile}), as a collection with the
+     * single model "Original". All trees are read, because evaluating the forest uses each of them.
+     */
+    public static ClusModelCollectionIO loadForest(String filename, ClusStatManager mgr) throws IOException {
+        ClusBinaryForestReader rdr = new ClusBinaryForestReader(filename, mgr.getSchema(), mgr.getHier());
+        ClusForest forest = new ClusForest(mgr, null);
+        rdr.addTreesToForest(forest);
+        ClusModelInfo info = new ClusModelInfo("Original");
+        info.setModel(forest);
+        ClusModelCollectionIO result = new ClusModelCollectionIO();
+        result.addModel(info);
+        return result;
+    }
 }
@@ -16,10 +16,32 @@ public class SumPairwiseDistancesStat extends BitVectorStat {
     public final static int linearParameter = 10;
     public final static Random m_Random = new Random(0);
 
+    /**
+     * Efficiency level of the exact computation that keeps running sums while tuples are added, see
+     * {@link #optimizeIncrementalPreCalc(RowData)}.
+     */
+    public final static int EFFICIENCY_INCREMENTAL = 5;
+
     protected double m_SVarS;
     protected ClusDistance m_Distance;
     protected int m_Efficiency = 2;
 
+    // Running sums for EFFICIENCY_INCREMENTAL. They describe the first m_NbProcessed tuples in m_Members, the
+    // remaining tuples in m_Members were added after the last computation. If m_HasSums is false, the members are
+    // unknown (e.g., after add()) and the sums are computed from scratch.
+    protected boolean m_HasSums = true;
+    protected int[] m_Members;
+    protected int m_NbMembers;
+    protected int m_NbProcessed;
+    protected double m_SumDist; // sum of w_i * w_j * d(i, j) over i < j
+    protected double m_SumWiTria; // sum of w_i * w_j over i < j
+    protected double m_SumWiDiag; // sum of w_i * w_i
+    protected double m_SumWi; // sum of w_i
+    // m_RowSums[i] = sum of w_i * w_j * d(i, j) over the processed members j, for processed members i. May be shared
+    // with copies of this statistic, in which case it is copied before it is changed.
+    protected double[] m_RowSums;
+    protected boolean m_RowSumsShared;
+
 
     public SumPairwiseDistancesStat(ClusDistance dist) {
         m_Distance = dist;
@@ -48,6 +70,50 @@ public class SumPairwiseDistancesStat extends BitVectorStat {
     }
 
 
+    public void setSDataSize(int nbex) {
+        super.setSDataSize(nbex);
+        if (m_Efficiency == EFFICIENCY_INCREMENTAL) {
+            resetSums();
+        }
+    }
+
+
+    public void updateWeighted(DataTuple tuple, int idx) {
+        super.updateWeighted(tuple, idx);
+        if (m_Efficiency == EFFICIENCY_INCREMENTAL && m_HasSums) {
+            if (m_Members == null || m_NbMembers == m_Members.length) {
+                int[] members = new int[Math.max(16, Math.max(2 * m_NbMembers, m_Bits.size()))];
+                if (m_Members != null) {
+                    System.arraycopy(m_Members, 0, members, 0, m_NbMembers);
+                }
+                m_Members = members;
+            }
+            m_Members[m_NbMembers++] = idx;
+        }
+    }
+
+
+    public void reset() {
+        super.reset();
+        resetSums();
+    }
+
+
+    protected void resetSums() {
+        m_HasSums = true;
+        m_NbMembers = 0;
+        m_NbProcessed = 0;
+        m_SumDist = 0.0;
+        m_SumWiTria = 0.0;
+        m_SumWiDiag = 0.0;
+        m_SumWi = 0.0;
+        if (m_RowSumsShared) {
+            m_RowSums = null;
+            m_RowSumsShared = false;
+        }
+    }
+
+
     public void optimizePreCalc(RowData data) {
         if (!m_Modified)
             return;
@@ -58,6 +124,9 @@ public class SumPairwiseDistancesStat extends BitVectorStat {
             case 2:
                 optimizeLinearPreCalc(data);
                 break;
+            case EFFICIENCY_INCREMENTAL:
+                optimizeIncrementalPreCalc(data);
+                break;
             default:
                 optimizePreCalcExact(data);
                 break;
@@ -103,6 +172,52 @@ public class SumPairwiseDistancesStat extends BitVectorStat {
     }
 
 
+    /**
+     * Computes the same value as {@link #optimizePreCalcExact(RowData)}, but only the distances between the tuples
+     * added since the last computation and the other tuples are computed: the sums over the pairs of tuples are kept
+     * from one computation to the next. During the split search, where the tuples are added to the positive statistic
+     * one at a time, this takes O(n) distance computations per candidate split instead of O(n^2). See also
+     * {@link #subtractFromThis(ClusStatistic)} for the negative statistic.
+     */
+    public void optimizeIncrementalPreCalc(RowData data) {
+        if (!m_HasSums) {
+            optimizePreCalcExact(data);
+            return;
+        }
+        if (m_NbProcessed < m_NbMembers) {
+            if (m_RowSums == null || m_RowSumsShared || m_RowSums.length < m_Bits.size()) {
+                double[] rowSums = new double[m_Bits.size()];
+                if (m_RowSums != null) {
+                    System.arraycopy(m_RowSums, 0, rowSums, 0, Math.min(m_RowSums.length, rowSums.length));
+                }
+                m_RowSums = rowSums;
+                m_RowSumsShared = false;
+            }
+            for (int k = m_NbProcessed; k < m_NbMembers; k++) {
+                int idx = m_Members[k];
+                DataTuple a = data.getTuple(idx);
+                double a_weight = a.getWeight();
+                double rowSum = 0.0;
+                for (int j = 0; j < k; j++) {
+                    int other = m_Members[j];
+                    DataTuple b = data.getTuple(other);
+                    double wd = a_weight * b.getWeight() * calcDistance(a, b);
+                    rowSum += wd;
+                    m_RowSums[other] += wd;
+                }
+                m_RowSums[idx] = rowSum;
+                m_SumDist += rowSum;
+                m_SumWiTria += a_weight * m_SumWi;
+                m_SumWiDiag += a_weight * a_weight;
+                m_SumWi += a_weight;
+            }
+            m_NbProcessed = m_NbMembers;
+        }
+        double denominator = 2 * m_SumWiTria + m_SumWiDiag;
+        m_SVarS = denominator > 0 ? getTotalWeight() * m_SumDist / denominator : 0.0;
+    }
+
+
     public final static int Sampling_K_Random(int a, int b) {
         /* return value in interval a ... b (inclusive) */
         return a + m_Random.nextInt(b + 1);
@@ -199,6 +314,65 @@ public class SumPairwiseDistancesStat extends BitVectorStat {
         super.copy(other);
         SumPairwiseDistancesStat or = (SumPairwiseDistancesStat) other;
         m_SVarS = or.m_SVarS;
+        if (m_Efficiency == EFFICIENCY_INCREMENTAL) {
+            m_HasSums = or.m_HasSums;
+            if (m_HasSums) {
+                if (or.m_NbMembers > 0 && (m_Members == null || m_Members.length < or.m_NbMembers)) {
+                    m_Members = new int[or.m_Members.length];
+                }
+                if (or.m_NbMembers > 0) {
+                    System.arraycopy(or.m_Members, 0, m_Members, 0, or.m_NbMembers);
+                }
+                m_NbMembers = or.m_NbMembers;
+                m_NbProcessed = or.m_NbProcessed;
+                m_SumDist = or.m_SumDist;
+                m_SumWiTria = or.m_SumWiTria;
+                m_SumWiDiag = or.m_SumWiDiag;
+                m_SumWi = or.m_SumWi;
+                m_RowSums = or.m_RowSums;
+                m_RowSumsShared = or.m_RowSums != null;
+                or.m_RowSumsShared = m_RowSumsShared;
+            }
+        }
+    }
+
+
+    public void add(ClusStatistic other) {
+        super.add(other);
+        m_HasSums = false;
+    }
+
+
+    /**
+     * If this statistic has the running sums of {@link #optimizeIncrementalPreCalc(RowData)} for all its tuples and
+     * the other statistic for a subset of them (as for the total and the positive statistic during the split search),
+     * the value for the remaining tuples is computed without any distance computations: with T = this, P = other and
+     * N = T \ P, the sum of the distances over the pairs in N equals sum(T) + sum(P) - sum_{p in P} rowSum_T(p).
+     */
+    public void subtractFromThis(ClusStatistic other) {
+        SumPairwiseDistancesStat or = (SumPairwiseDistancesStat) other;
+        boolean incremental = m_Efficiency == EFFICIENCY_INCREMENTAL && m_HasSums && !m_Modified && m_NbProcessed == m_NbMembers && m_RowSums != null && or.m_Efficiency == EFFICIENCY_INCREMENTAL && or.m_HasSums && or.m_NbProcessed == or.m_NbMembers;
+        super.subtractFromThis(other);
+        m_HasSums = false;
+        if (incremental) {
+            double sumRows = 0.0;
+            double sumWiDiag = m_SumWiDiag - or.m_SumWiDiag;
+            for (int k = 0; k < or.m_NbMembers; k++) {
+                sumRows += m_RowSums[or.m_Members[k]];
+            }
+            double sumDist = Math.max(0.0, m_SumDist + or.m_SumDist - sumRows);
+            double sumWiNeg = m_SumWi - or.m_SumWi;
+            double sumWiTria = m_SumWiTria - or.m_SumWiTria - or.m_SumWi * sumWiNeg;
+            double denominator = 2 * sumWiTria + sumWiDiag;
+            m_SVarS = denominator > 0 ? getTotalWeight() * sumDist / denominator : 0.0;
+            m_Modified = false;
+        }
+    }
+
+
+    public void subtractFromOther(ClusStatistic other) {
+        super.subtractFromOther(other);
+        m_HasSums = false;
     }
 
 
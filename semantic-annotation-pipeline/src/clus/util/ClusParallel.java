@@ -0,0 +1,90 @@
+/*************************************************************************
+ * Clus - Software for Predictive Clustering *
+ * Copyright (C) 2007 *
+ * Katholieke Universiteit Leuven, Leuven, Belgium *
+ * Jozef Stefan Institute, Ljubljana, Slovenia *
+ * *
+ * This program is free software: you can redistribute it and/or modify *
+ * it under the terms of the GNU General Public License as published by *
+ * the Free Software Foundation, either version 3 of the License, or *
+ * (at your option) any later version. *
+ * *
+ * This program is distributed in the hope that it will be useful, *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the *
+ * GNU General Public License for more details. *
+ * *
+ * You should have received a copy of the GNU General Public License *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>. *
+ * *
+ * Contact information: <http://www.cs.kuleuven.be/~dtai/clus/>. *
+ *************************************************************************/
+
+package clus.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+
+/**
+ * Helpers for splitting independent loop iterations across a pool of threads.
+ */
+public class ClusParallel {
+
+    /**
+     * Creates a pool of daemon threads. The threads stop when idle, so the pool does not have to be shut down.
+     */
+    public static ThreadPoolExecutor createDaemonPool(int nbThreads, String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(nbThreads, nbThreads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    /**
+     * Calls body for each index {@code start <= i < end}. If an executor is given, the range is split into at most
+     * one contiguous block per thread, each of at least minBlockSize indices, that are processed in parallel.
+     * The calls for different indices must be independent.
+     */
+    public static void parallelFor(ThreadPoolExecutor executor, int start, int end, int minBlockSize, IntConsumer body) {
+        int nbBlocks = executor == null ? 1 : Math.min(executor.getMaximumPoolSize(), (end - start) / minBlockSize);
+        if (nbBlocks <= 1) {
+            for (int i = start; i < end; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        ArrayList<Future<?>> blocks = new ArrayList<Future<?>>(nbBlocks);
+        for (int block = 0; block < nbBlocks; block++) {
+            final int blockStart = start + (int) ((long) (end - start) * block / nbBlocks);
+            final int blockEnd = start + (int) ((long) (end - start) * (block + 1) / nbBlocks);
+            blocks.add(executor.submit(() -> {
+                for (int i = blockStart; i < blockEnd; i++) {
+                    body.accept(i);
+                }
+            }));
+        }
+        try {
+            for (Future<?> block : blocks) {
+                block.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) { throw (RuntimeException) e.getCause(); }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -32,7 +32,7 @@ public class ClusRandom {
     public static int m_Preset;
     public static boolean m_IsPreset;
 
-    public final static int NB_RANDOM = 10;
+    public final static int NB_RANDOM = 12;
     public final static int RANDOM_TEST_DIR = 0;
     public final static int RANDOM_SELECTION = 1;
     public final static int RANDOM_PARAM_TUNE = 2;
@@ -51,6 +51,10 @@ public class ClusRandom {
     public final static int RANDOM_ENSEMBLE_ROS = 8;
     /** Used for ensemble target subspacing - poisson sampling of the mean */
     public final static int RANDOM_ENSEMBLE_ROS_SUBSPACE_SIZE_SELECTION = 9;
+    /** Used for sampling the candidate medoids of time series */
+    public final static int RANDOM_MEDOID_SAMPLE = 10;
+    /** Used for sampling the candidate thresholds of numeric attributes in level-wise tree induction */
+    public final static int RANDOM_LEVELWISE_SAMPLE = 11;
 
     public static Random[] m_Random;
 
@@ -92,6 +96,22 @@ public class ClusRandom {
     }
 
 
+    /**
+     * Initializes the generators for one fold of a cross-validation. With a preset seed, the seed of the fold is
+     * derived from the preset seed and the fold, so a fold gets the same random numbers whether the folds are run one
+     * after another or each in its own process.
+     */
+    public static void initializeFold(Settings sett, int fold) {
+        initialize(sett);
+        if (sett.hasRandomSeed()) {
+            long seed = 31L * m_Preset + fold + 1;
+            for (int i = 0; i < NB_RANDOM; i++) {
+                m_Random[i] = new Random(seed);
+            }
+        }
+    }
+
+
     public static void initialize(int initial) {
         m_Random = new Random[NB_RANDOM];
         for (int i = 0; i < NB_RANDOM; i++) {
@@ -51,7 +51,7 @@ public class GDAlg extends OptAlg {
     private GDProbl m_GDProbl;
 
     /** Current weights */
-    protected ArrayList<Double> m_weights;
+    protected double[] m_weights;
 
     /** After how many steps check if early stopping is ok already */
     protected int m_earlyStopStep;
@@ -269,7 +269,7 @@ public class GDAlg extends OptAlg {
 
             // After it is sure no oscillation is detected, make the changes
             for (int iiGradient = 0; iiGradient < maxGradients.length; iiGradient++) {
-                m_weights.set(maxGradients[iiGradient], m_weights.get(maxGradients[iiGradient]).doubleValue() + valueChange[iiGradient]);
+                m_weights[maxGradients[iiGradient]] += valueChange[iiGradient];
             }
 
             // d) compute the gradients again for the weights that changed
@@ -296,7 +296,7 @@ public class GDAlg extends OptAlg {
         // for (int i=0; i< m_weights.size(); i++)
         // m_weights.set(i,1.0); // default rule
 
-        return m_weights;
+        return GDProbl.toWeightList(m_weights);
     }
 
     /** If weight banning is in use, store the oscillation dimensions here */
@@ -353,7 +353,7 @@ public class GDAlg extends OptAlg {
     private void reversePreviousStep() {
         // First reverse the weights
         for (int iiGradient = 0; iiGradient < m_iPrevDimension.length; iiGradient++) {
-            m_weights.set(m_iPrevDimension[iiGradient], m_weights.get(m_iPrevDimension[iiGradient]).doubleValue() - m_prevChange[iiGradient]);
+            m_weights[m_iPrevDimension[iiGradient]] -= m_prevChange[iiGradient];
         }
 
         // Compute the gradients again. This should no be done so often that this costs very much. Thus we
@@ -446,10 +446,11 @@ public class GDAlg extends OptAlg {
             return;
 
         NumberFormat fr = ClusFormat.SIX_AFTER_DOT;
-        double trainingFitness = m_GDProbl.calcFitness(m_weights);
+        ArrayList<Double> weights = GDProbl.toWeightList(m_weights);
+        double trainingFitness = m_GDProbl.calcFitness(weights);
         double testFitness = 0;
         if (getSettings().getOptGDEarlyStopAmount() > 0)
-            testFitness = m_GDProbl.m_earlyStopProbl.calcFitness(m_weights);
+            testFitness = m_GDProbl.m_earlyStopProbl.calcFitness(weights);
 
         wrt.print("Iteration " + iterNro + " ");
         if (getSettings().isOptGDIsDynStepsize())
@@ -457,8 +458,8 @@ public class GDAlg extends OptAlg {
         wrt.print("(" + fr.format(trainingFitness) + ", " + fr.format(testFitness) + "): ");
         // else
         // wrt.print("Iteration " + iterNro + ": ");
-        for (int i = 0; i < m_weights.size(); i++) {
-            wrt.print(fr.format((double) m_weights.get(i)) + "\t");
+        for (int i = 0; i < m_weights.length; i++) {
+            wrt.print(fr.format(m_weights[i]) + "\t");
         }
         wrt.print("\n");
         // m_GDProbl.printGradientsToFile(nbOfIterations, wrt_log); //gradients //DEBUG
@@ -32,10 +32,13 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.IntConsumer;
 
 import clus.main.ClusStatManager;
 import clus.main.Settings;
 import clus.util.ClusFormat;
+import clus.util.ClusParallel;
 
 
 // Created 28.11.2008 from previous DeProbl class
@@ -119,6 +122,21 @@ public class GDProbl extends OptProbl {
     /** New problem for computing fitness function with the early stop data */
     protected OptProbl m_earlyStopProbl;
 
+    /**
+     * Covered instances of each rule in increasing order [iRule][]. Together with m_ruleCoverWords, this gives both a
+     * sparse and a dense (bitmap) representation of the rule coverage.
+     */
+    protected int[][] m_ruleCoverIndices;
+
+    /** Words of the bitmaps of covered instances of each rule [iRule][], see BitSet.toLongArray() */
+    protected long[][] m_ruleCoverWords;
+
+    /** Minimal number of weights per thread in the parallel computations */
+    public final static int MIN_BLOCK_SIZE = 32;
+
+    /** Threads for the covariance and gradient computations, null if only one thread is used */
+    protected ThreadPoolExecutor m_executor;
+
 
     /**
      * Constructor for problem to be solved with gradient descent. Currently only for regression.
@@ -153,6 +171,12 @@ public class GDProbl extends OptProbl {
             m_earlyStopProbl = new OptProbl(stat_mgr, dataEarlyStop);
         }
 
+        int nbThreads = getSettings().getOptGDNbOfThreads();
+        if (nbThreads > 1) {
+            m_executor = ClusParallel.createDaemonPool(nbThreads, "GDProbl");
+        }
+        initRuleCovers();
+
         int nbWeights = getNumVar();
         // int nbTargets = getNbOfTargets();
 
@@ -188,11 +212,7 @@ public class GDProbl extends OptProbl {
 
         if (getSettings().getOptGDEarlyStopAmount() > 0) {
             m_minFitness = Double.POSITIVE_INFINITY;
-            m_minFitWeights = new ArrayList<Double>(getNumVar());
-
-            for (int iWeight = 0; iWeight < getNumVar(); iWeight++) {
-                m_minFitWeights.add(new Double(0)); // Initialize
-            }
+            m_minFitWeights = new double[getNumVar()]; // Initialize
 
         }
 
@@ -219,9 +239,9 @@ public class GDProbl extends OptProbl {
     // double m_dynStepSizeDrop = 0;
     private void computeDynStepSize() {
 
-        for (int dimension = 0; dimension < getNumVar(); dimension++) {
+        parallelFor(0, getNumVar(), dimension -> {
             m_covariances[dimension][dimension] = computeCovFor2Preds(dimension, dimension);
-        }
+        });
 
         double sum = 0;
         for (int dimension = 0; dimension < getNumVar(); dimension++) {
@@ -242,15 +262,82 @@ public class GDProbl extends OptProbl {
     /**
      * Generates a zero vector.
      */
-    protected ArrayList<Double> getInitialWeightVector() {
-        ArrayList<Double> result = new ArrayList<Double>(getNumVar());
-        for (int i = 0; i < getNumVar(); i++) {
-            result.add(new Double(0.0));
+    protected double[] getInitialWeightVector() {
+        return new double[getNumVar()];
+    }
+
+
+    /** Converts the weights to the representation used by OptProbl. */
+    protected static ArrayList<Double> toWeightList(double[] weights) {
+        ArrayList<Double> result = new ArrayList<Double>(weights.length);
+        for (int i = 0; i < weights.length; i++) {
+            result.add(weights[i]);
         }
         return result;
     }
 
 
+    /** Stores the covered instances of each rule both as sorted indices and as bitmap words. */
+    private void initRuleCovers() {
+        int nbRules = getNumVar();
+        while (nbRules > 0 && !isRuleTerm(nbRules - 1)) {
+            nbRules--;
+        }
+        m_ruleCoverIndices = new int[nbRules][];
+        m_ruleCoverWords = new long[nbRules][];
+        for (int iRule = 0; iRule < nbRules; iRule++) {
+            BitSet cover = getRuleCovers(iRule);
+            int[] indices = new int[cover.cardinality()];
+            int pos = 0;
+            for (int iInstance = cover.nextSetBit(0); iInstance >= 0; iInstance = cover.nextSetBit(iInstance + 1)) {
+                indices[pos++] = iInstance;
+            }
+            m_ruleCoverIndices[iRule] = indices;
+            m_ruleCoverWords[iRule] = cover.toLongArray();
+        }
+    }
+
+
+    /**
+     * Number of instances both rules cover. The instances of the rule that covers less are looked up in the bitmap of
+     * the other rule, unless it is cheaper to intersect the bitmaps.
+     */
+    private int countCommonCovered(int iFirstRule, int iSecondRule) {
+        int[] sparse = m_ruleCoverIndices[iFirstRule];
+        long[] dense = m_ruleCoverWords[iSecondRule];
+        if (m_ruleCoverIndices[iSecondRule].length < sparse.length) {
+            sparse = m_ruleCoverIndices[iSecondRule];
+            dense = m_ruleCoverWords[iFirstRule];
+        }
+        int count = 0;
+        if (sparse.length <= dense.length) {
+            for (int i = 0; i < sparse.length; i++) {
+                int word = sparse[i] >> 6;
+                if (word < dense.length && (dense[word] & (1L << sparse[i])) != 0) {
+                    count++;
+                }
+            }
+        }
+        else {
+            long[] first = m_ruleCoverWords[iFirstRule];
+            long[] second = m_ruleCoverWords[iSecondRule];
+            int nbWords = Math.min(first.length, second.length);
+            for (int i = 0; i < nbWords; i++) {
+                count += Long.bitCount(first[i] & second[i]);
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Calls body for each index {@code start <= i < end}, in parallel if several threads are used.
+     */
+    private void parallelFor(int start, int end, IntConsumer body) {
+        ClusParallel.parallelFor(m_executor, start, end, MIN_BLOCK_SIZE, body);
+    }
+
+
     /* Returns average covariance between a prediction and true values */
     final protected double getCovForPrediction(int iPred) {
         return m_predCovWithTrue[iPred];
@@ -266,9 +353,9 @@ public class GDProbl extends OptProbl {
         m_predCovWithTrue = new double[getNumVar()];
 
         // Compute all the covariances for current weights.
-        for (int iPred = 0; iPred < getNumVar(); iPred++) {
+        parallelFor(0, getNumVar(), iPred -> {
             m_predCovWithTrue[iPred] = computePredVsTrueValueCov(iPred);
-        }
+        });
     }
 
 
@@ -280,11 +367,22 @@ public class GDProbl extends OptProbl {
         double[] covs = new double[getNbOfTargets()];
         int nbOfTargets = getNbOfTargets();
         for (int iTarget = 0; iTarget < nbOfTargets; iTarget++) {
-            for (int iInstance = 0; iInstance < getNbOfInstances(); iInstance++) {
-                double trueVal = getTrueValue(iInstance, iTarget);
-                if (isValidValue(trueVal)) // Not a valid true value, rare but happens. Can happen for linear terms.
-                    // covs[iTarget] += trueVal*predictWithRule(iPred, iInstance,iTarget);
-                    covs[iTarget] += trueVal * predictWithRule(iPred, iInstance, iTarget);
+            if (isRuleTerm(iPred)) {
+                // The prediction is zero for the instances the rule does not cover
+                int[] covered = m_ruleCoverIndices[iPred];
+                for (int i = 0; i < covered.length; i++) {
+                    double trueVal = getTrueValue(covered[i], iTarget);
+                    if (isValidValue(trueVal))
+                        covs[iTarget] += trueVal * getPredictionsWhenCovered(iPred, covered[i], iTarget);
+                }
+            }
+            else {
+                for (int iInstance = 0; iInstance < getNbOfInstances(); iInstance++) {
+                    double trueVal = getTrueValue(iInstance, iTarget);
+                    if (isValidValue(trueVal)) // Not a valid true value, rare but happens. Can happen for linear terms.
+                        // covs[iTarget] += trueVal*predictWithRule(iPred, iInstance,iTarget);
+                        covs[iTarget] += trueVal * predictWithRule(iPred, iInstance, iTarget);
+                }
             }
 
             covs[iTarget] /= getNbOfInstances();
@@ -304,14 +402,11 @@ public class GDProbl extends OptProbl {
     /**
      * Return the right stored covariance
      */
-    // Only one corner is computed (the other is similar)
+    // Both corners are stored, so that all covariances of a weight are in one row
     final protected double getWeightCov(int iFirst, int iSecond) {
-        int min = Math.min(iFirst, iSecond);
-        int max = Math.max(iFirst, iSecond);
-        // if (Double.isNaN(m_covariances[min][max][0]))
-        if (Double.isNaN(m_covariances[min][max]))
+        if (Double.isNaN(m_covariances[iFirst][iSecond]))
             throw new Error("Asked covariance not yet computed. Something wrong in the covariances in GDProbl.");
-        return m_covariances[min][max];
+        return m_covariances[iFirst][iSecond];
     }
 
 
@@ -326,26 +421,16 @@ public class GDProbl extends OptProbl {
     private void computeWeightCov(int dimension) {
         // Because of symmetry cov(dimension, b) is already computed if for some earlier phase b was dimension
         // Thus if covariances for b are computed, this does not have to be computed anymore.
-
-        // The weights with index lower than this
-        for (int iMin = 0; iMin < dimension; iMin++) {
-            // If the covariances for the other part are already computed, this covariance is already
-            // computed also. Thus skip this covariance.
-            if (!m_isCovComputed[iMin]) {
-                // if (!Double.isNaN(m_covariances[iMin][dimension][0]))
-                // System.err.println("WARNING: Covariances are recalculated, waste of computation!");
-                m_covariances[iMin][dimension] = computeCovFor2Preds(iMin, dimension);
+        // Both cov(dimension, b) and cov(b, dimension) are stored, the computation always gets the smaller index first.
+        parallelFor(0, getNumVar(), iOther -> {
+            if (iOther == dimension || !m_isCovComputed[iOther]) {
+                int min = Math.min(iOther, dimension);
+                int max = Math.max(iOther, dimension);
+                double cov = computeCovFor2Preds(min, max);
+                m_covariances[min][max] = cov;
+                m_covariances[max][min] = cov;
             }
-        }
-
-        m_covariances[dimension][dimension] = computeCovFor2Preds(dimension, dimension);
-        for (int iMax = dimension + 1; iMax < getNumVar(); iMax++) {
-            if (!m_isCovComputed[iMax]) {
-                // if (!Double.isNaN(m_covariances[iMax][dimension][0]))
-                // System.err.println("WARNING: Covariances are recalculated, waste of computation!");
-                m_covariances[dimension][iMax] = computeCovFor2Preds(dimension, iMax);
-            }
-        }
+        });
     }
 
 
@@ -469,8 +554,9 @@ public class GDProbl extends OptProbl {
         double avgCov = 0;
 
         // Go through the covered examples always jumping to next covered
-        for (int iInstance = getRuleNextCovered(iRule, 0); iInstance >= 0; iInstance = getRuleNextCovered(iRule, iInstance + 1)) {
-            avgCov += getPredictionsWhenCovered(iLinear, iInstance, iTarget);
+        int[] covered = m_ruleCoverIndices[iRule];
+        for (int i = 0; i < covered.length; i++) {
+            avgCov += getPredictionsWhenCovered(iLinear, covered[i], iTarget);
         }
 
         avgCov *= getPredictionsWhenCovered(iRule, 0, iTarget);
@@ -495,10 +581,6 @@ public class GDProbl extends OptProbl {
      * @return
      */
     private double computeCovFor2Rules(int iPrevious, int iLatter) {
-        BitSet prev = (BitSet) (getRuleCovers(iPrevious).clone());
-        BitSet latter = getRuleCovers(iLatter);
-        prev.and(latter); // prev is now a AND bitset of both of these
-
         int nbOfTargets = getNbOfTargets();
         double avgCov = 0;
 
@@ -511,7 +593,7 @@ public class GDProbl extends OptProbl {
             }
             avgCov += cov / nbOfTargets;
         }
-        avgCov *= ((double) prev.cardinality()) / getNbOfInstances();
+        avgCov *= ((double) countCommonCovered(iPrevious, iLatter)) / getNbOfInstances();
 
         return avgCov;
     }
@@ -528,17 +610,40 @@ public class GDProbl extends OptProbl {
 
 
     /** Compute the gradients for weights from scratch */
-    public void fullGradientComputation(ArrayList<Double> weights) {
-        // Compute all the gradients for current weights.
-        for (int iWeight = 0; iWeight < weights.size(); iWeight++) {
-            m_gradients[iWeight] = getGradient(iWeight, weights);
+    public void fullGradientComputation(double[] weights) {
+        // Only the nonzero weights contribute to the gradients
+        int nbNonZero = 0;
+        for (int iWeight = 0; iWeight < weights.length; iWeight++) {
+            if (m_isWeightNonZero[iWeight]) {
+                nbNonZero++;
+            }
         }
+        final int[] iNonZero = new int[nbNonZero];
+        final double[] nonZero = new double[nbNonZero];
+        nbNonZero = 0;
+        for (int iWeight = 0; iWeight < weights.length; iWeight++) {
+            if (m_isWeightNonZero[iWeight]) {
+                iNonZero[nbNonZero] = iWeight;
+                nonZero[nbNonZero++] = weights[iWeight];
+            }
+        }
+        // Compute all the gradients for current weights.
+        parallelFor(0, weights.length, iWeight -> {
+            m_gradients[iWeight] = getGradient(iWeight, iNonZero, nonZero);
+        });
         // if (getSettings().isOptGDIsDynStepsize()) computeDynamicStepSizeComputation();
     }
 
 
-    /** Compute gradient for the given weight dimension */
-    protected double getGradient(int iWeightDim, ArrayList<Double> weights) {
+    /**
+     * Compute gradient for the given weight dimension
+     * 
+     * @param iNonZero
+     *        Indices of the nonzero weights
+     * @param nonZero
+     *        Values of the nonzero weights
+     */
+    protected double getGradient(int iWeightDim, int[] iNonZero, double[] nonZero) {
 
         double gradient = 0;
         switch (getSettings().getOptGDLossFunction()) {
@@ -558,7 +663,7 @@ public class GDProbl extends OptProbl {
                   // Default case
             case Settings.OPT_LOSS_FUNCTIONS_SQUARED:
             default:
-                gradient = gradientSquared(iWeightDim, weights);
+                gradient = gradientSquared(iWeightDim, iNonZero, nonZero);
                 break;
         }
 
@@ -573,14 +678,12 @@ public class GDProbl extends OptProbl {
      *        Weight dimension for which the gradient is computed.
      * @return Gradient average
      */
-    private double gradientSquared(int iGradWeightDim, ArrayList<Double> weights) {
+    private double gradientSquared(int iGradWeightDim, int[] iNonZero, double[] nonZero) {
 
         double gradient = getCovForPrediction(iGradWeightDim);
 
-        for (int iWeight = 0; iWeight < getNumVar(); iWeight++) {
-            if (m_isWeightNonZero[iWeight]) {
-                gradient -= weights.get(iWeight).doubleValue() * getWeightCov(iWeight, iGradWeightDim);
-            }
+        for (int i = 0; i < iNonZero.length; i++) {
+            gradient -= nonZero[i] * getWeightCov(iNonZero[i], iGradWeightDim);
         }
 
         return gradient;
@@ -595,7 +698,7 @@ public class GDProbl extends OptProbl {
      *        The index of weights that have changed. Only these affect the change in the new gradient.
      *        Friedman&Popescu p.18
      */
-    final protected void modifyGradients(int[] changedWeightIndex, ArrayList<Double> weights) {
+    final protected void modifyGradients(int[] changedWeightIndex, double[] weights) {
 
         // switch (getSettings().getOptGDLossFunction()) {
         // case Settings.OPT_LOSS_FUNCTIONS_01ERROR:
@@ -644,9 +747,11 @@ public class GDProbl extends OptProbl {
 
             boolean secondLinearTermReached = false;
             double stepAmount = m_stepSize * oldGradsOfChanged[iiAffecting];
+            // All the covariances of the changed weight are computed and stored in its row
+            double[] covariances = m_covariances[iChangedWeights[iiAffecting]];
             // Index over the gradient we are changing (ALL GRADIENTS)
             for (int iWeightChange = 0; iWeightChange < nbOfGrads; iWeightChange++) {
-                m_gradients[iWeightChange] -= getWeightCov(iChangedWeights[iiAffecting], iWeightChange) * stepAmount;
+                m_gradients[iWeightChange] -= covariances[iWeightChange] * stepAmount;
 
                 if (firstLinearTermReached) {
                     if (secondLinearTermReached) {
@@ -847,7 +952,7 @@ public class GDProbl extends OptProbl {
     // protected ArrayList<Double> m_oldFitnesses;
     protected double m_minFitness;
     /** Weights when the Fitness was minimum */
-    protected ArrayList<Double> m_minFitWeights;
+    protected double[] m_minFitWeights;
 
 
     /** Returns best fitness so far. */
@@ -861,15 +966,13 @@ public class GDProbl extends OptProbl {
      * we have had.
      */
 
-    public boolean isEarlyStop(ArrayList<Double> weights) {
-        double newFitness = m_earlyStopProbl.calcFitness(weights);
+    public boolean isEarlyStop(double[] weights) {
+        double newFitness = m_earlyStopProbl.calcFitness(toWeightList(weights));
 
         if (newFitness < m_minFitness) {
             m_minFitness = newFitness;
             // Copy the weights
-            for (int iWeight = 0; iWeight < weights.size(); iWeight++) {
-                m_minFitWeights.set(iWeight, weights.get(iWeight).doubleValue());
-            }
+            System.arraycopy(weights, 0, m_minFitWeights, 0, weights.length);
         }
 
         boolean stop = false;
@@ -885,10 +988,8 @@ public class GDProbl extends OptProbl {
 
 
     /** Restore the weight with minimum fitness. */
-    public void restoreBestWeight(ArrayList<Double> targetWeights) {
-        for (int iWeight = 0; iWeight < targetWeights.size(); iWeight++) {
-            targetWeights.set(iWeight, m_minFitWeights.get(iWeight).doubleValue());
-        }
+    public void restoreBestWeight(double[] targetWeights) {
+        System.arraycopy(m_minFitWeights, 0, targetWeights, 0, targetWeights.length);
     }
 
 
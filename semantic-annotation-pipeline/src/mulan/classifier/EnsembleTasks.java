@@ -0,0 +1,76 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the training or prediction tasks of the members of an ensemble, either
+ * one after the other or on an executor. The results are always returned in
+ * the order of the tasks, so that the ensembles combine them in the same way
+ * whatever the number of threads.
+ */
+public final class EnsembleTasks {
+
+    private EnsembleTasks() {
+    }
+
+    /**
+     * Runs the given tasks and returns their results.
+     *
+     * @param <T> the type of the results
+     * @param executor the executor running the tasks, or null to run them
+     * sequentially in the calling thread
+     * @param tasks the tasks, one per member of the ensemble
+     * @return the result of each task, in the order of the tasks
+     * @throws Exception the exception thrown by the first failed task
+     */
+    public static <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks)
+            throws Exception {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (executor == null) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            // stop the remaining members if a member failed or the caller was interrupted
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+}
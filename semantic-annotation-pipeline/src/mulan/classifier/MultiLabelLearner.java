@@ -17,6 +17,7 @@ package mulan.classifier;
 
 import mulan.data.MultiLabelInstances;
 import weka.core.Instance;
+import weka.core.Instances;
 
 /**
  * Common root interface for all multi-label learner types.
@@ -74,6 +75,22 @@ public interface MultiLabelLearner {
     public MultiLabelOutput makePrediction(Instance instance)
             throws Exception, InvalidDataException, ModelInitializationException;
 
+    /**
+     * Returns the predictions of the learner for all instances of a given batch.
+     * The i-th output corresponds to the i-th instance of the batch. Learners
+     * that can share work across instances (transformations, neighbour searches,
+     * decoded label values) do so, otherwise this is equivalent to calling
+     * {@link MultiLabelLearner#makePrediction(Instance)} for each instance.
+     *
+     * @param instances the batch of input instances
+     * @return the predictions of the learner in form of {@link MultiLabelOutput}s
+     * @throws Exception if an error occurs while making the predictions.
+     * @throws InvalidDataException if specified instances data is invalid and can not be processed by the learner
+     * @throws ModelInitializationException if method is called before {@link MultiLabelLearner#build(MultiLabelInstances)}
+     */
+    public MultiLabelOutput[] makePredictions(Instances instances)
+            throws Exception, InvalidDataException, ModelInitializationException;
+
     /**
      * Sets whether debugging information should be output by the model
      * 
@@ -125,6 +125,37 @@ public abstract class MultiLabelLearnerBase
      */
     protected abstract MultiLabelOutput makePredictionInternal(Instance instance) throws Exception, InvalidDataException;
 
+    public final MultiLabelOutput[] makePredictions(Instances instances)
+            throws Exception, InvalidDataException, ModelInitializationException {
+        if (instances == null) {
+            throw new ArgumentNullException("instances");
+        }
+        if (!isModelInitialized()) {
+            throw new ModelInitializationException("The model has not been trained.");
+        }
+
+        return makePredictionsInternal(instances);
+    }
+
+    /**
+     * Learner specific implementation for predicting on a batch of instances.
+     * This method is called from {@link #makePredictions(weka.core.Instances)}.
+     * The default implementation calls {@link #makePredictionInternal(weka.core.Instance)}
+     * for each instance; learners override it when work can be shared across the batch.
+     *
+     * @param instances the data instances to predict on
+     * @throws Exception if an error occurs while making the predictions.
+     * @throws InvalidDataException if specified instances data is invalid and can not be processed by the learner
+     * @return the outputs of the learner, one for each instance of the batch
+     */
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception, InvalidDataException {
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = makePredictionInternal(instances.instance(i));
+        }
+        return outputs;
+    }
+
     /**
      * Set debugging mode.
      *
@@ -25,6 +25,7 @@ import mulan.classifier.InvalidDataException;
 import mulan.classifier.MultiLabelLearnerBase;
 import mulan.classifier.MultiLabelOutput;
 import mulan.data.MultiLabelInstances;
+import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.TechnicalInformation;
@@ -62,6 +63,14 @@ public class ClusWrapperClassification extends MultiLabelLearnerBase {
      * Whether a rule-based method will be used.
      */
     protected boolean isRuleBased = false;
+    /**
+     * The test set predictions written by CLUS, loaded on the first prediction after training.
+     */
+    private transient Instances testPredictions;
+    /**
+     * Index of the line of {@link #testPredictions} that corresponds to the next instance to predict.
+     */
+    private transient int nextPrediction;
 
     /**
      * Constructor with 2 arguments. This constructor is used when the settings file that is required by CLUS
@@ -98,6 +107,10 @@ public class ClusWrapperClassification extends MultiLabelLearnerBase {
      */
     @Override
     protected void buildInternal(MultiLabelInstances trainingSet) throws Exception {
+        // predictions of a previous model are stale
+        testPredictions = null;
+        nextPrediction = 0;
+
         // create the CLUS working directory if it does not exist
         File theDir = new File(clusWorkingDir);
         if (!theDir.exists()) {
@@ -144,16 +157,180 @@ public class ClusWrapperClassification extends MultiLabelLearnerBase {
     }
 
     /**
-     * This method exists so that CLUSWrapperClassification can extend MultiLabelLearnerBase. Also helps the
-     * Evaluator to determine the type of the MultiLabelOutput and thus prepare the appropriate evaluation
-     * measures.
+     * Returns the prediction that CLUS wrote for the given instance. CLUS predicts the whole test set at
+     * once, so the instances must be those of the test set, passed in the same order (e.g. written by
+     * {@link #makeClusCompliant(MultiLabelInstances, String)}), and each one at most once.
+     * 
+     * @throws InvalidDataException if the whole test set has already been predicted, or if the labels
+     *         of the instance differ from the true labels on the next line of the predictions file
      */
     @Override
     protected MultiLabelOutput makePredictionInternal(Instance instance) throws Exception,
             InvalidDataException {
-        double[] confidences = new double[numLabels];
-        return new MultiLabelOutput(confidences, 0.5);
+        loadTestPredictions(1);
+        return predictNext(instance, isRegression());
+    }
+
+    /**
+     * Returns the predictions that CLUS wrote for the given instances. Like
+     * {@link #makePredictionInternal(Instance)}, consecutive calls walk through the test set in order,
+     * so a test set can be predicted in several batches.
+     * 
+     * @throws InvalidDataException if the batch runs past the end of the test set, or if the labels of
+     *         an instance differ from the true labels on the corresponding line of the predictions file
+     */
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception,
+            InvalidDataException {
+        loadTestPredictions(instances.numInstances());
+        boolean isRegression = isRegression();
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = predictNext(instances.instance(i), isRegression);
+        }
+        return outputs;
+    }
+
+    /**
+     * Reads the test set predictions file on the first call and checks that it still holds count
+     * predictions that have not been returned yet.
+     * 
+     * @param count the number of instances about to be predicted
+     * @throws Exception Potential exception thrown. To be handled in an upper level.
+     */
+    private void loadTestPredictions(int count) throws Exception {
+        if (testPredictions == null) {
+            testPredictions = readTestPredictions();
+            nextPrediction = 0;
+        }
+        if (nextPrediction + count > testPredictions.numInstances()) {
+            throw new InvalidDataException("CLUS predictions file holds "
+                    + testPredictions.numInstances() + " predictions, but instances "
+                    + nextPrediction + " to " + (nextPrediction + count - 1) + " were requested");
+        }
+    }
+
+    /**
+     * Parses the next line of the test set predictions file, after checking that its true labels (the
+     * first numLabels values of the line) are those of the given instance. Missing labels of the
+     * instance are not checked.
+     * 
+     * @param instance the instance of the test set that the line should correspond to
+     * @param isRegression whether the labels are continuous
+     * @return the prediction for the instance
+     * @throws InvalidDataException if the labels differ
+     */
+    private MultiLabelOutput predictNext(Instance instance, boolean isRegression)
+            throws InvalidDataException {
+        Instance predictionInstance = testPredictions.instance(nextPrediction);
+        for (int j = 0; j < numLabels; j++) {
+            Attribute label = instance.attribute(labelIndices[j]);
+            if (instance.isMissing(label)) {
+                continue;
+            }
+            boolean same;
+            if (predictionInstance.isMissing(j)) {
+                same = false;
+            } else if (label.isNumeric()) {
+                // the test set file is written with 6 decimals
+                double value = instance.value(label);
+                same = Math.abs(value - predictionInstance.value(j)) <= 1e-6 * Math.max(1, Math.abs(value));
+            } else {
+                same = instance.stringValue(label).equals(predictionInstance.stringValue(j));
+            }
+            if (!same) {
+                throw new InvalidDataException("Label " + label.name() + " of the instance differs from"
+                        + " line " + nextPrediction + " of the CLUS predictions file: the instances are"
+                        + " not those of the test set, or not in the same order");
+            }
+        }
+        nextPrediction++;
+        return parsePrediction(predictionInstance, isRegression);
+    }
 
+    /**
+     * Whether the labels are continuous. Helps the Evaluator to determine the type of the
+     * MultiLabelOutput and thus prepare the appropriate evaluation measures.
+     * 
+     * @return false, the regression wrappers override it
+     */
+    public boolean isRegression() {
+        return false;
+    }
+
+    /**
+     * Returns the path of the arff file with the test set predictions written by CLUS.
+     * 
+     * @return the path of the predictions file
+     */
+    public String getTestPredictionsFilePath() {
+        return clusWorkingDir + datasetName + "-train.test.pred.arff";
+    }
+
+    /**
+     * Loads the arff file with the test set predictions written by CLUS.
+     * 
+     * @return the predictions, one instance per test example
+     * @throws Exception Potential exception thrown. To be handled in an upper level.
+     */
+    public Instances readTestPredictions() throws Exception {
+        BufferedReader reader = new BufferedReader(new FileReader(getTestPredictionsFilePath()));
+        Instances predictionInstances = new Instances(reader);
+        reader.close();
+        return predictionInstances;
+    }
+
+    /**
+     * Converts one line of the CLUS predictions file to a {@link MultiLabelOutput}. The line starts
+     * with the true values of the labels, the position of the predicted values depends on the kind of
+     * model (single model or ensemble, tree or rules) and task.
+     * 
+     * @param predictionInstance one line of the predictions file
+     * @param isRegression whether the labels are continuous
+     * @return the prediction for the corresponding test example
+     */
+    public MultiLabelOutput parsePrediction(Instance predictionInstance, boolean isRegression) {
+        double[] predictionsPerSample = new double[numLabels];
+        int k = 0;
+        for (int j = 0; j < predictionInstance.numValues() - 1; j++) {
+            if (isRegression) {
+                if (isEnsemble && !isRuleBased) {
+                    if (j >= numLabels) {
+                        predictionsPerSample[k] = predictionInstance.value(j);
+                        k++;
+                    }
+                } else {
+                    if (j >= (numLabels * 2 + 1)) {
+                        predictionsPerSample[k] = predictionInstance.value(j);
+                        k++;
+                    }
+                }
+            } else {
+                if (isEnsemble && !isRuleBased) {
+                    if (j >= numLabels * 2) {
+                        predictionsPerSample[k] = predictionInstance.value(j);
+                        j++;
+                        k++;
+                    }
+                } else {
+                    if (j >= (numLabels * 5 + 1)) {
+                        predictionsPerSample[k] = predictionInstance.value(j)
+                                / (predictionInstance.value(j) + predictionInstance.value(j + 1));
+                        j++;
+                        k++;
+                    }
+                }
+            }
+            if (k == numLabels) {
+                break;
+            }
+        }
+
+        if (isRegression) {
+            return new MultiLabelOutput(predictionsPerSample, true);
+        } else {
+            return new MultiLabelOutput(predictionsPerSample, 0.5);
+        }
     }
 
     /**
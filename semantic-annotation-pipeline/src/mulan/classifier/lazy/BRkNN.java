@@ -20,7 +20,6 @@ import java.util.Random;
 import mulan.classifier.MultiLabelOutput;
 import mulan.core.Util;
 import mulan.data.MultiLabelInstances;
-import weka.classifiers.lazy.IBk;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.TechnicalInformation;
@@ -50,6 +49,9 @@ import weka.core.Utils;
  * <br>
  <!-- technical-bibtex-end -->
  * 
+ * The training instances at the same distance as the k-th nearest neighbor
+ * are counted as neighbors too, so more than k neighbors may vote.
+ * 
  * @author Eleftherios Spyromitros-Xioufis 
  * @author Grigorios Tsoumakas
  * @version 2010.12.29
@@ -119,6 +121,7 @@ public class BRkNN extends MultiLabelKNN {
      */
     public BRkNN(int numOfNeighbors, ExtensionType ext) {
         super(numOfNeighbors);
+        keepTies = true;
         random = new Random(1);
         extension = ext;
     }
@@ -168,32 +171,24 @@ public class BRkNN extends MultiLabelKNN {
             }
 
             Instances dataSet = train;
-            Instance instance; // the hold out instance
-            Instances neighbours; // the neighboring instances
-            double[] origDistances, convertedDistances;
+            double[][] distances = new double[dataSet.numInstances()][];
+            int[][] neighbours = trainingNeighbors(cvMaxK, distances);
             for (int i = 0; i < dataSet.numInstances(); i++) {
                 if (getDebug() && (i % 50 == 0)) {
                     debug("Cross validating " + i + "/" + dataSet.numInstances() + "\r");
                 }
-                instance = dataSet.instance(i);
-                neighbours = lnn.kNearestNeighbours(instance, cvMaxK);
-                origDistances = lnn.getDistances();
 
                 // gathering the true labels for the instance
-                boolean[] trueLabels = new boolean[numLabels];
-                for (int counter = 0; counter < numLabels; counter++) {
-                    int classIdx = labelIndices[counter];
-                    String classValue = instance.attribute(classIdx).value(
-                            (int) instance.value(classIdx));
-                    trueLabels[counter] = classValue.equals("1");
-                }
+                boolean[] trueLabels = trainLabels[i];
                 // calculate the performance metric for each different k
-                for (int j = cvMaxK; j > 0; j--) {
-                    convertedDistances = new double[origDistances.length];
-                    System.arraycopy(origDistances, 0, convertedDistances, 0,
-                            origDistances.length);
-                    double[] confidences = this.getConfidences(neighbours,
-                            convertedDistances);
+                for (int j = Math.min(cvMaxK, neighbours[i].length); j > 0; j--) {
+                    // the nearest j neighbours and their ties are a prefix of the cvMaxK ones
+                    int count = j;
+                    while (count < neighbours[i].length
+                            && distance(distances[i], count) == distance(distances[i], j - 1)) {
+                        count++;
+                    }
+                    double[] confidences = this.getConfidences(neighbours[i], count);
                     boolean[] bipartition = null;
 
                     switch (extension) {
@@ -220,9 +215,6 @@ public class BRkNN extends MultiLabelKNN {
                         }
                     }
                     hammingLoss[j - 1] += (symmetricDifference / numLabels);
-
-                    neighbours = new IBk().pruneToK(neighbours,
-                            convertedDistances, j - 1);
                 }
             }
 
@@ -262,10 +254,27 @@ public class BRkNN extends MultiLabelKNN {
      * @throws Exception if nearest neighbours search fails
      */
     protected MultiLabelOutput makePredictionInternal(Instance instance) throws Exception {
-        Instances knn = lnn.kNearestNeighbours(instance, numOfNeighbors);
+        return predict(nearestNeighbors(instance, numOfNeighbors, null));
+    }
+
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception {
+        int[][] neighbours = nearestNeighbors(instances, numOfNeighbors, null);
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = predict(neighbours[i]);
+        }
+        return outputs;
+    }
 
-        double[] distances = lnn.getDistances();
-        double[] confidences = getConfidences(knn, distances);
+    /**
+     * Computes the output for an instance from its nearest neighbours
+     *
+     * @param knn the indices of the neighbours in the training set
+     * @return the output for the instance
+     */
+    private MultiLabelOutput predict(int[] knn) {
+        double[] confidences = getConfidences(knn, knn.length);
         boolean[] bipartition;
 
         MultiLabelOutput results = null;
@@ -286,17 +295,27 @@ public class BRkNN extends MultiLabelKNN {
 
     }
 
+    /**
+     * Returns the distance of a neighbour. Only the distances of the cvMaxK
+     * nearest neighbours are stored, the ones after them are tied with the
+     * last.
+     */
+    private static double distance(double[] distances, int i) {
+        return distances[Math.min(i, distances.length - 1)];
+    }
+
     /**
      * Calculates the confidences of the labels, based on the neighboring
      * instances
      *
      * @param neighbours
-     *            the list of nearest neighboring instances
-     * @param distances
-     *            the distances of the neighbors
+     *            the indices of the nearest neighboring instances in the
+     *            training set, closest first
+     * @param count
+     *            the number of nearest neighbours to take into account
      * @return the confidences of the labels
      */
-    private double[] getConfidences(Instances neighbours, double[] distances) {
+    private double[] getConfidences(int[] neighbours, int count) {
         double total, weight;
         double neighborLabels = 0;
         double[] confidences = new double[numLabels];
@@ -307,19 +326,14 @@ public class BRkNN extends MultiLabelKNN {
         }
         total = (double) numLabels / Math.max(1, train.numInstances());
 
-        for (int i = 0; i < neighbours.numInstances(); i++) {
+        for (int i = 0; i < count; i++) {
             // Collect class counts
-            Instance current = neighbours.instance(i);
-            distances[i] = distances[i] * distances[i];
-            distances[i] = Math.sqrt(distances[i] / (train.numAttributes() - numLabels));
             weight = 1.0;
-            weight *= current.weight();
+            weight *= train.instance(neighbours[i]).weight();
 
+            boolean[] labels = trainLabels[neighbours[i]];
             for (int j = 0; j < numLabels; j++) {
-                double value = Double.parseDouble(current.attribute(
-                        labelIndices[j]).value(
-                        (int) current.value(labelIndices[j])));
-                if (Utils.eq(value, 1.0)) {
+                if (labels[j]) {
                     confidences[j] += weight;
                     neighborLabels += weight;
                 }
@@ -0,0 +1,87 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.classifier.lazy;
+
+/**
+ * Exact nearest neighbor search that compares the queries with every row.
+ * Several queries are compared with a block of rows at a time, so that the
+ * rows are reused while they are in the cache.
+ */
+public class BruteForceNeighborIndex extends NeighborIndex {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * The number of queries compared with a block of rows
+     */
+    private static final int QUERY_BLOCK = 32;
+    /**
+     * The number of rows in a block
+     */
+    private static final int ROW_BLOCK = 256;
+
+    @Override
+    public int[] kNearest(double[] query, int k, int excluded, double[] distances) {
+        NeighborHeap heap = new NeighborHeap(k, keepTies);
+        double[][] rows = data.getRows();
+        for (int i = 0; i < rows.length; i++) {
+            if (i != excluded) {
+                double bound = heap.bound();
+                double distance = data.squaredDistance(query, rows[i], bound);
+                if (distance <= bound) {
+                    heap.offer(i, distance);
+                }
+            }
+        }
+        return heap.drain(distances);
+    }
+
+    @Override
+    public int[][] kNearest(double[][] queries, int[] excluded, int k, double[][] distances) {
+        double[][] rows = data.getRows();
+        int[][] neighbors = new int[queries.length][];
+        NeighborHeap[] heaps = new NeighborHeap[Math.min(QUERY_BLOCK, queries.length)];
+        for (int h = 0; h < heaps.length; h++) {
+            heaps[h] = new NeighborHeap(k, keepTies);
+        }
+        for (int qStart = 0; qStart < queries.length; qStart += QUERY_BLOCK) {
+            int qEnd = Math.min(qStart + QUERY_BLOCK, queries.length);
+            for (int rStart = 0; rStart < rows.length; rStart += ROW_BLOCK) {
+                int rEnd = Math.min(rStart + ROW_BLOCK, rows.length);
+                for (int q = qStart; q < qEnd; q++) {
+                    NeighborHeap heap = heaps[q - qStart];
+                    int skip = (excluded == null) ? -1 : excluded[q];
+                    for (int i = rStart; i < rEnd; i++) {
+                        if (i != skip) {
+                            double bound = heap.bound();
+                            double distance = data.squaredDistance(queries[q], rows[i], bound);
+                            if (distance <= bound) {
+                                heap.offer(i, distance);
+                            }
+                        }
+                    }
+                }
+            }
+            for (int q = qStart; q < qEnd; q++) {
+                NeighborHeap heap = heaps[q - qStart];
+                if (distances != null) {
+                    distances[q] = new double[k];
+                }
+                neighbors[q] = heap.drain((distances == null) ? null : distances[q]);
+            }
+        }
+        return neighbors;
+    }
+}
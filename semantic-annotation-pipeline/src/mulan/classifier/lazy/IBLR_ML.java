@@ -131,30 +131,20 @@ public class IBLR_ML extends MultiLabelKNN {
             trainingDataForLabel[i].setClassIndex(trainingDataForLabel[i].numAttributes() - 1);
         }
 
+        if (this.getDebug())
+            debug("Searching the neighbors of the training instances");
+        int[][] neighbors = trainingNeighbors(numOfNeighbors, null);
+
         if (this.getDebug())
             debug("Creating meta-instances");
         for (int i = 0; i < train.numInstances(); i++) {
             if (this.getDebug() & (i+1) % 100 == 0)
                 debug("Creating meta-instances " + (i+1) + "/" + train.numInstances());
 
-            Instances knn = new Instances(lnn.kNearestNeighbours(train.instance(i), numOfNeighbors));
             /*
              * Get the label confidence vector as the additional features.
              */
-            double[] confidences = new double[numLabels];
-            for (int j = 0; j < numLabels; j++) {
-                // compute sum of counts for each label in KNN
-                double count_for_label_j = 0;
-                for (int k = 0; k < numOfNeighbors; k++) {
-                    double value = Double.parseDouble(train.attribute(
-                            labelIndices[j]).value(
-                            (int) knn.instance(k).value(labelIndices[j])));
-                    if (Utils.eq(value, 1.0)) {
-                        count_for_label_j++;
-                    }
-                }
-                confidences[j] = count_for_label_j / numOfNeighbors;
-            }
+            double[] confidences = labelConfidences(neighbors[i]);
 
             double[] attvalue = new double[numLabels + 1];
 
@@ -197,31 +187,35 @@ public class IBLR_ML extends MultiLabelKNN {
     }
 
     protected MultiLabelOutput makePredictionInternal(Instance instance) throws Exception {
+        return predict(instance, nearestNeighbors(instance, numOfNeighbors, null));
+    }
 
-        double[] conf_corrected = new double[numLabels];
-        double[] confidences = new double[numLabels];
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception {
+        int[][] neighbors = nearestNeighbors(instances, numOfNeighbors, null);
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = predict(instances.instance(i), neighbors[i]);
+        }
+        return outputs;
+    }
+
+    /**
+     * Computes the output for an instance from its nearest neighbors
+     *
+     * @param instance the instance
+     * @param knn the indices of the neighbors in the training set
+     * @return the output for the instance
+     * @throws Exception if a logistic regression model fails
+     */
+    private MultiLabelOutput predict(Instance instance, int[] knn) throws Exception {
 
-        Instances knn = new Instances(lnn.kNearestNeighbours(instance,
-                numOfNeighbors));
+        double[] conf_corrected = new double[numLabels];
 
         /*
          * Get the label confidence vector.
          */
-        for (int i = 0; i < numLabels; i++) {
-            // compute sum of counts for each label in KNN
-            double count_for_label_i = 0;
-            for (int k = 0; k < numOfNeighbors; k++) {
-                double value = Double.parseDouble(train.attribute(
-                        labelIndices[i]).value(
-                        (int) knn.instance(k).value(labelIndices[i])));
-                if (Utils.eq(value, 1.0)) {
-                    count_for_label_i++;
-                }
-            }
-
-            confidences[i] = count_for_label_i / numOfNeighbors;
-
-        }
+        double[] confidences = labelConfidences(knn);
 
         double[] attvalue = new double[numLabels + 1];
 
@@ -248,6 +242,27 @@ public class IBLR_ML extends MultiLabelKNN {
         return mlo;
     }
 
+    /**
+     * Computes the fraction of the neighbors that belong to each label
+     *
+     * @param knn the indices of the neighbors in the training set
+     * @return the label confidence vector
+     */
+    private double[] labelConfidences(int[] knn) {
+        double[] confidences = new double[numLabels];
+        for (int j = 0; j < numLabels; j++) {
+            // compute sum of counts for each label in KNN
+            double count_for_label_j = 0;
+            for (int k = 0; k < knn.length; k++) {
+                if (trainLabels[knn[k]][j]) {
+                    count_for_label_j++;
+                }
+            }
+            confidences[j] = count_for_label_j / numOfNeighbors;
+        }
+        return confidences;
+    }
+
     @Override
     public TechnicalInformation getTechnicalInformation() {
         TechnicalInformation result;
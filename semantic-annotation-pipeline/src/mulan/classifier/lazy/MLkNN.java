@@ -16,8 +16,6 @@
 package mulan.classifier.lazy;
 
 import java.util.Random;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import mulan.classifier.MultiLabelOutput;
 import mulan.data.MultiLabelInstances;
 import weka.core.Instance;
@@ -25,7 +23,6 @@ import weka.core.Instances;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
-import weka.core.Utils;
 
 /**
  <!-- globalinfo-start -->
@@ -162,9 +159,7 @@ public class MLkNN extends MultiLabelKNN {
         for (int i = 0; i < numLabels; i++) {
             int temp_Ci = 0;
             for (int j = 0; j < train.numInstances(); j++) {
-                double value = Double.parseDouble(train.attribute(labelIndices[i]).value(
-                        (int) train.instance(j).value(labelIndices[i])));
-                if (Utils.eq(value, 1.0)) {
+                if (trainLabels[j][i]) {
                     temp_Ci++;
                 }
             }
@@ -182,24 +177,22 @@ public class MLkNN extends MultiLabelKNN {
         int[][] temp_Ci = new int[numLabels][numOfNeighbors + 1];
         int[][] temp_NCi = new int[numLabels][numOfNeighbors + 1];
 
+        int[][] neighbors = trainingNeighbors(numOfNeighbors, null);
         for (int i = 0; i < train.numInstances(); i++) {
 
-            Instances knn = new Instances(lnn.kNearestNeighbours(train.instance(i), numOfNeighbors));
+            int[] knn = neighbors[i];
 
             // now compute values of temp_Ci and temp_NCi for every class label
             for (int j = 0; j < numLabels; j++) {
 
                 int aces = 0; // num of aces in Knn for j
-                for (int k = 0; k < numOfNeighbors; k++) {
-                    double value = Double.parseDouble(train.attribute(labelIndices[j]).value(
-                            (int) knn.instance(k).value(labelIndices[j])));
-                    if (Utils.eq(value, 1.0)) {
+                for (int k = 0; k < knn.length; k++) {
+                    if (trainLabels[knn[k]][j]) {
                         aces++;
                     }
                 }
                 // raise the counter of temp_Ci[j][aces] and temp_NCi[j][aces] by 1
-                if (Utils.eq(Double.parseDouble(train.attribute(labelIndices[j]).value(
-                        (int) train.instance(i).value(labelIndices[j]))), 1.0)) {
+                if (trainLabels[i][j]) {
                     temp_Ci[j][aces]++;
                 } else {
                     temp_NCi[j][aces]++;
@@ -223,34 +216,58 @@ public class MLkNN extends MultiLabelKNN {
     }
 
     protected MultiLabelOutput makePredictionInternal(Instance instance) throws Exception {
-        double[] confidences = new double[numLabels];
-        boolean[] predictions = new boolean[numLabels];
+        return decide(countAces(nearestNeighbors(instance, numOfNeighbors, null)), new Random());
+    }
 
-        Instances knn = null;
-        try {
-            knn = new Instances(lnn.kNearestNeighbours(instance, numOfNeighbors));
-        } catch (Exception ex) {
-            Logger.getLogger(MLkNN.class.getName()).log(Level.SEVERE, null, ex);
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception {
+        int[][] neighbors = nearestNeighbors(instances, numOfNeighbors, null);
+        Random rnd = new Random();
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int n = 0; n < outputs.length; n++) {
+            outputs[n] = decide(countAces(neighbors[n]), rnd);
         }
+        return outputs;
+    }
 
-        for (int i = 0; i < numLabels; i++) {
-            // compute sum of aces in KNN
-            int aces = 0; // num of aces in Knn for i
-            for (int k = 0; k < numOfNeighbors; k++) {
-                double value = Double.parseDouble(train.attribute(labelIndices[i]).value(
-                        (int) knn.instance(k).value(labelIndices[i])));
-                if (Utils.eq(value, 1.0)) {
-                    aces++;
+    /**
+     * Counts the neighbours that belong to each label
+     *
+     * @param knn the indices of the neighbours in the training set
+     * @return the number of neighbours that belong to each label
+     */
+    private int[] countAces(int[] knn) {
+        int[] aces = new int[numLabels];
+        for (int k = 0; k < knn.length; k++) {
+            boolean[] labels = trainLabels[knn[k]];
+            for (int i = 0; i < numLabels; i++) {
+                if (labels[i]) {
+                    aces[i]++;
                 }
             }
-            double Prob_in = PriorProbabilities[i] * CondProbabilities[i][aces];
-            double Prob_out = PriorNProbabilities[i] * CondNProbabilities[i][aces];
+        }
+        return aces;
+    }
+
+    /**
+     * Computes the MAP decision and the confidence of each label
+     *
+     * @param aces the number of neighbours that belong to each label
+     * @param rnd random number generator for breaking ties
+     * @return the output for the instance
+     */
+    private MultiLabelOutput decide(int[] aces, Random rnd) {
+        double[] confidences = new double[numLabels];
+        boolean[] predictions = new boolean[numLabels];
+
+        for (int i = 0; i < numLabels; i++) {
+            double Prob_in = PriorProbabilities[i] * CondProbabilities[i][aces[i]];
+            double Prob_out = PriorNProbabilities[i] * CondNProbabilities[i][aces[i]];
             if (Prob_in > Prob_out) {
                 predictions[i] = true;
             } else if (Prob_in < Prob_out) {
                 predictions[i] = false;
             } else {
-                Random rnd = new Random();
                 predictions[i] = (rnd.nextInt(2) == 1) ? true : false;
             }
             // ranking function
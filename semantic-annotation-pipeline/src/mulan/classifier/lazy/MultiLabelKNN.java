@@ -15,11 +15,15 @@
  */
 package mulan.classifier.lazy;
 
+import java.util.concurrent.ThreadPoolExecutor;
 import mulan.classifier.MultiLabelLearnerBase;
+import mulan.core.Parallel;
 import mulan.data.MultiLabelInstances;
 import weka.core.DistanceFunction;
 import weka.core.EuclideanDistance;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 import weka.core.neighboursearch.LinearNNSearch;
 
 /**
@@ -61,6 +65,38 @@ public abstract class MultiLabelKNN extends MultiLabelLearnerBase {
      * Implementing Euclidean distance (or similarity) function.
      */
     protected DistanceFunction dfunc = null;
+    /**
+     * The index used for the nearest neighbor search. It is only used with the
+     * default Euclidean distance; other distance functions are evaluated on
+     * every training instance.
+     */
+    protected NeighborIndex neighborIndex = new VPTreeNeighborIndex();
+    /**
+     * The normalized features of the training instances, null if a distance
+     * function other than the default Euclidean distance is used
+     */
+    protected NormalizedFeatureMatrix features;
+    /**
+     * Whether each label is relevant to each training instance
+     */
+    protected boolean[][] trainLabels;
+    /**
+     * Whether the training instances at the same distance as the k-th nearest
+     * neighbor are returned as neighbors too, like Weka's LinearNNSearch does
+     */
+    protected boolean keepTies = false;
+    /**
+     * The number of threads used for searching the neighbors of many instances
+     */
+    private int numThreads = 1;
+    /**
+     * Executes the searches when more than one thread is used
+     */
+    private transient ThreadPoolExecutor executor;
+    /**
+     * The minimum number of queries searched by a thread
+     */
+    private static final int MIN_QUERIES_PER_THREAD = 64;
 
     /**
      * Sets a distance function
@@ -111,6 +147,154 @@ public abstract class MultiLabelKNN extends MultiLabelLearnerBase {
         lnn.setDistanceFunction(dfunc);
         lnn.setInstances(train);
         lnn.setMeasurePerformance(false);
+
+        trainLabels = new boolean[train.numInstances()][numLabels];
+        for (int j = 0; j < numLabels; j++) {
+            // decode once which nominal values of the label stand for 1
+            boolean[] isRelevant = new boolean[train.attribute(labelIndices[j]).numValues()];
+            for (int v = 0; v < isRelevant.length; v++) {
+                isRelevant[v] = Utils.eq(Double.parseDouble(train.attribute(labelIndices[j]).value(v)), 1.0);
+            }
+            for (int i = 0; i < train.numInstances(); i++) {
+                trainLabels[i][j] = isRelevant[(int) train.instance(i).value(labelIndices[j])];
+            }
+        }
+
+        features = null;
+        if (dfunc.getClass() == EuclideanDistance.class && !((EuclideanDistance) dfunc).getDontNormalize()) {
+            features = new NormalizedFeatureMatrix(train, labelIndices);
+            neighborIndex.setKeepTies(keepTies);
+            neighborIndex.build(features);
+        }
+    }
+
+    /**
+     * Finds the nearest training instances of an instance. Training instances
+     * at equal distance are returned in the order of the training set. If
+     * {@link #keepTies} is set, the instances tied with the k-th nearest one
+     * follow the k nearest.
+     *
+     * @param instance the instance
+     * @param k the number of neighbors
+     * @param distances if not null, receives the distances of the k nearest
+     * neighbors
+     * @return the indices of the neighbors in {@link #train}, closest first
+     * @throws Exception if the distance function fails
+     */
+    protected int[] nearestNeighbors(Instance instance, int k, double[] distances) throws Exception {
+        if (features != null) {
+            return neighborIndex.kNearest(features.toRow(instance), k, -1, distances);
+        }
+        return linearSearch(instance, k, -1, distances);
+    }
+
+    /**
+     * Finds the nearest training instances of each of the given instances,
+     * using {@link #setNumThreads(int)} threads.
+     *
+     * @param instances the instances
+     * @param k the number of neighbors
+     * @param distances if not null, receives the distances of the neighbors of
+     * each instance
+     * @return the indices of the neighbors of each instance, closest first
+     * @throws Exception if the distance function fails
+     */
+    protected int[][] nearestNeighbors(Instances instances, int k, double[][] distances) throws Exception {
+        double[][] queries = null;
+        if (features != null) {
+            queries = new double[instances.numInstances()][];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = features.toRow(instances.instance(i));
+            }
+        }
+        return search(instances, queries, null, k, distances);
+    }
+
+    /**
+     * Finds the nearest neighbors of each training instance among the rest of
+     * the training instances (leave-one-out), using
+     * {@link #setNumThreads(int)} threads.
+     *
+     * @param k the number of neighbors
+     * @param distances if not null, receives the distances of the neighbors of
+     * each training instance
+     * @return the indices of the neighbors of each training instance, closest
+     * first
+     * @throws Exception if the distance function fails
+     */
+    protected int[][] trainingNeighbors(int k, double[][] distances) throws Exception {
+        int[] excluded = new int[train.numInstances()];
+        for (int i = 0; i < excluded.length; i++) {
+            excluded[i] = i;
+        }
+        return search(train, (features == null) ? null : features.getRows(), excluded, k, distances);
+    }
+
+    private int[][] search(final Instances instances, final double[][] queries, final int[] excluded,
+            final int k, final double[][] distances) throws Exception {
+        final int n = instances.numInstances();
+        final int[][] neighbors = new int[n][];
+        int numBlocks = Math.min(numThreads, n / MIN_QUERIES_PER_THREAD);
+        if (numBlocks > 1 && executor == null) {
+            executor = Parallel.newDaemonPool(numThreads, "MultiLabelKNN");
+        }
+        Parallel.parallelFor(executor, n, numBlocks, new Parallel.RangeTask() {
+
+            public void run(int from, int to) throws Exception {
+                searchRange(instances, queries, excluded, k, neighbors, distances, from, to);
+            }
+        });
+        return neighbors;
+    }
+
+    /**
+     * Searches the neighbors of the instances in [from, to).
+     */
+    private void searchRange(Instances instances, double[][] queries, int[] excluded, int k,
+            int[][] neighbors, double[][] distances, int from, int to) throws Exception {
+        if (queries == null) {
+            for (int i = from; i < to; i++) {
+                double[] instanceDistances = (distances == null) ? null : new double[k];
+                neighbors[i] = linearSearch(instances.instance(i), k, (excluded == null) ? -1 : excluded[i], instanceDistances);
+                if (distances != null) {
+                    distances[i] = instanceDistances;
+                }
+            }
+            return;
+        }
+        double[][] range = new double[to - from][];
+        System.arraycopy(queries, from, range, 0, range.length);
+        int[] rangeExcluded = null;
+        if (excluded != null) {
+            rangeExcluded = new int[range.length];
+            System.arraycopy(excluded, from, rangeExcluded, 0, range.length);
+        }
+        double[][] rangeDistances = (distances == null) ? null : new double[range.length][];
+        int[][] rangeNeighbors = neighborIndex.kNearest(range, rangeExcluded, k, rangeDistances);
+        System.arraycopy(rangeNeighbors, 0, neighbors, from, range.length);
+        if (distances != null) {
+            System.arraycopy(rangeDistances, 0, distances, from, range.length);
+        }
+    }
+
+    /**
+     * Nearest neighbor search with an arbitrary distance function, which is
+     * evaluated on every training instance.
+     */
+    private int[] linearSearch(Instance instance, int k, int excluded, double[] distances) {
+        NeighborHeap heap = new NeighborHeap(k, keepTies);
+        for (int i = 0; i < train.numInstances(); i++) {
+            if (i != excluded) {
+                heap.offer(i, dfunc.distance(instance, train.instance(i)));
+            }
+        }
+        int[] neighbors = heap.drain(null);
+        if (distances != null) {
+            for (int i = 0; i < Math.min(neighbors.length, k); i++) {
+                distances[i] = dfunc.distance(instance, train.instance(neighbors[i]));
+            }
+        }
+        return neighbors;
     }
 
     @Override
@@ -118,6 +302,39 @@ public abstract class MultiLabelKNN extends MultiLabelLearnerBase {
         return true;
     }
 
+    /**
+     * Sets the index used for the nearest neighbor search (default
+     * {@link VPTreeNeighborIndex}).
+     *
+     * @param neighborIndex the index
+     */
+    public void setNeighborIndex(NeighborIndex neighborIndex) {
+        this.neighborIndex = neighborIndex;
+    }
+
+    /**
+     * Sets the number of threads used for searching the neighbors of all
+     * training instances and of batches of test instances. The threads stop
+     * when idle.
+     *
+     * @param numThreads the number of threads (1 searches in the calling thread)
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero. " +
+                    "Entered value is : " + numThreads);
+        }
+        this.numThreads = numThreads;
+        executor = null;
+    }
+
+    /**
+     * @return the number of threads used for the neighbor search
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
     /**
      * @param distanceWeighting the distanceWeighting to set
      */
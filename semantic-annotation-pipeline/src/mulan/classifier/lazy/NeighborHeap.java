@@ -0,0 +1,167 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.classifier.lazy;
+
+import java.util.Arrays;
+
+/**
+ * Bounded max-heap keeping the k nearest points found so far. Points at equal
+ * distance are ordered by index, so that the result does not depend on the
+ * order in which the points are offered. Optionally the points tied with the
+ * k-th nearest one are kept as well, like Weka's LinearNNSearch does.
+ */
+class NeighborHeap {
+
+    private final int[] indices;
+    private final double[] distances;
+    private int size;
+    /**
+     * Whether the points at the distance of the k-th nearest one are kept
+     */
+    private final boolean keepTies;
+    /**
+     * The points beyond the k nearest ones that are at the same distance as
+     * the furthest of them, in no particular order
+     */
+    private int[] ties;
+    private int numTies;
+
+    /**
+     * @param k the number of neighbors to keep
+     */
+    NeighborHeap(int k) {
+        this(k, false);
+    }
+
+    /**
+     * @param k the number of neighbors to keep
+     * @param keepTies whether the points tied with the k-th nearest one are
+     * kept as well
+     */
+    NeighborHeap(int k, boolean keepTies) {
+        indices = new int[k];
+        distances = new double[k];
+        this.keepTies = keepTies;
+        ties = keepTies ? new int[4] : null;
+    }
+
+    /**
+     * Returns the squared distance a point must not exceed to enter the heap.
+     */
+    double bound() {
+        return (size < indices.length) ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    /**
+     * Offers a point to the heap.
+     *
+     * @param index the index of the point
+     * @param distance the squared distance of the point from the query
+     */
+    void offer(int index, double distance) {
+        if (size < indices.length) {
+            int child = size++;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (!further(distance, index, distances[parent], indices[parent])) {
+                    break;
+                }
+                indices[child] = indices[parent];
+                distances[child] = distances[parent];
+                child = parent;
+            }
+            indices[child] = index;
+            distances[child] = distance;
+        } else if (size > 0 && further(distances[0], indices[0], distance, index)) {
+            int evicted = indices[0];
+            double evictedDistance = distances[0];
+            siftDown(index, distance);
+            if (keepTies) {
+                if (distances[0] == evictedDistance) {
+                    addTie(evicted);
+                } else {
+                    numTies = 0;
+                }
+            }
+        } else if (keepTies && size > 0 && distance == distances[0]) {
+            addTie(index);
+        }
+    }
+
+    private void addTie(int index) {
+        if (numTies == ties.length) {
+            ties = Arrays.copyOf(ties, 2 * numTies);
+        }
+        ties[numTies++] = index;
+    }
+
+    private void siftDown(int index, double distance) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && further(distances[child + 1], indices[child + 1], distances[child], indices[child])) {
+                child++;
+            }
+            if (!further(distances[child], indices[child], distance, index)) {
+                break;
+            }
+            indices[parent] = indices[child];
+            distances[parent] = distances[child];
+            parent = child;
+        }
+        indices[parent] = index;
+        distances[parent] = distance;
+    }
+
+    private static boolean further(double distance1, int index1, double distance2, int index2) {
+        return distance1 > distance2 || (distance1 == distance2 && index1 > index2);
+    }
+
+    /**
+     * Empties the heap into arrays sorted by increasing distance. The heap can
+     * then be reused for another query.
+     *
+     * @param distances if not null, receives the (not squared) distances of the
+     * k nearest neighbors; the tied neighbors after them are at the distance of
+     * the k-th
+     * @return the indices of the neighbors, followed by the tied ones in order
+     * of index
+     */
+    int[] drain(double[] distances) {
+        int[] neighbors = new int[size + numTies];
+        if (numTies > 0) {
+            // the heap holds the tied points with the smallest indices
+            Arrays.sort(ties, 0, numTies);
+            System.arraycopy(ties, 0, neighbors, size, numTies);
+            numTies = 0;
+        }
+        while (size > 0) {
+            int last = size - 1;
+            neighbors[last] = indices[0];
+            if (distances != null) {
+                distances[last] = Math.sqrt(this.distances[0]);
+            }
+            size--;
+            if (size > 0) {
+                siftDown(indices[size], this.distances[size]);
+            }
+        }
+        return neighbors;
+    }
+}
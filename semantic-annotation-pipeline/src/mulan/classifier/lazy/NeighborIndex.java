@@ -0,0 +1,94 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.classifier.lazy;
+
+import java.io.Serializable;
+
+/**
+ * Base class of the indexes used by {@link MultiLabelKNN} for the nearest
+ * neighbor search over the rows of a {@link NormalizedFeatureMatrix}. All
+ * indexes are exact: they return the k rows with the smallest distance, closer
+ * rows first and rows at equal distance in order of index, followed by the
+ * rows tied with the k-th when {@link #setKeepTies(boolean)} is set.
+ */
+@SuppressWarnings("serial")
+public abstract class NeighborIndex implements Serializable {
+
+    /**
+     * The indexed training data
+     */
+    protected NormalizedFeatureMatrix data;
+    /**
+     * Whether the rows at the distance of the k-th nearest one are returned too
+     */
+    protected boolean keepTies;
+
+    /**
+     * Sets whether the rows at the same distance as the k-th nearest one are
+     * returned after the k nearest, so that more than k rows may be returned.
+     *
+     * @param keepTies whether the tied rows are returned
+     */
+    public void setKeepTies(boolean keepTies) {
+        this.keepTies = keepTies;
+    }
+
+    /**
+     * Builds the index over the rows of the given matrix.
+     *
+     * @param data the training data
+     */
+    public void build(NormalizedFeatureMatrix data) {
+        this.data = data;
+    }
+
+    /**
+     * Finds the nearest rows of a query.
+     *
+     * @param query the normalized feature values of the query
+     * @param k the number of neighbors
+     * @param excluded the index of a row that is not returned (used for
+     * leave-one-out searches over the training data), or -1
+     * @param distances if not null, receives the distances of the k nearest
+     * neighbors (the tied ones after them are at the distance of the k-th)
+     * @return the indices of the nearest rows, closest first
+     */
+    public abstract int[] kNearest(double[] query, int k, int excluded, double[] distances);
+
+    /**
+     * Finds the nearest rows of several queries. The default implementation
+     * searches the queries one after the other.
+     *
+     * @param queries the normalized feature values of the queries
+     * @param excluded for each query the index of the row that is not returned,
+     * or null if no row is excluded
+     * @param k the number of neighbors
+     * @param distances if not null, receives the distances of the neighbors of
+     * each query
+     * @return the indices of the nearest rows of each query
+     */
+    public int[][] kNearest(double[][] queries, int[] excluded, int k, double[][] distances) {
+        int[][] neighbors = new int[queries.length][];
+        for (int q = 0; q < queries.length; q++) {
+            double[] queryDistances = (distances == null) ? null : new double[k];
+            neighbors[q] = kNearest(queries[q], k, (excluded == null) ? -1 : excluded[q], queryDistances);
+            if (distances != null) {
+                distances[q] = queryDistances;
+            }
+        }
+        return neighbors;
+    }
+}
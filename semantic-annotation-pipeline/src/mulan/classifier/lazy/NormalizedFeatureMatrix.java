@@ -0,0 +1,246 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.classifier.lazy;
+
+import java.io.Serializable;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * The feature attributes of a data set stored as a dense matrix of doubles.
+ * Numeric values are normalized to [0,1] using the range of the training
+ * data, nominal values are stored as the index of the value and missing
+ * values as NaN. The distance between two rows is the (non-normalized)
+ * distance of Weka's {@link weka.core.EuclideanDistance}, computed attribute
+ * by attribute in the same order, so that both give identical results.
+ */
+public class NormalizedFeatureMatrix implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * The indices of the attributes stored in the columns of the matrix
+     */
+    private int[] attributeIndices;
+    /**
+     * Whether each column holds a nominal attribute
+     */
+    private boolean[] nominal;
+    /**
+     * The minimum of each numeric column in the training data (NaN if all
+     * values are missing)
+     */
+    private double[] min;
+    /**
+     * The width of the range of each numeric column in the training data
+     */
+    private double[] width;
+    /**
+     * The normalized training data, one row per instance
+     */
+    private double[][] rows;
+    /**
+     * Whether the training data contains missing values
+     */
+    private boolean missingValues;
+    /**
+     * Whether all columns are numeric
+     */
+    private boolean numericOnly = true;
+
+    /**
+     * Creates the matrix of the training data. The attributes at the given
+     * indices and the class attribute do not take part in the distance, like
+     * attributes that are neither numeric nor nominal.
+     *
+     * @param data the training data
+     * @param ignoredIndices the indices of the attributes that are left out
+     */
+    public NormalizedFeatureMatrix(Instances data, int[] ignoredIndices) {
+        boolean[] ignored = new boolean[data.numAttributes()];
+        for (int index : ignoredIndices) {
+            ignored[index] = true;
+        }
+        int numColumns = 0;
+        int[] columns = new int[data.numAttributes()];
+        for (int a = 0; a < data.numAttributes(); a++) {
+            int type = data.attribute(a).type();
+            if (!ignored[a] && a != data.classIndex()
+                    && (type == Attribute.NUMERIC || type == Attribute.NOMINAL)) {
+                columns[numColumns++] = a;
+            }
+        }
+        attributeIndices = new int[numColumns];
+        System.arraycopy(columns, 0, attributeIndices, 0, numColumns);
+
+        nominal = new boolean[numColumns];
+        min = new double[numColumns];
+        width = new double[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            int a = attributeIndices[c];
+            nominal[c] = data.attribute(a).isNominal();
+            numericOnly &= !nominal[c];
+            double low = Double.NaN, high = Double.NaN;
+            for (int i = 0; i < data.numInstances(); i++) {
+                Instance instance = data.instance(i);
+                if (instance.isMissing(a)) {
+                    missingValues = true;
+                    continue;
+                }
+                double value = instance.value(a);
+                if (Double.isNaN(low)) {
+                    low = value;
+                    high = value;
+                } else if (value < low) {
+                    low = value;
+                } else if (value > high) {
+                    high = value;
+                }
+            }
+            min[c] = low;
+            width[c] = high - low;
+        }
+
+        rows = new double[data.numInstances()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = toRow(data.instance(i));
+        }
+    }
+
+    /**
+     * Converts an instance with the same attributes as the training data to a
+     * row of the matrix.
+     *
+     * @param instance the instance
+     * @return the normalized feature values of the instance
+     */
+    public double[] toRow(Instance instance) {
+        double[] row = new double[attributeIndices.length];
+        for (int c = 0; c < row.length; c++) {
+            int a = attributeIndices[c];
+            if (instance.isMissing(a)) {
+                row[c] = Double.NaN;
+            } else if (nominal[c]) {
+                row[c] = instance.value(a);
+            } else if (Double.isNaN(min[c]) || width[c] == 0) {
+                row[c] = 0;
+            } else {
+                row[c] = (instance.value(a) - min[c]) / width[c];
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Returns the squared distance of two rows. The computation stops as soon
+     * as the partial sum exceeds the given bound, in which case a value larger
+     * than the bound is returned.
+     *
+     * @param first the first row
+     * @param second the second row
+     * @param bound the largest distance of interest
+     * @return the squared distance, or a value larger than bound
+     */
+    public double squaredDistance(double[] first, double[] second, double bound) {
+        double distance = 0;
+        int c = 0;
+        if (numericOnly) {
+            // the difference is NaN only if a value is missing
+            for (; c < first.length; c++) {
+                double diff = first[c] - second[c];
+                if (diff != diff) {
+                    break;
+                }
+                distance += diff * diff;
+                if (distance > bound) {
+                    return distance;
+                }
+            }
+        }
+        for (; c < first.length; c++) {
+            double x = first[c];
+            double y = second[c];
+            double diff;
+            if (x != x || y != y) {
+                diff = missingDifference(c, x, y);
+            } else if (nominal[c]) {
+                diff = ((int) x == (int) y) ? 0 : 1;
+            } else {
+                diff = x - y;
+            }
+            distance += diff * diff;
+            if (distance > bound) {
+                return distance;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Difference of two values of a column when at least one is missing.
+     */
+    private double missingDifference(int column, double x, double y) {
+        if (nominal[column] || (x != x && y != y)) {
+            return 1;
+        }
+        double diff = (x != x) ? y : x;
+        return (diff < 0.5) ? 1.0 - diff : diff;
+    }
+
+    /**
+     * Returns whether a row contains missing values.
+     *
+     * @param row a row of the matrix
+     * @return true if some value of the row is missing
+     */
+    public static boolean hasMissingValues(double[] row) {
+        for (double value : row) {
+            if (value != value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the training data contains missing values
+     */
+    public boolean hasMissingValues() {
+        return missingValues;
+    }
+
+    /**
+     * @param index the index of a training instance
+     * @return the row of the training instance
+     */
+    public double[] getRow(int index) {
+        return rows[index];
+    }
+
+    /**
+     * @return the rows of all training instances
+     */
+    public double[][] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of training instances
+     */
+    public int numRows() {
+        return rows.length;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.classifier.lazy;
+
+import java.util.Random;
+
+/**
+ * Exact nearest neighbor search with a vantage point tree. Each node picks a
+ * row as vantage point and splits the remaining rows of the node at the median
+ * of their distance from it; subtrees that cannot contain a neighbor are
+ * skipped using the triangle inequality. The distance with missing values is
+ * not a metric, so when the training data or a query contains missing values
+ * all rows are compared, as in {@link BruteForceNeighborIndex}.
+ */
+public class VPTreeNeighborIndex extends NeighborIndex {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * Nodes with at most this many rows are searched linearly
+     */
+    private static final int LEAF_SIZE = 16;
+    /**
+     * Relative tolerance of the pruning test, covering rounding errors of the
+     * distances
+     */
+    private static final double TOLERANCE = 1e-9;
+    /**
+     * The rows in tree order. The node covering order[lo..hi) has order[lo] as
+     * vantage point, the rows closer than the median in order[lo+1..mid) and
+     * the rest in order[mid..hi), where mid = (lo + 1 + hi) / 2.
+     */
+    private int[] order;
+    /**
+     * The median distance of the node whose vantage point is order[lo], stored
+     * at position lo
+     */
+    private double[] radius;
+    /**
+     * The seed used for selecting the vantage points
+     */
+    private int seed = 1;
+
+    /**
+     * @param seed the seed used for selecting the vantage points
+     */
+    public void setSeed(int seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void build(NormalizedFeatureMatrix data) {
+        super.build(data);
+        order = null;
+        radius = null;
+        if (data.hasMissingValues()) {
+            return;
+        }
+        int n = data.numRows();
+        order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        radius = new double[n];
+        build(0, n, new double[n], new Random(seed));
+    }
+
+    private void build(int lo, int hi, double[] distances, Random random) {
+        if (hi - lo <= LEAF_SIZE) {
+            return;
+        }
+        swap(lo, lo + random.nextInt(hi - lo));
+        double[] vantage = data.getRow(order[lo]);
+        for (int i = lo + 1; i < hi; i++) {
+            distances[order[i]] = Math.sqrt(data.squaredDistance(vantage, data.getRow(order[i]), Double.POSITIVE_INFINITY));
+        }
+        int mid = (lo + 1 + hi) >>> 1;
+        select(lo + 1, hi - 1, mid, distances);
+        radius[lo] = distances[order[mid]];
+        build(lo + 1, mid, distances, random);
+        build(mid, hi, distances, random);
+    }
+
+    /**
+     * Rearranges order[lo..hi] so that order[k] holds the row with the k-th
+     * smallest distance, preceded by rows that are not further and followed by
+     * rows that are not closer.
+     */
+    private void select(int lo, int hi, int k, double[] distances) {
+        while (lo < hi) {
+            double pivot = distances[order[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (distances[order[i]] < pivot) {
+                    i++;
+                }
+                while (distances[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int temp = order[i];
+        order[i] = order[j];
+        order[j] = temp;
+    }
+
+    @Override
+    public int[] kNearest(double[] query, int k, int excluded, double[] distances) {
+        NeighborHeap heap = new NeighborHeap(k, keepTies);
+        if (order == null || NormalizedFeatureMatrix.hasMissingValues(query)) {
+            for (int i = 0; i < data.numRows(); i++) {
+                offer(heap, query, i, excluded);
+            }
+        } else {
+            search(0, order.length, query, excluded, heap);
+        }
+        return heap.drain(distances);
+    }
+
+    private void search(int lo, int hi, double[] query, int excluded, NeighborHeap heap) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                offer(heap, query, order[i], excluded);
+            }
+            return;
+        }
+        double squared = data.squaredDistance(query, data.getRow(order[lo]), Double.POSITIVE_INFINITY);
+        if (order[lo] != excluded && squared <= heap.bound()) {
+            heap.offer(order[lo], squared);
+        }
+        double distance = Math.sqrt(squared);
+        int mid = (lo + 1 + hi) >>> 1;
+        double median = radius[lo];
+        double slack = TOLERANCE * (distance + median);
+        // search first the side of the query, the other side may then be pruned
+        if (distance < median) {
+            search(lo + 1, mid, query, excluded, heap);
+            if (median - distance - slack <= Math.sqrt(heap.bound())) {
+                search(mid, hi, query, excluded, heap);
+            }
+        } else {
+            search(mid, hi, query, excluded, heap);
+            if (distance - median - slack <= Math.sqrt(heap.bound())) {
+                search(lo + 1, mid, query, excluded, heap);
+            }
+        }
+    }
+
+    private void offer(NeighborHeap heap, double[] query, int row, int excluded) {
+        if (row != excluded) {
+            double bound = heap.bound();
+            double distance = data.squaredDistance(query, data.getRow(row), bound);
+            if (distance <= bound) {
+                heap.offer(row, distance);
+            }
+        }
+    }
+}
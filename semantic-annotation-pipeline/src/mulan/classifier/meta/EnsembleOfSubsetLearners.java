@@ -16,6 +16,9 @@
 package mulan.classifier.meta;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import mulan.classifier.EnsembleTasks;
 import mulan.classifier.MultiLabelLearner;
 import mulan.classifier.MultiLabelOutput;
 import mulan.classifier.transformation.BinaryRelevance;
@@ -23,6 +26,7 @@ import mulan.data.ConditionalDependenceIdentifier;
 import mulan.data.LabelPairsDependenceIdentifier;
 import mulan.data.LabelsPair;
 import mulan.data.MultiLabelInstances;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.trees.J48;
 import weka.core.Instance;
@@ -110,6 +114,10 @@ public class EnsembleOfSubsetLearners extends MultiLabelMetaLearner {
      * {@link #selectDiverseModels} is true.
      */
     private static double dynamicDiversityThreshold = 0.2;
+    /**
+     * Executor training the models, null for sequential runs
+     */
+    private transient ExecutorService executor;
 
     /**
      * Default constructor. Can be used for accessing class utility methods.
@@ -165,20 +173,34 @@ public class EnsembleOfSubsetLearners extends MultiLabelMetaLearner {
      * @throws Exception if learner model was not created successfully
      */
     @Override
-    protected void buildInternal(MultiLabelInstances trainingData) throws Exception {
+    protected void buildInternal(final MultiLabelInstances trainingData) throws Exception {
         int totalSubsets = 0;
         List<LabelSubsetsWeight> pairsList = createLabelSetPartitions(trainingData);
         ensembleModels = new SubsetLearner[numModels];
+        // the cache of SubsetLearner is shared by all instances and is not thread safe
+        final boolean parallel = executor != null && !useSubsetcache;
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numModels);
         for (int m = 0; m < numModels; m++) {
             LabelSubsetsWeight pair = pairsList.get(m);
             int[][] comb = pair.getSubsets();
-            ensembleModels[m] = new SubsetLearner(comb, singleLabelLearner);
+            // the single label learner is copied here, it is not thread safe
+            ensembleModels[m] = new SubsetLearner(comb, AbstractClassifier.makeCopy(singleLabelLearner));
             ensembleModels[m].setUseCache(useSubsetcache);
             totalSubsets = totalSubsets + comb.length;
             debug("Building model" + m + ":" + partitionToString(comb) + " weight="
                     + pair.getValue());
-            ensembleModels[m].build(trainingData);
+            final SubsetLearner model = ensembleModels[m];
+            tasks.add(new Callable<Object>() {
+
+                public Object call() throws Exception {
+                    // SubsetLearner sets the class index of its training data,
+                    // concurrent models need their own copy
+                    model.build(parallel ? trainingData.clone() : trainingData);
+                    return null;
+                }
+            });
         }
+        EnsembleTasks.invokeAll(parallel ? executor : null, tasks);
         debug("Total Subsets  =" + totalSubsets + '\n');
     }
 
@@ -850,6 +872,20 @@ public class EnsembleOfSubsetLearners extends MultiLabelMetaLearner {
         this.rnd = rnd;
     }
 
+    /**
+     * Sets the executor that trains the models of the ensemble concurrently.
+     * The label set partitions are selected in the calling thread, so the
+     * models do not depend on the executor. The models are trained
+     * sequentially when the SubsetLearner cache is used. The executor is not
+     * shut down by the learner and is not kept by copies of the learner.
+     *
+     * @param anExecutor the executor for the models, or null to train them
+     * sequentially
+     */
+    public void setExecutor(ExecutorService anExecutor) {
+        executor = anExecutor;
+    }
+
     /**
      * 
      * @param threshold the threshold for ensemble voting
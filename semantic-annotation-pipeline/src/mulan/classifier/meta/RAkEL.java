@@ -15,9 +15,14 @@
  */
 package mulan.classifier.meta;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import mulan.classifier.EnsembleTasks;
 import mulan.classifier.MultiLabelLearner;
 import mulan.classifier.MultiLabelOutput;
 import mulan.classifier.transformation.BinaryRelevance;
@@ -88,6 +93,11 @@ public class RAkEL extends MultiLabelMetaLearner {
     MultiLabelLearner[] subsetClassifiers;
     private Remove[] remove;
     HashSet<String> combinations;
+    /**
+     * Executor training the models and making their batch predictions, null
+     * for sequential runs
+     */
+    private transient ExecutorService executor;
 
     /**
      * Returns an instance of a TechnicalInformation object, containing detailed
@@ -164,6 +174,20 @@ public class RAkEL extends MultiLabelMetaLearner {
         seed = x;
     }
 
+    /**
+     * Sets the executor that trains the models of the ensemble concurrently
+     * and makes their predictions on batches of instances. The label subsets
+     * are drawn in the calling thread in the same order as in a sequential run,
+     * so the models do not depend on the executor. The executor is not shut
+     * down by the learner and is not kept by copies of the learner.
+     *
+     * @param anExecutor the executor for the models, or null to run them
+     * sequentially
+     */
+    public void setExecutor(ExecutorService anExecutor) {
+        executor = anExecutor;
+    }
+
     /**
      * Sets the size of the subsets
      * 
@@ -242,18 +266,28 @@ public class RAkEL extends MultiLabelMetaLearner {
         subsetClassifiers = new MultiLabelLearner[numOfModels];
         remove = new Remove[numOfModels];
 
+        List<Callable<MultiLabelLearner>> tasks = new ArrayList<Callable<MultiLabelLearner>>(numOfModels);
+        for (int i = 0; i < numOfModels; i++) {
+            tasks.add(updateClassifier(trainingData, i));
+        }
+        List<MultiLabelLearner> models = EnsembleTasks.invokeAll(executor, tasks);
         for (int i = 0; i < numOfModels; i++) {
-            updateClassifier(trainingData, i);
+            subsetClassifiers[i] = models.get(i);
         }
     }
 
-    private void updateClassifier(MultiLabelInstances mlTrainData, int model) throws Exception {
+    /**
+     * Selects the label subset of a model and prepares its training. The
+     * returned task trains the model on the selected labels.
+     */
+    private Callable<MultiLabelLearner> updateClassifier(final MultiLabelInstances mlTrainData,
+            final int model) throws Exception {
         //todo: check if the following is unnecessary (was used for cvparam)
         if (combinations == null) {
             combinations = new HashSet<String>();
         }
 
-        Instances trainData = mlTrainData.getDataSet();
+        final Instances trainData = mlTrainData.getDataSet();
         // select a random subset of classes not seen before
         // todo: select according to inverse distribution of current selection
         boolean[] selected;
@@ -285,11 +319,18 @@ public class RAkEL extends MultiLabelMetaLearner {
         remove[model].setAttributeIndicesArray(absoluteIndicesToRemove[model]);
         remove[model].setInputFormat(trainData);
         remove[model].setInvertSelection(false);
-        Instances trainSubset = Filter.useFilter(trainData, remove[model]);
+        final Remove modelRemove = remove[model];
 
         // build a MultiLabelLearner for the selected label subset;
-        subsetClassifiers[model] = getBaseLearner().makeCopy();
-        subsetClassifiers[model].build(mlTrainData.reintegrateModifiedDataSet(trainSubset));
+        final MultiLabelLearner learner = getBaseLearner().makeCopy();
+        return new Callable<MultiLabelLearner>() {
+
+            public MultiLabelLearner call() throws Exception {
+                Instances trainSubset = Filter.useFilter(trainData, modelRemove);
+                learner.build(mlTrainData.reintegrateModifiedDataSet(trainSubset));
+                return learner;
+            }
+        };
     }
 
     protected MultiLabelOutput makePredictionInternal(Instance instance) throws Exception {
@@ -333,6 +374,62 @@ public class RAkEL extends MultiLabelMetaLearner {
         return mlo;
     }
 
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception {
+        int numInstances = instances.numInstances();
+        double[][] sumVotesBatch = new double[numInstances][numLabels];
+        double[] lengthVotesBatch = new double[numLabels];
+
+        // each model predicts the whole batch at once
+        List<Callable<MultiLabelOutput[]>> tasks = new ArrayList<Callable<MultiLabelOutput[]>>(numOfModels);
+        for (int i = 0; i < numOfModels; i++) {
+            final int model = i;
+            final Instances batch = instances;
+            tasks.add(new Callable<MultiLabelOutput[]>() {
+
+                public MultiLabelOutput[] call() throws Exception {
+                    Instances subset = Filter.useFilter(batch, remove[model]);
+                    return subsetClassifiers[model].makePredictions(subset);
+                }
+            });
+        }
+        List<MultiLabelOutput[]> predictions = EnsembleTasks.invokeAll(executor, tasks);
+
+        // gather votes in the order of the models
+        for (int i = 0; i < numOfModels; i++) {
+            MultiLabelOutput[] subsetMLOs = predictions.get(i);
+            for (int n = 0; n < numInstances; n++) {
+                boolean[] subsetBipartition = subsetMLOs[n].getBipartition();
+                for (int j = 0; j < sizeOfSubset; j++) {
+                    sumVotesBatch[n][classIndicesPerSubset[i][j]] += subsetBipartition[j] ? 1 : 0;
+                }
+            }
+            for (int j = 0; j < sizeOfSubset; j++) {
+                lengthVotesBatch[classIndicesPerSubset[i][j]]++;
+            }
+        }
+
+        MultiLabelOutput[] outputs = new MultiLabelOutput[numInstances];
+        for (int n = 0; n < numInstances; n++) {
+            double[] confidence1 = new double[numLabels];
+            boolean[] bipartition = new boolean[numLabels];
+            for (int i = 0; i < numLabels; i++) {
+                if (lengthVotesBatch[i] != 0) {
+                    confidence1[i] = sumVotesBatch[n][i] / lengthVotesBatch[i];
+                } else {
+                    confidence1[i] = 0;
+                }
+                if (confidence1[i] >= threshold) {
+                    bipartition[i] = true;
+                } else {
+                    bipartition[i] = false;
+                }
+            }
+            outputs[n] = new MultiLabelOutput(bipartition, confidence1);
+        }
+        return outputs;
+    }
+
     /**
      * Returns a string describing classifier
      *
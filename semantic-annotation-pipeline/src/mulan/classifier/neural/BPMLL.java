@@ -62,6 +62,7 @@ import weka.filters.unsupervised.attribute.NominalToBinary;
  <!-- technical-bibtex-end -->
  *
  * @see BPMLLAlgorithm
+ * @see BPMLLBatchAlgorithm
  * @author Jozef Vilcek
  * @version 2012.02.27
  */
@@ -74,6 +75,8 @@ public class BPMLL extends MultiLabelLearnerBase {
     private NominalToBinary nominalToBinaryFilter;
     // algorithm parameters
     private int epochs = 100;
+    private int batchSize = 1;
+    private int numThreads = 1;
     private final Long randomnessSeed;
     private double weightsDecayCost = 0.00001;
     private double learningRate = 0.05;
@@ -204,6 +207,56 @@ public class BPMLL extends MultiLabelLearnerBase {
         return epochs;
     }
 
+    /**
+     * Sets the number of training examples processed together in one weights update.
+     * Must be greater than 0.<br>
+     * Default value is 1, which corresponds to online learning.
+     *
+     * @param batchSize the number of examples per weights update
+     * @throws IllegalArgumentException if passed value is invalid
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be greater than zero. " +
+                    "Entered value is : " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets the number of training examples processed together in one weights update.
+     * Default value is 1.
+     * @return batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of threads used to train large layers of the network. Must be
+     * greater than 0. The learned model does not depend on the number of threads.<br>
+     * Default value is 1.
+     *
+     * @param numThreads the number of threads
+     * @throws IllegalArgumentException if passed value is invalid
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero. " +
+                    "Entered value is : " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Gets the number of threads used to train large layers of the network.
+     * Default value is 1.
+     * @return number of threads
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
     /**
      * Sets whether attributes of instances data (except label attributes) should
      * be normalized prior to building the learner. Normalization is performed
@@ -237,7 +290,8 @@ public class BPMLL extends MultiLabelLearnerBase {
         List<DataPair> trainData = prepareData(trainInstances);
         int inputsDim = trainData.get(0).getInput().length;
         model = buildNeuralNetwork(inputsDim);
-        BPMLLAlgorithm learnAlg = new BPMLLAlgorithm(model, weightsDecayCost);
+        BPMLLBatchAlgorithm learnAlg = new BPMLLBatchAlgorithm(model, weightsDecayCost);
+        learnAlg.setNumThreads(numThreads);
 
         int numInstances = trainData.size();
         int processedInstances = 0;
@@ -245,12 +299,21 @@ public class BPMLL extends MultiLabelLearnerBase {
         double error = 0;
         for (int epoch = 0; epoch < epochs; epoch++) {
             Collections.shuffle(trainData, new Random(1));
-            for (int index = 0; index < numInstances; index++) {
-                DataPair trainPair = trainData.get(index);
-                double result = learnAlg.learn(trainPair.getInput(), trainPair.getOutput(), learningRate);
-                if (!Double.isNaN(result)) {
-                    error += result;
-                    processedInstances++;
+            for (int start = 0; start < numInstances; start += batchSize) {
+                int size = Math.min(batchSize, numInstances - start);
+                double[][] inputs = new double[size][];
+                double[][] outputs = new double[size][];
+                for (int index = 0; index < size; index++) {
+                    DataPair trainPair = trainData.get(start + index);
+                    inputs[index] = trainPair.getInput();
+                    outputs[index] = trainPair.getOutput();
+                }
+                double[] results = learnAlg.learn(inputs, outputs, learningRate);
+                for (double result : results) {
+                    if (!Double.isNaN(result)) {
+                        error += result;
+                        processedInstances++;
+                    }
                 }
             }
 
@@ -269,7 +332,8 @@ public class BPMLL extends MultiLabelLearnerBase {
             }
         }
 
-        thresholdF = buildThresholdFunction(trainData);
+        learnAlg.updateNetwork();
+        thresholdF = buildThresholdFunction(trainData, learnAlg);
     }
 
     public String globalInfo() {
@@ -291,17 +355,18 @@ public class BPMLL extends MultiLabelLearnerBase {
         return technicalInfo;
     }
 
-    private ThresholdFunction buildThresholdFunction(List<DataPair> trainData) {
+    private ThresholdFunction buildThresholdFunction(List<DataPair> trainData, BPMLLBatchAlgorithm learnAlg) {
 
         int numExamples = trainData.size();
         double[][] idealLabels = new double[numExamples][numLabels];
-        double[][] modelConfidences = new double[numExamples][numLabels];
+        double[][] inputs = new double[numExamples][];
 
         for (int example = 0; example < numExamples; example++) {
             DataPair dataPair = trainData.get(example);
             idealLabels[example] = dataPair.getOutput();
-            modelConfidences[example] = model.feedForward(dataPair.getInput());
+            inputs[example] = dataPair.getInput();
         }
+        double[][] modelConfidences = learnAlg.feedForward(inputs);
 
         return new ThresholdFunction(idealLabels, modelConfidences);
     }
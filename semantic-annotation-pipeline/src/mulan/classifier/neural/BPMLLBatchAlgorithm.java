@@ -0,0 +1,479 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.classifier.neural;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import mulan.classifier.neural.model.ActivationFunction;
+import mulan.classifier.neural.model.NeuralNet;
+import mulan.classifier.neural.model.Neuron;
+import mulan.core.Parallel;
+import mulan.core.Parallel.RangeTask;
+
+/**
+ * Mini-batch implementation of the Back-Propagation Multi-Label Learning (BPMLL) algorithm.
+ * The weights of each layer of the {@link NeuralNet} are copied to a contiguous row-major
+ * matrix (one row per neuron, bias weight in the last column), and the forward and backward
+ * passes process a whole batch of patterns with blocked matrix products. Large layers are
+ * split across threads.
+ * <br><br>
+ * The weights are averaged over the patterns of a batch that could be processed. With batches
+ * of one pattern the updates are exactly those of {@link BPMLLAlgorithm}. This includes the error
+ * terms of a hidden layer being computed from the already updated weights of the next layer.
+ * Each matrix element is summed in the same order regardless of the number of threads.
+ * The learned weights are written back to the network by {@link #updateNetwork()}.
+ *
+ * @see BPMLLAlgorithm
+ */
+public class BPMLLBatchAlgorithm {
+
+    /** number of patterns that are multiplied with a row of weights while it is in cache */
+    private static final int BLOCK_SIZE = 16;
+    /** minimal number of multiplications of a layer operation to split it across threads */
+    private static final int MIN_PARALLEL_WORK = 1 << 16;
+    /** minimal number of neurons or patterns processed by one thread */
+    private static final int MIN_BLOCK_SIZE = 8;
+
+    private final NeuralNet neuralNet;
+    private final double weightsDecayCost;
+    private final int layersCount;
+    /** number of neurons in each layer */
+    private final int[] layerSizes;
+    /** the weights of each layer, [neuron * (inputs + 1) + input]; the input layer has one weight and a bias */
+    private final double[][] weights;
+    /** the bias input of each layer */
+    private final double[] biasInputs;
+    /** the activation function of each layer */
+    private final ActivationFunction[] functions;
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Creates a {@link BPMLLBatchAlgorithm} instance. The weights of the network are copied,
+     * the network itself is updated only by {@link #updateNetwork()}.
+     *
+     * @param neuralNet the neural network model to learn
+     * @param weightsDecayCost the weights decay cost term used for regularization.
+     * 					The value must be greater than 0 and no more than 1.
+     */
+    public BPMLLBatchAlgorithm(NeuralNet neuralNet, double weightsDecayCost) {
+
+        if (neuralNet == null) {
+            throw new IllegalArgumentException("The passed neural network model is null.");
+        }
+        if (weightsDecayCost <= 0 || weightsDecayCost > 1) {
+            throw new IllegalArgumentException("The weights decay regularization cost term must be greater " +
+                    "than 0 and no more than 1. The passed value is : " + weightsDecayCost);
+        }
+        this.neuralNet = neuralNet;
+        this.weightsDecayCost = weightsDecayCost;
+
+        layersCount = neuralNet.getLayersCount();
+        layerSizes = new int[layersCount];
+        weights = new double[layersCount][];
+        biasInputs = new double[layersCount];
+        functions = new ActivationFunction[layersCount];
+        for (int layerIndex = 0; layerIndex < layersCount; layerIndex++) {
+            List<Neuron> layer = neuralNet.getLayerUnits(layerIndex);
+            int layerSize = layer.size();
+            int rowLength = layer.get(0).getWeights().length;
+            layerSizes[layerIndex] = layerSize;
+            weights[layerIndex] = new double[layerSize * rowLength];
+            biasInputs[layerIndex] = layer.get(0).getBiasInput();
+            functions[layerIndex] = layer.get(0).getActivationFunction();
+            for (int n = 0; n < layerSize; n++) {
+                System.arraycopy(layer.get(n).getWeights(), 0, weights[layerIndex], n * rowLength, rowLength);
+            }
+        }
+    }
+
+    /**
+     * Returns the neural network which is learned/updated by the algorithm.
+     *
+     * @return the neural network
+     */
+    public NeuralNet getNetwork() {
+        return neuralNet;
+    }
+
+    /**
+     * Returns the value of weights decay cost term used for regularization.
+     *
+     * @return the weights decay cost term
+     */
+    public double getWeightsDecayCost() {
+        return weightsDecayCost;
+    }
+
+    /**
+     * Sets the number of threads used for large layers. The threads stop when idle,
+     * so the algorithm does not have to be shut down.
+     *
+     * @param numThreads the number of threads (1 computes everything in the calling thread)
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero. " +
+                    "Entered value is : " + numThreads);
+        }
+        if (numThreads == 1) {
+            executor = null;
+        } else {
+            executor = Parallel.newDaemonPool(numThreads, "BPMLL");
+        }
+    }
+
+    /**
+     * Writes the learned weights back to the neurons of the network.
+     */
+    public void updateNetwork() {
+        for (int layerIndex = 0; layerIndex < layersCount; layerIndex++) {
+            List<Neuron> layer = neuralNet.getLayerUnits(layerIndex);
+            int rowLength = rowLength(layerIndex);
+            for (int n = 0; n < layerSizes[layerIndex]; n++) {
+                System.arraycopy(weights[layerIndex], n * rowLength, layer.get(n).getWeights(), 0, rowLength);
+            }
+        }
+    }
+
+    /**
+     * Computes the response of the network for each of the given input patterns.
+     *
+     * @param inputPatterns the input patterns for the network
+     * @return the output of the network for each pattern
+     */
+    public double[][] feedForward(double[][] inputPatterns) {
+        int batchSize = inputPatterns.length;
+        double[][] netInputs = new double[layersCount][];
+        double[][] outputs = new double[layersCount][];
+        propagate(inputPatterns, netInputs, outputs);
+
+        int outputSize = layerSizes[layersCount - 1];
+        double[][] result = new double[batchSize][outputSize];
+        for (int b = 0; b < batchSize; b++) {
+            System.arraycopy(outputs[layersCount - 1], b * outputSize, result[b], 0, outputSize);
+        }
+        return result;
+    }
+
+    /**
+     * Performs one learning step with a batch of input patterns and their expected output values.
+     * The function outputs the error for each passed input pattern.<br>
+     * An input pattern is ignored by the algorithm (can not process) if the input example has
+     * assigned either all or non of the labels. Its error is {@link Double#NaN}.
+     *
+     * @param inputPatterns the input patterns for the network
+     * @param expectedLabels the ideal, expected values the network should output as a
+     * 		  response for each input. If the i-th label class belongs to the input pattern
+     * 		  instance, then i-th value is +1, otherwise the value is -1.
+     * @param learningRate the learning rate used to update the neural network weights
+     * @return the error of the network response for each passed input
+     * 			or {@link Double#NaN} for inputs that can not be processed.
+     */
+    public double[] learn(double[][] inputPatterns, double[][] expectedLabels, double learningRate) {
+
+        if (inputPatterns == null || expectedLabels == null || inputPatterns.length != expectedLabels.length) {
+            throw new IllegalArgumentException("Specified input patterns or expected labels are null " +
+                    "or their numbers do not match.");
+        }
+        int batchSize = inputPatterns.length;
+        int outputSize = layerSizes[layersCount - 1];
+        for (int b = 0; b < batchSize; b++) {
+            if (expectedLabels[b] == null || expectedLabels[b].length != outputSize) {
+                throw new IllegalArgumentException("Specified expected labels vector is null " +
+                        "or does not match the output dimension of underlying neural network model.");
+            }
+        }
+
+        // 1. PROPAGATE SIGNAL
+        double[][] netInputs = new double[layersCount][];
+        double[][] outputs = new double[layersCount][];
+        propagate(inputPatterns, netInputs, outputs);
+
+        // compute sum of weights squares for weights decay regularization
+        double weightsSquareSum = 0;
+        for (int layerIndex = layersCount - 1; layerIndex > 0; layerIndex--) {
+            for (double weight : weights[layerIndex]) {
+                weightsSquareSum += weight * weight;
+            }
+        }
+
+        // patterns which can be processed, with the errors of their output neurons
+        double[] errors = new double[batchSize];
+        int[] processed = new int[batchSize];
+        int processedCount = 0;
+        double[] outputErrors = new double[batchSize * outputSize];
+        for (int b = 0; b < batchSize; b++) {
+            double[] patternErrors = computeErrorsForNeurons(outputs[layersCount - 1], b * outputSize,
+                    expectedLabels[b]);
+            if (patternErrors == null) {
+                errors[b] = Double.NaN;
+                continue;
+            }
+            double globalError = 0;
+            for (double error : patternErrors) {
+                globalError += Math.abs(error);
+            }
+            errors[b] = globalError + weightsDecayCost * 0.5 * weightsSquareSum;
+            System.arraycopy(patternErrors, 0, outputErrors, processedCount * outputSize, outputSize);
+            processed[processedCount++] = b;
+        }
+        if (processedCount == 0) {
+            return errors;
+        }
+
+        // 2. UPDATE WIGHTS - error back-propagation
+        double[] errorTerms = null;
+        for (int layerIndex = layersCount - 1; layerIndex > 0; layerIndex--) {
+            // 2a. COMPUTE ERROR TERMS
+            if (layerIndex == layersCount - 1) {
+                errorTerms = computeOutputLayerErrorTerms(outputErrors, netInputs[layerIndex], processed,
+                        processedCount);
+            } else {
+                errorTerms = computeHiddenLayerErrorTerms(layerIndex, errorTerms, netInputs[layerIndex],
+                        processed, processedCount);
+            }
+
+            // 2b. UPDATE WEIGHTS OF THE LAYER
+            updateWeights(layerIndex, errorTerms, outputs[layerIndex - 1], processed, processedCount,
+                    learningRate);
+        }
+
+        return errors;
+    }
+
+    private int rowLength(int layerIndex) {
+        return layerIndex == 0 ? 2 : layerSizes[layerIndex - 1] + 1;
+    }
+
+    /**
+     * Computes the inputs and outputs of all neurons for a batch. Both are stored
+     * per layer as row-major [pattern * layerSize + neuron] matrices.
+     */
+    private void propagate(double[][] inputPatterns, double[][] netInputs, double[][] outputs) {
+        final int batchSize = inputPatterns.length;
+        final int inputSize = layerSizes[0];
+
+        // the input layer processes each input value on its own
+        double[] inputWeights = weights[0];
+        ActivationFunction inputFunction = functions[0];
+        netInputs[0] = new double[batchSize * inputSize];
+        outputs[0] = new double[batchSize * inputSize];
+        for (int b = 0; b < batchSize; b++) {
+            if (inputPatterns[b] == null || inputPatterns[b].length != inputSize) {
+                throw new IllegalArgumentException("Specified input pattern vector is null " +
+                        "or does not match network input dimension.");
+            }
+            for (int n = 0; n < inputSize; n++) {
+                double neuronInput = 0;
+                neuronInput += inputWeights[2 * n] * inputPatterns[b][n];
+                neuronInput += inputWeights[2 * n + 1] * biasInputs[0];
+                netInputs[0][b * inputSize + n] = neuronInput;
+                outputs[0][b * inputSize + n] = inputFunction.activate(neuronInput);
+            }
+        }
+
+        for (int layerIndex = 1; layerIndex < layersCount; layerIndex++) {
+            final int layerSize = layerSizes[layerIndex];
+            final int prevSize = layerSizes[layerIndex - 1];
+            final int rowLength = prevSize + 1;
+            final double[] layerWeights = weights[layerIndex];
+            final double bias = biasInputs[layerIndex];
+            final ActivationFunction function = functions[layerIndex];
+            final double[] layerInputs = outputs[layerIndex - 1];
+            final double[] neuronInputs = new double[batchSize * layerSize];
+            final double[] neuronOutputs = new double[batchSize * layerSize];
+
+            parallelFor(layerSize, (long) batchSize * layerSize * rowLength, new RangeTask() {
+
+                public void run(int from, int to) {
+                    for (int blockStart = 0; blockStart < batchSize; blockStart += BLOCK_SIZE) {
+                        int blockEnd = Math.min(batchSize, blockStart + BLOCK_SIZE);
+                        for (int n = from; n < to; n++) {
+                            int w = n * rowLength;
+                            for (int b = blockStart; b < blockEnd; b++) {
+                                int in = b * prevSize;
+                                double neuronInput = 0;
+                                for (int i = 0; i < prevSize; i++) {
+                                    neuronInput += layerWeights[w + i] * layerInputs[in + i];
+                                }
+                                // add bias
+                                neuronInput += layerWeights[w + prevSize] * bias;
+                                neuronInputs[b * layerSize + n] = neuronInput;
+                                neuronOutputs[b * layerSize + n] = function.activate(neuronInput);
+                            }
+                        }
+                    }
+                }
+            });
+            netInputs[layerIndex] = neuronInputs;
+            outputs[layerIndex] = neuronOutputs;
+        }
+    }
+
+    /**
+     * Returns the error terms [processed pattern * layerSize + neuron] of the output layer
+     */
+    private double[] computeOutputLayerErrorTerms(double[] outputErrors, double[] neuronInputs,
+            int[] processed, int processedCount) {
+        int layerSize = layerSizes[layersCount - 1];
+        ActivationFunction function = functions[layersCount - 1];
+        double[] errorTerms = new double[processedCount * layerSize];
+        for (int p = 0; p < processedCount; p++) {
+            int in = processed[p] * layerSize;
+            for (int n = 0; n < layerSize; n++) {
+                errorTerms[p * layerSize + n] = outputErrors[p * layerSize + n]
+                        * function.derivative(neuronInputs[in + n]);
+            }
+        }
+        return errorTerms;
+    }
+
+    /**
+     * Returns the error terms of a hidden layer from the error terms and (already updated)
+     * weights of the next layer
+     */
+    private double[] computeHiddenLayerErrorTerms(int layerIndex, final double[] nextErrorTerms,
+            final double[] neuronInputs, final int[] processed, int processedCount) {
+        final int layerSize = layerSizes[layerIndex];
+        final int nextSize = layerSizes[layerIndex + 1];
+        final int nextRowLength = layerSize + 1;
+        final double[] nextWeights = weights[layerIndex + 1];
+        final ActivationFunction function = functions[layerIndex];
+        final double[] errorTerms = new double[processedCount * layerSize];
+
+        parallelFor(processedCount, (long) processedCount * nextSize * layerSize, new RangeTask() {
+
+            public void run(int from, int to) {
+                for (int p = from; p < to; p++) {
+                    // the sums are accumulated row by row of the next layer's weights
+                    int out = p * layerSize;
+                    for (int k = 0; k < nextSize; k++) {
+                        double nextError = nextErrorTerms[p * nextSize + k];
+                        int w = k * nextRowLength;
+                        for (int n = 0; n < layerSize; n++) {
+                            errorTerms[out + n] += nextError * nextWeights[w + n];
+                        }
+                    }
+                    int in = processed[p] * layerSize;
+                    for (int n = 0; n < layerSize; n++) {
+                        errorTerms[out + n] = errorTerms[out + n] * function.derivative(neuronInputs[in + n]);
+                    }
+                }
+            }
+        });
+        return errorTerms;
+    }
+
+    private void updateWeights(int layerIndex, final double[] errorTerms, final double[] layerInputs,
+            final int[] processed, final int processedCount, final double learningRate) {
+        final int layerSize = layerSizes[layerIndex];
+        final int inputsCount = layerSizes[layerIndex - 1];
+        final int rowLength = inputsCount + 1;
+        final double[] layerWeights = weights[layerIndex];
+        final double bias = biasInputs[layerIndex];
+
+        // w(t+1) = w(t) + a*dw(t) - decay*w(t) ... dw(t) = mean of e(t)*in(t) over the batch
+        parallelFor(layerSize, (long) processedCount * layerSize * rowLength, new RangeTask() {
+
+            public void run(int from, int to) {
+                double[] deltas = new double[rowLength];
+                for (int n = from; n < to; n++) {
+                    Arrays.fill(deltas, 0);
+                    for (int p = 0; p < processedCount; p++) {
+                        double rateError = learningRate * errorTerms[p * layerSize + n];
+                        int in = processed[p] * inputsCount;
+                        for (int i = 0; i < inputsCount; i++) {
+                            deltas[i] += rateError * layerInputs[in + i];
+                        }
+                        // bias weight
+                        deltas[inputsCount] += rateError * bias;
+                    }
+                    int w = n * rowLength;
+                    for (int i = 0; i < rowLength; i++) {
+                        double currentDelta = deltas[i] / processedCount;
+                        layerWeights[w + i] += currentDelta - weightsDecayCost * layerWeights[w + i];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes errors for each output neuron of one pattern, see BPMLLAlgorithm.
+     *
+     * @param networkOutputs the outputs of the network for the batch
+     * @param offset the position of the pattern's outputs
+     * @param expectedLabels the ideal, expected output for labels assignment which network should output
+     * @return error for each neuron or null if can not be computed (either Yi or Yi' is empty set)
+     */
+    private double[] computeErrorsForNeurons(double[] networkOutputs, int offset, double[] expectedLabels) {
+
+        int labelsCount = expectedLabels.length;
+        int[] isLabel = new int[labelsCount];
+        int[] isNotLabel = new int[labelsCount];
+        int isLabelCount = 0;
+        int isNotLabelCount = 0;
+        for (int index = 0; index < labelsCount; index++) {
+            if (expectedLabels[index] == 1) {
+                isLabel[isLabelCount++] = index;
+            } else {
+                isNotLabel[isNotLabelCount++] = index;
+            }
+        }
+
+        // compute error terms for output neurons
+        double[] neuronsErrors = null;
+        if (isLabelCount != 0 && isNotLabelCount != 0) {
+            neuronsErrors = new double[labelsCount];
+            for (int index = 0; index < labelsCount; index++) {
+                double error = 0;
+                if (expectedLabels[index] == 1) {
+                    for (int j = 0; j < isNotLabelCount; j++) {
+                        error += Math.exp(-(networkOutputs[offset + index] - networkOutputs[offset + isNotLabel[j]]));
+                    }
+                } else {
+                    for (int j = 0; j < isLabelCount; j++) {
+                        error -= Math.exp(-(networkOutputs[offset + isLabel[j]] - networkOutputs[offset + index]));
+                    }
+                }
+                error *= 1.0 / (isLabelCount * isNotLabelCount);
+                neuronsErrors[index] = error;
+            }
+        }
+
+        return neuronsErrors;
+    }
+
+    /**
+     * Runs task on [0, count). If several threads are available and the work is large
+     * enough, the range is split into contiguous blocks that are processed in parallel.
+     */
+    private void parallelFor(int count, long work, RangeTask task) {
+        int numBlocks = (executor == null || work < MIN_PARALLEL_WORK) ? 1
+                : Math.min(executor.getMaximumPoolSize(), count / MIN_BLOCK_SIZE);
+        try {
+            Parallel.parallelFor(executor, count, numBlocks, task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
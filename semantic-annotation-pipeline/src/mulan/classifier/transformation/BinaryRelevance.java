@@ -99,6 +99,40 @@ public class BinaryRelevance extends TransformationBasedMultiLabelLearner {
         return mlo;
     }
 
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) {
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+
+        for (int i = 0; i < outputs.length; i++) {
+            Instance instance = instances.instance(i);
+            // the label attributes are filtered out once per instance, only the
+            // binary label is set again for each model
+            Instance transformedInstance = brt.transformInstance(instance);
+            boolean[] bipartition = new boolean[numLabels];
+            double[] confidences = new double[numLabels];
+            boolean failed = false;
+            for (int counter = 0; counter < numLabels && !failed; counter++) {
+                brt.setLabelValue(transformedInstance, instance, counter);
+                double distribution[];
+                try {
+                    distribution = ensemble[counter].distributionForInstance(transformedInstance);
+                } catch (Exception e) {
+                    System.out.println(e);
+                    failed = true;
+                    continue;
+                }
+                int maxIndex = (distribution[0] > distribution[1]) ? 0 : 1;
+                bipartition[counter] = (maxIndex == 1) ? true : false;
+                confidences[counter] = distribution[1];
+            }
+            if (!failed) {
+                outputs[i] = new MultiLabelOutput(bipartition, confidences);
+            }
+        }
+
+        return outputs;
+    }
+
     /**
      * Returns the model which corresponds to the label with labelName
      *
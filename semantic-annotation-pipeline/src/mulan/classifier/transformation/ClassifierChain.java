@@ -149,4 +149,43 @@ public class ClassifierChain extends TransformationBasedMultiLabelLearner {
         MultiLabelOutput mlo = new MultiLabelOutput(bipartition, confidences);
         return mlo;
     }
+
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception {
+        // the class attribute of each model is looked up once for the whole batch,
+        // getOutputFormat() copies the header of the filter on every call
+        int[] positiveIndex = new int[numLabels];
+        for (int counter = 0; counter < numLabels; counter++) {
+            Attribute classAttribute = ensemble[counter].getFilter().getOutputFormat().classAttribute();
+            positiveIndex[counter] = classAttribute.indexOfValue("1");
+        }
+
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int i = 0; i < outputs.length; i++) {
+            Instance instance = instances.instance(i);
+            boolean[] bipartition = new boolean[numLabels];
+            double[] confidences = new double[numLabels];
+            Instance tempInstance = DataUtils.createInstance(instance, instance.weight(), instance.toDoubleArray());
+            boolean failed = false;
+            for (int counter = 0; counter < numLabels && !failed; counter++) {
+                double distribution[];
+                try {
+                    distribution = ensemble[counter].distributionForInstance(tempInstance);
+                } catch (Exception e) {
+                    System.out.println(e);
+                    failed = true;
+                    continue;
+                }
+                int maxIndex = (distribution[0] > distribution[1]) ? 0 : 1;
+                bipartition[chain[counter]] = (maxIndex == positiveIndex[counter]) ? true : false;
+                confidences[chain[counter]] = distribution[positiveIndex[counter]];
+                tempInstance.setValue(labelIndices[chain[counter]], maxIndex);
+            }
+            if (!failed) {
+                outputs[i] = new MultiLabelOutput(bipartition, confidences);
+            }
+        }
+
+        return outputs;
+    }
 }
\ No newline at end of file
@@ -15,11 +15,17 @@
  */
 package mulan.classifier.transformation;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import mulan.classifier.EnsembleTasks;
 import mulan.classifier.InvalidDataException;
 import mulan.classifier.MultiLabelOutput;
 import mulan.data.MultiLabelInstances;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.trees.J48;
 import weka.core.Instance;
@@ -67,6 +73,25 @@ public class EnsembleOfClassifierChains extends TransformationBasedMultiLabelLea
      * when useSamplingWithReplacement is true
      */
     protected int BagSizePercent = 100;
+    /**
+     * Executor training the models and making their batch predictions, null
+     * for sequential runs
+     */
+    private transient ExecutorService executor;
+
+    /**
+     * Sets the executor that trains the models of the ensemble concurrently
+     * and makes their predictions on batches of instances. The chain order and
+     * the sample of each model are drawn in the calling thread, so the models
+     * do not depend on the executor. The executor is not shut down by the
+     * learner and is not kept by copies of the learner.
+     *
+     * @param anExecutor the executor for the models, or null to run them
+     * sequentially
+     */
+    public void setExecutor(ExecutorService anExecutor) {
+        executor = anExecutor;
+    }
 
     /**
      * Returns the size of each bag sample, as a percentage of the training size
@@ -140,6 +165,9 @@ public class EnsembleOfClassifierChains extends TransformationBasedMultiLabelLea
 
         Instances dataSet = new Instances(trainingSet.getDataSet());
 
+        // the samples and chains are drawn here, in the order of the models,
+        // only the training of the models is left to the tasks
+        List<Callable<ClassifierChain>> tasks = new ArrayList<Callable<ClassifierChain>>(numOfModels);
         for (int i = 0; i < numOfModels; i++) {
             debug("ECC Building Model:" + (i + 1) + "/" + numOfModels);
             Instances sampledDataSet;
@@ -158,7 +186,7 @@ public class EnsembleOfClassifierChains extends TransformationBasedMultiLabelLea
                 rmvp.setInputFormat(dataSet);
                 sampledDataSet = Filter.useFilter(dataSet, rmvp);
             }
-            MultiLabelInstances train = new MultiLabelInstances(sampledDataSet, trainingSet.getLabelsMetaData());
+            final MultiLabelInstances train = new MultiLabelInstances(sampledDataSet, trainingSet.getLabelsMetaData());
 
             int[] chain = new int[numLabels];
             for (int j = 0; j < numLabels; j++) {
@@ -177,10 +205,60 @@ public class EnsembleOfClassifierChains extends TransformationBasedMultiLabelLea
             // BUT IN THE PAPER IT DID NOT MENTION SOMETHING LIKE THAT
             // IT JUST SIMPLY SAY A RANDOM CHAIN ORDERING OF L
 
-            ensemble[i] = new ClassifierChain(baseClassifier, chain);
-            ensemble[i].build(train);
+            // the base classifier is copied here, it is not thread safe
+            final ClassifierChain model = new ClassifierChain(AbstractClassifier.makeCopy(baseClassifier), chain);
+            tasks.add(new Callable<ClassifierChain>() {
+
+                public ClassifierChain call() throws Exception {
+                    model.build(train);
+                    return model;
+                }
+            });
+        }
+        ensemble = EnsembleTasks.invokeAll(executor, tasks).toArray(new ClassifierChain[numOfModels]);
+    }
+
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception {
+        // each model predicts the whole batch at once
+        List<Callable<MultiLabelOutput[]>> tasks = new ArrayList<Callable<MultiLabelOutput[]>>(numOfModels);
+        for (int i = 0; i < numOfModels; i++) {
+            final ClassifierChain model = ensemble[i];
+            final Instances batch = instances;
+            tasks.add(new Callable<MultiLabelOutput[]>() {
+
+                public MultiLabelOutput[] call() throws Exception {
+                    return model.makePredictions(batch);
+                }
+            });
         }
+        List<MultiLabelOutput[]> predictions = EnsembleTasks.invokeAll(executor, tasks);
 
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int n = 0; n < outputs.length; n++) {
+            int[] sumVotes = new int[numLabels];
+            double[] sumConf = new double[numLabels];
+            // gather votes in the order of the models
+            for (int i = 0; i < numOfModels; i++) {
+                MultiLabelOutput ensembleMLO = predictions.get(i)[n];
+                boolean[] bip = ensembleMLO.getBipartition();
+                double[] conf = ensembleMLO.getConfidences();
+                for (int j = 0; j < numLabels; j++) {
+                    sumVotes[j] += bip[j] == true ? 1 : 0;
+                    sumConf[j] += conf[j];
+                }
+            }
+            double[] confidence = new double[numLabels];
+            for (int j = 0; j < numLabels; j++) {
+                if (useConfidences) {
+                    confidence[j] = sumConf[j] / numOfModels;
+                } else {
+                    confidence[j] = sumVotes[j] / (double) numOfModels;
+                }
+            }
+            outputs[n] = new MultiLabelOutput(confidence, 0.5);
+        }
+        return outputs;
     }
 
     @Override
@@ -15,9 +15,14 @@
  */
 package mulan.classifier.transformation;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import mulan.classifier.EnsembleTasks;
 import mulan.classifier.InvalidDataException;
 import mulan.classifier.MultiLabelOutput;
 import mulan.data.MultiLabelInstances;
@@ -61,6 +66,11 @@ public class EnsembleOfPrunedSets extends TransformationBasedMultiLabelLearner {
      * Random number generator
      */
     protected Random rand;
+    /**
+     * Executor training the models and making their batch predictions, null
+     * for sequential runs
+     */
+    private transient ExecutorService executor;
 
     /**
      * Creates a new instance with default values
@@ -94,11 +104,28 @@ public class EnsembleOfPrunedSets extends TransformationBasedMultiLabelLearner {
         rand = new Random(1);
     }
 
+    /**
+     * Sets the executor that trains the models of the ensemble concurrently
+     * and makes their predictions on batches of instances. The sample of each
+     * model is drawn in the calling thread, so the models do not depend on the
+     * executor. The executor is not shut down by the learner and is not kept by
+     * copies of the learner.
+     *
+     * @param anExecutor the executor for the models, or null to run them
+     * sequentially
+     */
+    public void setExecutor(ExecutorService anExecutor) {
+        executor = anExecutor;
+    }
+
     @Override
     protected void buildInternal(MultiLabelInstances trainingSet)
             throws Exception {
         Instances dataSet = new Instances(trainingSet.getDataSet());
 
+        // the samples are drawn here, in the order of the models, only the
+        // training of the models is left to the tasks
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numOfModels);
         for (int i = 0; i < numOfModels; i++) {
             dataSet.randomize(rand);
             RemovePercentage rmvp = new RemovePercentage();
@@ -106,9 +133,52 @@ public class EnsembleOfPrunedSets extends TransformationBasedMultiLabelLearner {
             rmvp.setPercentage(percentage);
             rmvp.setInvertSelection(true);
             Instances trainDataSet = Filter.useFilter(dataSet, rmvp);
-            MultiLabelInstances train = new MultiLabelInstances(trainDataSet, trainingSet.getLabelsMetaData());
-            ensemble[i].build(train);
+            final MultiLabelInstances train = new MultiLabelInstances(trainDataSet, trainingSet.getLabelsMetaData());
+            final PrunedSets model = ensemble[i];
+            tasks.add(new Callable<Object>() {
+
+                public Object call() throws Exception {
+                    model.build(train);
+                    return null;
+                }
+            });
+        }
+        EnsembleTasks.invokeAll(executor, tasks);
+    }
+
+    @Override
+    protected MultiLabelOutput[] makePredictionsInternal(Instances instances) throws Exception {
+        // each model predicts the whole batch at once
+        List<Callable<MultiLabelOutput[]>> tasks = new ArrayList<Callable<MultiLabelOutput[]>>(numOfModels);
+        for (int i = 0; i < numOfModels; i++) {
+            final PrunedSets model = ensemble[i];
+            final Instances batch = instances;
+            tasks.add(new Callable<MultiLabelOutput[]>() {
+
+                public MultiLabelOutput[] call() throws Exception {
+                    return model.makePredictions(batch);
+                }
+            });
+        }
+        List<MultiLabelOutput[]> predictions = EnsembleTasks.invokeAll(executor, tasks);
+
+        MultiLabelOutput[] outputs = new MultiLabelOutput[instances.numInstances()];
+        for (int n = 0; n < outputs.length; n++) {
+            int[] sumVotes = new int[numLabels];
+            // gather votes in the order of the models
+            for (int i = 0; i < numOfModels; i++) {
+                boolean[] bip = predictions.get(i)[n].getBipartition();
+                for (int j = 0; j < sumVotes.length; j++) {
+                    sumVotes[j] += bip[j] == true ? 1 : 0;
+                }
+            }
+            double[] confidence = new double[numLabels];
+            for (int j = 0; j < sumVotes.length; j++) {
+                confidence[j] = (double) sumVotes[j] / (double) numOfModels;
+            }
+            outputs[n] = new MultiLabelOutput(confidence, threshold);
         }
+        return outputs;
     }
 
     @Override
@@ -0,0 +1,113 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class which provides utility methods for splitting a loop across threads.
+ */
+public class Parallel {
+
+    /**
+     * A range of independent iterations of a loop
+     */
+    public interface RangeTask {
+
+        /**
+         * Runs the iterations in [from, to).
+         *
+         * @param from the first iteration
+         * @param to the iteration after the last one
+         * @throws Exception if an iteration fails
+         */
+        void run(int from, int to) throws Exception;
+    }
+
+    /**
+     * Creates a pool of daemon threads. The threads stop when idle, so the
+     * pool does not have to be shut down.
+     *
+     * @param numThreads the number of threads
+     * @param name the name of the threads
+     * @return the pool
+     */
+    public static ThreadPoolExecutor newDaemonPool(int numThreads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs task on [0, count). With more than one block, the range is split
+     * into contiguous blocks that are processed in parallel by the executor,
+     * otherwise it is processed in the calling thread.
+     *
+     * @param executor the executor, may be null if numBlocks is at most 1
+     * @param count the number of iterations
+     * @param numBlocks the number of blocks
+     * @param task the iterations
+     * @throws Exception if an iteration fails
+     */
+    public static void parallelFor(ThreadPoolExecutor executor, int count, int numBlocks,
+            final RangeTask task) throws Exception {
+        if (numBlocks <= 1) {
+            task.run(0, count);
+            return;
+        }
+        List<Future<Object>> blocks = new ArrayList<Future<Object>>(numBlocks);
+        for (int block = 0; block < numBlocks; block++) {
+            final int from = (int) ((long) count * block / numBlocks);
+            final int to = (int) ((long) count * (block + 1) / numBlocks);
+            blocks.add(executor.submit(new Callable<Object>() {
+
+                public Object call() throws Exception {
+                    task.run(from, to);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Object> block : blocks) {
+                block.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package mulan.data;
 
 import java.util.Arrays;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -83,189 +84,225 @@ public class IterativeStratification implements Stratification, TechnicalInforma
 
     public MultiLabelInstances[] stratify(MultiLabelInstances data, int folds) {
         MultiLabelInstances[] segments = new MultiLabelInstances[folds];
-        double[] splitRatio = new double[folds];
-        Arrays.fill(splitRatio, 1.0/folds);
-        Instances[] singleSegments = foldsCreation(data.getDataSet(), new Random(seed), splitRatio, data.getNumLabels(), data.getLabelIndices(), data.getNumInstances());
-        for (int i=0; i<folds; i++) {
+        int[] order = new int[data.getNumInstances()];
+        int[] foldOfInstance = foldsCreation(data, folds, order);
+        Instances dataSet = data.getDataSet();
+        for (int i = 0; i < folds; i++) {
+            Instances fold = new Instances(dataSet, 0);
+            // the instances are added in the order in which they were assigned
+            for (int index : order) {
+                if (foldOfInstance[index] == i) {
+                    fold.add(dataSet.instance(index));
+                }
+            }
             try {
-                segments[i] = new MultiLabelInstances(singleSegments[i], data.getLabelsMetaData());
+                segments[i] = new MultiLabelInstances(fold, data.getLabelsMetaData());
             } catch (InvalidDataFormatException ex) {
                 Logger.getLogger(IterativeStratification.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        return segments;       
+        return segments;
     }
 
-    private Instances[] foldsCreation(Instances workingSet, Random random,
-            double[] splitRatio, int numLabels, int[] labelIndices,
-            int totalNumberOfInstances) {
-        int numFolds = splitRatio.length;
-        // The instances on the final folds
-        Instances[] instancesOnSplits = new Instances[numFolds];
-        // Initialize the folds
-        for (int fold = 0; fold < numFolds; fold++) {
-            instancesOnSplits[fold] = new Instances(workingSet, 0);
-        }
+    /**
+     * Assigns each instance of a data set to a fold, without copying the
+     * instances. The assignment is the same as that of
+     * {@link #stratify(MultiLabelInstances, int)} and the data set is not
+     * modified.
+     *
+     * @param data a multi-label dataset
+     * @param folds the number of folds
+     * @return the fold of each instance, in the order of the data set
+     */
+    public int[] assignFolds(MultiLabelInstances data, int folds) {
+        return foldsCreation(data, folds, new int[data.getNumInstances()]);
+    }
+
+    /*
+     * Distributes the instances to the folds. Returns the fold of each
+     * instance and fills order with the indices of the instances in the order
+     * in which they were assigned.
+     */
+    private int[] foldsCreation(MultiLabelInstances data, int numFolds, int[] order) {
+        Random random = new Random(seed);
+        int numLabels = data.getNumLabels();
+        int totalNumberOfInstances = data.getNumInstances();
+        double[] splitRatio = new double[numFolds];
+        Arrays.fill(splitRatio, 1.0 / numFolds);
 
+        // The labels of each instance, one bit per label
+        long[][] labelBits = packLabels(data.getDataSet(), numLabels, data.getLabelIndices());
 
         // *************************************
         // First Part of the Algorithm LINES 1-9
         // *************************************
 
         // LINE 7 in the Algorithm
-        // The vector with the frequencies in the data set (frequency: the number of 
-        // examples per label)
-        int[] frequenciesOnDataset = new int[numLabels];
-        // Calculating the number of examples per label in the initial data set
-        frequenciesOnDataset = calculatingTheFrequencies(workingSet, numLabels,
-                labelIndices);
+        // The number of examples per label that are not yet in a fold
+        int[] frequencies = new int[numLabels];
+        for (long[] bits : labelBits) {
+            for (int lab = nextLabel(bits, 0); lab >= 0; lab = nextLabel(bits, lab + 1)) {
+                frequencies[lab]++;
+            }
+        }
+
+        // The examples of each label, in the order of the data set
+        int[][] instancesOfLabel = new int[numLabels][];
+        for (int lab = 0; lab < numLabels; lab++) {
+            instancesOfLabel[lab] = new int[frequencies[lab]];
+        }
+        int[] counts = new int[numLabels];
+        for (int instanceIndex = 0; instanceIndex < labelBits.length; instanceIndex++) {
+            long[] bits = labelBits[instanceIndex];
+            for (int lab = nextLabel(bits, 0); lab >= 0; lab = nextLabel(bits, lab + 1)) {
+                instancesOfLabel[lab][counts[lab]++] = instanceIndex;
+            }
+        }
 
         // LINE 2-3 and 8-9 in the Algorithm
-        // I define the desiredFolds that I want by calculating them using the
-        // array of the splitRatio and in the last column the desired number of
-        // instances in each fold
-        double[][] desiredSplit = new double[numFolds][numLabels + 1];
-        // In the beginning is the desiredSplit and I reduce the values of the
-        // frequencies (first numLabels columns) and of the instances (last column)
-        // every time I put an instance in the splits.
-        desiredSplit = calculatingTheDesiredSplits(frequenciesOnDataset, splitRatio,
+        // The desired number of examples per label in each fold and in the last
+        // column the desired number of examples. The values are reduced every
+        // time an instance is put in a fold.
+        double[][] desiredSplit = calculatingTheDesiredSplits(frequencies, splitRatio,
                 numLabels, totalNumberOfInstances);
 
-
         // *************************************
         // Second Part of the Algorithm LINES 10-34
         // *************************************
 
-        // LINE 11-14 in the Algorithm
-        // A vector to keep the rarest label. I keep both the index [0] and the
-        // value [1], when I say value I mean the number of examples for the rarest label.		
-        int[] smallestFreqLabel = new int[2];
-        // Function which returns these characteristics of the rarest label
-        smallestFreqLabel = takingTheSmallestIndexAndNumberInVector(
-                frequenciesOnDataset, totalNumberOfInstances);
-
-        // This variable gives me the fold in which I will insert an instance
-        int splitToBeInserted;
-        // The instances that are filtered for a particular label (there are 1
-        // for a particular label)
-        Instances filteredInstancesForLabel;
-        Instance filteredInstance;
-
-        boolean[] trueLabels = new boolean[numLabels];
-
+        int[] foldOfInstance = new int[totalNumberOfInstances];
+        Arrays.fill(foldOfInstance, -1);
+        int assigned = 0;
 
+        // LINE 11-14 in the Algorithm
+        // The labels ordered by their number of remaining examples and then by
+        // index. Entries become stale when the count of a label decreases, a new
+        // entry is then added.
+        PriorityQueue<Long> rarest = new PriorityQueue<Long>(Math.max(1, numLabels));
         for (int lab = 0; lab < numLabels; lab++) {
+            if (frequencies[lab] > 0) {
+                rarest.add(queueEntry(frequencies[lab], lab));
+            }
+        }
 
-            // By calling the function I take the instances that are annotated
-            // with the label with index smallestFreqLabel[0]
-            // and I also take the workingSet with the remaining instances.
-            // I use a temporal variable temp for making the code more efficient
-            Instances[] temp = new Instances[2];
-            temp = takeTheInstancesOfTheLabel(workingSet, numLabels,
-                    labelIndices, smallestFreqLabel);
+        while (!rarest.isEmpty()) {
+            long entry = rarest.poll();
+            int lab = (int) entry;
+            if (frequencies[lab] != (int) (entry >>> 32)) {
+                continue;
+            }
 
-            // The instances that I will split at this point
             // LINE 13 in the Algorithm
-            filteredInstancesForLabel = temp[0];
-            // The remaining instances
-            workingSet = temp[1];
-
-            // This variable is used to tell me the suitable folds in which an instance can be inserted.
-            // The first element contains the total number of the proper Folds and the rest are the indexes of these folds
-            int[] possibleSplits;
-
-            // I share the filtered instances into the splits. 
+            // I share the remaining instances of the label into the splits.
             // The first priority is the splits with the highest desired frequency.
             // The second priority is the split with the highest desired number of instances.
             // If two splits are equivalent for the above two rules I decide randomly
             // in which fold the instance will be inserted
-            for (int instancesOfTheLab = 0; instancesOfTheLab < filteredInstancesForLabel.numInstances(); instancesOfTheLab++) {
-                filteredInstance = filteredInstancesForLabel.instance(instancesOfTheLab);
-                trueLabels = getTrueLabels(filteredInstance, numLabels,
-                        labelIndices);
+            for (int instanceIndex : instancesOfLabel[lab]) {
+                if (foldOfInstance[instanceIndex] >= 0) {
+                    continue;
+                }
 
                 // LINES 20-27 in the Algorithm
-                // I call that function to return the possible folds with the above priorities.
-                // possibleSplits[0] contains the total number of possible folds and the rest elements
-                // are the indexes of the possible folds. 
-                possibleSplits = findThePossibleSpit(desiredSplit,
-                        smallestFreqLabel[0], numFolds);
-                // I decide in which fold to enter the instance. If there are more that one possible folds
-                // I break the ties randomly
+                int[] possibleSplits = findThePossibleSpit(desiredSplit, lab, numFolds);
+                int splitToBeInserted;
                 if (possibleSplits[0] != 1) {
                     splitToBeInserted = possibleSplits[random.nextInt(possibleSplits[0]) + 1];
                 } else {
                     splitToBeInserted = possibleSplits[1];
                 }
 
-
                 // LINE 28 in the Algorithm
-                // Enter the instance to the proper fold
-                instancesOnSplits[splitToBeInserted].add(filteredInstance);
+                foldOfInstance[instanceIndex] = splitToBeInserted;
+                order[assigned++] = instanceIndex;
 
                 // LINE 30-32 in the Algorithm
-                // Update the statistics of this fold
-                desiredSplit[splitToBeInserted] = updateDesiredSplitStatistics(
-                        desiredSplit[splitToBeInserted], trueLabels);
+                // Update the statistics of this fold and the remaining counts
+                double[] split = desiredSplit[splitToBeInserted];
+                long[] bits = labelBits[instanceIndex];
+                for (int other = nextLabel(bits, 0); other >= 0; other = nextLabel(bits, other + 1)) {
+                    split[other]--;
+                    frequencies[other]--;
+                    if (other != lab && frequencies[other] > 0) {
+                        rarest.add(queueEntry(frequencies[other], other));
+                    }
+                }
+                split[numLabels]--;
             }
-
-            // I updating the values for the next iteration
-            frequenciesOnDataset = calculatingTheFrequencies(workingSet, numLabels,
-                    labelIndices);
-            smallestFreqLabel = takingTheSmallestIndexAndNumberInVector(
-                    frequenciesOnDataset, totalNumberOfInstances);
-
         }
 
         // Special case when I have a number of examples that are not annotated with any label (i.e. mediamill data set)
         // These examples are distributed so as to balance the desired number of examples at each fold
-        Instance noAnnotatedInstances;
-        int[] possibleSplitsNoAnnotated = new int[numFolds];
-        while (workingSet.numInstances() != 0) {
-
-            possibleSplitsNoAnnotated = returnPossibleSplitsForNotAnnotated(desiredSplit);
-            noAnnotatedInstances = workingSet.instance(0);
+        for (int instanceIndex = 0; instanceIndex < totalNumberOfInstances; instanceIndex++) {
+            if (foldOfInstance[instanceIndex] >= 0) {
+                continue;
+            }
+            int[] possibleSplitsNoAnnotated = returnPossibleSplitsForNotAnnotated(desiredSplit);
+            int splitToBeInserted;
             if (possibleSplitsNoAnnotated[0] != 1) {
                 splitToBeInserted = possibleSplitsNoAnnotated[random.nextInt(possibleSplitsNoAnnotated[0]) + 1];
             } else {
                 splitToBeInserted = possibleSplitsNoAnnotated[1];
             }
-            // Entering the instance to the proper fold
-            instancesOnSplits[splitToBeInserted].add(noAnnotatedInstances);
-            // Updating the instances
-            desiredSplit[splitToBeInserted][desiredSplit[splitToBeInserted].length - 1] = desiredSplit[splitToBeInserted][desiredSplit[splitToBeInserted].length - 1] - 1;
-
-            // Deleting the instance from the working set
-            workingSet.delete(0);
-
+            foldOfInstance[instanceIndex] = splitToBeInserted;
+            order[assigned++] = instanceIndex;
+            desiredSplit[splitToBeInserted][numLabels]--;
         }
 
-        return instancesOnSplits;
+        return foldOfInstance;
     }
 
     /*
-     * Function that returns the number of examples per label in each fold
+     * Entry of the priority queue of labels: the count in the high bits, so
+     * that rarer labels come first, and the label in the low bits, so that
+     * ties are broken by the label index
      */
-    private int[] calculatingTheFrequencies(Instances dataSet, int numLabels,
-            int[] labelIndices) {
-        int[] vectorSumOfLabels = new int[numLabels];
-        int numInstances = dataSet.numInstances();
-        boolean[] trueLabels = new boolean[numLabels];
-        for (int instanceIndex = 0; instanceIndex < numInstances; instanceIndex++) {
-            Instance instance = dataSet.instance(instanceIndex);
+    private static long queueEntry(int count, int lab) {
+        return ((long) count << 32) | lab;
+    }
 
-            trueLabels = getTrueLabels(instance, numLabels, labelIndices);
+    /*
+     * Returns the labels of each instance as a bit set
+     */
+    private long[][] packLabels(Instances dataSet, int numLabels, int[] labelIndices) {
+        // decode once which values of each label stand for a relevant label
+        boolean[][] isRelevant = new boolean[numLabels][];
+        for (int lab = 0; lab < numLabels; lab++) {
+            isRelevant[lab] = new boolean[dataSet.attribute(labelIndices[lab]).numValues()];
+            for (int v = 0; v < isRelevant[lab].length; v++) {
+                isRelevant[lab][v] = dataSet.attribute(labelIndices[lab]).value(v).equals("1");
+            }
+        }
+        int numWords = (numLabels + 63) >>> 6;
+        long[][] labelBits = new long[dataSet.numInstances()][numWords];
+        for (int instanceIndex = 0; instanceIndex < labelBits.length; instanceIndex++) {
+            Instance instance = dataSet.instance(instanceIndex);
             for (int lab = 0; lab < numLabels; lab++) {
-                if (trueLabels[lab] == true) {
-                    vectorSumOfLabels[lab] += 1;
-                } else {
-                    vectorSumOfLabels[lab] += 0;
+                if (isRelevant[lab][(int) instance.value(labelIndices[lab])]) {
+                    labelBits[instanceIndex][lab >>> 6] |= 1L << lab;
                 }
-
             }
         }
+        return labelBits;
+    }
 
-        return vectorSumOfLabels;
+    /*
+     * Returns the first label from index fromLabel on that is set in bits, or
+     * -1 if there is none
+     */
+    private static int nextLabel(long[] bits, int fromLabel) {
+        int word = fromLabel >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long remaining = bits[word] & (-1L << fromLabel);
+        while (remaining == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(remaining);
     }
 
     /*
@@ -290,72 +327,6 @@ public class IterativeStratification implements Stratification, TechnicalInforma
         return desiredSplit;
     }
 
-    /*
-     * Function that returns the rarest label and the number of examples that
-     * are annotated with that label
-     */
-    private int[] takingTheSmallestIndexAndNumberInVector(
-            int[] vectorSumOfLabels, int totalNumberOfInstances) {
-
-        int smallestIndex = 0;
-        int smallestValue = totalNumberOfInstances;
-        int[] returnedTable = new int[2];
-
-        for (int index = 0; index < vectorSumOfLabels.length; index++) {
-            if (vectorSumOfLabels[index] < smallestValue
-                    && vectorSumOfLabels[index] != 0) {
-                smallestIndex = index;
-                smallestValue = vectorSumOfLabels[index];
-            }
-        }
-        returnedTable[0] = smallestIndex;
-        returnedTable[1] = smallestValue;
-        return returnedTable;
-    }
-
-    /*
-     * This function returns two sets of instances. The instances that are
-     * annotated with the label desiredLabel[0] and also returns the rest on the
-     * instances
-     */
-    private Instances[] takeTheInstancesOfTheLabel(Instances workingSet,
-            int numLabels, int[] labelIndices, int[] desiredLabel) {
-
-        // In the returnedInstance in the [0] index is the filtered instances for the desired label 
-        // while on the [1] index is the remaining workingSet returned
-        Instances[] returnedInstances = new Instances[2];
-
-        Instances filteredInstancesOfLabel = new Instances(workingSet, 0);
-        int numInstances = workingSet.numInstances();
-        boolean[] trueLabels = new boolean[numLabels];
-        int[] removedIndexes = new int[desiredLabel[1]];
-
-        int count = 0;
-        // Firstly I filter the instances that are annotated with the label
-        // desiredLabel[0] and I keep the indexes of the filtered instances
-        for (int instanceIndex = 0; instanceIndex < numInstances; instanceIndex++) {
-            Instance instance = workingSet.instance(instanceIndex);
-            trueLabels = getTrueLabels(instance, numLabels, labelIndices);
-            if (trueLabels[desiredLabel[0]] == true) {
-                filteredInstancesOfLabel.add(instance);
-                removedIndexes[count] = instanceIndex;
-                count++;
-            }
-        }
-
-        // Using the indexes of the filtered instances i remove them from the
-        // working set. CAUTION: I count in inverse order to make the removal in
-        // the proper way
-        for (int k = count - 1; k >= 0; k--) {
-            workingSet.delete(removedIndexes[k]);
-        }
-
-        returnedInstances[0] = filteredInstancesOfLabel;
-        returnedInstances[1] = workingSet;
-        return returnedInstances;
-
-    }
-
     /*
      * This function takes fold statistics and the index of the desired label
      * (desired in the sense the label that we will apply the stratification
@@ -408,26 +379,6 @@ public class IterativeStratification implements Stratification, TechnicalInforma
         return possibleSplits;
     }
 
-    /*
-     * Function that updates the desired splits every time that an instance is
-     * inserted into a fold
-     */
-    private double[] updateDesiredSplitStatistics(double[] desiredSplit,
-            boolean[] trueLabels) {
-        double[] returnedArray = new double[desiredSplit.length];
-
-        for (int lab = 0; lab < desiredSplit.length - 1; lab++) {
-            if (trueLabels[lab] == true) {
-                returnedArray[lab] = desiredSplit[lab] - 1;
-            } else {
-                returnedArray[lab] = desiredSplit[lab];
-            }
-        }
-        // Also add in the last column another instance
-        returnedArray[desiredSplit.length - 1] = desiredSplit[desiredSplit.length - 1] - 1;
-        return returnedArray;
-    }
-
     /*
      * Function that returns the possible folds for the examples that are not
      * annotated with any label. In this special case the only criterion is the
@@ -462,18 +413,5 @@ public class IterativeStratification implements Stratification, TechnicalInforma
         possibleSplits[0] = count;
         return possibleSplits;
     }
-    
-    
-    private boolean[] getTrueLabels(Instance instance, int numLabels, int[] labelIndices) {
-
-        boolean[] trueLabels = new boolean[numLabels];
-        for (int counter = 0; counter < numLabels; counter++) {
-            int classIdx = labelIndices[counter];
-            String classValue = instance.attribute(classIdx).value((int) instance.value(classIdx));
-            trueLabels[counter] = classValue.equals("1");
-        }
 
-        return trueLabels;
-    }
-    
 }
@@ -15,14 +15,16 @@
  */
 package mulan.evaluation;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -81,6 +83,11 @@ public class Evaluator {
     /** seed for reproduction of cross-validation results **/
     private int seed = 1;
 
+    /** number of test instances passed to the learner at once **/
+    private int batchSize = 1000;
+    /** executor running the folds of cross-validation, null for sequential runs **/
+    private ExecutorService executor = null;
+
     /**
      * Sets the seed for reproduction of cross-validation results
      *
@@ -90,6 +97,31 @@ public class Evaluator {
         seed = aSeed;
     }
 
+    /**
+     * Sets the number of test instances that are predicted together through
+     * {@link MultiLabelLearner#makePredictions(Instances)}
+     *
+     * @param aBatchSize number of instances per batch (at least 1)
+     */
+    public void setBatchSize(int aBatchSize) {
+        if (aBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least one.");
+        }
+        batchSize = aBatchSize;
+    }
+
+    /**
+     * Sets the executor that runs the folds of cross-validation concurrently. Every fold trains
+     * its own copy of the learner and updates its own copies of the measures, so the results
+     * are the same as those of a sequential run with the same seed. The executor is not shut
+     * down by the evaluator.
+     *
+     * @param anExecutor the executor for the folds, or null to run them sequentially
+     */
+    public void setExecutor(ExecutorService anExecutor) {
+        executor = anExecutor;
+    }
+
     /**
      * Evaluates a {@link MultiLabelLearner} on given test data set using specified evaluation
      * measures
@@ -114,36 +146,47 @@ public class Evaluator {
 
         int numLabels = mlTestData.getNumLabels();
         int[] labelIndices = mlTestData.getLabelIndices();
-        GroundTruth truth;
         Set<Measure> failed = new HashSet<Measure>();
         Instances testData = mlTestData.getDataSet();
         int numInstances = testData.numInstances();
-        for (int instanceIndex = 0; instanceIndex < numInstances; instanceIndex++) {
-            Instance instance = testData.instance(instanceIndex);
-            boolean hasMissingLabels = mlTestData.hasMissingLabels(instance);
-            Instance labelsMissing = (Instance) instance.copy();
-            labelsMissing.setDataset(instance.dataset());
-            for (int i = 0; i < mlTestData.getNumLabels(); i++) {
-                labelsMissing.setMissing(labelIndices[i]);
+        for (int start = 0; start < numInstances; start += batchSize) {
+            int size = Math.min(batchSize, numInstances - start);
+            // the batch holds copies of the test instances, so their labels can be hidden in place
+            Instances labelsMissing = new Instances(testData, start, size);
+            for (int j = 0; j < size; j++) {
+                Instance instance = labelsMissing.instance(j);
+                for (int i = 0; i < numLabels; i++) {
+                    instance.setMissing(labelIndices[i]);
+                }
             }
-            MultiLabelOutput output = learner.makePrediction(labelsMissing);
-            if (output.hasPvalues()) {// check if we have regression outputs
-                truth = new GroundTruth(getTrueScores(instance, numLabels, labelIndices));
-            } else {
-                truth = new GroundTruth(getTrueLabels(instance, numLabels, labelIndices));
+            MultiLabelOutput[] outputs = learner.makePredictions(labelsMissing);
+
+            GroundTruth[] truths = new GroundTruth[size];
+            boolean[] hasMissingLabels = new boolean[size];
+            for (int j = 0; j < size; j++) {
+                Instance instance = testData.instance(start + j);
+                hasMissingLabels[j] = mlTestData.hasMissingLabels(instance);
+                if (outputs[j].hasPvalues()) {// check if we have regression outputs
+                    truths[j] = new GroundTruth(getTrueScores(instance, numLabels, labelIndices));
+                } else {
+                    truths[j] = new GroundTruth(getTrueLabels(instance, numLabels, labelIndices));
+                }
             }
-            Iterator<Measure> it = measures.iterator();
-            while (it.hasNext()) {
-                Measure m = it.next();
-                if (!failed.contains(m)) {
-                    try {
-                        if (hasMissingLabels && !m.handlesMissingValues()) {
+
+            // each measure consumes the whole batch before the next one is updated
+            for (Measure m : measures) {
+                if (failed.contains(m)) {
+                    continue;
+                }
+                try {
+                    for (int j = 0; j < size; j++) {
+                        if (hasMissingLabels[j] && !m.handlesMissingValues()) {
                             continue;
                         }
-                        m.update(output, truth);
-                    } catch (Exception ex) {
-                        failed.add(m);
+                        m.update(outputs[j], truths[j]);
                     }
+                } catch (Exception ex) {
+                    failed.add(m);
                 }
             }
         }
@@ -337,25 +380,53 @@ public class Evaluator {
             MultiLabelInstances data, boolean hasMeasures, List<Measure> measures, int someFolds) {
         Evaluation[] evaluation = new Evaluation[someFolds];
 
+        // the folds only read the randomized working set, it is shared by all of them
         Instances workingSet = new Instances(data.getDataSet());
         workingSet.randomize(new Random(seed));
-        for (int i = 0; i < someFolds; i++) {
-            System.out.println("Fold " + (i + 1) + "/" + someFolds);
-            try {
-                Instances train = workingSet.trainCV(someFolds, i);
-                Instances test = workingSet.testCV(someFolds, i);
-                MultiLabelInstances mlTrain = new MultiLabelInstances(train,
-                        data.getLabelsMetaData());
-                MultiLabelInstances mlTest = new MultiLabelInstances(test, data.getLabelsMetaData());
-                MultiLabelLearner clone = learner.makeCopy();
-                clone.build(mlTrain);
-                if (hasMeasures) {
-                    evaluation[i] = evaluate(clone, mlTest, measures);
-                } else {
-                    evaluation[i] = evaluate(clone, mlTest, mlTrain);
+        if (executor == null) {
+            for (int i = 0; i < someFolds; i++) {
+                System.out.println("Fold " + (i + 1) + "/" + someFolds);
+                try {
+                    MultiLabelLearner clone = learner.makeCopy();
+                    evaluation[i] = evaluateFold(clone, data, workingSet, hasMeasures, measures,
+                            someFolds, i);
+                } catch (Exception ex) {
+                    Logger.getLogger(Evaluator.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        } else {
+            List<Future<Evaluation>> futures = new ArrayList<Future<Evaluation>>();
+            for (int i = 0; i < someFolds; i++) {
+                Future<Evaluation> future = null;
+                try {
+                    // copies are made here, the learner and the measures are not thread safe
+                    MultiLabelLearner clone = learner.makeCopy();
+                    List<Measure> foldMeasures = null;
+                    if (hasMeasures) {
+                        foldMeasures = new ArrayList<Measure>();
+                        for (Measure m : measures) {
+                            foldMeasures.add(m.makeCopy());
+                        }
+                    }
+                    future = executor.submit(new FoldTask(clone, data, workingSet, hasMeasures,
+                            foldMeasures, someFolds, i));
+                } catch (Exception ex) {
+                    Logger.getLogger(Evaluator.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                futures.add(future);
+            }
+            for (int i = 0; i < someFolds; i++) {
+                if (futures.get(i) == null) {
+                    continue;
+                }
+                try {
+                    evaluation[i] = futures.get(i).get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    Logger.getLogger(Evaluator.class.getName()).log(Level.SEVERE, null, ex);
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(Evaluator.class.getName()).log(Level.SEVERE, null, ex.getCause());
                 }
-            } catch (Exception ex) {
-                Logger.getLogger(Evaluator.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
         MultipleEvaluation me = new MultipleEvaluation(evaluation, data);
@@ -363,6 +434,51 @@ public class Evaluator {
         return me;
     }
 
+    private Evaluation evaluateFold(MultiLabelLearner clone, MultiLabelInstances data,
+            Instances workingSet, boolean hasMeasures, List<Measure> measures, int someFolds,
+            int fold) throws Exception {
+        Instances train = workingSet.trainCV(someFolds, fold);
+        Instances test = workingSet.testCV(someFolds, fold);
+        MultiLabelInstances mlTrain = new MultiLabelInstances(train, data.getLabelsMetaData());
+        MultiLabelInstances mlTest = new MultiLabelInstances(test, data.getLabelsMetaData());
+        clone.build(mlTrain);
+        if (hasMeasures) {
+            return evaluate(clone, mlTest, measures);
+        } else {
+            return evaluate(clone, mlTest, mlTrain);
+        }
+    }
+
+    /**
+     * Trains and evaluates one fold of a parallel cross-validation
+     */
+    private class FoldTask implements Callable<Evaluation> {
+
+        private final MultiLabelLearner clone;
+        private final MultiLabelInstances data;
+        private final Instances workingSet;
+        private final boolean hasMeasures;
+        private final List<Measure> measures;
+        private final int someFolds;
+        private final int fold;
+
+        FoldTask(MultiLabelLearner clone, MultiLabelInstances data, Instances workingSet,
+                boolean hasMeasures, List<Measure> measures, int someFolds, int fold) {
+            this.clone = clone;
+            this.data = data;
+            this.workingSet = workingSet;
+            this.hasMeasures = hasMeasures;
+            this.measures = measures;
+            this.someFolds = someFolds;
+            this.fold = fold;
+        }
+
+        public Evaluation call() throws Exception {
+            System.out.println("Fold " + (fold + 1) + "/" + someFolds);
+            return evaluateFold(clone, data, workingSet, hasMeasures, measures, someFolds, fold);
+        }
+    }
+
     /**
      * Evaluates a {@link ClusWrapperClassification} on given test data set using specified
      * evaluation measures
@@ -379,13 +495,7 @@ public class Evaluator {
 
         boolean isEnsemble = learner.isEnsemble();
         boolean isRuleBased = learner.isRuleBased();
-        boolean isRegression;
-        MultiLabelOutput output = learner.makePrediction(testData.getDataSet().instance(0));
-        if (output.hasPvalues()) {
-            isRegression = true;
-        } else {
-            isRegression = false;
-        }
+        boolean isRegression = learner.isRegression();
 
         String clusWorkingDir = learner.getClusWorkingDir();
         String datasetName = learner.getDatasetName();
@@ -408,10 +518,7 @@ public class Evaluator {
 
         // then parse the output files and finally update the measures!
         // open and load the test set predictions file, which is in arff format
-        String predictionsFilePath = clusWorkingDir + datasetName + "-train.test.pred.arff";
-        BufferedReader reader = new BufferedReader(new FileReader(predictionsFilePath));
-        Instances predictionInstances = new Instances(reader);
-        reader.close();
+        Instances predictionInstances = learner.readTestPredictions();
 
         checkLearner(learner);
         checkData(testData);
@@ -432,72 +539,27 @@ public class Evaluator {
             if (testData.hasMissingLabels(instance)) {
                 continue;
             }
-            Instance labelsMissing = (Instance) instance.copy();
-            labelsMissing.setDataset(instance.dataset());
-            for (int i = 0; i < testData.getNumLabels(); i++) {
-                labelsMissing.setMissing(testData.getLabelIndices()[i]);
-            }
             GroundTruth truth;
             boolean[] trueLabels = new boolean[numLabels];
             double[] trueValues = new double[numLabels];
-            // clus way
+            // clus way: the line starts with the ground truth
             Instance predictionInstance = predictionInstances.instance(instanceIndex);
-            double[] predictionsPerSample = new double[testData.getNumLabels()];
-            int k = 0;
-            for (int j = 0; j < predictionInstance.numValues() - 1; j++) {
+            for (int j = 0; j < numLabels && j < predictionInstance.numValues() - 1; j++) {
                 String pred = predictionInstance.toString(j);
-                // collect the ground truth
-                if (j < testData.getNumLabels()) {
-                    if (isRegression) {
-                        trueValues[j] = Double.parseDouble(pred);
-                    } else {
-                        if (Double.parseDouble(pred) > 0.5) {
-                            trueLabels[j] = true;
-                        } else {
-                            trueLabels[j] = false;
-                        }
-                    }
-                }
-                // collect predicted values
                 if (isRegression) {
-                    if (isEnsemble && !isRuleBased) {
-                        if (j >= (testData.getNumLabels())) {
-                            predictionsPerSample[k] = predictionInstance.value(j);
-                            k++;
-                        }
-                    } else {
-                        if (j >= (testData.getNumLabels() * 2 + 1)) {
-                            predictionsPerSample[k] = predictionInstance.value(j);
-                            k++;
-                        }
-                    }
+                    trueValues[j] = Double.parseDouble(pred);
                 } else {
-                    if (isEnsemble && !isRuleBased) {
-                        if (j >= testData.getNumLabels() * 2) {
-                            predictionsPerSample[k] = predictionInstance.value(j);
-                            j++;
-                            k++;
-                        }
+                    if (Double.parseDouble(pred) > 0.5) {
+                        trueLabels[j] = true;
                     } else {
-                        if (j >= (testData.getNumLabels() * 5 + 1)) {
-                            predictionsPerSample[k] = predictionInstance.value(j)
-                                    / (predictionInstance.value(j) + predictionInstance
-                                            .value(j + 1));
-                            j++;
-                            k++;
-                        }
+                        trueLabels[j] = false;
                     }
                 }
-                if (k == testData.getNumLabels()) {
-                    break;
-                }
             }
-
+            MultiLabelOutput output = learner.parsePrediction(predictionInstance, isRegression);
             if (!isRegression) {
-                output = new MultiLabelOutput(predictionsPerSample, 0.5);
                 truth = new GroundTruth(trueLabels);
             } else {
-                output = new MultiLabelOutput(predictionsPerSample, true);
                 truth = new GroundTruth(trueValues);
             }
 
@@ -15,9 +15,6 @@
  */
 package mulan.evaluation.measure;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Implementation of the average precision measure. It evaluates the average
  * fraction of labels ranked above a particular relevant label, that are
@@ -43,24 +40,26 @@ public class AveragePrecision extends RankingMeasureBase {
     protected void updateRanking(int[] ranking, boolean[] trueLabels) {
         double avgP = 0;
         int numLabels = trueLabels.length;
-        List<Integer> relevant = new ArrayList<>();
+        int[] relevant = new int[numLabels];
+        int numRelevant = 0;
         for (int index = 0; index < numLabels; index++) {
             if (trueLabels[index]) {
-                relevant.add(index);
+                relevant[numRelevant++] = index;
             }
         }
 
-        if (!relevant.isEmpty()) {
-            for (int r : relevant) {
+        if (numRelevant > 0) {
+            for (int i = 0; i < numRelevant; i++) {
+                int r = relevant[i];
                 double rankedAbove = 0;
-                for (int rr : relevant) {
-                    if (ranking[rr] <= ranking[r]) {
+                for (int j = 0; j < numRelevant; j++) {
+                    if (ranking[relevant[j]] <= ranking[r]) {
                         rankedAbove++;
                     }
                 }
                 avgP += (rankedAbove / ranking[r]);
             }
-            avgP /= relevant.size();
+            avgP /= numRelevant;
             sum += avgP;
             count++;
         }
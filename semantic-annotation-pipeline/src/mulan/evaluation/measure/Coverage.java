@@ -35,18 +35,11 @@ public class Coverage extends RankingMeasureBase {
 
     @Override
     protected void updateRanking(int[] ranking, boolean[] trueLabels) {
+        // the deepest relevant label determines how far down the ranking one has to go
         int howDeep = 0;
-        int numLabels = trueLabels.length;
-        for (int rank = numLabels; rank >= 1; rank--) {
-            int indexOfRank;
-            for (indexOfRank = 0; indexOfRank < numLabels; indexOfRank++) {
-                if (ranking[indexOfRank] == rank) {
-                    break;
-                }
-            }
-            if (trueLabels[indexOfRank]) {
-                howDeep = rank - 1;
-                break;
+        for (int index = 0; index < trueLabels.length; index++) {
+            if (trueLabels[index] && ranking[index] - 1 > howDeep) {
+                howDeep = ranking[index] - 1;
             }
         }
 
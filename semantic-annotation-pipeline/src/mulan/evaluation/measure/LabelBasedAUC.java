@@ -15,23 +15,20 @@
  */
 package mulan.evaluation.measure;
 
-import weka.classifiers.evaluation.NominalPrediction;
-import weka.core.FastVector;
-
 /**
  * Implementation of the label-based macro precision measure.
  * 
  * @author Grigorios Tsoumakas
  * @version 2012.07.17
  */
-public abstract class LabelBasedAUC extends ConfidenceMeasureBase {
+public abstract class LabelBasedAUC extends ConfidenceMeasureBase implements MergeableMeasure {
 
     /** The number of labels */
     protected int numOfLabels;
-    /** The predictions for each label */
-    protected FastVector[] m_Predictions;
-    /** The predictions for all labels */
-    protected FastVector all_Predictions;
+    /** The confidences and ground truths for each label */
+    protected ScoreTruthBuffer[] m_Predictions;
+    /** The confidences and ground truths for all labels */
+    protected ScoreTruthBuffer all_Predictions;
 
     /**
      * Creates a new instance of this class
@@ -40,19 +37,19 @@ public abstract class LabelBasedAUC extends ConfidenceMeasureBase {
      */
     public LabelBasedAUC(int numOfLabels) {
         this.numOfLabels = numOfLabels;
-        m_Predictions = new FastVector[numOfLabels];
+        m_Predictions = new ScoreTruthBuffer[numOfLabels];
         for (int labelIndex = 0; labelIndex < numOfLabels; labelIndex++) {
-            m_Predictions[labelIndex] = new FastVector();
+            m_Predictions[labelIndex] = new ScoreTruthBuffer();
         }
-        all_Predictions = new FastVector();
+        all_Predictions = new ScoreTruthBuffer();
     }
 
     @Override
     public void reset() {
         for (int labelIndex = 0; labelIndex < numOfLabels; labelIndex++) {
-            m_Predictions[labelIndex] = new FastVector();
+            m_Predictions[labelIndex].clear();
         }
-        all_Predictions = new FastVector();
+        all_Predictions.clear();
     }
 
     @Override
@@ -63,21 +60,20 @@ public abstract class LabelBasedAUC extends ConfidenceMeasureBase {
     @Override
     protected void updateConfidence(double[] confidences, boolean[] truth) {
         for (int labelIndex = 0; labelIndex < numOfLabels; labelIndex++) {
+            m_Predictions[labelIndex].add(confidences[labelIndex], truth[labelIndex]);
+            all_Predictions.add(confidences[labelIndex], truth[labelIndex]);
+        }
+    }
 
-            int classValue;
-            boolean actual = truth[labelIndex];
-            if (actual) {
-                classValue = 1;
-            } else {
-                classValue = 0;
-            }
-
-            double[] dist = new double[2];
-            dist[1] = confidences[labelIndex];
-            dist[0] = 1 - dist[1];
-
-            m_Predictions[labelIndex].addElement(new NominalPrediction(classValue, dist, 1));
-            all_Predictions.addElement(new NominalPrediction(classValue, dist, 1));
+    @Override
+    public void merge(Measure other) {
+        if (other.getClass() != getClass() || ((LabelBasedAUC) other).numOfLabels != numOfLabels) {
+            throw new IllegalArgumentException("Can not merge " + other.getName() + " into " + getName());
+        }
+        LabelBasedAUC auc = (LabelBasedAUC) other;
+        for (int labelIndex = 0; labelIndex < numOfLabels; labelIndex++) {
+            m_Predictions[labelIndex].addAll(auc.m_Predictions[labelIndex]);
         }
+        all_Predictions.addAll(auc.all_Predictions);
     }
-}
\ No newline at end of file
+}
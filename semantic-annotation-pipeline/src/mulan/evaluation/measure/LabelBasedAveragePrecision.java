@@ -15,21 +15,17 @@
  */
 package mulan.evaluation.measure;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * 
  * @author Eleftherios Spyromitros-Xioufis
  * @version 2010.12.04
  */
-public abstract class LabelBasedAveragePrecision extends ConfidenceMeasureBase {
+public abstract class LabelBasedAveragePrecision extends ConfidenceMeasureBase implements MergeableMeasure {
 
     /** the number of labels */
     protected int numOfLabels;
-    /** collection that stores all predictions and ground truths */
-    protected List<ConfidenceActual>[] confact;
+    /** the confidences and ground truths of all examples, for each label */
+    protected ScoreTruthBuffer[] confact;
 
     /**
      * Creates a new instance of this class
@@ -38,22 +34,16 @@ public abstract class LabelBasedAveragePrecision extends ConfidenceMeasureBase {
      */
     public LabelBasedAveragePrecision(int numOfLabels) {
         this.numOfLabels = numOfLabels;
-        confact = new ArrayList[numOfLabels];
+        confact = new ScoreTruthBuffer[numOfLabels];
         for (int labelIndex = 0; labelIndex < numOfLabels; labelIndex++) {
-            confact[labelIndex] = new ArrayList<>();
+            confact[labelIndex] = new ScoreTruthBuffer();
         }
     }
 
     @Override
     protected void updateConfidence(double[] confidences, boolean[] truth) {
         for (int labelIndex = 0; labelIndex < numOfLabels; labelIndex++) {
-            boolean actual = truth[labelIndex];
-            // boolean predicted = bipartition[labelIndex];
-            double confidence = confidences[labelIndex];
-            // another metric...
-            // if (predicted) {
-            confact[labelIndex].add(new ConfidenceActual(confidence, actual));
-            // }
+            confact[labelIndex].add(confidences[labelIndex], truth[labelIndex]);
         }
     }
 
@@ -64,52 +54,15 @@ public abstract class LabelBasedAveragePrecision extends ConfidenceMeasureBase {
         }
     }
 
-    /**
-     * Class that stores a confidence and a ground truth for one label/example
-     */
-    protected class ConfidenceActual implements Comparable, Serializable {
-
-        private boolean actual;
-        private double confidence;
-
-        /**
-         * Creates a new instance of this class
-         *
-         * @param confidence the confidence
-         * @param actual the ground truth
-         */
-        public ConfidenceActual(double confidence, boolean actual) {
-            this.actual = actual;
-            this.confidence = confidence;
-        }
-
-        /**
-         * Returns the ground truth
-         *
-         * @return the ground truht
-         */
-        public boolean getActual() {
-            return actual;
-        }
-
-        /**
-         * Returns the confidence
-         *
-         * @return the confidence
-         */
-        public double getConfidence() {
-            return confidence;
+    @Override
+    public void merge(Measure other) {
+        if (other.getClass() != getClass()
+                || ((LabelBasedAveragePrecision) other).numOfLabels != numOfLabels) {
+            throw new IllegalArgumentException("Can not merge " + other.getName() + " into " + getName());
         }
-
-        @Override
-        public int compareTo(Object o) {
-            if (this.confidence > ((ConfidenceActual) o).confidence) {
-                return 1;
-            } else if (this.confidence < ((ConfidenceActual) o).confidence) {
-                return -1;
-            } else {
-                return 0;
-            }
+        LabelBasedAveragePrecision ap = (LabelBasedAveragePrecision) other;
+        for (int labelIndex = 0; labelIndex < numOfLabels; labelIndex++) {
+            confact[labelIndex].addAll(ap.confact[labelIndex]);
         }
     }
-}
\ No newline at end of file
+}
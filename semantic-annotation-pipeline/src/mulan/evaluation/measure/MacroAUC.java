@@ -15,8 +15,6 @@
  */
 package mulan.evaluation.measure;
 
-import weka.classifiers.evaluation.ThresholdCurve;
-import weka.core.Instances;
 import weka.core.Utils;
 
 /**
@@ -45,9 +43,7 @@ public class MacroAUC extends LabelBasedAUC implements MacroAverageMeasure {
     public double getValue() {
         double[] labelAUC = new double[numOfLabels];
         for (int i = 0; i < numOfLabels; i++) {
-            ThresholdCurve tc = new ThresholdCurve();
-            Instances result = tc.getCurve(m_Predictions[i], 1);
-            labelAUC[i] = ThresholdCurve.getROCArea(result);
+            labelAUC[i] = m_Predictions[i].auc();
         }
         return Utils.mean(labelAUC);
     }
@@ -60,9 +56,7 @@ public class MacroAUC extends LabelBasedAUC implements MacroAverageMeasure {
      */
     @Override
     public double getValue(int labelIndex) {
-        ThresholdCurve tc = new ThresholdCurve();
-        Instances result = tc.getCurve(m_Predictions[labelIndex], 1);
-        return ThresholdCurve.getROCArea(result);  
+        return m_Predictions[labelIndex].auc();
     }
 
 }
\ No newline at end of file
@@ -15,7 +15,6 @@
  */
 package mulan.evaluation.measure;
 
-import java.util.Collections;
 import weka.core.Utils;
 
 /**
@@ -77,18 +76,17 @@ public class MeanAverageInterpolatedPrecision extends LabelBasedAveragePrecision
      */
     @Override
     public double getValue(int labelIndex) {
-        double[] precisions = new double[confact[labelIndex].size()];
-        double[] recalls = new double[confact[labelIndex].size()];
+        boolean[] ranked = confact[labelIndex].truthsByDecreasingScore();
+        double[] precisions = new double[ranked.length];
+        double[] recalls = new double[ranked.length];
         double[] interpolatedPrecision = new double[numRecallLevels];
-        Collections.sort(confact[labelIndex], Collections.reverseOrder());
         double retrievedCounter = 0;
         double relevantCounter = 0;
         double totalRelevantCounter;
         // calculate precision in all positions and count the total number of relevant instances
-        for (int i = 0; i < confact[labelIndex].size(); i++) {
+        for (int i = 0; i < ranked.length; i++) {
             retrievedCounter++;
-            Boolean actual = confact[labelIndex].get(i).getActual();
-            if (actual) {
+            if (ranked[i]) {
                 relevantCounter++;
             }
             precisions[i] = relevantCounter / retrievedCounter;
@@ -99,9 +97,8 @@ public class MeanAverageInterpolatedPrecision extends LabelBasedAveragePrecision
         }
         // calculate recall in all positions
         relevantCounter = 0;
-        for (int i = 0; i < confact[labelIndex].size(); i++) {
-            Boolean actual = confact[labelIndex].get(i).getActual();
-            if (actual) {
+        for (int i = 0; i < ranked.length; i++) {
+            if (ranked[i]) {
                 relevantCounter++;
             }
             recalls[i] = relevantCounter / totalRelevantCounter;
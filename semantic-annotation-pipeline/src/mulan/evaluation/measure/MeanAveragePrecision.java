@@ -15,8 +15,6 @@
  */
 package mulan.evaluation.measure;
 
-import java.util.Collections;
-
 /**
  * Implementation of MAP (Mean Average Precision)
  *
@@ -66,12 +64,11 @@ public class MeanAveragePrecision extends LabelBasedAveragePrecision implements
     @Override
     public double getValue(int labelIndex) {
         double ap = 0;
-        Collections.sort(confact[labelIndex], Collections.reverseOrder());
+        boolean[] ranked = confact[labelIndex].truthsByDecreasingScore();
         double retrievedCounter = 0, relevantCounter = 0;
-        for (int i = 0; i < confact[labelIndex].size(); i++) {
+        for (int i = 0; i < ranked.length; i++) {
             retrievedCounter++;
-            Boolean actual = confact[labelIndex].get(i).getActual();
-            if (actual) {
+            if (ranked[i]) {
                 relevantCounter++;
                 ap += relevantCounter / retrievedCounter;
             }
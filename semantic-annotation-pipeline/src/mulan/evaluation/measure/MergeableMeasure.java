@@ -0,0 +1,32 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.evaluation.measure;
+
+/**
+ * Interface for measures whose accumulated state can be combined. Measures that
+ * were updated on disjoint parts of a test set (e.g. in parallel) and then merged
+ * give the same value as a single measure updated on the whole test set.
+ */
+public interface MergeableMeasure extends Measure {
+
+    /**
+     * Adds the state accumulated by another measure of the same type to this one
+     *
+     * @param other a measure of the same type
+     * @throws IllegalArgumentException if the measures can not be combined
+     */
+    public void merge(Measure other);
+}
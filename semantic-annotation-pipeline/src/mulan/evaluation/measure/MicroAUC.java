@@ -15,9 +15,6 @@
  */
 package mulan.evaluation.measure;
 
-import weka.classifiers.evaluation.ThresholdCurve;
-import weka.core.Instances;
-
 /**
  * Implementation of the micro-averaged AUC measure.
  *
@@ -41,8 +38,6 @@ public class MicroAUC extends LabelBasedAUC {
 
     @Override
     public double getValue() {
-        ThresholdCurve tc = new ThresholdCurve();
-        Instances result = tc.getCurve(all_Predictions, 1);
-        return ThresholdCurve.getROCArea(result);
+        return all_Predictions.auc();
     }
 }
\ No newline at end of file
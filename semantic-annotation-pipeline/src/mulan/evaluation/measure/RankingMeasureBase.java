@@ -23,7 +23,7 @@ import mulan.core.ArgumentNullException;
  * @author Grigorios Tsoumakas
  * @version 2010.12.03
  */
-public abstract class RankingMeasureBase extends ClassificationMeasureBase {
+public abstract class RankingMeasureBase extends ClassificationMeasureBase implements MergeableMeasure {
     /**
      * The current sum of the measure
      */
@@ -44,6 +44,15 @@ public abstract class RankingMeasureBase extends ClassificationMeasureBase {
         return sum / count;
     }
 
+    @Override
+    public void merge(Measure other) {
+        if (other.getClass() != getClass()) {
+            throw new IllegalArgumentException("Can not merge " + other.getName() + " into " + getName());
+        }
+        sum += ((RankingMeasureBase) other).sum;
+        count += ((RankingMeasureBase) other).count;
+    }
+
     @Override
     protected void updateInternal(MultiLabelOutput prediction, boolean[] truth) {
         int[] ranking = prediction.getRanking();
@@ -0,0 +1,185 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.evaluation.measure;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Growable buffer of (confidence, ground truth) pairs of one label. Confidences
+ * are kept in a primitive array and ground truths in a bit set, so memory grows
+ * by a few bytes per example instead of an object per example. The pairs are
+ * sorted only when a measure is computed.
+ */
+public class ScoreTruthBuffer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /** the confidences in order of insertion */
+    private double[] scores;
+    /** bit i is set if the i-th example is relevant */
+    private BitSet truths;
+    /** the number of stored examples */
+    private int size;
+
+    /**
+     * Creates an empty buffer
+     */
+    public ScoreTruthBuffer() {
+        scores = new double[16];
+        truths = new BitSet();
+        size = 0;
+    }
+
+    /**
+     * Appends an example
+     *
+     * @param score the confidence of the label
+     * @param truth the ground truth of the label
+     */
+    public void add(double score, boolean truth) {
+        if (size == scores.length) {
+            scores = Arrays.copyOf(scores, 2 * size);
+        }
+        scores[size] = score;
+        if (truth) {
+            truths.set(size);
+        }
+        size++;
+    }
+
+    /**
+     * Appends all examples of another buffer, after the examples of this one
+     *
+     * @param other the buffer to append
+     */
+    public void addAll(ScoreTruthBuffer other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.scores[i], other.truths.get(i));
+        }
+    }
+
+    /**
+     * Removes all examples
+     */
+    public void clear() {
+        truths.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of stored examples
+     *
+     * @return the number of examples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ground truths ordered by decreasing confidence. Examples with
+     * equal confidence keep their order of insertion.
+     *
+     * @return the ranked ground truths
+     */
+    public boolean[] truthsByDecreasingScore() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sortByDecreasingScore(order, new int[size], 0, size);
+        boolean[] ranked = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            ranked[i] = truths.get(order[i]);
+        }
+        return ranked;
+    }
+
+    /**
+     * Stable merge sort of example indices by decreasing confidence
+     */
+    private void sortByDecreasingScore(int[] order, int[] tmp, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sortByDecreasingScore(order, tmp, from, mid);
+        sortByDecreasingScore(order, tmp, mid, to);
+        int left = from, right = mid, pos = from;
+        while (left < mid && right < to) {
+            if (scores[order[right]] > scores[order[left]]) {
+                tmp[pos++] = order[right++];
+            } else {
+                tmp[pos++] = order[left++];
+            }
+        }
+        while (left < mid) {
+            tmp[pos++] = order[left++];
+        }
+        while (right < to) {
+            tmp[pos++] = order[right++];
+        }
+        System.arraycopy(tmp, from, order, from, to - from);
+    }
+
+    /**
+     * Computes the area under the ROC curve, i.e. the fraction of (relevant,
+     * irrelevant) pairs where the relevant example has the higher confidence,
+     * counting ties as one half. This is the value of Weka's
+     * ThresholdCurve.getROCArea for unit weights.
+     *
+     * @return the AUC, or {@link Double#NaN} if there are no relevant or no
+     * irrelevant examples
+     */
+    public double auc() {
+        int numPositives = truths.cardinality();
+        int numNegatives = size - numPositives;
+        if (numPositives == 0 || numNegatives == 0) {
+            return Double.NaN;
+        }
+        double[] positives = new double[numPositives];
+        double[] negatives = new double[numNegatives];
+        int p = 0, n = 0;
+        for (int i = 0; i < size; i++) {
+            if (truths.get(i)) {
+                positives[p++] = scores[i];
+            } else {
+                negatives[n++] = scores[i];
+            }
+        }
+        Arrays.sort(positives);
+        Arrays.sort(negatives);
+
+        // pair counts are integers (ties add one half), so the sum is exact
+        double area = 0;
+        double pairs = 0;
+        int below = 0;
+        for (int i = 0; i < numPositives; i++) {
+            if (i == 0 || positives[i] != positives[i - 1]) {
+                while (below < numNegatives && negatives[below] < positives[i]) {
+                    below++;
+                }
+                int ties = 0;
+                while (below + ties < numNegatives && negatives[below + ties] == positives[i]) {
+                    ties++;
+                }
+                pairs = below + 0.5 * ties;
+            }
+            area += pairs;
+        }
+        return area / ((double) numPositives * numNegatives);
+    }
+}
@@ -2,10 +2,7 @@ package mulan.regressor;
 
 import java.io.IOException;
 
-import mulan.classifier.InvalidDataException;
-import mulan.classifier.MultiLabelOutput;
 import mulan.classifier.clus.ClusWrapperClassification;
-import weka.core.Instance;
 
 /**
  * This class implements a wrapper for the multi-target regression methods included in the CLUS
@@ -25,15 +22,10 @@ public class ClusWrapperRegression extends ClusWrapperClassification {
     }
 
     /**
-     * This method exists so that CLUSWrapperRegression can extend MultiLabelLearnerBase. Also helps the
-     * Evaluator to determine the type of the MultiLabelOutput and thus prepare the appropriate
-     * measures to be evaluated upon.
+     * The targets are continuous, so CLUS writes one predicted value per target.
      */
     @Override
-    protected MultiLabelOutput makePredictionInternal(Instance instance) throws Exception,
-            InvalidDataException {
-        double[] pValues = new double[numLabels];
-        return new MultiLabelOutput(pValues, true);
-
+    public boolean isRegression() {
+        return true;
     }
 }
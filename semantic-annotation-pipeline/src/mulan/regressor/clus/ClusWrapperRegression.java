@@ -1,9 +1,6 @@
 package mulan.regressor.clus;
 
-import mulan.classifier.InvalidDataException;
-import mulan.classifier.MultiLabelOutput;
 import mulan.classifier.clus.ClusWrapperClassification;
-import weka.core.Instance;
 
 /**
  * This class is a wrapper for the multi-target regression methods included in 
@@ -25,14 +22,10 @@ public class ClusWrapperRegression extends ClusWrapperClassification {
     }
 
     /**
-     * This method exists so that CLUSWrapperRegression can extend MultiLabelLearnerBase. Also helps the
-     * Evaluator to determine the type of the MultiLabelOutput and thus prepare the appropriate measures.
+     * The targets are continuous, so CLUS writes one predicted value per target.
      */
     @Override
-    protected MultiLabelOutput makePredictionInternal(Instance instance) throws Exception,
-            InvalidDataException {
-        double[] pValues = new double[numLabels];
-        return new MultiLabelOutput(pValues, true);
-
+    public boolean isRegression() {
+        return true;
     }
 }
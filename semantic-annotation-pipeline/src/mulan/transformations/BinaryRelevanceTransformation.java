@@ -35,7 +35,14 @@ import weka.filters.unsupervised.attribute.Remove;
 public class BinaryRelevanceTransformation implements Serializable {
 
     private MultiLabelInstances data;
+    /**
+     * The format of the transformed data, without instances
+     */
     private Instances shell;
+    /**
+     * The indices of the feature attributes in the multi-label data
+     */
+    private int[] featureIndices;
     private Remove remove;
     private Add add;
 
@@ -54,7 +61,8 @@ public class BinaryRelevanceTransformation implements Serializable {
             remove.setAttributeIndicesArray(indices);
             remove.setInvertSelection(false);
             remove.setInputFormat(data.getDataSet());
-            shell = Filter.useFilter(data.getDataSet(), remove);
+            // only the format is filtered, the instances are views of the original ones
+            shell = Filter.useFilter(new Instances(data.getDataSet(), 0), remove);
             add = new Add();
             add.setAttributeIndex("last");
             add.setNominalLabels("0,1");
@@ -62,6 +70,7 @@ public class BinaryRelevanceTransformation implements Serializable {
             add.setInputFormat(shell);
             shell = Filter.useFilter(shell, add);
             shell.setClassIndex(shell.numAttributes() - 1);
+            featureIndices = FeatureViewInstance.featureIndices(data.getDataSet().numAttributes(), labelIndices);
         } catch (Exception ex) {
             Logger.getLogger(BinaryRelevanceTransformation.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -75,45 +84,72 @@ public class BinaryRelevanceTransformation implements Serializable {
      * @return transformed Instance
      */
     public Instance transformInstance(Instance instance, int labelToKeep) {
+        Instance transformedInstance = transformInstance(instance);
+        setLabelValue(transformedInstance, instance, labelToKeep);
+        return transformedInstance;
+    }
+
+    /**
+     * Remove all label attributes and append the (still unset) binary label.
+     * The result can be reused for every label through
+     * {@link #setLabelValue(Instance, Instance, int)}.
+     *
+     * @param instance the instance from which labels are to be removed
+     * @return transformed Instance
+     */
+    public Instance transformInstance(Instance instance) {
         Instance transformedInstance;
         remove.input(instance);
         transformedInstance = remove.output();
         add.input(transformedInstance);
         transformedInstance = add.output();
         transformedInstance.setDataset(shell);
+        return transformedInstance;
+    }
 
+    /**
+     * Sets the binary label of a transformed instance to the value of the
+     * label labelToKeep in the original instance
+     *
+     * @param transformedInstance an instance returned by {@link #transformInstance(Instance)}
+     * @param instance the original instance
+     * @param labelToKeep the label to keep
+     */
+    public void setLabelValue(Instance transformedInstance, Instance instance, int labelToKeep) {
         int[] labelIndices = data.getLabelIndices();
         if (data.getDataSet().attribute(labelIndices[labelToKeep]).value(0).equals("1")) {
             transformedInstance.setValue(shell.numAttributes() - 1, 1 - instance.value(labelIndices[labelToKeep]));
         } else {
             transformedInstance.setValue(shell.numAttributes() - 1, instance.value(labelIndices[labelToKeep]));
         }
-        return transformedInstance;
     }
 
     /**
-     * Remove all label attributes except labelToKeep
+     * Remove all label attributes except labelToKeep. The feature values of
+     * the returned instances are not copied, they are read from the
+     * multi-label data (see {@link FeatureViewInstance}).
      *
      * @param labelToKeep the label to keep
      * @return transformed Instances object
      * @throws Exception when removal fails
      */
     public Instances transformInstances(int labelToKeep) throws Exception {
-        Instances shellCopy = new Instances(this.shell);
+        Instances dataSet = data.getDataSet();
         boolean order10 = false;
         int[] labelIndices = data.getLabelIndices();
-        if (data.getDataSet().attribute(labelIndices[labelToKeep]).value(0).equals("1")) {
+        if (dataSet.attribute(labelIndices[labelToKeep]).value(0).equals("1")) {
             order10 = true;
         }
-        for (int j = 0; j < shellCopy.numInstances(); j++) {
+        double[][] labelValues = new double[dataSet.numInstances()][1];
+        for (int j = 0; j < dataSet.numInstances(); j++) {
             if (order10) {
-                shellCopy.instance(j).setValue(shellCopy.numAttributes() - 1, 1 - data.getDataSet().instance(j).value(labelIndices[labelToKeep]));
+                labelValues[j][0] = 1 - dataSet.instance(j).value(labelIndices[labelToKeep]);
             } else {
-                shellCopy.instance(j).setValue(shellCopy.numAttributes() - 1, data.getDataSet().instance(j).value(labelIndices[labelToKeep]));
+                labelValues[j][0] = dataSet.instance(j).value(labelIndices[labelToKeep]);
             }
         }
 
-        return shellCopy;
+        return FeatureViewInstance.createDataSet(shell, dataSet, featureIndices, labelValues);
     }
 
     /**
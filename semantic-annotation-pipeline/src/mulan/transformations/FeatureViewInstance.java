@@ -0,0 +1,269 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package mulan.transformations;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import weka.core.AbstractInstance;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * An instance of a transformed data set that reads its feature values from an
+ * instance of the original multi-label data set instead of copying them. The
+ * first attributes of the view are feature attributes of the original
+ * instance, the last ones hold values set by the transformation, such as the
+ * binary label of the binary relevance transformation or the labelset of the
+ * label powerset transformation.
+ *
+ * <p>The instance is read-only as long as it is a view: the first change of a
+ * value or of the attributes copies all values into the instance, which then
+ * behaves like a {@link DenseInstance}. Serialization also copies the values,
+ * so that serialized models do not contain the original data set.</p>
+ */
+public class FeatureViewInstance extends AbstractInstance {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * The original instance, null once the values have been copied
+     */
+    private transient Instance source;
+    /**
+     * The indices in the original instance of the feature attributes of the
+     * view, shared by all instances of a transformed data set
+     */
+    private transient int[] columns;
+    /**
+     * The values of the attributes following the feature attributes
+     */
+    private transient double[] extraValues;
+
+    /**
+     * Creates a view of an instance
+     *
+     * @param source the original instance
+     * @param columns the indices in the original instance of the feature
+     * attributes of the view
+     * @param extraValues the values of the attributes following the feature
+     * attributes
+     */
+    public FeatureViewInstance(Instance source, int[] columns, double[] extraValues) {
+        this.source = source;
+        this.columns = columns;
+        this.extraValues = extraValues;
+        m_Weight = source.weight();
+        m_Dataset = null;
+    }
+
+    /**
+     * Creates a copy of an instance that has not been modified
+     */
+    private FeatureViewInstance(FeatureViewInstance view) {
+        source = view.source;
+        columns = view.columns;
+        extraValues = view.extraValues;
+        m_Weight = view.m_Weight;
+        m_Dataset = view.m_Dataset;
+    }
+
+    /**
+     * Creates a transformed data set, whose instances are views of the
+     * instances of an original data set
+     *
+     * @param header the format of the transformed data set
+     * @param data the original data set
+     * @param columns the indices in the original data set of the feature
+     * attributes of the transformed data set
+     * @param extraValues the values of the remaining attributes of each
+     * transformed instance, in the order of the original instances
+     * @return the transformed data set
+     */
+    public static Instances createDataSet(Instances header, Instances data, int[] columns,
+            double[][] extraValues) {
+        Instances transformed = new Instances(header, data.numInstances());
+        for (int i = 0; i < data.numInstances(); i++) {
+            transformed.add(new FeatureViewInstance(data.instance(i), columns, extraValues[i]));
+        }
+        return transformed;
+    }
+
+    /**
+     * Returns the indices of the attributes of a data set that are not labels
+     *
+     * @param numAttributes the number of attributes of the data set
+     * @param labelIndices the indices of the labels
+     * @return the indices of the feature attributes, in increasing order
+     */
+    public static int[] featureIndices(int numAttributes, int[] labelIndices) {
+        boolean[] isLabel = new boolean[numAttributes];
+        for (int index : labelIndices) {
+            isLabel[index] = true;
+        }
+        int[] features = new int[numAttributes - labelIndices.length];
+        int counter = 0;
+        for (int i = 0; i < numAttributes; i++) {
+            if (!isLabel[i]) {
+                features[counter++] = i;
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Copies the values of the original instance into this instance, which
+     * stops being a view
+     */
+    private void materialize() {
+        if (source != null) {
+            m_AttValues = toDoubleArray();
+            source = null;
+            columns = null;
+            extraValues = null;
+        }
+    }
+
+    public Object copy() {
+        if (source == null) {
+            DenseInstance result = new DenseInstance(m_Weight, toDoubleArray());
+            result.setDataset(m_Dataset);
+            return result;
+        }
+        return new FeatureViewInstance(this);
+    }
+
+    public double value(int attIndex) {
+        if (source == null) {
+            return m_AttValues[attIndex];
+        }
+        if (attIndex < columns.length) {
+            return source.value(columns[attIndex]);
+        }
+        return extraValues[attIndex - columns.length];
+    }
+
+    public double valueSparse(int indexOfIndex) {
+        return value(indexOfIndex);
+    }
+
+    public boolean isMissingSparse(int indexOfIndex) {
+        return Utils.isMissingValue(value(indexOfIndex));
+    }
+
+    public int index(int position) {
+        return position;
+    }
+
+    public int numAttributes() {
+        if (source == null) {
+            return m_AttValues.length;
+        }
+        return columns.length + extraValues.length;
+    }
+
+    public int numValues() {
+        return numAttributes();
+    }
+
+    public double[] toDoubleArray() {
+        if (source == null) {
+            return m_AttValues.clone();
+        }
+        double[] values = new double[columns.length + extraValues.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = source.value(columns[i]);
+        }
+        System.arraycopy(extraValues, 0, values, columns.length, extraValues.length);
+        return values;
+    }
+
+    public void setValue(int attIndex, double value) {
+        materialize();
+        m_AttValues[attIndex] = value;
+    }
+
+    public void setValueSparse(int indexOfIndex, double value) {
+        setValue(indexOfIndex, value);
+    }
+
+    public void replaceMissingValues(double[] array) {
+        materialize();
+        for (int i = 0; i < m_AttValues.length; i++) {
+            if (Utils.isMissingValue(m_AttValues[i])) {
+                m_AttValues[i] = array[i];
+            }
+        }
+    }
+
+    public Instance mergeInstance(Instance inst) {
+        double[] first = toDoubleArray();
+        double[] second = inst.toDoubleArray();
+        double[] values = new double[first.length + second.length];
+        System.arraycopy(first, 0, values, 0, first.length);
+        System.arraycopy(second, 0, values, first.length, second.length);
+        return new DenseInstance(1.0, values);
+    }
+
+    protected void forceDeleteAttributeAt(int position) {
+        materialize();
+        double[] values = new double[m_AttValues.length - 1];
+        System.arraycopy(m_AttValues, 0, values, 0, position);
+        System.arraycopy(m_AttValues, position + 1, values, position, values.length - position);
+        m_AttValues = values;
+    }
+
+    protected void forceInsertAttributeAt(int position) {
+        materialize();
+        double[] values = new double[m_AttValues.length + 1];
+        System.arraycopy(m_AttValues, 0, values, 0, position);
+        values[position] = Utils.missingValue();
+        System.arraycopy(m_AttValues, position, values, position + 1, m_AttValues.length - position);
+        m_AttValues = values;
+    }
+
+    public String toStringNoWeight() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < numAttributes(); i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(toString(i));
+        }
+        return text.toString();
+    }
+
+    public String toStringNoWeight(int afterDecimalPoint) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < numAttributes(); i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(toString(i, afterDecimalPoint));
+        }
+        return text.toString();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
+
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision$");
+    }
+}
@@ -34,6 +34,10 @@ public class IncludeLabelsTransformation implements Serializable {
     private int[] labelIndices;
 
     /**
+     * Transforms multi-label data into one instance per pair of an instance
+     * and a label. The feature values of the returned instances are not
+     * copied, they are read from the multi-label data (see
+     * {@link FeatureViewInstance}).
      *
      * @param mlData multi-label data
      * @return transformed instances
@@ -43,8 +47,9 @@ public class IncludeLabelsTransformation implements Serializable {
         int numLabels = mlData.getNumLabels();
         labelIndices = mlData.getLabelIndices();
 
-        // remove all labels
-        Instances transformed = RemoveAllLabels.transformInstances(mlData);
+        // remove all labels from the format
+        Instances data = mlData.getDataSet();
+        Instances transformed = RemoveAllLabels.transformInstances(new Instances(data, 0), labelIndices);
 
         // add at the end an attribute with values the label names
         ArrayList<String> labelNames = new ArrayList<String>(numLabels);
@@ -62,24 +67,21 @@ public class IncludeLabelsTransformation implements Serializable {
         transformed.insertAttributeAt(classAttr, transformed.numAttributes());
 
         // add instances
-        transformed = new Instances(transformed, 0);
+        transformed = new Instances(transformed, data.numInstances() * numLabels);
         transformed.setClassIndex(transformed.numAttributes() - 1);
-        Instances data = mlData.getDataSet();
+        int[] featureIndices = FeatureViewInstance.featureIndices(data.numAttributes(), labelIndices);
         for (int instanceIndex = 0; instanceIndex < data.numInstances(); instanceIndex++) {
+            Instance instance = data.instance(instanceIndex);
             for (int labelCounter = 0; labelCounter < numLabels; labelCounter++) {
-                Instance temp;
-                temp = RemoveAllLabels.transformInstance(data.instance(instanceIndex), labelIndices);
-                temp.setDataset(null);
-                temp.insertAttributeAt(temp.numAttributes());
-                temp.insertAttributeAt(temp.numAttributes());
-                temp.setDataset(transformed);
-                temp.setValue(temp.numAttributes() - 2, (String) labelNames.get(labelCounter));
-                if (data.attribute(labelIndices[labelCounter]).value((int) data.instance(instanceIndex).value(labelIndices[labelCounter])).equals("1")) {
-                    temp.setValue(temp.numAttributes() - 1, "1");
+                // the values of the label attribute are the label names in label order
+                double[] values = new double[2];
+                values[0] = labelCounter;
+                if (data.attribute(labelIndices[labelCounter]).value((int) instance.value(labelIndices[labelCounter])).equals("1")) {
+                    values[1] = binaryValues.indexOf("1");
                 } else {
-                    temp.setValue(temp.numAttributes() - 1, "0");
+                    values[1] = binaryValues.indexOf("0");
                 }
-                transformed.add(temp);
+                transformed.add(new FeatureViewInstance(instance, featureIndices, values));
             }
         }
 
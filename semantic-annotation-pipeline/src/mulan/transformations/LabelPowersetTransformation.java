@@ -46,7 +46,10 @@ public class LabelPowersetTransformation implements Serializable {
     }
 
     /**
-     * 
+     * Transforms multi-label data. The feature values of the returned instances
+     * are not copied, they are read from the multi-label data (see
+     * {@link FeatureViewInstance}).
+     *
      * @param mlData multi-label data
      * @return the transformed instances
      * @throws Exception Potential exception thrown. To be handled in an upper level.
@@ -81,24 +84,25 @@ public class LabelPowersetTransformation implements Serializable {
         }
         Attribute newClass = new Attribute("LP_Class_" + Integer.toHexString((int) Math.random()*Integer.MAX_VALUE), classValues);
 
-        // remove all labels
-        newData = RemoveAllLabels.transformInstances(data, labelIndices);
+        // remove all labels from the format
+        Instances header = RemoveAllLabels.transformInstances(new Instances(data, 0), labelIndices);
 
         // add new class attribute
-        newData.insertAttributeAt(newClass, newData.numAttributes());
-        newData.setClassIndex(newData.numAttributes() - 1);
+        header.insertAttributeAt(newClass, header.numAttributes());
+        header.setClassIndex(header.numAttributes() - 1);
 
-        // add class values
-        for (int i = 0; i < newData.numInstances(); i++) {
-            //System.out.println(newData.instance(i).toString());
-            String strClass = "";
+        // compute class values
+        double[][] labelsetValues = new double[numInstances][1];
+        for (int i = 0; i < numInstances; i++) {
+            StringBuilder strClass = new StringBuilder(numLabels);
             for (int j = 0; j < numLabels; j++) {
                 int index = labelIndices[j];
-                strClass = strClass + data.attribute(index).value((int) data.instance(i).value(index));
+                strClass.append(data.attribute(index).value((int) data.instance(i).value(index)));
             }
-            //System.out.println(strClass);
-            newData.instance(i).setClassValue(strClass);
+            labelsetValues[i][0] = header.classAttribute().indexOfValue(strClass.toString());
         }
+        int[] featureIndices = FeatureViewInstance.featureIndices(data.numAttributes(), labelIndices);
+        newData = FeatureViewInstance.createDataSet(header, data, featureIndices, labelsetValues);
         transformedFormat = new Instances(newData, 0);
         return newData;
     }